@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Line (record) reader with a fixed buffer.
+ * <p>
+ * Unlike {@link java.io.BufferedReader#readLine()} the returned line is a view of the internal buffer, which is only
+ * valid until the next call, so reading allocates nothing and the memory stays flat whatever the input size:
+ * <blockquote><pre>
+ * LineReader reader = new LineReader(new InputStreamReader(in, charset), 8192);
+ * for (CharSequence line; null != (line = reader.next()); ) {
+ *     handle(line); // copy by line.toString() if it needs to be kept
+ * }
+ * </pre></blockquote>
+ * Records are separated by the delimiter ('\n' by default, a preceding '\r' is removed), a record longer than the
+ * buffer causes an {@link IOException}.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class LineReader implements Closeable {
+    private static final char LF = '\n';
+    private static final char CR = '\r';
+
+    private final Reader reader;
+    private final char delimiter;
+    private final char[] buffer;
+    private final CharBuffer view;
+    private int start;
+    private int end;
+    private boolean eof;
+    private long lineNumber;
+
+    /**
+     * Creates a line reader.
+     *
+     * @param reader     the reader
+     * @param bufferSize the buffer size, also the max record length
+     */
+    public LineReader(final Reader reader, final int bufferSize) {
+        this(reader, bufferSize, LF);
+    }
+
+    /**
+     * Creates a record reader.
+     *
+     * @param reader     the reader
+     * @param bufferSize the buffer size, also the max record length
+     * @param delimiter  the record delimiter
+     */
+    public LineReader(final Reader reader, final int bufferSize, final char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+        this.buffer = new char[bufferSize];
+        this.view = CharBuffer.wrap(buffer);
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return the line (without delimiter) backed by the internal buffer, valid until the next call, null at the end
+     * @throws IOException if an I/O error occurs or the line is longer than the buffer
+     */
+    public CharSequence next() throws IOException {
+        int scan = start;
+        while (true) {
+            for (; scan < end; scan++) {
+                if (delimiter == buffer[scan]) {
+                    final CharSequence line = line(start, scan);
+                    start = scan + 1;
+                    return line;
+                }
+            }
+            if (eof) {
+                if (start == end) {
+                    return null;
+                }
+                final CharSequence line = line(start, end);
+                start = end;
+                return line;
+            }
+            scan -= fill();
+        }
+    }
+
+    /**
+     * Reads the next line as a string.
+     *
+     * @return the line, null at the end
+     * @throws IOException if an I/O error occurs or the line is longer than the buffer
+     */
+    public String readLine() throws IOException {
+        final CharSequence line = next();
+        return null != line ? line.toString() : null;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    private CharSequence line(final int from, final int to) {
+        lineNumber++;
+        final int last = LF == delimiter && to > from && CR == buffer[to - 1] ? to - 1 : to;
+        view.limit(last).position(from);
+        return view;
+    }
+
+    /**
+     * Moves the pending chars to the buffer start and reads more.
+     *
+     * @return the distance the pending chars moved
+     */
+    private int fill() throws IOException {
+        final int moved = start;
+        if (0 < start) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            throw new IOException("line " + (lineNumber + 1) + " is longer than the buffer size " + buffer.length);
+        }
+        final int read = reader.read(buffer, end, buffer.length - end);
+        if (0 > read) {
+            eof = true;
+        } else {
+            end += read;
+        }
+        return moved;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
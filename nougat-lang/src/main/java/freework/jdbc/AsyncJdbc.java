@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous query execution over a {@link DataSource}.
+ * <p>
+ * Queries are submitted to a dedicated, bounded executor (one thread per connection it may use, so size it to the
+ * pool) and return {@link QueryFuture}s. Each query can have a timeout counted from submission: when it expires the
+ * running statement is cancelled by {@link java.sql.Statement#cancel()} (a queued query is simply dropped).
+ * <blockquote><pre>
+ * AsyncJdbc async = AsyncJdbc.forPool(pooledDataSource).defaultTimeout(2, TimeUnit.SECONDS);
+ * Future&lt;List&lt;Map&lt;String, Object&gt;&gt;&gt; orders = async.executeQuery("select ...", userId);
+ * Future&lt;List&lt;Map&lt;String, Object&gt;&gt;&gt; payments = async.executeQuery("select ...", userId);
+ * List&lt;List&lt;Map&lt;String, Object&gt;&gt;&gt; results = AsyncJdbc.joinAll(Arrays.asList(orders, payments));
+ * </pre></blockquote>
+ * so the latency of the fan-out is the one of the slowest query instead of the sum.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class AsyncJdbc implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncJdbc.class);
+    private static final AtomicInteger SEQ = new AtomicInteger();
+    private static final int DEFAULT_QUEUE_CAPACITY_PER_THREAD = 16;
+
+    private final DataSource dataSource;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer;
+    private volatile long defaultTimeoutNanos;
+
+    /**
+     * Creates an async facade with a bounded queue of 16 queries per thread.
+     *
+     * @param dataSource the data source
+     * @param threads    the number of jdbc threads, should not exceed the pool size
+     */
+    public AsyncJdbc(final DataSource dataSource, final int threads) {
+        this(dataSource, threads, threads * DEFAULT_QUEUE_CAPACITY_PER_THREAD);
+    }
+
+    /**
+     * Creates an async facade.
+     *
+     * @param dataSource    the data source
+     * @param threads       the number of jdbc threads, should not exceed the pool size
+     * @param queueCapacity the max number of queued queries, submitting more throws {@link RejectedExecutionException}
+     */
+    public AsyncJdbc(final DataSource dataSource, final int threads, final int queueCapacity) {
+        final String prefix = "async-jdbc-" + SEQ.incrementAndGet();
+        this.dataSource = dataSource;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), newThreadFactory(prefix + "-worker-"));
+        this.timer = new ScheduledThreadPoolExecutor(1, newThreadFactory(prefix + "-timer-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Creates an async facade with one thread per pooled connection.
+     *
+     * @param dataSource the pooled data source
+     * @return the async facade
+     */
+    public static AsyncJdbc forPool(final PooledDataSource dataSource) {
+        return new AsyncJdbc(dataSource, dataSource.getMaxSize());
+    }
+
+    private static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, prefix + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Sets the timeout of the queries submitted without explicit timeout.
+     *
+     * @param timeout the timeout, 0 for no timeout
+     * @param unit    the time unit
+     * @return this facade
+     */
+    public AsyncJdbc defaultTimeout(final long timeout, final TimeUnit unit) {
+        this.defaultTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Submits a query and maps the rows to maps (column label - value).
+     *
+     * @param sql        the sql
+     * @param parameters the parameters
+     * @return the future rows
+     */
+    public QueryFuture<List<Map<String, Object>>> executeQuery(final String sql, final Object... parameters) {
+        return submit(sql, parameters, defaultTimeoutNanos, TimeUnit.NANOSECONDS,
+                new StatementCallback<List<Map<String, Object>>>() {
+                    @Override
+                    public List<Map<String, Object>> doInStatement(final PreparedStatement stmt) throws SQLException {
+                        ResultSet rs = null;
+                        try {
+                            rs = stmt.executeQuery();
+                            return Jdbc.resultSetToListMap(rs, null);
+                        } finally {
+                            Jdbc.close(rs);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Submits a query and maps the rows with the row mapper.
+     *
+     * @param sql        the sql
+     * @param mapper     the row mapper
+     * @param parameters the parameters
+     * @param <T>        the row type
+     * @return the future rows
+     */
+    public <T> QueryFuture<List<T>> query(final String sql, final RowMapper<T> mapper, final Object... parameters) {
+        return submit(sql, parameters, defaultTimeoutNanos, TimeUnit.NANOSECONDS, new StatementCallback<List<T>>() {
+            @Override
+            public List<T> doInStatement(final PreparedStatement stmt) throws SQLException {
+                ResultSet rs = null;
+                try {
+                    rs = stmt.executeQuery();
+                    final List<T> rows = new ArrayList<T>();
+                    while (rs.next()) {
+                        rows.add(mapper.mapRow(rs, rows.size() + 1));
+                    }
+                    return rows;
+                } finally {
+                    Jdbc.close(rs);
+                }
+            }
+        });
+    }
+
+    /**
+     * Submits an update.
+     *
+     * @param sql        the sql
+     * @param parameters the parameters
+     * @return the future number of affected rows
+     */
+    public QueryFuture<Integer> executeUpdate(final String sql, final Object... parameters) {
+        return submit(sql, parameters, defaultTimeoutNanos, TimeUnit.NANOSECONDS, new StatementCallback<Integer>() {
+            @Override
+            public Integer doInStatement(final PreparedStatement stmt) throws SQLException {
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Submits a statement callback, the statement is prepared, bound and closed by this facade.
+     *
+     * @param sql        the sql
+     * @param parameters the parameters
+     * @param timeout    the timeout counted from submission, 0 for no timeout
+     * @param unit       the time unit
+     * @param callback   the statement callback
+     * @param <T>        the result type
+     * @return the future result
+     * @throws RejectedExecutionException if the queue is full or this facade is closed
+     */
+    public <T> QueryFuture<T> submit(final String sql, final Object[] parameters, final long timeout,
+                                     final TimeUnit unit, final StatementCallback<T> callback) {
+        final long timeoutNanos = unit.toNanos(timeout);
+        final long deadline = 0 < timeoutNanos ? System.nanoTime() + timeoutNanos : 0;
+        final QueryTask<T> task = new QueryTask<T>(sql, parameters, deadline, callback);
+        final QueryFuture<T> future = new QueryFuture<T>(task);
+        executor.execute(future);
+        if (0 < timeoutNanos) {
+            future.timeoutTask = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    future.timeout();
+                }
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+            if (future.isDone()) {
+                future.timeoutTask.cancel(false);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Waits for the result of the future.
+     *
+     * @param future the future
+     * @param <T>    the result type
+     * @return the result
+     * @throws SQLException        if the query failed or was cancelled
+     * @throws SQLTimeoutException if the query timed out
+     */
+    public static <T> T join(final Future<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted waiting for query", e);
+        } catch (final CancellationException e) {
+            if (future instanceof QueryFuture && ((QueryFuture<?>) future).isTimedOut()) {
+                throw new SQLTimeoutException("query timed out before it started", e);
+            }
+            throw new SQLException("query cancelled", e);
+        } catch (final ExecutionException e) {
+            throw unwrap(future, e.getCause());
+        }
+    }
+
+    /**
+     * Waits for all futures, if one fails the others are cancelled and its exception is thrown.
+     *
+     * @param futures the futures
+     * @param <T>     the result type
+     * @return the results in the order of the futures
+     * @throws SQLException if a query failed, was cancelled or timed out
+     */
+    public static <T> List<T> joinAll(final List<? extends Future<? extends T>> futures) throws SQLException {
+        final List<T> results = new ArrayList<T>(futures.size());
+        try {
+            for (final Future<? extends T> future : futures) {
+                results.add(join(future));
+            }
+            return results;
+        } finally {
+            if (results.size() < futures.size()) {
+                cancelAll(futures);
+            }
+        }
+    }
+
+    /**
+     * Waits at most the given time for all futures, the pending ones are cancelled on timeout.
+     *
+     * @param futures the futures
+     * @param timeout the max time to wait
+     * @param unit    the time unit
+     * @param <T>     the result type
+     * @return the results in the order of the futures
+     * @throws SQLException        if a query failed or was cancelled
+     * @throws SQLTimeoutException if not all queries completed in time
+     */
+    public static <T> List<T> joinAll(final List<? extends Future<? extends T>> futures,
+                                      final long timeout, final TimeUnit unit) throws SQLException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final List<T> results = new ArrayList<T>(futures.size());
+        try {
+            for (final Future<? extends T> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (final TimeoutException e) {
+                    throw new SQLTimeoutException("queries not completed in " + unit.toMillis(timeout) + " ms", e);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("interrupted waiting for queries", e);
+                } catch (final ExecutionException ignore) {
+                    // rethrown by join
+                } catch (final CancellationException ignore) {
+                    // rethrown by join
+                }
+                results.add(join(future));
+            }
+            return results;
+        } finally {
+            if (results.size() < futures.size()) {
+                cancelAll(futures);
+            }
+        }
+    }
+
+    private static void cancelAll(final List<? extends Future<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    private static SQLException unwrap(final Future<?> future, final Throwable cause) {
+        final boolean timedOut = future instanceof QueryFuture && ((QueryFuture<?>) future).isTimedOut();
+        if (timedOut && !(cause instanceof SQLTimeoutException)) {
+            return new SQLTimeoutException("query timed out", cause);
+        }
+        if (cause instanceof SQLException) {
+            return (SQLException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new SQLException(cause);
+    }
+
+    /**
+     * Returns the number of queued queries.
+     *
+     * @return the number of queued queries
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting queries, the submitted queries still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        timer.shutdown();
+    }
+
+    /**
+     * The statement callback of an asynchronous query.
+     *
+     * @param <T> the result type
+     */
+    public interface StatementCallback<T> {
+
+        /**
+         * Executes the prepared and bound statement, the statement is closed by the caller.
+         *
+         * @param stmt the statement
+         * @return the result
+         * @throws SQLException if a database access error occurs
+         */
+        T doInStatement(final PreparedStatement stmt) throws SQLException;
+
+    }
+
+    /**
+     * The future of an asynchronous query, cancelling it cancels the running statement.
+     *
+     * @param <T> the result type
+     */
+    public static final class QueryFuture<T> extends FutureTask<T> {
+        private volatile PreparedStatement statement;
+        private volatile boolean timedOut;
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        private QueryFuture(final QueryTask<T> task) {
+            super(task);
+            task.future = this;
+        }
+
+        /**
+         * Cancels the query, a running statement is cancelled by {@link java.sql.Statement#cancel()}.
+         *
+         * @param mayInterruptIfRunning true to also interrupt the jdbc thread (not recommended with most drivers)
+         * @return false if the query could not be cancelled (typically because it has already completed)
+         */
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            cancelStatement();
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        private void timeout() {
+            if (!isDone()) {
+                timedOut = true;
+                if (null == statement) {
+                    super.cancel(false);
+                }
+                cancelStatement();
+            }
+        }
+
+        /**
+         * Cancels the running statement, guarded by this future so that the statement cannot be closed
+         * (and its connection returned to the pool) while it is being cancelled.
+         */
+        private synchronized void cancelStatement() {
+            final PreparedStatement stmt = statement;
+            if (null != stmt && !isDone()) {
+                try {
+                    stmt.cancel();
+                } catch (final SQLException e) {
+                    LOGGER.debug("cannot cancel statement: {}", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Sets the running statement, null before the statement is closed.
+         */
+        private synchronized void setStatement(final PreparedStatement stmt) {
+            statement = stmt;
+        }
+
+        @Override
+        protected void done() {
+            setStatement(null);
+            final ScheduledFuture<?> task = timeoutTask;
+            if (null != task) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Runs the statement callback on a connection of the data source.
+     */
+    private final class QueryTask<T> implements Callable<T> {
+        private final String sql;
+        private final Object[] parameters;
+        private final long deadline;
+        private final StatementCallback<T> callback;
+        private QueryFuture<T> future;
+
+        private QueryTask(final String sql, final Object[] parameters,
+                          final long deadline, final StatementCallback<T> callback) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        @Override
+        public T call() throws SQLException {
+            Connection conn = null;
+            PreparedStatement stmt = null;
+            try {
+                conn = dataSource.getConnection();
+                stmt = conn.prepareStatement(sql);
+                if (0 != deadline) {
+                    /*-
+                     * driver side backup of the timer.
+                     */
+                    final long remaining = deadline - System.nanoTime();
+                    stmt.setQueryTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + 999999999L)));
+                }
+                future.setStatement(stmt);
+                if (future.isTimedOut()) {
+                    throw new SQLTimeoutException("query timed out");
+                }
+                if (null != parameters) {
+                    Jdbc.setParameters(stmt, parameters);
+                }
+                return callback.doInStatement(stmt);
+            } finally {
+                future.setStatement(null);
+                Jdbc.close(stmt);
+                Jdbc.close(conn);
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import freework.jdbc.statement.ParameterBinder;
+import freework.jdbc.statement.ParameterBinders;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk inserter of table rows.
+ * <p>
+ * Rows are sent with {@link PreparedStatement#addBatch()}/{@link PreparedStatement#executeBatch()},
+ * or rewritten into multi-row <code>insert into t(..) values (..),(..)</code> statements when enabled
+ * and the database (MySQL, PostgreSQL, H2) supports it.
+ * Rows with the same column set share a single statement, a change of column set flushes the pending batch.
+ * <blockquote><pre>
+ * BatchInserter.Stats stats = new BatchInserter(conn, "t_order").batchSize(1000).multiRowValues(true).insert(rows);
+ * </pre></blockquote>
+ * The inserter does not commit, transaction handling is up to the caller. Instances are not thread-safe.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class BatchInserter {
+    /**
+     * The default number of rows per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * The max number of bind parameters per statement (PostgreSQL protocol limit, the lowest of the supported databases).
+     */
+    private static final int MAX_PARAMETERS_PER_STATEMENT = Short.MAX_VALUE;
+
+    private final Connection connection;
+    private final String tableName;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean multiRowValues;
+    private BatchListener listener;
+
+    /**
+     * The insert sql cache: columns -&gt; (rows per statement -&gt; sql).
+     */
+    private final Map<List<String>, Map<Integer, String>> sqlCache = new HashMap<List<String>, Map<Integer, String>>(4);
+
+    /**
+     * The open statement and its shape (columns, rows per statement).
+     */
+    private PreparedStatement statement;
+    private List<String> statementColumns;
+    private int statementRows;
+
+    /**
+     * The type-specialized binders of the columns, chosen by the first non-null value of the column
+     * (null until a column has seen a value).
+     */
+    private ParameterBinder[] binders;
+    private List<String> binderColumns;
+
+    /**
+     * Creates a batch inserter.
+     *
+     * @param connection the connection
+     * @param tableName  the table name
+     */
+    public BatchInserter(final Connection connection, final String tableName) {
+        this.connection = connection;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Sets the number of rows per batch.
+     *
+     * @param batchSize the number of rows per batch
+     * @return this inserter
+     */
+    public BatchInserter batchSize(final int batchSize) {
+        if (1 > batchSize) {
+            throw new IllegalArgumentException("batchSize must be greater than 0: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets whether to rewrite batches into multi-row values statements (only MySQL, PostgreSQL, H2).
+     *
+     * @param multiRowValues true if rewrite batches
+     * @return this inserter
+     */
+    public BatchInserter multiRowValues(final boolean multiRowValues) {
+        this.multiRowValues = multiRowValues;
+        return this;
+    }
+
+    /**
+     * Sets the listener notified after each executed batch.
+     *
+     * @param listener the batch listener
+     * @return this inserter
+     */
+    public BatchInserter listener(final BatchListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Inserts the rows.
+     *
+     * @param rows the rows (column name -&gt; value)
+     * @return the insert statistics
+     * @throws SQLException if a database access error occurs
+     */
+    public Stats insert(final Iterable<? extends Map<String, ?>> rows) throws SQLException {
+        return insert(rows.iterator());
+    }
+
+    /**
+     * Inserts the rows, the rows are consumed lazily (eg: a {@link ResultCursor}).
+     *
+     * @param rows the rows (column name -&gt; value)
+     * @return the insert statistics
+     * @throws SQLException if a database access error occurs
+     */
+    public Stats insert(final Iterator<? extends Map<String, ?>> rows) throws SQLException {
+        final boolean rewrite = multiRowValues && supportsMultiRowValues(Jdbc.getDbType(connection.getMetaData().getURL()));
+        final Stats stats = new Stats();
+        final List<Map<String, ?>> pending = new ArrayList<Map<String, ?>>(batchSize);
+
+        List<String> columns = null;
+        try {
+            while (rows.hasNext()) {
+                final Map<String, ?> row = rows.next();
+                if (null == columns || !sameColumns(columns, row.keySet())) {
+                    flush(columns, pending, rewrite, stats);
+                    columns = new ArrayList<String>(row.keySet());
+                }
+                pending.add(row);
+                if (batchSize <= pending.size()) {
+                    flush(columns, pending, rewrite, stats);
+                }
+            }
+            flush(columns, pending, rewrite, stats);
+        } finally {
+            closeStatement();
+            stats.finish();
+        }
+        return stats;
+    }
+
+    private void flush(final List<String> columns, final List<Map<String, ?>> pending,
+                       final boolean rewrite, final Stats stats) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        if (rewrite) {
+            executeMultiRow(columns, pending);
+        } else {
+            executeBatch(columns, pending);
+        }
+        final long elapsed = System.nanoTime() - start;
+        final int rowCount = pending.size();
+        pending.clear();
+
+        stats.record(rowCount, elapsed);
+        if (null != listener) {
+            listener.onBatch(rowCount, elapsed, stats);
+        }
+    }
+
+    private void executeBatch(final List<String> columns, final List<Map<String, ?>> rows) throws SQLException {
+        final PreparedStatement stmt = prepare(columns, 1);
+        resolveBinders(columns, rows);
+        for (final Map<String, ?> row : rows) {
+            bind(stmt, columns, row, 0);
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+    }
+
+    private void executeMultiRow(final List<String> columns, final List<Map<String, ?>> rows) throws SQLException {
+        final int maxRowsPerStatement = Math.max(1, MAX_PARAMETERS_PER_STATEMENT / Math.max(1, columns.size()));
+        resolveBinders(columns, rows);
+        int offset = 0;
+        while (offset < rows.size()) {
+            final int count = Math.min(maxRowsPerStatement, rows.size() - offset);
+            final PreparedStatement stmt = prepare(columns, count);
+            for (int i = 0; i < count; i++) {
+                bind(stmt, columns, rows.get(offset + i), i * columns.size());
+            }
+            stmt.executeUpdate();
+            offset += count;
+        }
+    }
+
+    /**
+     * Returns the statement for the columns and rows, the previous statement is reused if the shape is the same.
+     */
+    private PreparedStatement prepare(final List<String> columns, final int rowCount) throws SQLException {
+        if (null != statement && rowCount == statementRows && columns.equals(statementColumns)) {
+            return statement;
+        }
+        closeStatement();
+        statement = connection.prepareStatement(getSql(columns, rowCount));
+        statementColumns = columns;
+        statementRows = rowCount;
+        return statement;
+    }
+
+    private void closeStatement() {
+        Jdbc.close(statement);
+        statement = null;
+        statementColumns = null;
+        statementRows = 0;
+    }
+
+    /**
+     * Chooses the binders of the columns not resolved yet by the first non-null value of the pending rows,
+     * so a null in the first row does not pin a column to {@link PreparedStatement#setObject(int, Object)}.
+     */
+    private void resolveBinders(final List<String> columns, final List<Map<String, ?>> rows) {
+        final int size = columns.size();
+        if (columns != binderColumns) {
+            binders = new ParameterBinder[size];
+            binderColumns = columns;
+        }
+        for (int i = 0; i < size; i++) {
+            if (null != binders[i]) {
+                continue;
+            }
+            final String column = columns.get(i);
+            for (final Map<String, ?> row : rows) {
+                final Object value = row.get(column);
+                if (null != value) {
+                    binders[i] = ParameterBinders.forValue(value);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void bind(final PreparedStatement stmt, final List<String> columns,
+                      final Map<String, ?> row, final int offset) throws SQLException {
+        final int size = columns.size();
+        for (int i = 0; i < size; i++) {
+            final ParameterBinder binder = binders[i];
+            (null != binder ? binder : ParameterBinders.OBJECT).bind(stmt, offset + i + 1, row.get(columns.get(i)));
+        }
+    }
+
+    private String getSql(final List<String> columns, final int rowCount) {
+        Map<Integer, String> sqls = sqlCache.get(columns);
+        if (null == sqls) {
+            sqls = new HashMap<Integer, String>(4);
+            sqlCache.put(columns, sqls);
+        }
+        String sql = sqls.get(rowCount);
+        if (null == sql) {
+            sql = makeInsertSql(tableName, columns, rowCount);
+            sqls.put(rowCount, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Builds the multi-row insert sql: insert into table(c1,c2) values (?,?),(?,?)...
+     *
+     * @param tableName the table name
+     * @param columns   the column names
+     * @param rowCount  the number of rows
+     * @return the insert sql
+     */
+    public static String makeInsertSql(final String tableName, final Collection<String> columns, final int rowCount) {
+        final String single = Jdbc.makeInsertToTableSql(tableName, columns);
+        if (1 >= rowCount) {
+            return single;
+        }
+        final String values = single.substring(single.lastIndexOf(" values ") + " values ".length());
+        final StringBuilder sql = new StringBuilder(single.length() + (values.length() + 1) * (rowCount - 1));
+        sql.append(single);
+        for (int i = 1; i < rowCount; i++) {
+            sql.append(',').append(values);
+        }
+        return sql.toString();
+    }
+
+    private static boolean sameColumns(final List<String> columns, final Collection<String> keys) {
+        if (columns.size() != keys.size()) {
+            return false;
+        }
+        final Iterator<String> it = keys.iterator();
+        for (final String column : columns) {
+            if (!column.equals(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the database supports multi-row values statements.
+     *
+     * @param dbType the database type, see {@link Jdbc#getDbType(String)}
+     * @return true if supported
+     */
+    static boolean supportsMultiRowValues(final String dbType) {
+        return Arrays.asList(Jdbc.MYSQL, Jdbc.POSTGRE_SQL, Jdbc.H2).contains(dbType);
+    }
+
+    /**
+     * Batch listener, eg: progress report.
+     */
+    public interface BatchListener {
+
+        /**
+         * Invoked after a batch was executed.
+         *
+         * @param rows        the number of rows in the batch
+         * @param elapsedNano the batch latency in nanoseconds
+         * @param stats       the accumulated statistics
+         */
+        void onBatch(final int rows, final long elapsedNano, final Stats stats);
+
+    }
+
+    /**
+     * Insert statistics.
+     */
+    public static class Stats {
+        private final long startNanos = System.nanoTime();
+        private long endNanos;
+        private long rows;
+        private long batches;
+        private long batchNanos;
+        private long minBatchNanos = Long.MAX_VALUE;
+        private long maxBatchNanos;
+
+        void record(final int rowCount, final long elapsedNanos) {
+            rows += rowCount;
+            batches++;
+            batchNanos += elapsedNanos;
+            minBatchNanos = Math.min(minBatchNanos, elapsedNanos);
+            maxBatchNanos = Math.max(maxBatchNanos, elapsedNanos);
+        }
+
+        void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns the number of inserted rows.
+         *
+         * @return the number of inserted rows
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * Returns the number of executed batches.
+         *
+         * @return the number of executed batches
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * Returns the elapsed time from start to end (or now if running).
+         *
+         * @param unit the time unit
+         * @return the elapsed time
+         */
+        public long getElapsed(final TimeUnit unit) {
+            return unit.convert((0 != endNanos ? endNanos : System.nanoTime()) - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the throughput in rows per second.
+         *
+         * @return the number of rows per second
+         */
+        public double getRowsPerSecond() {
+            final long nanos = getElapsed(TimeUnit.NANOSECONDS);
+            return 0 < nanos ? rows * (double) TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+        }
+
+        /**
+         * Returns the average batch latency.
+         *
+         * @param unit the time unit
+         * @return the average batch latency
+         */
+        public long getAverageBatchLatency(final TimeUnit unit) {
+            return 0 < batches ? unit.convert(batchNanos / batches, TimeUnit.NANOSECONDS) : 0;
+        }
+
+        /**
+         * Returns the min batch latency.
+         *
+         * @param unit the time unit
+         * @return the min batch latency
+         */
+        public long getMinBatchLatency(final TimeUnit unit) {
+            return 0 < batches ? unit.convert(minBatchNanos, TimeUnit.NANOSECONDS) : 0;
+        }
+
+        /**
+         * Returns the max batch latency.
+         *
+         * @param unit the time unit
+         * @return the max batch latency
+         */
+        public long getMaxBatchLatency(final TimeUnit unit) {
+            return unit.convert(maxBatchNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "rows=" + rows + ", batches=" + batches + ", rows/s=" + (long) getRowsPerSecond()
+                    + ", batch latency(ms) avg/min/max=" + getAverageBatchLatency(TimeUnit.MILLISECONDS)
+                    + '/' + getMinBatchLatency(TimeUnit.MILLISECONDS) + '/' + getMaxBatchLatency(TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Creates {@link RowMapper}s that map rows to java beans.
+ * <p>
+ * A mapper is compiled once per (bean class, column labels) shape and kept in a bounded LRU cache. Each column is matched to a writable
+ * property (public setter or public non-final field) by name, ignoring case and underscores
+ * (eg: <code>USER_NAME</code> -&gt; <code>userName</code>), and read with the typed getter of the property type
+ * (eg: {@link ResultSet#getLong(int)} for <code>long</code>/{@link Long}), columns without a property are ignored.
+ * <p>
+ * When Javassist is on the classpath the mapper is generated bytecode calling the getters and setters directly,
+ * so mapping costs about the same as hand-written code, otherwise (or if the bean class is not accessible) a
+ * reflective mapper with the same column plan is used.
+ * <blockquote><pre>
+ * RowMapper&lt;User&gt; mapper = BeanRowMapperFactory.getSharedInstance().getRowMapper(User.class);
+ * </pre></blockquote>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class BeanRowMapperFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanRowMapperFactory.class);
+    private static final String JAVASSIST_CLASS_POOL = "javassist.ClassPool";
+    private static final boolean JAVASSIST_PRESENT = isPresent(JAVASSIST_CLASS_POOL);
+
+    /**
+     * The default max number of cached mappers.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final BeanRowMapperFactory SHARED_INSTANCE = new BeanRowMapperFactory(true);
+
+    /**
+     * The LRU mapper cache, an evicted generated mapper class is unloaded with its class loader once unreferenced.
+     */
+    private final Map<ShapeKey, RowMapper<?>> mappers;
+    private final boolean generate;
+
+    /**
+     * Creates a factory with {@link #DEFAULT_MAX_SIZE}.
+     *
+     * @param generate true if generate bytecode mappers when possible, false to always use reflective mappers
+     */
+    public BeanRowMapperFactory(final boolean generate) {
+        this(generate, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param generate true if generate bytecode mappers when possible, false to always use reflective mappers
+     * @param maxSize  the max number of cached mappers (bean class and column labels shapes)
+     */
+    public BeanRowMapperFactory(final boolean generate, final int maxSize) {
+        if (1 > maxSize) {
+            throw new IllegalArgumentException("maxSize must be > 0: " + maxSize);
+        }
+        this.generate = generate && JAVASSIST_PRESENT;
+        this.mappers = new LinkedHashMap<ShapeKey, RowMapper<?>>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<ShapeKey, RowMapper<?>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the shared factory.
+     *
+     * @return the shared factory
+     */
+    public static BeanRowMapperFactory getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /**
+     * Returns a row mapper for the bean class, the column labels are resolved once per result set.
+     * <p>
+     * The returned mapper should not be shared between threads.
+     *
+     * @param beanClass the bean class
+     * @param <T>       the bean type
+     * @return the row mapper
+     */
+    public <T> RowMapper<T> getRowMapper(final Class<T> beanClass) {
+        return new RowMapper<T>() {
+            private ResultSet resultSet;
+            private RowMapper<T> mapper;
+
+            @Override
+            public T mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+                if (rs != resultSet) {
+                    mapper = getRowMapper(beanClass, RowMappers.getColumnLabels(rs.getMetaData()));
+                    resultSet = rs;
+                }
+                return mapper.mapRow(rs, rowNum);
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled row mapper of the bean class and column labels.
+     *
+     * @param beanClass the bean class
+     * @param labels    the column labels of the result set
+     * @param <T>       the bean type
+     * @return the row mapper (thread-safe)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RowMapper<T> getRowMapper(final Class<T> beanClass, final String[] labels) {
+        final ShapeKey key = new ShapeKey(beanClass, labels);
+        synchronized (mappers) {
+            final RowMapper<T> mapper = (RowMapper<T>) mappers.get(key);
+            if (null != mapper) {
+                return mapper;
+            }
+        }
+        final RowMapper<T> mapper = compile(beanClass, labels);
+        synchronized (mappers) {
+            final RowMapper<T> previous = (RowMapper<T>) mappers.get(key);
+            if (null != previous) {
+                return previous;
+            }
+            mappers.put(key, mapper);
+        }
+        return mapper;
+    }
+
+    /**
+     * Returns the number of cached mappers.
+     *
+     * @return the number of cached mappers
+     */
+    public int size() {
+        synchronized (mappers) {
+            return mappers.size();
+        }
+    }
+
+    private <T> RowMapper<T> compile(final Class<T> beanClass, final String[] labels) {
+        final BeanColumn[] columns = resolveColumns(beanClass, labels);
+        if (generate && isAccessible(beanClass, columns)) {
+            try {
+                return JavassistRowMapperGenerator.generate(beanClass, columns);
+            } catch (final Exception e) {
+                LOGGER.warn("generate row mapper of {} failed, fallback to reflection: {}", beanClass, e.toString());
+            } catch (final LinkageError e) {
+                LOGGER.warn("generate row mapper of {} failed, fallback to reflection: {}", beanClass, e.toString());
+            }
+        }
+        return new ReflectiveRowMapper<T>(beanClass, columns);
+    }
+
+    /**
+     * Matches the column labels to the writable properties of the bean class.
+     */
+    static BeanColumn[] resolveColumns(final Class<?> beanClass, final String[] labels) {
+        final Map<String, Object> writers = new HashMap<String, Object>(labels.length * 4 / 3 + 16);
+        for (final Field field : beanClass.getFields()) {
+            final int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                writers.put(normalize(field.getName()), field);
+            }
+        }
+        try {
+            final BeanInfo beanInfo = Introspector.getBeanInfo(beanClass);
+            for (final PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                final Method setter = descriptor.getWriteMethod();
+                if (null != setter && Modifier.isPublic(setter.getDeclaringClass().getModifiers())) {
+                    writers.put(normalize(descriptor.getName()), setter);
+                }
+            }
+        } catch (final IntrospectionException e) {
+            throw new IllegalArgumentException("cannot introspect " + beanClass, e);
+        }
+
+        final List<BeanColumn> columns = new ArrayList<BeanColumn>(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            final Object writer = null != labels[i] ? writers.get(normalize(labels[i])) : null;
+            if (writer instanceof Method) {
+                final Method setter = (Method) writer;
+                columns.add(new BeanColumn(i + 1, setter, null, setter.getParameterTypes()[0]));
+            } else if (writer instanceof Field) {
+                final Field field = (Field) writer;
+                columns.add(new BeanColumn(i + 1, null, field, field.getType()));
+            }
+        }
+        return columns.toArray(new BeanColumn[columns.size()]);
+    }
+
+    private static String normalize(final String name) {
+        return name.replace("_", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static boolean isAccessible(final Class<?> beanClass, final BeanColumn[] columns) {
+        if (!Modifier.isPublic(beanClass.getModifiers()) || null == beanClass.getClassLoader()) {
+            return false;
+        }
+        try {
+            return Modifier.isPublic(beanClass.getConstructor().getModifiers()) && areTypesPublic(columns);
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean areTypesPublic(final BeanColumn[] columns) {
+        for (final BeanColumn column : columns) {
+            Class<?> type = column.type;
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPresent(final String className) {
+        try {
+            Class.forName(className, false, BeanRowMapperFactory.class.getClassLoader());
+            return true;
+        } catch (final Throwable ex) {
+            return false;
+        }
+    }
+
+    /**
+     * The column type, decides the typed getter of {@link ResultSet}.
+     */
+    enum ColumnType {
+        /**
+         * Read by {@link ResultSet#getBoolean(int)}.
+         */
+        BOOLEAN("getBoolean", "boolean", Boolean.class),
+        /**
+         * Read by {@link ResultSet#getByte(int)}.
+         */
+        BYTE("getByte", "byte", Byte.class),
+        /**
+         * Read by {@link ResultSet#getShort(int)}.
+         */
+        SHORT("getShort", "short", Short.class),
+        /**
+         * Read by {@link ResultSet#getInt(int)}.
+         */
+        INT("getInt", "int", Integer.class),
+        /**
+         * Read by {@link ResultSet#getLong(int)}.
+         */
+        LONG("getLong", "long", Long.class),
+        /**
+         * Read by {@link ResultSet#getFloat(int)}.
+         */
+        FLOAT("getFloat", "float", Float.class),
+        /**
+         * Read by {@link ResultSet#getDouble(int)}.
+         */
+        DOUBLE("getDouble", "double", Double.class),
+        /**
+         * Read by {@link ResultSet#getString(int)}.
+         */
+        STRING("getString", null, String.class),
+        /**
+         * Read by {@link ResultSet#getBigDecimal(int)}.
+         */
+        BIG_DECIMAL("getBigDecimal", null, BigDecimal.class),
+        /**
+         * Read by {@link ResultSet#getBytes(int)}.
+         */
+        BYTES("getBytes", null, byte[].class),
+        /**
+         * Read by {@link ResultSet#getTimestamp(int)}.
+         */
+        TIMESTAMP("getTimestamp", null, Timestamp.class),
+        /**
+         * Read by {@link ResultSet#getDate(int)}.
+         */
+        DATE("getDate", null, java.sql.Date.class),
+        /**
+         * Read by {@link ResultSet#getTime(int)}.
+         */
+        TIME("getTime", null, Time.class),
+        /**
+         * Read by {@link ResultSet#getObject(int)}.
+         */
+        OBJECT("getObject", null, Object.class);
+
+        /**
+         * The name of {@link ResultSet} getter.
+         */
+        final String getter;
+
+        /**
+         * The primitive type name returned by getter, null if getter returns object.
+         */
+        final String primitive;
+
+        /**
+         * The (wrapper) type returned by getter.
+         */
+        final Class<?> type;
+
+        ColumnType(final String getter, final String primitive, final Class<?> type) {
+            this.getter = getter;
+            this.primitive = primitive;
+            this.type = type;
+        }
+
+        static ColumnType of(final Class<?> propertyType) {
+            final Class<?> type = propertyType.isPrimitive() ? wrap(propertyType) : propertyType;
+            for (final ColumnType columnType : values()) {
+                if (columnType.type == type) {
+                    return columnType;
+                }
+            }
+            return java.util.Date.class == type ? TIMESTAMP : OBJECT;
+        }
+
+        private static Class<?> wrap(final Class<?> primitive) {
+            final Class<?>[] primitives = {boolean.class, byte.class, short.class, int.class, long.class, float.class, double.class};
+            final Class<?>[] wrappers = {Boolean.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class};
+            final int index = Arrays.asList(primitives).indexOf(primitive);
+            return 0 <= index ? wrappers[index] : primitive;
+        }
+    }
+
+    /**
+     * A column mapped to a bean property.
+     */
+    static final class BeanColumn {
+        final int index;
+        final Method setter;
+        final Field field;
+        final Class<?> type;
+        final ColumnType columnType;
+
+        BeanColumn(final int index, final Method setter, final Field field, final Class<?> type) {
+            this.index = index;
+            this.setter = setter;
+            this.field = field;
+            this.type = type;
+            this.columnType = ColumnType.of(type);
+        }
+
+        Object read(final ResultSet rs) throws SQLException {
+            final Object value;
+            switch (columnType) {
+                case BOOLEAN:
+                    value = rs.getBoolean(index);
+                    break;
+                case BYTE:
+                    value = rs.getByte(index);
+                    break;
+                case SHORT:
+                    value = rs.getShort(index);
+                    break;
+                case INT:
+                    value = rs.getInt(index);
+                    break;
+                case LONG:
+                    value = rs.getLong(index);
+                    break;
+                case FLOAT:
+                    value = rs.getFloat(index);
+                    break;
+                case DOUBLE:
+                    value = rs.getDouble(index);
+                    break;
+                case STRING:
+                    return rs.getString(index);
+                case BIG_DECIMAL:
+                    return rs.getBigDecimal(index);
+                case BYTES:
+                    return rs.getBytes(index);
+                case TIMESTAMP:
+                    return rs.getTimestamp(index);
+                case DATE:
+                    return rs.getDate(index);
+                case TIME:
+                    return rs.getTime(index);
+                default:
+                    return rs.getObject(index);
+            }
+            return !type.isPrimitive() && rs.wasNull() ? null : value;
+        }
+    }
+
+    /**
+     * The reflective row mapper.
+     */
+    private static final class ReflectiveRowMapper<T> implements RowMapper<T> {
+        private final Class<T> beanClass;
+        private final BeanColumn[] columns;
+
+        private ReflectiveRowMapper(final Class<T> beanClass, final BeanColumn[] columns) {
+            this.beanClass = beanClass;
+            this.columns = columns;
+            for (final BeanColumn column : columns) {
+                if (null != column.field) {
+                    column.field.setAccessible(true);
+                } else {
+                    column.setter.setAccessible(true);
+                }
+            }
+        }
+
+        @Override
+        public T mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+            try {
+                final T bean = beanClass.newInstance();
+                for (final BeanColumn column : columns) {
+                    final Object value = column.read(rs);
+                    if (null != column.field) {
+                        column.field.set(bean, value);
+                    } else {
+                        column.setter.invoke(bean, value);
+                    }
+                }
+                return bean;
+            } catch (final InstantiationException e) {
+                throw new IllegalStateException("cannot instantiate " + beanClass, e);
+            } catch (final IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (final InvocationTargetException e) {
+                throw new IllegalStateException("map row to " + beanClass + " failed", e.getTargetException());
+            }
+        }
+    }
+
+    /**
+     * The mapper cache key.
+     */
+    private static final class ShapeKey {
+        private final Class<?> beanClass;
+        private final String[] labels;
+        private final int hash;
+
+        private ShapeKey(final Class<?> beanClass, final String[] labels) {
+            this.beanClass = beanClass;
+            this.labels = labels.clone();
+            this.hash = beanClass.hashCode() * 31 + Arrays.hashCode(labels);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ShapeKey)) {
+                return false;
+            }
+            final ShapeKey other = (ShapeKey) o;
+            return beanClass == other.beanClass && Arrays.equals(labels, other.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
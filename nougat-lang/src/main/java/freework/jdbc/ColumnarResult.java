@@ -0,0 +1,701 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory, column-oriented result.
+ * <p>
+ * Unlike {@link Jdbc#resultSetToListArray(ResultSet, java.util.List)} values are not boxed per row:
+ * integral and floating-point columns are stored in primitive arrays (<code>int[]</code>, <code>long[]</code>,
+ * <code>double[]</code>) with a null bitmap, character columns are dictionary-encoded (each distinct string is kept once)
+ * unless mostly unique, other columns fall back to <code>Object[]</code>.
+ * {@link #getObject(int, int)} returns the type of {@link ResultSet#getObject(int)}, eg: integral DECIMAL columns are
+ * stored as <code>int</code>/<code>long</code> but returned as {@link BigDecimal}.
+ * <blockquote><pre>
+ * ColumnarResult result = ColumnarResult.of(rs);
+ * for (int row = 0; row &lt; result.getRowCount(); row++) {
+ *     long id = result.getLong(row, 0);
+ *     String name = result.getString(row, 1);
+ * }
+ * </pre></blockquote>
+ * Row and column indexes start with 0.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class ColumnarResult {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_INT_PRECISION = 9;
+    private static final int MAX_LONG_PRECISION = 18;
+
+    /**
+     * The number of rows read before a string column may fall back from dictionary to plain storage.
+     */
+    private static final int DICTIONARY_MIN_ROWS = 256;
+
+    private final String[] labels;
+    private final Column[] columns;
+    private final Map<String, Integer> labelIndexes;
+    private int rowCount;
+
+    ColumnarResult(final String[] labels, final Column[] columns) {
+        this.labels = labels;
+        this.columns = columns;
+        this.labelIndexes = new HashMap<String, Integer>(labels.length * 4 / 3 + 1);
+        for (int i = labels.length - 1; i >= 0; i--) {
+            labelIndexes.put(labels[i], i);
+        }
+    }
+
+    /**
+     * Reads the remaining rows of the result set into a columnar result, the result set is not closed.
+     *
+     * @param rs the result set
+     * @return the columnar result
+     * @throws SQLException if a database access error occurs
+     */
+    public static ColumnarResult of(final ResultSet rs) throws SQLException {
+        final ResultSetMetaData metadata = rs.getMetaData();
+        final int columnCount = metadata.getColumnCount();
+        final String[] labels = new String[columnCount];
+        final Column[] columns = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metadata.getColumnLabel(i + 1);
+            columns[i] = createColumn(metadata, i + 1);
+        }
+
+        final ColumnarResult result = new ColumnarResult(labels, columns);
+        int row = 0;
+        while (rs.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                columns[i].read(rs, i + 1, row);
+            }
+            row++;
+        }
+        result.rowCount = row;
+        for (final Column column : columns) {
+            column.trim(row);
+        }
+        return result;
+    }
+
+    private static Column createColumn(final ResultSetMetaData metadata, final int column) throws SQLException {
+        final int type = metadata.getColumnType(column);
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return new IntColumn(false);
+            case Types.INTEGER:
+                return metadata.isSigned(column) ? new IntColumn(false) : new LongColumn(false);
+            case Types.BIGINT:
+                return metadata.isSigned(column) ? new LongColumn(false) : new ObjectColumn();
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn();
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return createDecimalColumn(metadata.getPrecision(column), metadata.getScale(column));
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn();
+            default:
+                return new ObjectColumn();
+        }
+    }
+
+    private static Column createDecimalColumn(final int precision, final int scale) {
+        if (0 != scale || 1 > precision) {
+            return new ObjectColumn();
+        }
+        if (MAX_INT_PRECISION >= precision) {
+            return new IntColumn(true);
+        }
+        return MAX_LONG_PRECISION >= precision ? new LongColumn(true) : new ObjectColumn();
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the label of the column.
+     *
+     * @param column the column index
+     * @return the column label
+     */
+    public String getColumnLabel(final int column) {
+        return labels[column];
+    }
+
+    /**
+     * Returns the index of the first column with the label.
+     *
+     * @param label the column label
+     * @return the column index, -1 if not found
+     */
+    public int getColumnIndex(final String label) {
+        final Integer index = labelIndexes.get(label);
+        return null != index ? index : -1;
+    }
+
+    /**
+     * Returns whether the value is sql NULL.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return true if the value is sql NULL
+     */
+    public boolean isNull(final int row, final int column) {
+        return column(row, column).isNull(row);
+    }
+
+    /**
+     * Returns the value as int, 0 if NULL.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return the value
+     */
+    public int getInt(final int row, final int column) {
+        final Column c = column(row, column);
+        return c instanceof IntColumn ? ((IntColumn) c).values[row] : (int) getLong(row, column);
+    }
+
+    /**
+     * Returns the value as long, 0 if NULL.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return the value
+     */
+    public long getLong(final int row, final int column) {
+        final Column c = column(row, column);
+        if (c instanceof LongColumn) {
+            return ((LongColumn) c).values[row];
+        }
+        if (c instanceof IntColumn) {
+            return ((IntColumn) c).values[row];
+        }
+        if (c instanceof DoubleColumn) {
+            return (long) ((DoubleColumn) c).values[row];
+        }
+        final Object value = c.get(row);
+        return value instanceof Number ? ((Number) value).longValue() : null != value ? Long.parseLong(value.toString()) : 0L;
+    }
+
+    /**
+     * Returns the value as double, 0 if NULL.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return the value
+     */
+    public double getDouble(final int row, final int column) {
+        final Column c = column(row, column);
+        if (c instanceof DoubleColumn) {
+            return ((DoubleColumn) c).values[row];
+        }
+        if (c instanceof LongColumn) {
+            return ((LongColumn) c).values[row];
+        }
+        if (c instanceof IntColumn) {
+            return ((IntColumn) c).values[row];
+        }
+        final Object value = c.get(row);
+        return value instanceof Number ? ((Number) value).doubleValue() : null != value ? Double.parseDouble(value.toString()) : 0D;
+    }
+
+    /**
+     * Returns the value as string, null if NULL.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return the value
+     */
+    public String getString(final int row, final int column) {
+        final Column c = column(row, column);
+        if (c instanceof StringColumn) {
+            return ((StringColumn) c).getString(row);
+        }
+        final Object value = c.get(row);
+        return null != value ? value.toString() : null;
+    }
+
+    /**
+     * Returns the value as object (boxed for primitive columns), null if NULL.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return the value
+     */
+    public Object getObject(final int row, final int column) {
+        return column(row, column).get(row);
+    }
+
+    /**
+     * Returns the primitive values of an int column (NULL stored as 0), see {@link #isNull(int, int)}.
+     *
+     * @param column the column index
+     * @return the shared values, do not modify
+     * @throws IllegalArgumentException if the column is not an int column
+     */
+    public int[] getIntColumn(final int column) {
+        return cast(column, IntColumn.class).values;
+    }
+
+    /**
+     * Returns the primitive values of a long column (NULL stored as 0), see {@link #isNull(int, int)}.
+     *
+     * @param column the column index
+     * @return the shared values, do not modify
+     * @throws IllegalArgumentException if the column is not a long column
+     */
+    public long[] getLongColumn(final int column) {
+        return cast(column, LongColumn.class).values;
+    }
+
+    /**
+     * Returns the primitive values of a double column (NULL stored as 0), see {@link #isNull(int, int)}.
+     *
+     * @param column the column index
+     * @return the shared values, do not modify
+     * @throws IllegalArgumentException if the column is not a double column
+     */
+    public double[] getDoubleColumn(final int column) {
+        return cast(column, DoubleColumn.class).values;
+    }
+
+    /**
+     * Returns the java type used to store the column: int.class, long.class, double.class, String.class or Object.class.
+     *
+     * @param column the column index
+     * @return the storage type
+     */
+    public Class<?> getColumnStorageType(final int column) {
+        return columns[column].getStorageType();
+    }
+
+    /**
+     * Returns a lightweight view of the row.
+     *
+     * @param row the row index
+     * @return the row view
+     */
+    public Row row(final int row) {
+        checkRow(row);
+        return new Row(row);
+    }
+
+    private <C extends Column> C cast(final int column, final Class<C> type) {
+        final Column c = columns[column];
+        if (!type.isInstance(c)) {
+            throw new IllegalArgumentException("column " + column + "(" + labels[column] + ") is stored as " + c.getStorageType());
+        }
+        return type.cast(c);
+    }
+
+    Column getColumn(final int column) {
+        return columns[column];
+    }
+
+    private Column column(final int row, final int column) {
+        checkRow(row);
+        return columns[column];
+    }
+
+    private int checkRow(final int row) {
+        if (0 > row || rowCount <= row) {
+            throw new IndexOutOfBoundsException("row: " + row + ", rows: " + rowCount);
+        }
+        return row;
+    }
+
+    /**
+     * A row view of the columnar result, the column index starts with 0.
+     */
+    public class Row {
+        private final int row;
+
+        Row(final int row) {
+            this.row = row;
+        }
+
+        public int getRowIndex() {
+            return row;
+        }
+
+        public boolean isNull(final int column) {
+            return ColumnarResult.this.isNull(row, column);
+        }
+
+        public int getInt(final int column) {
+            return ColumnarResult.this.getInt(row, column);
+        }
+
+        public long getLong(final int column) {
+            return ColumnarResult.this.getLong(row, column);
+        }
+
+        public double getDouble(final int column) {
+            return ColumnarResult.this.getDouble(row, column);
+        }
+
+        public String getString(final int column) {
+            return ColumnarResult.this.getString(row, column);
+        }
+
+        public Object getObject(final int column) {
+            return ColumnarResult.this.getObject(row, column);
+        }
+
+        public Object getObject(final String label) {
+            final int column = getColumnIndex(label);
+            if (0 > column) {
+                throw new IllegalArgumentException("no column '" + label + "'");
+            }
+            return ColumnarResult.this.getObject(row, column);
+        }
+    }
+
+    /* *****************************
+     *        column storage
+     * *************************** */
+
+    /**
+     * The column storage.
+     */
+    @SuppressWarnings("PMD.AbstractClassShouldStartWithAbstractNamingRule")
+    abstract static class Column {
+        /**
+         * The null bitmap, 1 bit per row.
+         */
+        long[] nulls = new long[1];
+
+        /**
+         * Reads the column value of current row of the result set.
+         *
+         * @param rs     the result set
+         * @param column the result set column index (starts with 1)
+         * @param row    the row index (starts with 0)
+         * @throws SQLException if a database access error occurs
+         */
+        abstract void read(final ResultSet rs, final int column, final int row) throws SQLException;
+
+        /**
+         * Returns the (boxed) value of the row.
+         *
+         * @param row the row index
+         * @return the value, null if NULL
+         */
+        abstract Object get(final int row);
+
+        /**
+         * Trims the storage to the number of rows.
+         *
+         * @param rows the number of rows
+         */
+        abstract void trim(final int rows);
+
+        /**
+         * Returns the java type used to store values.
+         *
+         * @return the storage type
+         */
+        abstract Class<?> getStorageType();
+
+        boolean isNull(final int row) {
+            final int word = row >>> 6;
+            return word < nulls.length && 0 != (nulls[word] & (1L << row));
+        }
+
+        void setNull(final int row) {
+            final int word = row >>> 6;
+            if (word >= nulls.length) {
+                nulls = Arrays.copyOf(nulls, Math.max(nulls.length << 1, word + 1));
+            }
+            nulls[word] |= 1L << row;
+        }
+    }
+
+    static final class IntColumn extends Column {
+        int[] values = new int[INITIAL_CAPACITY];
+
+        /**
+         * Whether the column is an integral DECIMAL/NUMERIC, boxed as {@link BigDecimal} as the driver would.
+         */
+        final boolean decimal;
+
+        IntColumn(final boolean decimal) {
+            this.decimal = decimal;
+        }
+
+        @Override
+        void read(final ResultSet rs, final int column, final int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, values.length << 1);
+            }
+            values[row] = rs.getInt(column);
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        Object get(final int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            return decimal ? BigDecimal.valueOf(values[row]) : values[row];
+        }
+
+        @Override
+        void trim(final int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Class<?> getStorageType() {
+            return int.class;
+        }
+    }
+
+    static final class LongColumn extends Column {
+        long[] values = new long[INITIAL_CAPACITY];
+
+        /**
+         * Whether the column is an integral DECIMAL/NUMERIC, boxed as {@link BigDecimal} as the driver would.
+         */
+        final boolean decimal;
+
+        LongColumn(final boolean decimal) {
+            this.decimal = decimal;
+        }
+
+        @Override
+        void read(final ResultSet rs, final int column, final int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, values.length << 1);
+            }
+            values[row] = rs.getLong(column);
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        Object get(final int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            return decimal ? BigDecimal.valueOf(values[row]) : values[row];
+        }
+
+        @Override
+        void trim(final int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Class<?> getStorageType() {
+            return long.class;
+        }
+    }
+
+    static final class DoubleColumn extends Column {
+        double[] values = new double[INITIAL_CAPACITY];
+
+        @Override
+        void read(final ResultSet rs, final int column, final int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, values.length << 1);
+            }
+            values[row] = rs.getDouble(column);
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        Object get(final int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void trim(final int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Class<?> getStorageType() {
+            return double.class;
+        }
+    }
+
+    /**
+     * Dictionary-encoded string column: row -&gt; code -&gt; string.
+     * <p>
+     * A (mostly) unique column would cost more in the dictionary index than in plain storage,
+     * so once more than half of the rows read are distinct the column falls back to a plain <code>String[]</code>.
+     */
+    static final class StringColumn extends Column {
+        int[] codes = new int[INITIAL_CAPACITY];
+        String[] dictionary = new String[INITIAL_CAPACITY];
+        Map<String, Integer> dictionaryIndex = new HashMap<String, Integer>(INITIAL_CAPACITY);
+
+        /**
+         * The plain values, null while dictionary-encoded.
+         */
+        String[] values;
+
+        @Override
+        void read(final ResultSet rs, final int column, final int row) throws SQLException {
+            final String value = rs.getString(column);
+            if (null != values) {
+                readPlain(value, row);
+                return;
+            }
+            if (row >= codes.length) {
+                codes = Arrays.copyOf(codes, codes.length << 1);
+            }
+            if (null == value) {
+                setNull(row);
+                return;
+            }
+            Integer code = dictionaryIndex.get(value);
+            if (null == code) {
+                code = dictionaryIndex.size();
+                if (code >= dictionary.length) {
+                    dictionary = Arrays.copyOf(dictionary, dictionary.length << 1);
+                }
+                dictionary[code] = value;
+                dictionaryIndex.put(value, code);
+            }
+            codes[row] = code;
+
+            final int rows = row + 1;
+            final boolean highCardinality = DICTIONARY_MIN_ROWS <= rows && dictionaryIndex.size() > rows >>> 1;
+            if (highCardinality) {
+                toPlain(rows);
+            }
+        }
+
+        private void readPlain(final String value, final int row) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, values.length << 1);
+            }
+            values[row] = value;
+            if (null == value) {
+                setNull(row);
+            }
+        }
+
+        private void toPlain(final int rows) {
+            final String[] plain = new String[codes.length];
+            for (int row = 0; row < rows; row++) {
+                plain[row] = isNull(row) ? null : dictionary[codes[row]];
+            }
+            values = plain;
+            codes = null;
+            dictionary = null;
+            dictionaryIndex = null;
+        }
+
+        /**
+         * Returns whether the column is dictionary-encoded.
+         *
+         * @return false if the column fell back to plain storage
+         */
+        boolean isDictionaryEncoded() {
+            return null == values;
+        }
+
+        String getString(final int row) {
+            if (null != values) {
+                return values[row];
+            }
+            return isNull(row) ? null : dictionary[codes[row]];
+        }
+
+        @Override
+        Object get(final int row) {
+            return getString(row);
+        }
+
+        @Override
+        void trim(final int rows) {
+            if (null != values) {
+                values = Arrays.copyOf(values, rows);
+                return;
+            }
+            codes = Arrays.copyOf(codes, rows);
+            dictionary = Arrays.copyOf(dictionary, dictionaryIndex.size());
+            dictionaryIndex = null;
+        }
+
+        @Override
+        Class<?> getStorageType() {
+            return String.class;
+        }
+    }
+
+    static final class ObjectColumn extends Column {
+        Object[] values = new Object[INITIAL_CAPACITY];
+
+        @Override
+        void read(final ResultSet rs, final int column, final int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, values.length << 1);
+            }
+            values[row] = rs.getObject(column);
+            if (null == values[row]) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        Object get(final int row) {
+            return values[row];
+        }
+
+        @Override
+        void trim(final int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Class<?> getStorageType() {
+            return Object.class;
+        }
+    }
+}
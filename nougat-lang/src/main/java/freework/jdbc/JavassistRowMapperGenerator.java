@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import freework.jdbc.BeanRowMapperFactory.BeanColumn;
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates bean row mappers with Javassist.
+ * <p>
+ * The generated <code>mapRow</code> is the code one would write by hand:
+ * <blockquote><pre>
+ * User bean = new User();
+ * bean.setId(rs.getLong(1));
+ * { int v = rs.getInt(2); if (rs.wasNull()) { bean.setAge((Integer) null); } else { bean.setAge(Integer.valueOf(v)); } }
+ * bean.name = rs.getString(3);
+ * return bean;
+ * </pre></blockquote>
+ * Each mapper class is defined by its own child class loader of the bean class loader (instead of
+ * {@link CtClass#toClass(ClassLoader, java.security.ProtectionDomain)}, which reflects into
+ * <code>ClassLoader.defineClass</code> and fails on JDK 9+), so it can be unloaded once the mapper is released.
+ * <p>
+ * NOTE: this class references Javassist, only use it after checking that Javassist is present.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+final class JavassistRowMapperGenerator {
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    /**
+     * Non-instantiate.
+     */
+    private JavassistRowMapperGenerator() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> RowMapper<T> generate(final Class<T> beanClass, final BeanColumn[] columns)
+            throws NotFoundException, CannotCompileException, IOException, ReflectiveOperationException {
+        final ClassLoader loader = beanClass.getClassLoader();
+        final ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new ClassClassPath(RowMapper.class));
+        pool.appendClassPath(new LoaderClassPath(loader));
+
+        final CtClass ctClass = pool.makeClass(beanClass.getName() + "$$RowMapper$$" + SEQ.incrementAndGet());
+        ctClass.addInterface(pool.get(RowMapper.class.getName()));
+        ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+        ctClass.addMethod(CtNewMethod.make(makeMapRowSource(beanClass, columns), ctClass));
+
+        final byte[] bytecode = ctClass.toBytecode();
+        ctClass.detach();
+        final Class<?> mapperClass = new MapperClassLoader(loader).define(ctClass.getName(), bytecode, beanClass);
+        return (RowMapper<T>) mapperClass.newInstance();
+    }
+
+    static String makeMapRowSource(final Class<?> beanClass, final BeanColumn[] columns) {
+        final String beanType = typeName(beanClass);
+        final StringBuilder source = new StringBuilder(256 + columns.length * 96);
+        source.append("public Object mapRow(java.sql.ResultSet rs, int rowNum) throws java.sql.SQLException {\n");
+        source.append(beanType).append(" bean = new ").append(beanType).append("();\n");
+        for (final BeanColumn column : columns) {
+            final BeanRowMapperFactory.ColumnType columnType = column.columnType;
+            final String read = "rs." + columnType.getter + '(' + column.index + ')';
+            if (null == columnType.primitive || column.type.isPrimitive()) {
+                final String value = BeanRowMapperFactory.ColumnType.OBJECT == columnType
+                        ? '(' + typeName(column.type) + ") " + read : read;
+                source.append(assign(column, value)).append('\n');
+            } else {
+                /*-
+                 * wrapper property: keep SQL NULL as null.
+                 */
+                final String wrapper = columnType.type.getName();
+                source.append("{ ").append(columnType.primitive).append(" v = ").append(read).append("; ")
+                        .append("if (rs.wasNull()) { ").append(assign(column, '(' + wrapper + ") null")).append(" } ")
+                        .append("else { ").append(assign(column, wrapper + ".valueOf(v)")).append(" } }\n");
+            }
+        }
+        source.append("return bean;\n}");
+        return source.toString();
+    }
+
+    private static String assign(final BeanColumn column, final String value) {
+        if (null != column.field) {
+            return "bean." + column.field.getName() + " = " + value + ';';
+        }
+        return "bean." + column.setter.getName() + '(' + value + ");";
+    }
+
+    private static String typeName(final Class<?> type) {
+        if (type.isArray()) {
+            return typeName(type.getComponentType()) + "[]";
+        }
+        return type.getName();
+    }
+
+    /**
+     * The class loader of one generated mapper, the parent is the bean class loader,
+     * the {@link RowMapper} interface is also resolved from the loader of this library.
+     */
+    private static final class MapperClassLoader extends ClassLoader {
+
+        private MapperClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(final String name, final byte[] bytecode, final Class<?> beanClass) {
+            return defineClass(name, bytecode, 0, bytecode.length, beanClass.getProtectionDomain());
+        }
+
+        @Override
+        protected Class<?> findClass(final String name) throws ClassNotFoundException {
+            return Class.forName(name, false, RowMapper.class.getClassLoader());
+        }
+    }
+}
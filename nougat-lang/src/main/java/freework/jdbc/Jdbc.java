@@ -7,6 +7,9 @@ package freework.jdbc;
 
 import freework.jdbc.statement.DelegatingNamedParameterStatement;
 import freework.jdbc.statement.NamedParameterStatement;
+import freework.jdbc.statement.ParameterBinders;
+import freework.jdbc.statement.ParsedSql;
+import freework.jdbc.statement.ParsedSqlCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -145,6 +148,86 @@ abstract class Jdbc {
         return columns;
     }
 
+    /**
+     * Escapes the search pattern wildcards ('_', '%') of the exact name with {@link DatabaseMetaData#getSearchStringEscape()},
+     * so that the name matches only itself when used as a metadata pattern (eg: "user_role" does not match "userXrole").
+     *
+     * @param metadata the database metadata
+     * @param name     the exact schema / table / column name, or null
+     * @return the search pattern, null if the name is null
+     * @throws SQLException if a database access error occurs
+     */
+    public static String escapeSearchPattern(final DatabaseMetaData metadata, final String name) throws SQLException {
+        return null != name ? escapeSearchPattern(name, metadata.getSearchStringEscape()) : null;
+    }
+
+    static String escapeSearchPattern(final String name, final String escape) {
+        if (null == name || null == escape || escape.isEmpty()) {
+            return name;
+        }
+        final StringBuilder pattern = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if ('_' == c || '%' == c || name.startsWith(escape, i)) {
+                pattern.append(escape);
+            }
+            pattern.append(c);
+        }
+        return pattern.toString();
+    }
+
+    /**
+     * 从缓存中获取 Schema, 缓存不存在或过期时从 DatabaseMetaData 读取
+     */
+    public static List<DbSchema> getSchemas(final MetadataCache cache, final DatabaseMetaData metadata) throws SQLException {
+        return cache.get(metadata, MetadataCache.SCHEMAS, new MetadataCache.Loader<DbSchema>() {
+            @Override
+            public List<DbSchema> load(final DatabaseMetaData metadata) throws SQLException {
+                return getSchemas(metadata);
+            }
+        });
+    }
+
+    /**
+     * 从缓存中获取符合条件的 Table, 缓存不存在或过期时从 DatabaseMetaData 读取
+     */
+    public static List<DbTable> getTables(final MetadataCache cache, final DatabaseMetaData meta, final String schemaPattern,
+                                          final String tablePattern, final String[] tabTypes) throws SQLException {
+        final String types = null != tabTypes ? Arrays.toString(tabTypes) : null;
+        return cache.get(meta, MetadataCache.TABLES, new MetadataCache.Loader<DbTable>() {
+            @Override
+            public List<DbTable> load(final DatabaseMetaData metadata) throws SQLException {
+                return getTables(metadata, schemaPattern, tablePattern, tabTypes);
+            }
+        }, schemaPattern, tablePattern, types);
+    }
+
+    /**
+     * 从缓存中获取符合条件的 Column, 缓存不存在或过期时从 DatabaseMetaData 读取
+     */
+    public static List<DbColumn> getColumns(final MetadataCache cache, final DatabaseMetaData dbMeta, final String schemaPattern,
+                                            final String tablePattern, final String columnPattern) throws SQLException {
+        return cache.get(dbMeta, MetadataCache.COLUMNS, new MetadataCache.Loader<DbColumn>() {
+            @Override
+            public List<DbColumn> load(final DatabaseMetaData metadata) throws SQLException {
+                return getColumns(metadata, schemaPattern, tablePattern, columnPattern);
+            }
+        }, schemaPattern, tablePattern, columnPattern);
+    }
+
+    /**
+     * 使用多个连接并发读取 Schema 下所有表的 Column, 并放入缓存(cache 可为 null)
+     */
+    public static Map<String, List<DbColumn>> crawlColumns(final DataSource dataSource, final String schema, final int parallelism,
+                                                           final MetadataCache cache) throws SQLException {
+        return new MetadataCrawler(dataSource, parallelism).crawl(schema, null, new MetadataCrawler.ColumnReader<DbColumn>() {
+            @Override
+            public List<DbColumn> read(final DatabaseMetaData metadata, final String schema, final String table) throws SQLException {
+                return getColumns(metadata, escapeSearchPattern(metadata, schema), escapeSearchPattern(metadata, table), "%");
+            }
+        }, cache);
+    }
+
     /* *****************
      *   MetaData POJO
      * *****************/
@@ -265,6 +348,29 @@ abstract class Jdbc {
         }
     }
 
+    /**
+     * SQL Query, 以游标方式逐行读取结果集 (流式读取, 内存占用与结果集大小无关).
+     * 警告: 返回的游标必须关闭.
+     *
+     * @see ResultCursor#open(Connection, String, RowMapper, int, int, List)
+     */
+    public static <T> ResultCursor<T> openCursor(final Connection conn, final String sql, final RowMapper<T> mapper,
+                                                 final int fetchSize, final Object... parameters) throws SQLException {
+        return ResultCursor.open(conn, sql, mapper, fetchSize, parameters);
+    }
+
+    /**
+     * SQL Query, 以游标方式逐行读取结果集 (流式读取, 内存占用与结果集大小无关).
+     * 警告: 返回的游标必须关闭.
+     *
+     * @see ResultCursor#open(Connection, String, RowMapper, int, int, List)
+     */
+    public static <T> ResultCursor<T> openCursor(final Connection conn, final String sql, final RowMapper<T> mapper,
+                                                 final int fetchSize, final int fetchDirection,
+                                                 final List<Object> parameters) throws SQLException {
+        return ResultCursor.open(conn, sql, mapper, fetchSize, fetchDirection, parameters);
+    }
+
     public static PreparedStatement prepareStatement(final Connection conn, final String sql, final Object... params) throws SQLException {
         final PreparedStatement st = conn.prepareStatement(sql);
         for (int i = 0, size = params.length; i < size; ++i) {
@@ -398,12 +504,12 @@ abstract class Jdbc {
     }
 
     /**
-     * 将给定参数设置到 PreparedStatement statment 对象中
+     * 将给定参数设置到 PreparedStatement statment 对象中, 按参数类型调用对应的 setter (见 {@link ParameterBinders})
      */
     public static void setParameters(PreparedStatement stmt, List<Object> parameters) throws SQLException {
         for (int i = 0, size = parameters.size(); i < size; ++i) {
             Object param = parameters.get(i);
-            stmt.setObject(i + 1, param);   // jdbc 索引从 1 开始
+            ParameterBinders.forValue(param).bind(stmt, i + 1, param);   // jdbc 索引从 1 开始
         }
     }
 
@@ -464,6 +570,19 @@ abstract class Jdbc {
 
     }
 
+    /**
+     * 警告: 该方法不关闭 rs
+     * 以列存储方式读取结果集 (数值列使用基本类型数组, 字符列使用字典编码), 适用于大结果集的内存统计.
+     *
+     * @param rs
+     * @return
+     * @throws SQLException
+     * @see ColumnarResult
+     */
+    public static ColumnarResult resultSetToColumnar(ResultSet rs) throws SQLException {
+        return ColumnarResult.of(rs);
+    }
+
     public static void printColumnLabel(ResultSetMetaData meta) throws SQLException {
         int count = meta.getColumnCount();
         for (int i = 1; i <= count; i++) {
@@ -618,6 +737,22 @@ abstract class Jdbc {
         execute(conn, sql, parameters);
     }
 
+    /**
+     * 向表中批量插入数据
+     *
+     * @param conn      the connection
+     * @param tableName the table name
+     * @param rows      the rows
+     * @param batchSize the number of rows per batch
+     * @return the insert statistics
+     * @throws SQLException if a database access error occurs
+     * @see BatchInserter
+     */
+    public static BatchInserter.Stats insertToTable(final Connection conn, final String tableName,
+                                                    final Iterable<? extends Map<String, ?>> rows, final int batchSize) throws SQLException {
+        return new BatchInserter(conn, tableName).batchSize(batchSize).insert(rows);
+    }
+
     /**
      * 根据给定的表名构建 PreparedStatement Insert Sql
      *
@@ -1238,6 +1373,14 @@ abstract class Jdbc {
         return DriverManager.getConnection(url, username, password);
     }
 
+    /**
+     * 创建连接池, 驱动只加载一次, 连接复用.
+     */
+    public static PooledDataSource newPooledDataSource(final String url, final String username, final String password,
+                                                       final int maxSize) throws SQLException {
+        return new PooledDataSource(url, username, password, maxSize);
+    }
+
     public ResultSet executeQuery(final PreparedStatement st, final Object... params) throws SQLException {
         return bind(st, params).executeQuery();
     }
@@ -1256,7 +1399,7 @@ abstract class Jdbc {
         return bind(st, params).executeUpdate();
     }
 
-    public static NamedParameterStatement _bind(final NamedParameterStatement st, final Map<String, Object> params) throws SQLException {
+    public static NamedParameterStatement _bind(final NamedParameterStatement st, final Map<String, ?> params) throws SQLException {
         if (null != params) {
             for (final Map.Entry<String, ?> entry : params.entrySet()) {
                 st.setObject(entry.getKey(), entry.getValue());
@@ -1272,7 +1415,7 @@ abstract class Jdbc {
             throw new IllegalArgumentException("too many parameters " + params.length + " > " + max);
         }
         for (int i = 0; i < params.length; i++) {
-            st.setObject(i + 1, params[i]);
+            ParameterBinders.forValue(params[i]).bind(st, i + 1, params[i]);
         }
         return st;
     }
@@ -1284,12 +1427,14 @@ abstract class Jdbc {
 
     public static NamedParameterStatement newStatement(final Connection conn, final String sql,
                                                        final Map<String, ?> params) throws SQLException {
-        return null;// return _bind((NamedParameterStatement) DelegatingNamedParameterStatement.newStatement(conn, sql), params);
+        final ParsedSql parsedSql = ParsedSqlCache.getSharedInstance().get(sql).expand(params);
+        return _bind(DelegatingNamedParameterStatement.newStatement(conn, parsedSql), params);
     }
 
     public static PreparedStatement newStatement(final Connection conn, final String sql) throws SQLException {
-        if (DelegatingNamedParameterStatement.hasNamedParameters(sql)) {
-            return DelegatingNamedParameterStatement.newStatement(conn, sql);
+        final ParsedSql parsedSql = ParsedSqlCache.getSharedInstance().get(sql);
+        if (parsedSql.hasNamedParameters()) {
+            return DelegatingNamedParameterStatement.newStatement(conn, parsedSql);
         }
         return conn.prepareStatement(sql);
     }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TTL cache of {@link DatabaseMetaData} query results.
+ * <p>
+ * Results are keyed by the connection url, the kind of metadata (eg: {@link #TABLES}) and the patterns of the query,
+ * {@code null} patterns are treated as {@code "%"}. Cached results are unmodifiable lists.
+ * <blockquote><pre>
+ * MetadataCache cache = new MetadataCache(10, TimeUnit.MINUTES);
+ * List&lt;DbTable&gt; tables = cache.get(metadata, MetadataCache.TABLES, new MetadataCache.Loader&lt;DbTable&gt;() {
+ *     public List&lt;DbTable&gt; load(DatabaseMetaData metadata) throws SQLException {
+ *         return readTables(metadata, schema, "%", null);
+ *     }
+ * }, schema, "%");
+ * </pre></blockquote>
+ * Entries are invalidated when expired, or explicitly by {@link #invalidate(String)} / {@link #invalidateAll()}
+ * (eg: after DDL).
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class MetadataCache {
+    /**
+     * The kind of schemas metadata.
+     */
+    public static final String SCHEMAS = "schemas";
+
+    /**
+     * The kind of tables metadata.
+     */
+    public static final String TABLES = "tables";
+
+    /**
+     * The kind of columns metadata.
+     */
+    public static final String COLUMNS = "columns";
+
+    private static final String ANY = "%";
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private final long ttlNanos;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates a metadata cache.
+     *
+     * @param ttl  the time to live of entries, 0 or negative means never expire
+     * @param unit the time unit of ttl
+     */
+    public MetadataCache(final long ttl, final TimeUnit unit) {
+        this.ttlNanos = 0 < ttl ? unit.toNanos(ttl) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Loads metadata from the {@link DatabaseMetaData}.
+     *
+     * @param <T> the metadata type
+     */
+    public interface Loader<T> {
+
+        /**
+         * Loads the metadata.
+         *
+         * @param metadata the database metadata
+         * @return the metadata
+         * @throws SQLException if a database access error occurs
+         */
+        List<T> load(DatabaseMetaData metadata) throws SQLException;
+
+    }
+
+    /**
+     * Returns the cached metadata, or loads and caches it if absent or expired.
+     *
+     * @param metadata the database metadata
+     * @param kind     the kind of metadata, eg: {@link #TABLES}
+     * @param loader   the loader
+     * @param patterns the patterns of the query
+     * @param <T>      the metadata type
+     * @return the metadata (unmodifiable)
+     * @throws SQLException if a database access error occurs
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(final DatabaseMetaData metadata, final String kind,
+                           final Loader<T> loader, final String... patterns) throws SQLException {
+        final Key key = new Key(metadata.getURL(), kind, patterns);
+        final Entry entry = entries.get(key);
+        if (null != entry && !entry.isExpired(System.nanoTime())) {
+            hitCount.incrementAndGet();
+            return (List<T>) entry.value;
+        }
+        missCount.incrementAndGet();
+        final List<T> value = Collections.unmodifiableList(loader.load(metadata));
+        entries.put(key, new Entry(value, expiresAt()));
+        return value;
+    }
+
+    /**
+     * Puts the metadata to the cache.
+     *
+     * @param url      the connection url
+     * @param kind     the kind of metadata, eg: {@link #COLUMNS}
+     * @param value    the metadata
+     * @param patterns the patterns of the query
+     * @param <T>      the metadata type
+     * @return the cached metadata (unmodifiable)
+     */
+    public <T> List<T> put(final String url, final String kind, final List<T> value, final String... patterns) {
+        final List<T> cached = Collections.unmodifiableList(value);
+        entries.put(new Key(url, kind, patterns), new Entry(cached, expiresAt()));
+        return cached;
+    }
+
+    /**
+     * Invalidates all entries of the connection url.
+     *
+     * @param url the connection url
+     */
+    public void invalidate(final String url) {
+        for (final Iterator<Key> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().url.equals(url)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Invalidates all entries.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries.
+     */
+    public void purge() {
+        final long now = System.nanoTime();
+        for (final Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private long expiresAt() {
+        return Long.MAX_VALUE == ttlNanos ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+    }
+
+    /**
+     * The cache key.
+     */
+    private static final class Key {
+        private final String url;
+        private final String kind;
+        private final String[] patterns;
+        private final int hash;
+
+        private Key(final String url, final String kind, final String[] patterns) {
+            this.url = null != url ? url : "";
+            this.kind = kind;
+            this.patterns = new String[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                this.patterns[i] = null != patterns[i] ? patterns[i] : ANY;
+            }
+            this.hash = (this.url.hashCode() * 31 + kind.hashCode()) * 31 + Arrays.hashCode(this.patterns);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return url.equals(other.url) && kind.equals(other.kind) && Arrays.equals(patterns, other.patterns);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The cache entry.
+     */
+    private static final class Entry {
+        private final List<?> value;
+        private final long expiresAt;
+
+        private Entry(final List<?> value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(final long now) {
+            return Long.MAX_VALUE != expiresAt && now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the columns of all tables in a schema concurrently over a few connections.
+ * <p>
+ * Each worker borrows its own connection from the data source and loads the columns table by table from a shared
+ * queue, so slow tables do not block the others. The loaded columns can be put to a {@link MetadataCache}, so that
+ * later cached column queries of a single table (with the escaped schema and table names as patterns, see
+ * {@link Jdbc#escapeSearchPattern(DatabaseMetaData, String)}, and column pattern {@code "%"}) are served from the cache.
+ * <blockquote><pre>
+ * Map&lt;String, List&lt;DbColumn&gt;&gt; columns = new MetadataCrawler(dataSource, 4).crawl("APP", null, reader, cache);
+ * </pre></blockquote>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class MetadataCrawler {
+    private static final String ANY = "%";
+    private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+    private final DataSource dataSource;
+    private final int parallelism;
+
+    /**
+     * Creates a metadata crawler.
+     *
+     * @param dataSource  the data source
+     * @param parallelism the max number of concurrent connections
+     */
+    public MetadataCrawler(final DataSource dataSource, final int parallelism) {
+        if (1 > parallelism) {
+            throw new IllegalArgumentException("parallelism must be > 0: " + parallelism);
+        }
+        this.dataSource = dataSource;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reads the columns of a table.
+     *
+     * @param <C> the column type
+     */
+    public interface ColumnReader<C> {
+
+        /**
+         * Reads the columns of the table, the names are exact names (not patterns), escape them with
+         * {@link Jdbc#escapeSearchPattern(DatabaseMetaData, String)} to query {@link DatabaseMetaData#getColumns}.
+         *
+         * @param metadata the database metadata
+         * @param schema   the schema name of the table, may be null
+         * @param table    the table name
+         * @return the columns
+         * @throws SQLException if a database access error occurs
+         */
+        List<C> read(DatabaseMetaData metadata, String schema, String table) throws SQLException;
+
+    }
+
+    /**
+     * Loads the columns of all tables in the schema.
+     *
+     * @param schema     the exact schema name, null for the tables of all schemas
+     * @param tableTypes the table types, eg: {"TABLE", "VIEW"}, null for all types
+     * @param reader     the column reader
+     * @param cache      the cache to put the columns (as {@link MetadataCache#COLUMNS} of the escaped schema and table
+     *                   names and "%"), or null
+     * @param <C>        the column type
+     * @return the table name (qualified as "schema.table" if the schema argument is null) to columns map,
+     * in the order of tables, tables not loaded (eg: interrupted) are absent
+     * @throws SQLException if a database access error occurs
+     */
+    public <C> Map<String, List<C>> crawl(final String schema, final String[] tableTypes,
+                                          final ColumnReader<C> reader, final MetadataCache cache) throws SQLException {
+        final List<Table<C>> tables;
+        final String url;
+        final String escape;
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            final DatabaseMetaData metadata = conn.getMetaData();
+            url = metadata.getURL();
+            escape = metadata.getSearchStringEscape();
+            tables = getTables(metadata, schema, tableTypes);
+        } finally {
+            Jdbc.close(conn);
+        }
+
+        final ConcurrentLinkedQueue<Table<C>> queue = new ConcurrentLinkedQueue<Table<C>>(tables);
+        final int workers = Math.max(1, Math.min(parallelism, tables.size()));
+        final ThreadPoolExecutor executor = newExecutor(workers);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new Worker<C>(queue, reader)));
+            }
+            awaitAll(futures);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Map<String, List<C>> columns = new LinkedHashMap<String, List<C>>(tables.size() * 4 / 3 + 1);
+        for (final Table<C> table : tables) {
+            final List<C> tableColumns = table.columns;
+            if (null == tableColumns) {
+                continue;
+            }
+            final String name = null == schema && null != table.schema ? table.schema + '.' + table.name : table.name;
+            if (null == cache) {
+                columns.put(name, tableColumns);
+            } else {
+                columns.put(name, cache.put(url, MetadataCache.COLUMNS, tableColumns,
+                        Jdbc.escapeSearchPattern(table.schema, escape), Jdbc.escapeSearchPattern(table.name, escape), ANY));
+            }
+        }
+        return columns;
+    }
+
+    private static <C> List<Table<C>> getTables(final DatabaseMetaData metadata, final String schema,
+                                                final String[] tableTypes) throws SQLException {
+        final List<Table<C>> tables = new ArrayList<Table<C>>();
+        ResultSet rs = null;
+        try {
+            rs = metadata.getTables(null, Jdbc.escapeSearchPattern(metadata, schema), ANY, tableTypes);
+            while (rs.next()) {
+                final String tableSchema = rs.getString("TABLE_SCHEM");
+                tables.add(new Table<C>(null != tableSchema ? tableSchema : schema, rs.getString("TABLE_NAME")));
+            }
+        } finally {
+            Jdbc.close(rs);
+        }
+        return tables;
+    }
+
+    private static void awaitAll(final List<Future<Void>> futures) throws SQLException {
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("metadata crawl interrupted", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    private static ThreadPoolExecutor newExecutor(final int workers) {
+        final String prefix = "metadata-crawler-" + POOL_SEQ.incrementAndGet() + "-";
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, prefix + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A table to load and its loaded columns (null until loaded).
+     */
+    private static final class Table<C> {
+        private final String schema;
+        private final String name;
+        private volatile List<C> columns;
+
+        private Table(final String schema, final String name) {
+            this.schema = schema;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Loads the columns of tables from the queue over one connection.
+     */
+    private class Worker<C> implements Callable<Void> {
+        private final ConcurrentLinkedQueue<Table<C>> queue;
+        private final ColumnReader<C> reader;
+
+        Worker(final ConcurrentLinkedQueue<Table<C>> queue, final ColumnReader<C> reader) {
+            this.queue = queue;
+            this.reader = reader;
+        }
+
+        @Override
+        public Void call() throws SQLException {
+            Connection conn = null;
+            try {
+                conn = dataSource.getConnection();
+                final DatabaseMetaData metadata = conn.getMetaData();
+                Table<C> table;
+                while (null != (table = queue.poll()) && !Thread.currentThread().isInterrupted()) {
+                    table.columns = reader.read(metadata, table.schema, table.name);
+                }
+            } finally {
+                Jdbc.close(conn);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import freework.codec.Base64;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Dialect aware pagination of a base query.
+ * <p>
+ * The base query is wrapped as a derived table and paged in the syntax of the database type detected by
+ * {@link Jdbc#getDbType(String)}, either by offset or by seek (keyset), the keyset predicate is built on the sort
+ * columns and the values of the last row of the previous page:
+ * <blockquote><pre>
+ * select * from (base) page_t where (created &lt; ?) or (created = ? and id &lt; ?) order by created desc, id desc limit 21
+ * </pre></blockquote>
+ * so with an index on the sort columns page N costs the same as page 1.
+ * The position is returned as an opaque, url safe continuation token:
+ * <blockquote><pre>
+ * Paginator paginator = Paginator.forUrl(url, "created desc", "id desc");
+ * Paginator.Page&lt;User&gt; page = paginator.seek(conn, "select id, name, created from users where status = ?",
+ *         new Object[]{status}, request.getParameter("token"), 20, RowMappers.asBean(User.class));
+ * page.getItems(); page.getNextToken(); // null on the last page
+ * </pre></blockquote>
+ * NOTE:
+ * <ul>
+ * <li>the base query must not have an ORDER BY, the sort columns must be column labels of the base query</li>
+ * <li>for keyset pagination the sort columns must be NOT NULL and unique together (end with the primary key)</li>
+ * </ul>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public final class Paginator {
+    private static final String ALIAS = "page_t";
+    private static final byte KEYSET = 'K';
+    private static final byte OFFSET = 'O';
+
+    private static final byte NULL = 'N';
+    private static final byte STRING = 'S';
+    private static final byte LONG = 'J';
+    private static final byte DOUBLE = 'D';
+    private static final byte DECIMAL = 'M';
+    private static final byte BOOLEAN = 'Z';
+    private static final byte TIMESTAMP = 'T';
+    private static final byte BYTES = 'B';
+
+    private final String dbType;
+    private final String[] columns;
+    private final boolean[] descending;
+    private final String orderBy;
+
+    /**
+     * Creates a paginator.
+     *
+     * @param dbType  the database type, see {@link Jdbc#getDbType(String)}, null for SQL:2008 OFFSET/FETCH syntax
+     * @param orderBy the sort columns, eg: "created desc", "id"
+     */
+    public Paginator(final String dbType, final String... orderBy) {
+        if (1 > orderBy.length) {
+            throw new IllegalArgumentException("at least one sort column is required");
+        }
+        this.dbType = dbType;
+        this.columns = new String[orderBy.length];
+        this.descending = new boolean[orderBy.length];
+
+        final StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < orderBy.length; i++) {
+            final String[] segments = orderBy[i].trim().split("\\s+");
+            final String direction = 1 < segments.length ? segments[1].toLowerCase(Locale.ENGLISH) : "asc";
+            final boolean legal = "asc".equals(direction) || "desc".equals(direction);
+            if (2 < segments.length || !legal) {
+                throw new IllegalArgumentException("illegal sort column: " + orderBy[i]);
+            }
+            columns[i] = segments[0];
+            descending[i] = "desc".equals(direction);
+            buff.append(0 < i ? ", " : "").append(columns[i]).append(descending[i] ? " DESC" : " ASC");
+        }
+        this.orderBy = buff.toString();
+    }
+
+    /**
+     * Creates a paginator for the database of the jdbc url.
+     *
+     * @param url     the jdbc url
+     * @param orderBy the sort columns, eg: "created desc", "id"
+     * @return the paginator
+     */
+    public static Paginator forUrl(final String url, final String... orderBy) {
+        return new Paginator(Jdbc.getDbType(url), orderBy);
+    }
+
+    /* ************************************
+     *            Offset
+     * ************************************/
+
+    /**
+     * Rewrites the base query to return the rows [offset, offset + limit).
+     * <p>
+     * Oracle uses the OFFSET/FETCH syntax (12c+), the ROWNUM form would add a row number column to the rows.
+     *
+     * @param sql    the base query
+     * @param offset the number of rows to skip
+     * @param limit  the max number of rows
+     * @return the paged query
+     */
+    public String toOffsetSql(final String sql, final long offset, final int limit) {
+        final String ordered = "SELECT * FROM (" + sql + ") " + ALIAS + " ORDER BY " + orderBy;
+        if (isLimitDialect()) {
+            return ordered + " LIMIT " + limit + (0 < offset ? " OFFSET " + offset : "");
+        }
+        return ordered + " OFFSET " + offset + " ROWS FETCH NEXT " + limit + " ROWS ONLY";
+    }
+
+    /**
+     * Fetches a page by offset, the token encodes the offset of the next page.
+     *
+     * @param conn     the connection
+     * @param sql      the base query
+     * @param params   the parameters of the base query
+     * @param token    the continuation token, null for the first page
+     * @param pageSize the page size
+     * @param mapper   the row mapper
+     * @param <T>      the row type
+     * @return the page
+     * @throws SQLException if a database access error occurs
+     */
+    public <T> Page<T> offset(final Connection conn, final String sql, final Object[] params, final String token,
+                              final int pageSize, final RowMapper<T> mapper) throws SQLException {
+        final long offset = null != token ? decodeOffset(token, sql) : 0;
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(toOffsetSql(sql, offset, pageSize + 1));
+            bind(stmt, params, null);
+            final List<T> items = new ArrayList<T>(pageSize);
+            final boolean hasNext = read(stmt, pageSize, mapper, items, null);
+            return new Page<T>(items, hasNext ? encode(OFFSET, sql, new Object[]{offset + pageSize}) : null);
+        } finally {
+            Jdbc.close(stmt);
+        }
+    }
+
+    /* ************************************
+     *            Keyset
+     * ************************************/
+
+    /**
+     * Rewrites the base query to return the first limit rows after the given sort key.
+     * <p>
+     * The keyset parameters (see {@link #getKeysetParameters(Object[])}) are bound after the base query parameters.
+     *
+     * @param sql   the base query
+     * @param after true if the rows after a sort key are requested, false for the first page
+     * @param limit the max number of rows
+     * @return the paged query
+     */
+    public String toKeysetSql(final String sql, final boolean after, final int limit) {
+        final StringBuilder buff = new StringBuilder(sql.length() + 128);
+        final boolean top = Jdbc.SQL_SERVER.equals(dbType) || Jdbc.JTDS.equals(dbType);
+        buff.append(top ? "SELECT TOP " + limit + " * FROM (" : "SELECT * FROM (").append(sql).append(") ").append(ALIAS);
+        if (after) {
+            buff.append(" WHERE ");
+            for (int i = 0; i < columns.length; i++) {
+                buff.append(0 < i ? " OR (" : "(");
+                for (int j = 0; j < i; j++) {
+                    buff.append(columns[j]).append(" = ? AND ");
+                }
+                buff.append(columns[i]).append(descending[i] ? " < ?)" : " > ?)");
+            }
+        }
+        buff.append(" ORDER BY ").append(orderBy);
+        if (isLimitDialect()) {
+            buff.append(" LIMIT ").append(limit);
+        } else if (Jdbc.ORACLE.equals(dbType)) {
+            buff.insert(0, "SELECT * FROM (").append(") WHERE ROWNUM <= ").append(limit);
+        } else if (!top) {
+            buff.append(" FETCH FIRST ").append(limit).append(" ROWS ONLY");
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Returns the parameters of the keyset predicate for the sort key.
+     *
+     * @param key the sort key (one value per sort column)
+     * @return the parameters
+     */
+    public Object[] getKeysetParameters(final Object[] key) {
+        final Object[] params = new Object[columns.length * (columns.length + 1) / 2];
+        int p = 0;
+        for (int i = 0; i < columns.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                params[p++] = key[j];
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Fetches a page by seek (keyset), the token encodes the sort key of the last row.
+     *
+     * @param conn     the connection
+     * @param sql      the base query
+     * @param params   the parameters of the base query
+     * @param token    the continuation token, null for the first page
+     * @param pageSize the page size
+     * @param mapper   the row mapper
+     * @param <T>      the row type
+     * @return the page
+     * @throws SQLException if a database access error occurs
+     */
+    public <T> Page<T> seek(final Connection conn, final String sql, final Object[] params, final String token,
+                            final int pageSize, final RowMapper<T> mapper) throws SQLException {
+        final Object[] after = null != token ? decode(token, sql, KEYSET) : null;
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(toKeysetSql(sql, null != after, pageSize + 1));
+            bind(stmt, params, null != after ? getKeysetParameters(after) : null);
+            final List<T> items = new ArrayList<T>(pageSize);
+            final Object[] last = new Object[columns.length];
+            final boolean hasNext = read(stmt, pageSize, mapper, items, last);
+            return new Page<T>(items, hasNext ? encode(KEYSET, sql, last) : null);
+        } finally {
+            Jdbc.close(stmt);
+        }
+    }
+
+    private boolean isLimitDialect() {
+        return Jdbc.MYSQL.equals(dbType) || Jdbc.POSTGRE_SQL.equals(dbType) || Jdbc.H2.equals(dbType)
+                || Jdbc.HSQL.equals(dbType) || Jdbc.SQLITE.equals(dbType);
+    }
+
+    private static void bind(final PreparedStatement stmt, final Object[] params, final Object[] keyset) throws SQLException {
+        int index = 1;
+        if (null != params) {
+            for (final Object param : params) {
+                stmt.setObject(index++, param);
+            }
+        }
+        if (null != keyset) {
+            for (final Object param : keyset) {
+                stmt.setObject(index++, param);
+            }
+        }
+    }
+
+    /**
+     * Reads at most pageSize rows, and the sort key of the last one if key is not null.
+     *
+     * @return true if there are more rows
+     */
+    private <T> boolean read(final PreparedStatement stmt, final int pageSize, final RowMapper<T> mapper,
+                             final List<T> items, final Object[] key) throws SQLException {
+        ResultSet rs = null;
+        try {
+            rs = stmt.executeQuery();
+            int rowNum = 0;
+            while (rs.next()) {
+                if (rowNum >= pageSize) {
+                    return true;
+                }
+                items.add(mapper.mapRow(rs, ++rowNum));
+                if (null != key && rowNum == pageSize) {
+                    readKey(rs, key);
+                }
+            }
+            return false;
+        } finally {
+            Jdbc.close(rs);
+        }
+    }
+
+    private void readKey(final ResultSet rs, final Object[] key) throws SQLException {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 0; i < columns.length; i++) {
+            final int index = rs.findColumn(columns[i]);
+            final int type = metaData.getColumnType(index);
+            final boolean temporal = Types.TIMESTAMP == type || Types.DATE == type || Types.TIME == type;
+            key[i] = temporal ? rs.getTimestamp(index) : rs.getObject(index);
+            if (null == key[i]) {
+                throw new SQLException("keyset column '" + columns[i] + "' is null, sort columns must be NOT NULL");
+            }
+        }
+    }
+
+    /* ************************************
+     *        Continuation token
+     * ************************************/
+
+    /**
+     * Returns the fingerprint of the base query and sort columns, a token is only accepted by the same query.
+     */
+    private int fingerprint(final String sql) {
+        return 31 * orderBy.hashCode() + sql.hashCode();
+    }
+
+    private long decodeOffset(final String token, final String sql) {
+        final Object[] values = decode(token, sql, OFFSET);
+        final boolean legal = 1 == values.length && values[0] instanceof Long && 0 <= (Long) values[0];
+        if (!legal) {
+            throw new IllegalArgumentException("illegal token: " + token);
+        }
+        return (Long) values[0];
+    }
+
+    String encode(final byte kind, final String sql, final Object[] values) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(kind);
+            out.writeInt(fingerprint(sql));
+            out.writeByte(values.length);
+            for (final Object value : values) {
+                writeValue(out, value);
+            }
+            out.flush();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.encodeToUrlSafeString(bytes.toByteArray());
+    }
+
+    Object[] decode(final String token, final String sql, final byte kind) {
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decode(token, true)));
+            if (kind != in.readByte() || fingerprint(sql) != in.readInt()) {
+                throw new IllegalArgumentException("token does not belong to this query: " + token);
+            }
+            final Object[] values = new Object[in.readByte()];
+            if (KEYSET == kind && values.length != columns.length) {
+                throw new IllegalArgumentException("illegal token: " + token);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(in);
+            }
+            return values;
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("illegal token: " + token, e);
+        } catch (final RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw e;
+            }
+            throw new IllegalArgumentException("illegal token: " + token, e);
+        }
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (null == value) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            out.writeByte(DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Date) value).getTime());
+            out.writeInt(value instanceof Timestamp ? ((Timestamp) value).getNanos() : -1);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else {
+            throw new IllegalArgumentException("unsupported sort key type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readUTF();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case BOOLEAN:
+                return in.readBoolean();
+            case TIMESTAMP:
+                final Timestamp timestamp = new Timestamp(in.readLong());
+                final int nanos = in.readInt();
+                if (0 <= nanos) {
+                    timestamp.setNanos(nanos);
+                }
+                return timestamp;
+            case BYTES:
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            default:
+                throw new IOException("illegal value tag: " + tag);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Paginator{dbType=" + dbType + ", orderBy=" + Arrays.toString(columns) + '}';
+    }
+
+    /**
+     * A page of rows and the token of the next page.
+     *
+     * @param <T> the row type
+     */
+    public static final class Page<T> {
+        private final List<T> items;
+        private final String nextToken;
+
+        Page(final List<T> items, final String nextToken) {
+            this.items = Collections.unmodifiableList(items);
+            this.nextToken = nextToken;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * Returns the continuation token of the next page.
+         *
+         * @return the token, null if this is the last page
+         */
+        public String getNextToken() {
+            return nextToken;
+        }
+
+        public boolean hasNext() {
+            return null != nextToken;
+        }
+    }
+}
@@ -0,0 +1,860 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import freework.jdbc.statement.DelegatingCallableStatement;
+import freework.jdbc.statement.DelegatingPreparedStatement;
+import freework.jdbc.statement.DelegatingStatement;
+import freework.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lightweight connection pool.
+ * <p>
+ * Idle connections are kept in a lock-free deque (most recently used first), the number of borrowed connections
+ * is bounded by a fair {@link Semaphore}, so waiting threads are served in arrival order. The driver is loaded once
+ * and physical connections are opened by {@link Driver#connect(String, Properties)}.
+ * <ul>
+ * <li>idle validation: a connection idle longer than the validation interval is validated before it is handed out,
+ * with {@link Connection#isValid(int)} or the validation query</li>
+ * <li>max lifetime / idle timeout: old connections are closed when returned or by the housekeeper</li>
+ * <li>leak detection: a connection borrowed longer than the threshold is logged with the borrowing stack trace</li>
+ * </ul>
+ * Closing a borrowed connection closes the statements (and so their result sets) left open by the borrower,
+ * rolls back an open transaction, restores the changed connection state (auto-commit, read-only, isolation,
+ * catalog, schema, network timeout) and returns it to the pool.
+ * <blockquote><pre>
+ * PooledDataSource dataSource = new PooledDataSource(url, username, password, 10)
+ *         .minIdle(2).leakDetectionThreshold(30, TimeUnit.SECONDS);
+ * </pre></blockquote>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class PooledDataSource implements DataSource, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledDataSource.class);
+    private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+    private static final long DEFAULT_CONNECTION_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long DEFAULT_MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final int STATEMENT_PURGE_THRESHOLD = 64;
+
+    /**
+     * Runs the network timeout abort in the calling thread, used to restore the network timeout.
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private final String url;
+    private final Properties properties;
+    private final Driver driver;
+    private final int maxSize;
+    private final String poolName;
+
+    private volatile int minIdle;
+    private volatile long connectionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CONNECTION_TIMEOUT_MILLIS);
+    private volatile long validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_VALIDATION_INTERVAL_MILLIS);
+    private volatile String validationQuery;
+    private volatile long maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_LIFETIME_MILLIS);
+    private volatile long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_MILLIS);
+    private volatile long leakDetectionThresholdNanos;
+
+    private final ConcurrentLinkedDeque<PoolEntry> idle = new ConcurrentLinkedDeque<PoolEntry>();
+    private final ConcurrentMap<PoolEntry, Boolean> active = new ConcurrentHashMap<PoolEntry, Boolean>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final Semaphore permits;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private ScheduledThreadPoolExecutor housekeeper;
+
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private PrintWriter logWriter;
+    private volatile int loginTimeout;
+
+    /**
+     * Creates a pool, the driver class is resolved from the url.
+     *
+     * @param url      the jdbc url
+     * @param username the username, or null
+     * @param password the password, or null
+     * @param maxSize  the max number of connections
+     * @throws SQLException if the driver cannot be loaded
+     */
+    public PooledDataSource(final String url, final String username,
+                            final String password, final int maxSize) throws SQLException {
+        this(Jdbc.createDriver(Jdbc.getDriverClassName(url)), url, username, password, maxSize);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param driver   the jdbc driver
+     * @param url      the jdbc url
+     * @param username the username, or null
+     * @param password the password, or null
+     * @param maxSize  the max number of connections
+     */
+    public PooledDataSource(final Driver driver, final String url, final String username,
+                            final String password, final int maxSize) {
+        if (1 > maxSize) {
+            throw new IllegalArgumentException("maxSize must be > 0: " + maxSize);
+        }
+        this.driver = driver;
+        this.url = url;
+        this.properties = new Properties();
+        if (null != username) {
+            properties.setProperty("user", username);
+        }
+        if (null != password) {
+            properties.setProperty("password", password);
+        }
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.poolName = "jdbc-pool-" + POOL_SEQ.incrementAndGet();
+    }
+
+    /**
+     * Sets the number of idle connections the housekeeper keeps open.
+     *
+     * @param minIdle the min number of idle connections
+     * @return this pool
+     */
+    public PooledDataSource minIdle(final int minIdle) {
+        this.minIdle = Math.min(Math.max(0, minIdle), maxSize);
+        return this;
+    }
+
+    /**
+     * Sets the max time to wait for a connection.
+     *
+     * @param timeout the timeout
+     * @param unit    the time unit
+     * @return this pool
+     */
+    public PooledDataSource connectionTimeout(final long timeout, final TimeUnit unit) {
+        this.connectionTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the idle time after which a connection is validated before it is handed out.
+     *
+     * @param interval the interval, 0 to validate on every borrow
+     * @param unit     the time unit
+     * @return this pool
+     */
+    public PooledDataSource validationInterval(final long interval, final TimeUnit unit) {
+        this.validationIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Sets the validation query, if null (default) {@link Connection#isValid(int)} is used.
+     *
+     * @param validationQuery the validation query, eg: "select 1"
+     * @return this pool
+     */
+    public PooledDataSource validationQuery(final String validationQuery) {
+        this.validationQuery = validationQuery;
+        return this;
+    }
+
+    /**
+     * Sets the max lifetime of a connection.
+     *
+     * @param lifetime the max lifetime, 0 for unlimited
+     * @param unit     the time unit
+     * @return this pool
+     */
+    public PooledDataSource maxLifetime(final long lifetime, final TimeUnit unit) {
+        this.maxLifetimeNanos = 0 < lifetime ? unit.toNanos(lifetime) : Long.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Sets the max idle time of a connection beyond the min idle connections.
+     *
+     * @param timeout the idle timeout, 0 for unlimited
+     * @param unit    the time unit
+     * @return this pool
+     */
+    public PooledDataSource idleTimeout(final long timeout, final TimeUnit unit) {
+        this.idleTimeoutNanos = 0 < timeout ? unit.toNanos(timeout) : Long.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Sets the time a connection can be borrowed before it is logged as leaked.
+     *
+     * @param threshold the threshold, 0 to disable leak detection
+     * @param unit      the time unit
+     * @return this pool
+     */
+    public PooledDataSource leakDetectionThreshold(final long threshold, final TimeUnit unit) {
+        this.leakDetectionThresholdNanos = 0 < threshold ? unit.toNanos(threshold) : 0;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("pool " + poolName + " is closed");
+        }
+        startHousekeeping();
+
+        final long start = System.nanoTime();
+        final int loginTimeoutSeconds = loginTimeout;
+        final long timeoutNanos = 0 < loginTimeoutSeconds
+                ? TimeUnit.SECONDS.toNanos(loginTimeoutSeconds) : connectionTimeoutNanos;
+        try {
+            if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("timeout waiting for connection after "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, " + this);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted waiting for connection", e);
+        }
+        waitTime.record(System.nanoTime() - start);
+
+        try {
+            final PoolEntry entry = borrowEntry();
+            entry.borrowedAt = System.nanoTime();
+            entry.borrowStack = 0 < leakDetectionThresholdNanos ? new Throwable("connection borrowed here") : null;
+            entry.leakReported = false;
+            active.put(entry, Boolean.TRUE);
+            return new PooledConnection(entry);
+        } catch (final SQLException e) {
+            permits.release();
+            throw e;
+        } catch (final RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Unsupported, the credentials are fixed per pool.
+     */
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("getConnection(username, password)");
+    }
+
+    private PoolEntry borrowEntry() throws SQLException {
+        PoolEntry entry;
+        while (null != (entry = idle.pollFirst())) {
+            if (isUsable(entry, System.nanoTime())) {
+                return entry;
+            }
+            destroy(entry);
+        }
+        return createEntry();
+    }
+
+    private boolean isUsable(final PoolEntry entry, final long now) {
+        if (now - entry.createdAt >= maxLifetimeNanos) {
+            return false;
+        }
+        if (now - entry.lastUsed < validationIntervalNanos) {
+            return true;
+        }
+        final String query = validationQuery;
+        try {
+            if (null == query) {
+                return entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            }
+            final Statement stmt = entry.connection.createStatement();
+            try {
+                stmt.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+                stmt.execute(query);
+            } finally {
+                Jdbc.close(stmt);
+            }
+            return true;
+        } catch (final SQLException e) {
+            LOGGER.debug("{} connection validation failed: {}", poolName, e.getMessage());
+            return false;
+        }
+    }
+
+    private PoolEntry createEntry() throws SQLException {
+        total.incrementAndGet();
+        Connection conn = null;
+        try {
+            conn = driver.connect(url, properties);
+            if (null == conn) {
+                throw new SQLException("driver " + driver.getClass().getName() + " does not accept url: " + url);
+            }
+            final PoolEntry entry = new PoolEntry(conn);
+            createdCount.incrementAndGet();
+            return entry;
+        } catch (final SQLException e) {
+            total.decrementAndGet();
+            Jdbc.close(conn);
+            throw e;
+        } catch (final RuntimeException e) {
+            total.decrementAndGet();
+            Jdbc.close(conn);
+            throw e;
+        }
+    }
+
+    private void destroy(final PoolEntry entry) {
+        discard(entry);
+        Jdbc.close(entry.connection);
+    }
+
+    /**
+     * Removes the entry from the pool counters without closing the connection.
+     */
+    private void discard(final PoolEntry entry) {
+        total.decrementAndGet();
+        destroyedCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the connection to the pool, called by {@link PooledConnection#close()}.
+     */
+    private void release(final PoolEntry entry) {
+        active.remove(entry);
+        entry.borrowStack = null;
+        entry.lastUsed = System.nanoTime();
+        try {
+            if (!closed && entry.lastUsed - entry.createdAt < maxLifetimeNanos && entry.reset()) {
+                idle.offerFirst(entry);
+            } else {
+                destroy(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void startHousekeeping() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        housekeeper = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, poolName + "-housekeeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final long leakThresholdMillis = TimeUnit.NANOSECONDS.toMillis(leakDetectionThresholdNanos);
+        final long period = 0 < leakThresholdMillis
+                ? Math.min(HOUSEKEEPING_PERIOD_MILLIS, Math.max(1, leakThresholdMillis / 2)) : HOUSEKEEPING_PERIOD_MILLIS;
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    detectLeaks();
+                    evictIdle();
+                    fillIdle();
+                } catch (final RuntimeException e) {
+                    LOGGER.warn("{} housekeeping error", poolName, e);
+                }
+            }
+        }, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void detectLeaks() {
+        final long threshold = leakDetectionThresholdNanos;
+        if (0 >= threshold) {
+            return;
+        }
+        final long now = System.nanoTime();
+        for (final PoolEntry entry : active.keySet()) {
+            final Throwable stack = entry.borrowStack;
+            if (!entry.leakReported && null != stack && now - entry.borrowedAt >= threshold) {
+                entry.leakReported = true;
+                LOGGER.warn("{} connection leak detected, borrowed {} ms ago and not closed",
+                        poolName, TimeUnit.NANOSECONDS.toMillis(now - entry.borrowedAt), stack);
+            }
+        }
+    }
+
+    private void evictIdle() {
+        final long now = System.nanoTime();
+        for (final Iterator<PoolEntry> it = idle.descendingIterator(); it.hasNext(); ) {
+            final PoolEntry entry = it.next();
+            final boolean expired = now - entry.createdAt >= maxLifetimeNanos
+                    || (now - entry.lastUsed >= idleTimeoutNanos && total.get() > minIdle);
+            if (expired && idle.removeLastOccurrence(entry)) {
+                destroy(entry);
+            }
+        }
+    }
+
+    private void fillIdle() {
+        while (!closed && total.get() < minIdle && idle.size() < minIdle) {
+            try {
+                idle.offerLast(createEntry());
+            } catch (final SQLException e) {
+                LOGGER.warn("{} cannot open connection: {}", poolName, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the idle connections and stops the housekeeper, borrowed connections are closed when returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (null != housekeeper) {
+            housekeeper.shutdownNow();
+        }
+        PoolEntry entry;
+        while (null != (entry = idle.pollFirst())) {
+            destroy(entry);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the (estimated) number of threads waiting for a connection.
+     *
+     * @return the number of waiting threads
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Returns the histogram of the time spent waiting for a connection permit.
+     *
+     * @return the wait time histogram
+     */
+    public LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return poolName + "{active=" + getActiveCount() + ", idle=" + getIdleCount() + ", total=" + getTotalCount()
+                + ", max=" + maxSize + ", waiting=" + getWaitingCount()
+                + ", waitP99Micros=" + waitTime.getPercentile(0.99D, TimeUnit.MICROSECONDS) + '}';
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    /**
+     * Sets the max time to wait for a connection in seconds, overrides {@link #connectionTimeout(long, TimeUnit)}.
+     *
+     * @param seconds the login timeout, 0 to use the connection timeout
+     */
+    @Override
+    public void setLoginTimeout(final int seconds) {
+        this.loginTimeout = Math.max(0, seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * A physical connection and its pool state.
+     */
+    private static final class PoolEntry {
+        private final Connection connection;
+        private final long createdAt;
+        private final boolean defaultAutoCommit;
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private final String defaultCatalog;
+        private String defaultSchema;
+        private int defaultNetworkTimeout;
+        private volatile long lastUsed;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowStack;
+        private volatile boolean leakReported;
+
+        /**
+         * The connection state changed by the borrower.
+         */
+        private boolean dirtyAutoCommit;
+        private boolean dirtyReadOnly;
+        private boolean dirtyIsolation;
+        private boolean dirtyCatalog;
+        private boolean dirtySchema;
+        private boolean dirtyNetworkTimeout;
+
+        private PoolEntry(final Connection connection) throws SQLException {
+            this.connection = connection;
+            this.createdAt = System.nanoTime();
+            this.lastUsed = createdAt;
+            this.defaultAutoCommit = connection.getAutoCommit();
+            this.defaultReadOnly = connection.isReadOnly();
+            this.defaultIsolation = connection.getTransactionIsolation();
+            this.defaultCatalog = connection.getCatalog();
+        }
+
+        /**
+         * Rolls back the open transaction and restores the changed state.
+         *
+         * @return true if the connection can be reused
+         */
+        private boolean reset() {
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+                if (dirtyAutoCommit) {
+                    connection.setAutoCommit(defaultAutoCommit);
+                }
+                if (dirtyReadOnly) {
+                    connection.setReadOnly(defaultReadOnly);
+                }
+                if (dirtyIsolation) {
+                    connection.setTransactionIsolation(defaultIsolation);
+                }
+                if (dirtyCatalog && null != defaultCatalog) {
+                    connection.setCatalog(defaultCatalog);
+                }
+                if (dirtySchema && null != defaultSchema) {
+                    connection.setSchema(defaultSchema);
+                }
+                if (dirtyNetworkTimeout) {
+                    connection.setNetworkTimeout(DIRECT_EXECUTOR, defaultNetworkTimeout);
+                }
+                connection.clearWarnings();
+                dirtyAutoCommit = dirtyReadOnly = dirtyIsolation = dirtyCatalog = false;
+                dirtySchema = dirtyNetworkTimeout = false;
+                return true;
+            } catch (final SQLException e) {
+                LOGGER.debug("cannot reset connection, discard it: {}", e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The connection handed out by the pool, close returns the physical connection to the pool.
+     */
+    private final class PooledConnection extends DelegatingConnection {
+        private final PoolEntry entry;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * The statements created by the borrower, closed on release.
+         */
+        private final Set<Statement> statements =
+                Collections.newSetFromMap(new ConcurrentHashMap<Statement, Boolean>());
+
+        private PooledConnection(final PoolEntry entry) {
+            super(entry.connection);
+            this.entry = entry;
+        }
+
+        @Override
+        protected Connection getTargetConnection() throws SQLException {
+            if (closed.get()) {
+                throw new SQLException("connection is closed");
+            }
+            return entry.connection;
+        }
+
+        @Override
+        public void setAutoCommit(final boolean autoCommit) throws SQLException {
+            super.setAutoCommit(autoCommit);
+            entry.dirtyAutoCommit = true;
+        }
+
+        @Override
+        public void setReadOnly(final boolean readOnly) throws SQLException {
+            super.setReadOnly(readOnly);
+            entry.dirtyReadOnly = true;
+        }
+
+        @Override
+        public void setTransactionIsolation(final int level) throws SQLException {
+            super.setTransactionIsolation(level);
+            entry.dirtyIsolation = true;
+        }
+
+        @Override
+        public void setCatalog(final String catalog) throws SQLException {
+            super.setCatalog(catalog);
+            entry.dirtyCatalog = true;
+        }
+
+        @Override
+        public void setSchema(final String schema) throws SQLException {
+            final Connection target = getTargetConnection();
+            if (!entry.dirtySchema) {
+                entry.defaultSchema = target.getSchema();
+            }
+            target.setSchema(schema);
+            entry.dirtySchema = true;
+        }
+
+        @Override
+        public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException {
+            final Connection target = getTargetConnection();
+            if (!entry.dirtyNetworkTimeout) {
+                entry.defaultNetworkTimeout = target.getNetworkTimeout();
+            }
+            target.setNetworkTimeout(executor, milliseconds);
+            entry.dirtyNetworkTimeout = true;
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return track(super.createStatement());
+        }
+
+        @Override
+        public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+            return track(super.createStatement(resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public Statement createStatement(final int resultSetType, final int resultSetConcurrency,
+                                         final int resultSetHoldability) throws SQLException {
+            return track(super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(final String sql) throws SQLException {
+            return track(super.prepareStatement(sql));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(final String sql, final int resultSetType,
+                                                  final int resultSetConcurrency) throws SQLException {
+            return track(super.prepareStatement(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency,
+                                                  final int resultSetHoldability) throws SQLException {
+            return track(super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+            return track(super.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+            return track(super.prepareStatement(sql, columnIndexes));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+            return track(super.prepareStatement(sql, columnNames));
+        }
+
+        @Override
+        public CallableStatement prepareCall(final String sql) throws SQLException {
+            return track(super.prepareCall(sql));
+        }
+
+        @Override
+        public CallableStatement prepareCall(final String sql, final int resultSetType,
+                                             final int resultSetConcurrency) throws SQLException {
+            return track(super.prepareCall(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency,
+                                             final int resultSetHoldability) throws SQLException {
+            return track(super.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        private Statement track(final Statement statement) throws SQLException {
+            return register(new DelegatingStatement(statement) {
+                @Override
+                public Connection getConnection() {
+                    return PooledConnection.this;
+                }
+            });
+        }
+
+        private PreparedStatement track(final PreparedStatement statement) throws SQLException {
+            return register(new DelegatingPreparedStatement(statement) {
+                @Override
+                public Connection getConnection() {
+                    return PooledConnection.this;
+                }
+            });
+        }
+
+        private CallableStatement track(final CallableStatement statement) throws SQLException {
+            return register(new DelegatingCallableStatement(statement) {
+                @Override
+                public Connection getConnection() {
+                    return PooledConnection.this;
+                }
+            });
+        }
+
+        /**
+         * Tracks the statement (wrapped to return this connection) to close on release, the statements closed by
+         * the borrower are purged from time to time.
+         */
+        private <S extends DelegatingStatement> S register(final S statement) throws SQLException {
+            if (STATEMENT_PURGE_THRESHOLD <= statements.size()) {
+                for (final Iterator<Statement> it = statements.iterator(); it.hasNext(); ) {
+                    if (it.next().isClosed()) {
+                        it.remove();
+                    }
+                }
+            }
+            statements.add(statement);
+            return statement;
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed.get() || entry.connection.isClosed();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                for (final Statement statement : statements) {
+                    Jdbc.close(statement);
+                }
+                statements.clear();
+                release(entry);
+            }
+        }
+
+        /**
+         * Aborts the physical connection (interrupting a hung call) and drops it from the pool.
+         */
+        @Override
+        public void abort(final Executor executor) throws SQLException {
+            if (closed.compareAndSet(false, true)) {
+                statements.clear();
+                boolean aborted = false;
+                try {
+                    entry.connection.abort(executor);
+                    aborted = true;
+                } finally {
+                    active.remove(entry);
+                    if (aborted) {
+                        discard(entry);
+                    } else {
+                        destroy(entry);
+                    }
+                    permits.release();
+                }
+            }
+        }
+    }
+}
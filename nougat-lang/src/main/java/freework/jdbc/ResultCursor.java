@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A lazy, forward-only cursor over a {@link ResultSet}.
+ * <p>
+ * Rows are mapped one at a time when they are consumed, so the memory footprint does not depend on
+ * the size of result (as long as the driver streams the result, see {@link #open(Connection, String, RowMapper, int, int, List)}).
+ * <p>
+ * The cursor must be closed, it closes the result set, the statement and restores the connection state,
+ * the connection itself is not closed.
+ * <blockquote><pre>
+ * try (ResultCursor&lt;Object[]&gt; cursor = ResultCursor.open(conn, sql, RowMappers.asArray(), 1000)) {
+ *     for (Object[] row : cursor) {
+ *         ...
+ *     }
+ * }
+ * </pre></blockquote>
+ * SQLExceptions thrown while iterating are wrapped in {@link CursorException}.
+ *
+ * @param <T> the row type
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class ResultCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCursor.class);
+
+    /**
+     * The fetch size used when the driver requires a positive fetch size to stream (eg: PostgreSQL).
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final ResultSet resultSet;
+    private final Statement statement;
+    private final RowMapper<T> mapper;
+
+    /**
+     * The connection to restore auto-commit on close, null if not need restore.
+     */
+    private final Connection autoCommitConnection;
+
+    private int rowNum;
+    private Boolean hasNext;
+    private boolean closed;
+
+    /**
+     * Creates a cursor over the result set.
+     *
+     * @param resultSet the result set
+     * @param mapper    the row mapper
+     */
+    public ResultCursor(final ResultSet resultSet, final RowMapper<T> mapper) {
+        this(resultSet, null, mapper, null);
+    }
+
+    /**
+     * Creates a cursor over the result set.
+     *
+     * @param resultSet            the result set
+     * @param statement            the statement to close on close, or null
+     * @param mapper               the row mapper
+     * @param autoCommitConnection the connection to restore auto-commit on close, or null
+     */
+    protected ResultCursor(final ResultSet resultSet, final Statement statement,
+                           final RowMapper<T> mapper, final Connection autoCommitConnection) {
+        this.resultSet = resultSet;
+        this.statement = statement;
+        this.mapper = mapper;
+        this.autoCommitConnection = autoCommitConnection;
+    }
+
+    /**
+     * Executes the query and opens a streaming cursor using forward fetch direction.
+     *
+     * @param conn      the connection
+     * @param sql       the sql
+     * @param mapper    the row mapper
+     * @param fetchSize the fetch size hint, 0 to use the driver default
+     * @param params    the positional parameters
+     * @param <T>       the row type
+     * @return the cursor
+     * @throws SQLException if a database access error occurs
+     */
+    public static <T> ResultCursor<T> open(final Connection conn, final String sql, final RowMapper<T> mapper,
+                                           final int fetchSize, final Object... params) throws SQLException {
+        return open(conn, sql, mapper, fetchSize, ResultSet.FETCH_FORWARD, Arrays.asList(params));
+    }
+
+    /**
+     * Executes the query and opens a streaming cursor.
+     * <p>
+     * Driver specific settings are applied so that the driver actually streams rows:
+     * <ul>
+     * <li>MySQL: forward-only / read-only statement with fetch size {@link Integer#MIN_VALUE} (row-by-row streaming)</li>
+     * <li>PostgreSQL: auto-commit is disabled (restored on close) and a positive fetch size is used</li>
+     * </ul>
+     *
+     * @param conn           the connection
+     * @param sql            the sql
+     * @param mapper         the row mapper
+     * @param fetchSize      the fetch size hint, 0 to use the driver default
+     * @param fetchDirection the fetch direction, eg: {@link ResultSet#FETCH_FORWARD}
+     * @param params         the positional parameters
+     * @param <T>            the row type
+     * @return the cursor
+     * @throws SQLException if a database access error occurs
+     */
+    public static <T> ResultCursor<T> open(final Connection conn, final String sql, final RowMapper<T> mapper,
+                                           final int fetchSize, final int fetchDirection,
+                                           final List<Object> params) throws SQLException {
+        final String dbType = Jdbc.getDbType(conn.getMetaData().getURL());
+        final boolean mysql = Jdbc.MYSQL.equals(dbType);
+        final boolean postgresql = Jdbc.POSTGRE_SQL.equals(dbType);
+
+        Connection autoCommitConnection = null;
+        if (postgresql && conn.getAutoCommit()) {
+            /*-
+             * PostgreSQL only uses a server-side cursor outside of auto-commit mode.
+             */
+            conn.setAutoCommit(false);
+            autoCommitConnection = conn;
+        }
+
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (mysql) {
+                stmt.setFetchSize(Integer.MIN_VALUE);
+            } else if (0 < fetchSize) {
+                stmt.setFetchSize(fetchSize);
+            } else if (postgresql) {
+                stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+            }
+            if (ResultSet.FETCH_FORWARD != fetchDirection) {
+                stmt.setFetchDirection(fetchDirection);
+            }
+            Jdbc.setParameters(stmt, params);
+            return new ResultCursor<T>(stmt.executeQuery(), stmt, mapper, autoCommitConnection);
+        } catch (final SQLException e) {
+            Jdbc.close(stmt);
+            restoreAutoCommit(autoCommitConnection);
+            throw e;
+        } catch (final RuntimeException e) {
+            Jdbc.close(stmt);
+            restoreAutoCommit(autoCommitConnection);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        if (null == hasNext) {
+            try {
+                hasNext = !closed && resultSet.next();
+            } catch (final SQLException e) {
+                throw new CursorException(e);
+            }
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        try {
+            return mapper.mapRow(resultSet, ++rowNum);
+        } catch (final SQLException e) {
+            throw new CursorException(e);
+        }
+    }
+
+    /**
+     * Unsupported operation.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * Returns the number of rows consumed.
+     *
+     * @return the number of rows consumed
+     */
+    public int getRowCount() {
+        return rowNum;
+    }
+
+    /**
+     * Returns the underlying result set.
+     *
+     * @return the result set
+     */
+    public ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    /**
+     * Closes the result set, the statement (if opened by cursor) and restores the connection auto-commit.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Jdbc.close(resultSet);
+        Jdbc.close(statement);
+        restoreAutoCommit(autoCommitConnection);
+    }
+
+    private static void restoreAutoCommit(final Connection conn) {
+        if (null != conn) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (final SQLException e) {
+                LOGGER.error("restore auto-commit error", e);
+            }
+        }
+    }
+
+    /**
+     * Unchecked wrapper of {@link SQLException} thrown while iterating a cursor.
+     */
+    public static class CursorException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public CursorException(final SQLException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import freework.codec.Hex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming CSV / TSV exporter of {@link ResultSet}s.
+ * <p>
+ * Fields are quoted as RFC 4180 specifies (only when they contain the delimiter, a quote, CR or LF, quotes are
+ * doubled), records are written into a reusable char buffer and encoded by a {@link CharsetEncoder} straight into a
+ * reusable byte buffer, numeric columns are read by the primitive getters and formatted without boxing.
+ * <blockquote><pre>
+ * ResultSetExporter.csv().gzip(true).progress(listener, 100000).export(rs, new FileOutputStream("users.csv.gz"));
+ * </pre></blockquote>
+ * An exporter is not thread-safe (it holds the buffers), use one per thread.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class ResultSetExporter {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LONG_CHARS = 20;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INT = 1;
+    private static final int LONG = 2;
+    private static final int DOUBLE = 3;
+    private static final int DECIMAL = 4;
+    private static final int BOOLEAN = 5;
+    private static final int DATE = 6;
+    private static final int TIME = 7;
+    private static final int TIMESTAMP = 8;
+    private static final int BYTES = 9;
+    private static final int STRING = 10;
+
+    private final char delimiter;
+    private String lineSeparator = "\r\n";
+    private String nullValue = "";
+    private boolean header = true;
+    private boolean gzip;
+    private Charset charset = UTF_8;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private ProgressListener listener;
+    private long progressInterval;
+
+    private char[] chars;
+    private int position;
+    private final char[] digits = new char[MAX_LONG_CHARS];
+    private ByteBuffer bytes;
+    private CharsetEncoder encoder;
+    private WritableByteChannel channel;
+    private long byteCount;
+
+    /**
+     * Creates an exporter.
+     *
+     * @param delimiter the field delimiter
+     */
+    public ResultSetExporter(final char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Creates a comma separated values exporter.
+     *
+     * @return the exporter
+     */
+    public static ResultSetExporter csv() {
+        return new ResultSetExporter(',');
+    }
+
+    /**
+     * Creates a tab separated values exporter.
+     *
+     * @return the exporter
+     */
+    public static ResultSetExporter tsv() {
+        return new ResultSetExporter('\t');
+    }
+
+    /**
+     * Sets the record separator, default is CRLF as RFC 4180 specifies.
+     */
+    public ResultSetExporter lineSeparator(final String lineSeparator) {
+        this.lineSeparator = lineSeparator;
+        return this;
+    }
+
+    /**
+     * Sets the text written for SQL NULL, default is the empty field.
+     */
+    public ResultSetExporter nullValue(final String nullValue) {
+        this.nullValue = nullValue;
+        return this;
+    }
+
+    /**
+     * Sets whether to write the header record of column labels, default is true.
+     */
+    public ResultSetExporter header(final boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * Sets whether to gzip the output.
+     */
+    public ResultSetExporter gzip(final boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Sets the output charset, default is UTF-8.
+     */
+    public ResultSetExporter charset(final Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Sets the size in chars of the record buffer.
+     */
+    public ResultSetExporter bufferSize(final int bufferSize) {
+        if (MAX_LONG_CHARS > bufferSize) {
+            throw new IllegalArgumentException("bufferSize too small: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Sets the progress listener.
+     *
+     * @param listener the listener
+     * @param rows     the number of rows between two notifications
+     * @return this exporter
+     */
+    public ResultSetExporter progress(final ProgressListener listener, final long rows) {
+        this.listener = listener;
+        this.progressInterval = Math.max(1, rows);
+        return this;
+    }
+
+    /**
+     * Exports the remaining rows of the result set, neither the result set nor the stream is closed.
+     *
+     * @param rs  the result set
+     * @param out the output stream
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException  if an I/O error occurs
+     */
+    public long export(final ResultSet rs, final OutputStream out) throws SQLException, IOException {
+        if (gzip) {
+            final GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            final long rows = doExport(rs, Channels.newChannel(gzipOut));
+            gzipOut.finish();
+            return rows;
+        }
+        return doExport(rs, Channels.newChannel(out));
+    }
+
+    /**
+     * Exports the remaining rows of the result set, neither the result set nor the channel is closed.
+     *
+     * @param rs      the result set
+     * @param channel the channel
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException  if an I/O error occurs
+     */
+    public long export(final ResultSet rs, final WritableByteChannel channel) throws SQLException, IOException {
+        if (gzip) {
+            return export(rs, Channels.newOutputStream(channel));
+        }
+        return doExport(rs, channel);
+    }
+
+    private long doExport(final ResultSet rs, final WritableByteChannel target) throws SQLException, IOException {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        final int columnCount = metaData.getColumnCount();
+        final int[] types = new int[columnCount + 1];
+        for (int i = 1; i <= columnCount; i++) {
+            types[i] = typeOf(metaData.getColumnType(i));
+        }
+
+        open(target);
+        try {
+            if (header) {
+                for (int i = 1; i <= columnCount; i++) {
+                    appendField(metaData.getColumnLabel(i), 1 < i);
+                }
+                append(lineSeparator);
+            }
+            long rows = 0;
+            while (rs.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    appendValue(rs, i, types[i]);
+                }
+                append(lineSeparator);
+                rows++;
+                if (null != listener && 0 == rows % progressInterval) {
+                    listener.onProgress(rows, byteCount);
+                }
+            }
+            flush(true);
+            if (null != listener) {
+                listener.onProgress(rows, byteCount);
+            }
+            return rows;
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void open(final WritableByteChannel target) {
+        if (null == chars || chars.length != bufferSize) {
+            chars = new char[bufferSize];
+            bytes = ByteBuffer.allocate((int) Math.ceil(bufferSize * (double) charset.newEncoder().maxBytesPerChar()));
+        }
+        if (null == encoder || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        encoder.reset();
+        bytes.clear();
+        channel = target;
+        position = 0;
+        byteCount = 0;
+    }
+
+    private static int typeOf(final int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INT;
+            case Types.BIGINT:
+                return LONG;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DECIMAL;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.DATE:
+                return DATE;
+            case Types.TIME:
+                return TIME;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BYTES;
+            default:
+                return STRING;
+        }
+    }
+
+    private void appendValue(final ResultSet rs, final int index, final int type) throws SQLException, IOException {
+        if (1 < index) {
+            appendChar(delimiter);
+        }
+        switch (type) {
+            case INT:
+                final int intValue = rs.getInt(index);
+                appendNumber(intValue, rs.wasNull());
+                break;
+            case LONG:
+                final long longValue = rs.getLong(index);
+                appendNumber(longValue, rs.wasNull());
+                break;
+            case DOUBLE:
+                final double doubleValue = rs.getDouble(index);
+                appendText(rs.wasNull() ? null : Double.toString(doubleValue));
+                break;
+            case DECIMAL:
+                final BigDecimal decimal = rs.getBigDecimal(index);
+                appendText(null != decimal ? decimal.toPlainString() : null);
+                break;
+            case BOOLEAN:
+                final boolean booleanValue = rs.getBoolean(index);
+                appendText(rs.wasNull() ? null : booleanValue ? "true" : "false");
+                break;
+            case DATE:
+                final java.sql.Date date = rs.getDate(index);
+                appendText(null != date ? date.toString() : null);
+                break;
+            case TIME:
+                final java.sql.Time time = rs.getTime(index);
+                appendText(null != time ? time.toString() : null);
+                break;
+            case TIMESTAMP:
+                final Timestamp timestamp = rs.getTimestamp(index);
+                appendText(null != timestamp ? timestamp.toString() : null);
+                break;
+            case BYTES:
+                final byte[] value = rs.getBytes(index);
+                appendText(null != value ? Hex.encode(value) : null);
+                break;
+            default:
+                final String text = rs.getString(index);
+                if (null == text) {
+                    appendText(null);
+                } else {
+                    appendField(text, false);
+                }
+                break;
+        }
+    }
+
+    /* ****************************
+     *      char buffer
+     * ****************************/
+
+    private void appendNumber(final long value, final boolean isNull) throws IOException {
+        if (isNull) {
+            appendText(null);
+            return;
+        }
+        if (Long.MIN_VALUE == value) {
+            append(Long.toString(value));
+            return;
+        }
+        long v = 0 > value ? -value : value;
+        int i = MAX_LONG_CHARS;
+        do {
+            digits[--i] = (char) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (0 != v);
+        if (0 > value) {
+            digits[--i] = '-';
+        }
+        ensure(MAX_LONG_CHARS - i);
+        System.arraycopy(digits, i, chars, position, MAX_LONG_CHARS - i);
+        position += MAX_LONG_CHARS - i;
+    }
+
+    /**
+     * Appends a text which needs no quoting, or the null value.
+     */
+    private void appendText(final String text) throws IOException {
+        if (null == text) {
+            appendField(nullValue, false);
+        } else {
+            append(text);
+        }
+    }
+
+    /**
+     * Appends a field, quoted if it contains the delimiter, a quote, CR or LF.
+     */
+    private void appendField(final String text, final boolean separated) throws IOException {
+        if (separated) {
+            appendChar(delimiter);
+        }
+        final int length = text.length();
+        boolean quote = false;
+        for (int i = 0; i < length && !quote; i++) {
+            final char c = text.charAt(i);
+            quote = delimiter == c || '"' == c || '\r' == c || '\n' == c;
+        }
+        if (!quote) {
+            append(text);
+            return;
+        }
+        appendChar('"');
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if ('"' == c) {
+                appendChar('"');
+            }
+            appendChar(c);
+        }
+        appendChar('"');
+    }
+
+    private void append(final String text) throws IOException {
+        int offset = 0;
+        final int length = text.length();
+        while (offset < length) {
+            if (position == chars.length) {
+                flush(false);
+            }
+            final int n = Math.min(length - offset, chars.length - position);
+            text.getChars(offset, offset + n, chars, position);
+            position += n;
+            offset += n;
+        }
+    }
+
+    private void appendChar(final char c) throws IOException {
+        if (position == chars.length) {
+            flush(false);
+        }
+        chars[position++] = c;
+    }
+
+    private void ensure(final int n) throws IOException {
+        if (position + n > chars.length) {
+            flush(false);
+        }
+    }
+
+    /**
+     * Encodes the buffered chars into the byte buffer and writes it to the channel.
+     */
+    private void flush(final boolean endOfInput) throws IOException {
+        final CharBuffer in = CharBuffer.wrap(chars, 0, position);
+        CoderResult result;
+        do {
+            result = encoder.encode(in, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            }
+        } while (result.isOverflow());
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+        }
+        drain();
+
+        /*-
+         * keep the chars not consumed by the encoder (eg: high surrogate at the end).
+         */
+        final int remaining = in.remaining();
+        System.arraycopy(chars, in.position(), chars, 0, remaining);
+        position = remaining;
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            byteCount += channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * Export progress listener.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called every progress interval rows and when the export completes.
+         *
+         * @param rows  the number of exported rows
+         * @param bytes the number of bytes written so far (before gzip compression, buffered bytes excluded)
+         */
+        void onProgress(final long rows, final long bytes);
+
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a {@link ResultSet} to an object.
+ *
+ * @param <T> the row type
+ * @author vacoor
+ * @since 1.0.12
+ */
+public interface RowMapper<T> {
+
+    /**
+     * Maps the current row of the result set, implementations should not call {@link ResultSet#next()}.
+     *
+     * @param rs     the result set positioned at the row to map
+     * @param rowNum the number of the current row (starts with 1)
+     * @return the row object
+     * @throws SQLException if a database access error occurs
+     */
+    T mapRow(final ResultSet rs, final int rowNum) throws SQLException;
+
+}
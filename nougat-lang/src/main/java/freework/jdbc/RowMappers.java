@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Built-in {@link RowMapper}s.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+@SuppressWarnings("PMD.AbstractClassShouldStartWithAbstractNamingRule")
+public abstract class RowMappers {
+
+    /**
+     * Non-instantiate.
+     */
+    private RowMappers() {
+    }
+
+    /**
+     * Returns a row mapper that maps the row to a {@link LinkedHashMap} (column label -&gt; value).
+     * <p>
+     * The column labels are resolved once per result set, so the returned mapper should not be shared between threads.
+     *
+     * @return the row mapper
+     */
+    public static RowMapper<Map<String, Object>> asMap() {
+        return new RowMapper<Map<String, Object>>() {
+            private ResultSet resultSet;
+            private String[] labels;
+
+            @Override
+            public Map<String, Object> mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+                if (rs != resultSet) {
+                    labels = getColumnLabels(rs.getMetaData());
+                    resultSet = rs;
+                }
+                final Map<String, Object> row = new LinkedHashMap<String, Object>(labels.length * 4 / 3 + 1);
+                for (int i = 0; i < labels.length; i++) {
+                    row.put(labels[i], rs.getObject(i + 1));
+                }
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Returns a row mapper that maps the row to an object array.
+     *
+     * @return the row mapper
+     */
+    public static RowMapper<Object[]> asArray() {
+        return new RowMapper<Object[]>() {
+            private ResultSet resultSet;
+            private int columnCount;
+
+            @Override
+            public Object[] mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+                if (rs != resultSet) {
+                    columnCount = rs.getMetaData().getColumnCount();
+                    resultSet = rs;
+                }
+                final Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Returns a row mapper that maps the first column of the row.
+     *
+     * @param type the column value type
+     * @param <T>  the column value type
+     * @return the row mapper
+     */
+    public static <T> RowMapper<T> singleColumn(final Class<T> type) {
+        return new RowMapper<T>() {
+            @Override
+            public T mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+                return type.cast(rs.getObject(1));
+            }
+        };
+    }
+
+    /**
+     * Returns a row mapper that maps the row to a java bean, see {@link BeanRowMapperFactory}.
+     * <p>
+     * The column labels are resolved once per result set, so the returned mapper should not be shared between threads.
+     *
+     * @param beanClass the bean class
+     * @param <T>       the bean type
+     * @return the row mapper
+     */
+    public static <T> RowMapper<T> asBean(final Class<T> beanClass) {
+        return BeanRowMapperFactory.getSharedInstance().getRowMapper(beanClass);
+    }
+
+    /**
+     * Returns the column labels of the result set.
+     *
+     * @param metadata the result set metadata
+     * @return the column labels
+     * @throws SQLException if a database access error occurs
+     */
+    static String[] getColumnLabels(final ResultSetMetaData metadata) throws SQLException {
+        final String[] labels = new String[metadata.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = metadata.getColumnLabel(i + 1);
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc;
+
+import freework.jdbc.statement.DelegatingPreparedStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Connection} wrapper that caches prepared statements.
+ * <p>
+ * Statements created by {@link #prepareStatement(String)}, {@link #prepareStatement(String, int, int)}
+ * and {@link #prepareStatement(String, int, int, int)} are kept in a bounded LRU cache keyed by sql and result set
+ * type / concurrency / holdability. Closing a cached statement clears its parameters, restores the fetch size, max rows,
+ * query timeout and fetch direction changed by the borrower and returns it to the cache, statements evicted from
+ * the cache (or returned while an equivalent statement is already cached) are closed for real.
+ * Each prepare hands out a new wrapper, a wrapper can not be used after it is closed.
+ * <p>
+ * A cached statement is removed from the cache while it is in use, so the same sql may be prepared concurrently,
+ * the cache only holds idle statements.
+ * <blockquote><pre>
+ * Connection conn = new StatementCachingConnection(dataSource.getConnection(), 64);
+ * </pre></blockquote>
+ * Closing the connection closes all cached statements.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class StatementCachingConnection extends DelegatingConnection {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementCachingConnection.class);
+
+    /**
+     * The default max number of cached statements.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    /**
+     * The holdability placeholder used when the holdability is not specified.
+     */
+    private static final int DEFAULT_HOLDABILITY = -1;
+
+    private final int maxSize;
+    private final Map<Key, CacheEntry> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a statement caching connection with {@link #DEFAULT_CACHE_SIZE}.
+     *
+     * @param connection the target connection
+     */
+    public StatementCachingConnection(final Connection connection) {
+        this(connection, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a statement caching connection.
+     *
+     * @param connection the target connection
+     * @param maxSize    the max number of cached (idle) statements
+     */
+    public StatementCachingConnection(final Connection connection, final int maxSize) {
+        super(connection);
+        if (1 > maxSize) {
+            throw new IllegalArgumentException("maxSize must be > 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<Key, CacheEntry>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, CacheEntry> eldest) {
+                if (size() > StatementCachingConnection.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    eldest.getValue().closeQuietly();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException {
+        return prepareCached(new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, DEFAULT_HOLDABILITY));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType,
+                                              final int resultSetConcurrency) throws SQLException {
+        return prepareCached(new Key(sql, resultSetType, resultSetConcurrency, DEFAULT_HOLDABILITY));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType,
+                                              final int resultSetConcurrency,
+                                              final int resultSetHoldability) throws SQLException {
+        return prepareCached(new Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    private PreparedStatement prepareCached(final Key key) throws SQLException {
+        CacheEntry entry;
+        synchronized (cache) {
+            entry = cache.remove(key);
+        }
+        if (null != entry) {
+            hitCount.incrementAndGet();
+            return new CachedPreparedStatement(entry);
+        }
+        missCount.incrementAndGet();
+
+        final Connection conn = getConnection();
+        final PreparedStatement target;
+        if (DEFAULT_HOLDABILITY != key.holdability) {
+            target = conn.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency, key.holdability);
+        } else if (ResultSet.TYPE_FORWARD_ONLY != key.resultSetType || ResultSet.CONCUR_READ_ONLY != key.resultSetConcurrency) {
+            target = conn.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency);
+        } else {
+            target = conn.prepareStatement(key.sql);
+        }
+        try {
+            entry = new CacheEntry(target, key);
+        } catch (final SQLException e) {
+            Jdbc.close(target);
+            throw e;
+        }
+        return new CachedPreparedStatement(entry);
+    }
+
+    /**
+     * Returns the statement to the cache, or closes it if the cache already holds an equivalent one.
+     */
+    private void release(final CacheEntry entry) {
+        boolean cached = false;
+        if (!isClosedQuietly()) {
+            synchronized (cache) {
+                if (!cache.containsKey(entry.key)) {
+                    cache.put(entry.key, entry);
+                    cached = true;
+                }
+            }
+        }
+        if (!cached) {
+            entry.closeQuietly();
+        }
+    }
+
+    private boolean isClosedQuietly() {
+        try {
+            return getConnection().isClosed();
+        } catch (final SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Closes all cached statements.
+     */
+    public void clearCache() {
+        final List<CacheEntry> entries;
+        synchronized (cache) {
+            entries = new ArrayList<CacheEntry>(cache.values());
+            cache.clear();
+        }
+        for (final CacheEntry entry : entries) {
+            entry.closeQuietly();
+        }
+    }
+
+    /**
+     * Closes all cached statements and the target connection.
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        clearCache();
+        super.close();
+    }
+
+    /**
+     * Returns the max number of cached statements.
+     *
+     * @return the max number of cached statements
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of idle statements in the cache.
+     *
+     * @return the number of cached statements
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the ratio of prepare requests served from the cache.
+     *
+     * @return the hit rate in [0, 1], 0 if no request
+     */
+    public double getHitRate() {
+        final long hits = hitCount.get();
+        final long total = hits + missCount.get();
+        return 0 < total ? (double) hits / total : 0D;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "StatementCachingConnection{size=" + getCacheSize() + ", maxSize=" + maxSize
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + '}';
+    }
+
+    /**
+     * The cache key.
+     */
+    private static final class Key {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int holdability;
+        private final int hash;
+
+        private Key(final String sql, final int resultSetType, final int resultSetConcurrency, final int holdability) {
+            if (null == sql) {
+                throw new IllegalArgumentException("sql must not be null");
+            }
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.holdability = holdability;
+            this.hash = ((sql.hashCode() * 31 + resultSetType) * 31 + resultSetConcurrency) * 31 + holdability;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return resultSetType == other.resultSetType && resultSetConcurrency == other.resultSetConcurrency
+                    && holdability == other.holdability && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A physical statement and the settings it was prepared with.
+     */
+    private static final class CacheEntry {
+        private final PreparedStatement statement;
+        private final Key key;
+        private final int defaultFetchSize;
+        private final int defaultMaxRows;
+        private final int defaultQueryTimeout;
+        private final int defaultFetchDirection;
+
+        /**
+         * The settings changed by the borrower.
+         */
+        private boolean dirtyFetchSize;
+        private boolean dirtyMaxRows;
+        private boolean dirtyQueryTimeout;
+        private boolean dirtyFetchDirection;
+
+        private CacheEntry(final PreparedStatement statement, final Key key) throws SQLException {
+            this.statement = statement;
+            this.key = key;
+            this.defaultFetchSize = statement.getFetchSize();
+            this.defaultMaxRows = statement.getMaxRows();
+            this.defaultQueryTimeout = statement.getQueryTimeout();
+            this.defaultFetchDirection = statement.getFetchDirection();
+        }
+
+        /**
+         * Closes the open result set, clears the parameters, batch and warnings and restores the changed settings.
+         *
+         * @return true if the statement can be reused
+         */
+        private boolean reset() {
+            try {
+                final ResultSet rs = statement.getResultSet();
+                if (null != rs) {
+                    rs.close();
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                if (dirtyFetchSize) {
+                    statement.setFetchSize(defaultFetchSize);
+                }
+                if (dirtyMaxRows) {
+                    statement.setMaxRows(defaultMaxRows);
+                }
+                if (dirtyQueryTimeout) {
+                    statement.setQueryTimeout(defaultQueryTimeout);
+                }
+                if (dirtyFetchDirection) {
+                    statement.setFetchDirection(defaultFetchDirection);
+                }
+                dirtyFetchSize = dirtyMaxRows = dirtyQueryTimeout = dirtyFetchDirection = false;
+                return true;
+            } catch (final SQLException e) {
+                LOGGER.debug("cannot reset statement, close it: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (final SQLException e) {
+                LOGGER.warn("close cached statement error", e);
+            }
+        }
+    }
+
+    /**
+     * The prepared statement handed out for one borrow of a cache entry, close returns the entry to the cache.
+     */
+    private final class CachedPreparedStatement extends DelegatingPreparedStatement {
+        private final CacheEntry entry;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private CachedPreparedStatement(final CacheEntry entry) {
+            super(entry.statement);
+            this.entry = entry;
+        }
+
+        @Override
+        protected PreparedStatement getTargetStatement() throws SQLException {
+            if (closed.get()) {
+                throw new SQLException("statement is closed");
+            }
+            return entry.statement;
+        }
+
+        @Override
+        public void setFetchSize(final int rows) throws SQLException {
+            super.setFetchSize(rows);
+            entry.dirtyFetchSize = true;
+        }
+
+        @Override
+        public void setMaxRows(final int max) throws SQLException {
+            super.setMaxRows(max);
+            entry.dirtyMaxRows = true;
+        }
+
+        @Override
+        public void setQueryTimeout(final int seconds) throws SQLException {
+            super.setQueryTimeout(seconds);
+            entry.dirtyQueryTimeout = true;
+        }
+
+        @Override
+        public void setFetchDirection(final int direction) throws SQLException {
+            super.setFetchDirection(direction);
+            entry.dirtyFetchDirection = true;
+        }
+
+        /**
+         * Resets the statement and returns it to the cache.
+         */
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (entry.reset()) {
+                release(entry);
+            } else {
+                entry.closeQuietly();
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed.get() || entry.statement.isClosed();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (closed.get()) {
+                throw new SQLException("statement is closed");
+            }
+            return StatementCachingConnection.this;
+        }
+    }
+}
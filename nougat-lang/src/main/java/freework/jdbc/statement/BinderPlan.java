@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc.statement;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+
+/**
+ * A precompiled parameter binding plan.
+ * <p>
+ * The plan has one slot per parameter (per distinct name of a named parameter statement, in the order of first
+ * appearance, or per index of a positional statement), each with the parameter indexes it fans out to and a
+ * type-specialized {@link ParameterBinder} chosen once when the plan is compiled.
+ * Binding then needs no map lookup and no type inference:
+ * <blockquote><pre>
+ * ParsedSql parsedSql = ParsedSqlCache.getSharedInstance().get("insert into t(id, name) values (:id, :name)");
+ * BinderPlan plan = BinderPlan.compile(parsedSql, sampleParams);
+ * int id = plan.getSlot("id");
+ * int name = plan.getSlot("name");
+ * PreparedStatement stmt = conn.prepareStatement(parsedSql.getSql());
+ * for (...) {
+ *     plan.setLong(stmt, id, nextId);   // no boxing
+ *     plan.setString(stmt, name, nextName);
+ *     stmt.addBatch();
+ * }
+ * </pre></blockquote>
+ * Plans are immutable and can be shared between threads.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public final class BinderPlan {
+    private static final int[][] NO_INDEXES = new int[0][];
+
+    private final String[] names;
+    private final int[][] indexes;
+    private final ParameterBinder[] binders;
+
+    private BinderPlan(final String[] names, final int[][] indexes, final ParameterBinder[] binders) {
+        this.names = names;
+        this.indexes = indexes;
+        this.binders = binders;
+    }
+
+    /**
+     * Compiles a named parameter plan, the binders are chosen by the types of the sample values.
+     *
+     * @param parsedSql the parsed sql
+     * @param sample    the sample parameters, names without (or with null) sample are bound by setObject
+     * @return the plan
+     */
+    public static BinderPlan compile(final ParsedSql parsedSql, final Map<String, ?> sample) {
+        final Map<String, int[]> indexMap = parsedSql.getIndexMap();
+        final String[] names = new String[indexMap.size()];
+        final int[][] indexes = 0 < names.length ? new int[names.length][] : NO_INDEXES;
+        final ParameterBinder[] binders = new ParameterBinder[names.length];
+        int slot = 0;
+        for (final Map.Entry<String, int[]> entry : indexMap.entrySet()) {
+            names[slot] = entry.getKey();
+            indexes[slot] = entry.getValue().clone();
+            binders[slot] = ParameterBinders.forValue(null != sample ? sample.get(entry.getKey()) : null);
+            slot++;
+        }
+        return new BinderPlan(names, indexes, binders);
+    }
+
+    /**
+     * Compiles a named parameter plan with the given parameter types.
+     *
+     * @param parsedSql the parsed sql
+     * @param types     the parameter types, names without type are bound by setObject
+     * @return the plan
+     */
+    public static BinderPlan compileTypes(final ParsedSql parsedSql, final Map<String, Class<?>> types) {
+        final BinderPlan plan = compile(parsedSql, null);
+        for (int i = 0; i < plan.names.length; i++) {
+            plan.binders[i] = ParameterBinders.forType(types.get(plan.names[i]));
+        }
+        return plan;
+    }
+
+    /**
+     * Compiles a positional plan, the binders are chosen by the types of the sample values.
+     *
+     * @param sample the sample parameters (one per parameter index)
+     * @return the plan
+     */
+    public static BinderPlan compile(final Object... sample) {
+        final ParameterBinder[] binders = new ParameterBinder[sample.length];
+        for (int i = 0; i < sample.length; i++) {
+            binders[i] = ParameterBinders.forValue(sample[i]);
+        }
+        return positional(binders);
+    }
+
+    /**
+     * Compiles a positional plan with the given parameter types.
+     *
+     * @param types the parameter types (one per parameter index)
+     * @return the plan
+     */
+    public static BinderPlan compileTypes(final Class<?>... types) {
+        final ParameterBinder[] binders = new ParameterBinder[types.length];
+        for (int i = 0; i < types.length; i++) {
+            binders[i] = ParameterBinders.forType(types[i]);
+        }
+        return positional(binders);
+    }
+
+    private static BinderPlan positional(final ParameterBinder[] binders) {
+        final int[][] indexes = 0 < binders.length ? new int[binders.length][] : NO_INDEXES;
+        for (int i = 0; i < binders.length; i++) {
+            indexes[i] = new int[]{i + 1};
+        }
+        return new BinderPlan(new String[binders.length], indexes, binders);
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int getSlotCount() {
+        return binders.length;
+    }
+
+    /**
+     * Returns the slot of the named parameter, resolve it once and bind by slot in hot paths.
+     *
+     * @param name the parameter name
+     * @return the slot
+     * @throws IllegalArgumentException if the plan has no such parameter
+     */
+    public int getSlot(final String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (null != names[i] && names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no named parameter '" + name + "' in the plan");
+    }
+
+    /**
+     * Returns the parameter name of the slot.
+     *
+     * @param slot the slot
+     * @return the parameter name, null if positional
+     */
+    public String getName(final int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Returns the binder of the slot.
+     *
+     * @param slot the slot
+     * @return the binder
+     */
+    public ParameterBinder getBinder(final int slot) {
+        return binders[slot];
+    }
+
+    /**
+     * Binds the values in slot order.
+     *
+     * @param stmt   the prepared statement
+     * @param values the values, one per slot
+     * @throws SQLException if a database access error occurs
+     */
+    public void bind(final PreparedStatement stmt, final Object... values) throws SQLException {
+        if (values.length != binders.length) {
+            throw new IllegalArgumentException("expected " + binders.length + " parameters, but got " + values.length);
+        }
+        for (int slot = 0; slot < binders.length; slot++) {
+            bind(stmt, slot, values[slot]);
+        }
+    }
+
+    /**
+     * Binds the named parameters, names of the plan missing in params are bound as null.
+     *
+     * @param stmt   the prepared statement
+     * @param params the named parameters
+     * @throws SQLException if a database access error occurs
+     */
+    public void bind(final PreparedStatement stmt, final Map<String, ?> params) throws SQLException {
+        for (int slot = 0; slot < binders.length; slot++) {
+            bind(stmt, slot, params.get(names[slot]));
+        }
+    }
+
+    /**
+     * Binds the value of the slot to all of its parameter indexes.
+     *
+     * @param stmt  the prepared statement
+     * @param slot  the slot
+     * @param value the value
+     * @throws SQLException if a database access error occurs
+     */
+    public void bind(final PreparedStatement stmt, final int slot, final Object value) throws SQLException {
+        final ParameterBinder binder = binders[slot];
+        for (final int index : indexes[slot]) {
+            binder.bind(stmt, index, value);
+        }
+    }
+
+    public void setLong(final PreparedStatement stmt, final int slot, final long value) throws SQLException {
+        for (final int index : indexes[slot]) {
+            stmt.setLong(index, value);
+        }
+    }
+
+    public void setInt(final PreparedStatement stmt, final int slot, final int value) throws SQLException {
+        for (final int index : indexes[slot]) {
+            stmt.setInt(index, value);
+        }
+    }
+
+    public void setDouble(final PreparedStatement stmt, final int slot, final double value) throws SQLException {
+        for (final int index : indexes[slot]) {
+            stmt.setDouble(index, value);
+        }
+    }
+
+    public void setBoolean(final PreparedStatement stmt, final int slot, final boolean value) throws SQLException {
+        for (final int index : indexes[slot]) {
+            stmt.setBoolean(index, value);
+        }
+    }
+
+    public void setString(final PreparedStatement stmt, final int slot, final String value) throws SQLException {
+        for (final int index : indexes[slot]) {
+            stmt.setString(index, value);
+        }
+    }
+
+    public void setTimestamp(final PreparedStatement stmt, final int slot, final Timestamp value) throws SQLException {
+        for (final int index : indexes[slot]) {
+            stmt.setTimestamp(index, value);
+        }
+    }
+
+    /**
+     * Binds null of the slot type to all of its parameter indexes.
+     *
+     * @param stmt the prepared statement
+     * @param slot the slot
+     * @throws SQLException if a database access error occurs
+     */
+    public void setNull(final PreparedStatement stmt, final int slot) throws SQLException {
+        bind(stmt, slot, null);
+    }
+}
@@ -0,0 +1,611 @@
+package freework.jdbc.statement;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * A {@link CallableStatement} that delegates all calls to the target statement.
+ * <p>
+ * If created with a {@link StatementInstrumentation}, the parameters bound by index are kept for the slow query log.
+ *
+ * @author vacoor
+ */
+public class DelegatingCallableStatement extends DelegatingPreparedStatement implements CallableStatement {
+    private final CallableStatement statement;
+
+    public DelegatingCallableStatement(final CallableStatement statement) {
+        this(statement, null, null);
+    }
+
+    /**
+     * Creates an instrumented callable statement.
+     *
+     * @param statement       the target statement
+     * @param sql             the sql of statement (the template to record)
+     * @param instrumentation the instrumentation, or null if not instrumented
+     */
+    public DelegatingCallableStatement(final CallableStatement statement, final String sql,
+                                       final StatementInstrumentation instrumentation) {
+        super(statement, sql, instrumentation);
+        this.statement = statement;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CallableStatement getTargetStatement() throws SQLException {
+        return statement;
+    }
+
+    @Override
+    public void registerOutParameter(final int parameterIndex, final int sqlType) throws SQLException {
+        getTargetStatement().registerOutParameter(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void registerOutParameter(final int parameterIndex, final int sqlType, final int scale) throws SQLException {
+        getTargetStatement().registerOutParameter(parameterIndex, sqlType, scale);
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return getTargetStatement().wasNull();
+    }
+
+    @Override
+    public String getString(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getString(parameterIndex);
+    }
+
+    @Override
+    public boolean getBoolean(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getBoolean(parameterIndex);
+    }
+
+    @Override
+    public byte getByte(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getByte(parameterIndex);
+    }
+
+    @Override
+    public short getShort(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getShort(parameterIndex);
+    }
+
+    @Override
+    public int getInt(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getInt(parameterIndex);
+    }
+
+    @Override
+    public long getLong(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getLong(parameterIndex);
+    }
+
+    @Override
+    public float getFloat(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getFloat(parameterIndex);
+    }
+
+    @Override
+    public double getDouble(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getDouble(parameterIndex);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public BigDecimal getBigDecimal(final int parameterIndex, final int scale) throws SQLException {
+        return getTargetStatement().getBigDecimal(parameterIndex, scale);
+    }
+
+    @Override
+    public byte[] getBytes(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getBytes(parameterIndex);
+    }
+
+    @Override
+    public Date getDate(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getDate(parameterIndex);
+    }
+
+    @Override
+    public Time getTime(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getTime(parameterIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getTimestamp(parameterIndex);
+    }
+
+    @Override
+    public Object getObject(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getObject(parameterIndex);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getBigDecimal(parameterIndex);
+    }
+
+    @Override
+    public Object getObject(final int parameterIndex, final Map<String, Class<?>> map) throws SQLException {
+        return getTargetStatement().getObject(parameterIndex, map);
+    }
+
+    @Override
+    public Ref getRef(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getRef(parameterIndex);
+    }
+
+    @Override
+    public Blob getBlob(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getBlob(parameterIndex);
+    }
+
+    @Override
+    public Clob getClob(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getClob(parameterIndex);
+    }
+
+    @Override
+    public Array getArray(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getArray(parameterIndex);
+    }
+
+    @Override
+    public Date getDate(final int parameterIndex, final Calendar cal) throws SQLException {
+        return getTargetStatement().getDate(parameterIndex, cal);
+    }
+
+    @Override
+    public Time getTime(final int parameterIndex, final Calendar cal) throws SQLException {
+        return getTargetStatement().getTime(parameterIndex, cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final int parameterIndex, final Calendar cal) throws SQLException {
+        return getTargetStatement().getTimestamp(parameterIndex, cal);
+    }
+
+    @Override
+    public void registerOutParameter(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
+        getTargetStatement().registerOutParameter(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void registerOutParameter(final String parameterName, final int sqlType) throws SQLException {
+        getTargetStatement().registerOutParameter(parameterName, sqlType);
+    }
+
+    @Override
+    public void registerOutParameter(final String parameterName, final int sqlType, final int scale) throws SQLException {
+        getTargetStatement().registerOutParameter(parameterName, sqlType, scale);
+    }
+
+    @Override
+    public void registerOutParameter(final String parameterName, final int sqlType, final String typeName) throws SQLException {
+        getTargetStatement().registerOutParameter(parameterName, sqlType, typeName);
+    }
+
+    @Override
+    public URL getURL(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getURL(parameterIndex);
+    }
+
+    @Override
+    public void setURL(final String parameterName, final URL x) throws SQLException {
+        getTargetStatement().setURL(parameterName, x);
+    }
+
+    @Override
+    public void setNull(final String parameterName, final int sqlType) throws SQLException {
+        getTargetStatement().setNull(parameterName, sqlType);
+    }
+
+    @Override
+    public void setBoolean(final String parameterName, final boolean x) throws SQLException {
+        getTargetStatement().setBoolean(parameterName, x);
+    }
+
+    @Override
+    public void setByte(final String parameterName, final byte x) throws SQLException {
+        getTargetStatement().setByte(parameterName, x);
+    }
+
+    @Override
+    public void setShort(final String parameterName, final short x) throws SQLException {
+        getTargetStatement().setShort(parameterName, x);
+    }
+
+    @Override
+    public void setInt(final String parameterName, final int length) throws SQLException {
+        getTargetStatement().setInt(parameterName, length);
+    }
+
+    @Override
+    public void setLong(final String parameterName, final long length) throws SQLException {
+        getTargetStatement().setLong(parameterName, length);
+    }
+
+    @Override
+    public void setFloat(final String parameterName, final float x) throws SQLException {
+        getTargetStatement().setFloat(parameterName, x);
+    }
+
+    @Override
+    public void setDouble(final String parameterName, final double x) throws SQLException {
+        getTargetStatement().setDouble(parameterName, x);
+    }
+
+    @Override
+    public void setBigDecimal(final String parameterName, final BigDecimal x) throws SQLException {
+        getTargetStatement().setBigDecimal(parameterName, x);
+    }
+
+    @Override
+    public void setString(final String parameterName, final String x) throws SQLException {
+        getTargetStatement().setString(parameterName, x);
+    }
+
+    @Override
+    public void setBytes(final String parameterName, final byte[] x) throws SQLException {
+        getTargetStatement().setBytes(parameterName, x);
+    }
+
+    @Override
+    public void setDate(final String parameterName, final Date x) throws SQLException {
+        getTargetStatement().setDate(parameterName, x);
+    }
+
+    @Override
+    public void setTime(final String parameterName, final Time x) throws SQLException {
+        getTargetStatement().setTime(parameterName, x);
+    }
+
+    @Override
+    public void setTimestamp(final String parameterName, final Timestamp x) throws SQLException {
+        getTargetStatement().setTimestamp(parameterName, x);
+    }
+
+    @Override
+    public void setAsciiStream(final String parameterName, final InputStream x, final int length) throws SQLException {
+        getTargetStatement().setAsciiStream(parameterName, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(final String parameterName, final InputStream x, final int length) throws SQLException {
+        getTargetStatement().setBinaryStream(parameterName, x, length);
+    }
+
+    @Override
+    public void setObject(final String parameterName, final Object x, final int targetSqlType, final int scale) throws SQLException {
+        getTargetStatement().setObject(parameterName, x, targetSqlType, scale);
+    }
+
+    @Override
+    public void setObject(final String parameterName, final Object x, final int targetSqlType) throws SQLException {
+        getTargetStatement().setObject(parameterName, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(final String parameterName, final Object x) throws SQLException {
+        getTargetStatement().setObject(parameterName, x);
+    }
+
+    @Override
+    public void setCharacterStream(final String parameterName, final Reader reader, final int length) throws SQLException {
+        getTargetStatement().setCharacterStream(parameterName, reader, length);
+    }
+
+    @Override
+    public void setDate(final String parameterName, final Date x, final Calendar cal) throws SQLException {
+        getTargetStatement().setDate(parameterName, x, cal);
+    }
+
+    @Override
+    public void setTime(final String parameterName, final Time x, final Calendar cal) throws SQLException {
+        getTargetStatement().setTime(parameterName, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(final String parameterName, final Timestamp x, final Calendar cal) throws SQLException {
+        getTargetStatement().setTimestamp(parameterName, x, cal);
+    }
+
+    @Override
+    public void setNull(final String parameterName, final int sqlType, final String typeName) throws SQLException {
+        getTargetStatement().setNull(parameterName, sqlType, typeName);
+    }
+
+    @Override
+    public String getString(final String parameterName) throws SQLException {
+        return getTargetStatement().getString(parameterName);
+    }
+
+    @Override
+    public boolean getBoolean(final String parameterName) throws SQLException {
+        return getTargetStatement().getBoolean(parameterName);
+    }
+
+    @Override
+    public byte getByte(final String parameterName) throws SQLException {
+        return getTargetStatement().getByte(parameterName);
+    }
+
+    @Override
+    public short getShort(final String parameterName) throws SQLException {
+        return getTargetStatement().getShort(parameterName);
+    }
+
+    @Override
+    public int getInt(final String parameterName) throws SQLException {
+        return getTargetStatement().getInt(parameterName);
+    }
+
+    @Override
+    public long getLong(final String parameterName) throws SQLException {
+        return getTargetStatement().getLong(parameterName);
+    }
+
+    @Override
+    public float getFloat(final String parameterName) throws SQLException {
+        return getTargetStatement().getFloat(parameterName);
+    }
+
+    @Override
+    public double getDouble(final String parameterName) throws SQLException {
+        return getTargetStatement().getDouble(parameterName);
+    }
+
+    @Override
+    public byte[] getBytes(final String parameterName) throws SQLException {
+        return getTargetStatement().getBytes(parameterName);
+    }
+
+    @Override
+    public Date getDate(final String parameterName) throws SQLException {
+        return getTargetStatement().getDate(parameterName);
+    }
+
+    @Override
+    public Time getTime(final String parameterName) throws SQLException {
+        return getTargetStatement().getTime(parameterName);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final String parameterName) throws SQLException {
+        return getTargetStatement().getTimestamp(parameterName);
+    }
+
+    @Override
+    public Object getObject(final String parameterName) throws SQLException {
+        return getTargetStatement().getObject(parameterName);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(final String parameterName) throws SQLException {
+        return getTargetStatement().getBigDecimal(parameterName);
+    }
+
+    @Override
+    public Object getObject(final String parameterName, final Map<String, Class<?>> map) throws SQLException {
+        return getTargetStatement().getObject(parameterName, map);
+    }
+
+    @Override
+    public Ref getRef(final String parameterName) throws SQLException {
+        return getTargetStatement().getRef(parameterName);
+    }
+
+    @Override
+    public Blob getBlob(final String parameterName) throws SQLException {
+        return getTargetStatement().getBlob(parameterName);
+    }
+
+    @Override
+    public Clob getClob(final String parameterName) throws SQLException {
+        return getTargetStatement().getClob(parameterName);
+    }
+
+    @Override
+    public Array getArray(final String parameterName) throws SQLException {
+        return getTargetStatement().getArray(parameterName);
+    }
+
+    @Override
+    public Date getDate(final String parameterName, final Calendar cal) throws SQLException {
+        return getTargetStatement().getDate(parameterName, cal);
+    }
+
+    @Override
+    public Time getTime(final String parameterName, final Calendar cal) throws SQLException {
+        return getTargetStatement().getTime(parameterName, cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final String parameterName, final Calendar cal) throws SQLException {
+        return getTargetStatement().getTimestamp(parameterName, cal);
+    }
+
+    @Override
+    public URL getURL(final String parameterName) throws SQLException {
+        return getTargetStatement().getURL(parameterName);
+    }
+
+    @Override
+    public RowId getRowId(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getRowId(parameterIndex);
+    }
+
+    @Override
+    public RowId getRowId(final String parameterName) throws SQLException {
+        return getTargetStatement().getRowId(parameterName);
+    }
+
+    @Override
+    public void setRowId(final String parameterName, final RowId x) throws SQLException {
+        getTargetStatement().setRowId(parameterName, x);
+    }
+
+    @Override
+    public void setNString(final String parameterName, final String value) throws SQLException {
+        getTargetStatement().setNString(parameterName, value);
+    }
+
+    @Override
+    public void setNCharacterStream(final String parameterName, final Reader reader, final long length) throws SQLException {
+        getTargetStatement().setNCharacterStream(parameterName, reader, length);
+    }
+
+    @Override
+    public void setNClob(final String parameterName, final NClob x) throws SQLException {
+        getTargetStatement().setNClob(parameterName, x);
+    }
+
+    @Override
+    public void setClob(final String parameterName, final Reader reader, final long length) throws SQLException {
+        getTargetStatement().setClob(parameterName, reader, length);
+    }
+
+    @Override
+    public void setBlob(final String parameterName, final InputStream inputStream, final long length) throws SQLException {
+        getTargetStatement().setBlob(parameterName, inputStream, length);
+    }
+
+    @Override
+    public void setNClob(final String parameterName, final Reader reader, final long length) throws SQLException {
+        getTargetStatement().setNClob(parameterName, reader, length);
+    }
+
+    @Override
+    public NClob getNClob(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getNClob(parameterIndex);
+    }
+
+    @Override
+    public NClob getNClob(final String parameterName) throws SQLException {
+        return getTargetStatement().getNClob(parameterName);
+    }
+
+    @Override
+    public void setSQLXML(final String parameterName, final SQLXML xmlObject) throws SQLException {
+        getTargetStatement().setSQLXML(parameterName, xmlObject);
+    }
+
+    @Override
+    public SQLXML getSQLXML(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getSQLXML(parameterIndex);
+    }
+
+    @Override
+    public SQLXML getSQLXML(final String parameterName) throws SQLException {
+        return getTargetStatement().getSQLXML(parameterName);
+    }
+
+    @Override
+    public String getNString(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getNString(parameterIndex);
+    }
+
+    @Override
+    public String getNString(final String parameterName) throws SQLException {
+        return getTargetStatement().getNString(parameterName);
+    }
+
+    @Override
+    public Reader getNCharacterStream(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getNCharacterStream(parameterIndex);
+    }
+
+    @Override
+    public Reader getNCharacterStream(final String parameterName) throws SQLException {
+        return getTargetStatement().getNCharacterStream(parameterName);
+    }
+
+    @Override
+    public Reader getCharacterStream(final int parameterIndex) throws SQLException {
+        return getTargetStatement().getCharacterStream(parameterIndex);
+    }
+
+    @Override
+    public Reader getCharacterStream(final String parameterName) throws SQLException {
+        return getTargetStatement().getCharacterStream(parameterName);
+    }
+
+    @Override
+    public void setBlob(final String parameterName, final Blob x) throws SQLException {
+        getTargetStatement().setBlob(parameterName, x);
+    }
+
+    @Override
+    public void setClob(final String parameterName, final Clob x) throws SQLException {
+        getTargetStatement().setClob(parameterName, x);
+    }
+
+    @Override
+    public void setAsciiStream(final String parameterName, final InputStream x, final long length) throws SQLException {
+        getTargetStatement().setAsciiStream(parameterName, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(final String parameterName, final InputStream x, final long length) throws SQLException {
+        getTargetStatement().setBinaryStream(parameterName, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(final String parameterName, final Reader reader, final long length) throws SQLException {
+        getTargetStatement().setCharacterStream(parameterName, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(final String parameterName, final InputStream x) throws SQLException {
+        getTargetStatement().setAsciiStream(parameterName, x);
+    }
+
+    @Override
+    public void setBinaryStream(final String parameterName, final InputStream x) throws SQLException {
+        getTargetStatement().setBinaryStream(parameterName, x);
+    }
+
+    @Override
+    public void setCharacterStream(final String parameterName, final Reader reader) throws SQLException {
+        getTargetStatement().setCharacterStream(parameterName, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(final String parameterName, final Reader reader) throws SQLException {
+        getTargetStatement().setNCharacterStream(parameterName, reader);
+    }
+
+    @Override
+    public void setClob(final String parameterName, final Reader reader) throws SQLException {
+        getTargetStatement().setClob(parameterName, reader);
+    }
+
+    @Override
+    public void setBlob(final String parameterName, final InputStream inputStream) throws SQLException {
+        getTargetStatement().setBlob(parameterName, inputStream);
+    }
+
+    @Override
+    public void setNClob(final String parameterName, final Reader reader) throws SQLException {
+        getTargetStatement().setNClob(parameterName, reader);
+    }
+
+    @Override
+    public <T> T getObject(final int parameterIndex, final Class<T> type) throws SQLException {
+        return getTargetStatement().getObject(parameterIndex, type);
+    }
+
+    @Override
+    public <T> T getObject(final String parameterName, final Class<T> type) throws SQLException {
+        return getTargetStatement().getObject(parameterName, type);
+    }
+}
@@ -7,8 +7,6 @@ import java.net.URL;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -36,50 +34,89 @@ import java.util.regex.Pattern;
  * @author adam_crume
  */
 public class DelegatingNamedParameterStatement extends DelegatingPreparedStatement implements NamedParameterStatement {
-    private static final Pattern NAMED_PATTERN = Pattern.compile("(?<!\\\\):([-_0-9a-zA-Z]+)(?=\\s+|$)");
-
     /**
      * Maps parameter names to arrays of ints which are the parameter indices.
      */
-    private final Map<String, Set<Integer>> indexMap;
+    private final Map<String, int[]> indexMap;
 
     private final String rawSql;
 
+    /**
+     * The parsed sql, null if created by index map.
+     */
+    private final ParsedSql parsedSql;
+
     public static boolean hasNamedParameters(final String sql) {
-        return NAMED_PATTERN.matcher(sql).find();
+        return ParsedSqlCache.getSharedInstance().get(sql).hasNamedParameters();
     }
 
     public static DelegatingNamedParameterStatement newStatement(final Connection conn, final String sql) throws SQLException {
-        final Matcher matcher = NAMED_PATTERN.matcher(sql);
-        final Map<String/*name*/, Set<Integer>/*index*/> nameIndexMap = new HashMap<>(20);
-        for (int i = 1; matcher.find(); i++) {
-            final String name = matcher.group(1);
-
-            Set<Integer> index = nameIndexMap.get(name);
-            if (null == index) {
-                nameIndexMap.put(name, new LinkedHashSet<Integer>());
-                index = nameIndexMap.get(name);
-            }
-            index.add(i);
-        }
-        final String prepareSql = matcher.replaceAll("?").replace("\\:", ":");
-        return new DelegatingNamedParameterStatement(conn.prepareStatement(prepareSql), nameIndexMap, sql);
+        return newStatement(conn, ParsedSqlCache.getSharedInstance().get(sql));
+    }
+
+    public static DelegatingNamedParameterStatement newStatement(final Connection conn, final ParsedSql parsedSql) throws SQLException {
+        return new DelegatingNamedParameterStatement(conn.prepareStatement(parsedSql.getSql()), parsedSql);
+    }
+
+    public static DelegatingNamedParameterStatement newStatement(final Connection conn, final ParsedSql parsedSql,
+                                                                 final StatementInstrumentation instrumentation) throws SQLException {
+        return new DelegatingNamedParameterStatement(conn.prepareStatement(parsedSql.getSql()), parsedSql, instrumentation);
     }
 
     /**
-     * Creates a DelegatingNamedParameterStatement.  Wraps a call to
-     * c.{@link Connection#prepareStatement(String) prepareStatement}.
+     * Creates a DelegatingNamedParameterStatement.
      *
-     * @param connection the database connection
-     * @param query      the parameterized query
+     * @param statement    the prepared statement of the parsed query
+     * @param nameIndexMap the parameter name to parameter indexes map
+     * @param rawSql       the parameterized query
      * @throws SQLException if the statement could not be created
      */
     public DelegatingNamedParameterStatement(final PreparedStatement statement,
                                              final Map<String, Set<Integer>> nameIndexMap,
                                              final String rawSql) throws SQLException {
         super(statement);
-        this.indexMap = nameIndexMap;
+        this.indexMap = toIndexArrayMap(nameIndexMap);
         this.rawSql = rawSql;
+        this.parsedSql = null;
+    }
+
+    /**
+     * Creates a DelegatingNamedParameterStatement.
+     *
+     * @param statement the prepared statement of the parsed query, eg: conn.prepareStatement(parsedSql.getSql())
+     * @param parsedSql the parsed query
+     */
+    public DelegatingNamedParameterStatement(final PreparedStatement statement, final ParsedSql parsedSql) {
+        this(statement, parsedSql, null);
+    }
+
+    /**
+     * Creates an instrumented DelegatingNamedParameterStatement, the executions are recorded by the raw sql.
+     *
+     * @param statement       the prepared statement of the parsed query, eg: conn.prepareStatement(parsedSql.getSql())
+     * @param parsedSql       the parsed query
+     * @param instrumentation the instrumentation, or null if not instrumented
+     */
+    public DelegatingNamedParameterStatement(final PreparedStatement statement, final ParsedSql parsedSql,
+                                             final StatementInstrumentation instrumentation) {
+        super(statement, parsedSql.getRawSql(), instrumentation);
+        this.indexMap = parsedSql.getIndexMap();
+        this.rawSql = parsedSql.getRawSql();
+        this.parsedSql = parsedSql;
+    }
+
+    private static Map<String, int[]> toIndexArrayMap(final Map<String, Set<Integer>> nameIndexMap) {
+        final Map<String, int[]> indexArrayMap = new HashMap<>(nameIndexMap.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, Set<Integer>> entry : nameIndexMap.entrySet()) {
+            final Set<Integer> index = entry.getValue();
+            final int[] indexes = new int[index.size()];
+            int i = 0;
+            for (final Integer idx : index) {
+                indexes[i++] = idx;
+            }
+            indexArrayMap.put(entry.getKey(), indexes);
+        }
+        return indexArrayMap;
     }
 
     @Override
@@ -94,9 +131,9 @@ public class DelegatingNamedParameterStatement extends DelegatingPreparedStateme
      * @return parameter indexes
      * @throws IllegalArgumentException if the parameter does not exist
      */
-    private Set<Integer> getIndex(String name) throws SQLException {
-        final Set<Integer> index = indexMap.get(name);
-        if (null == index || 1 > index.size()) {
+    private int[] getIndex(String name) throws SQLException {
+        final int[] index = indexMap.get(name);
+        if (null == index || 1 > index.length) {
             throw new SQLException("no named parameter '" + name + "' in the statement");
         }
         return index;
@@ -105,105 +142,105 @@ public class DelegatingNamedParameterStatement extends DelegatingPreparedStateme
 
     @Override
     public void setNull(final String parameterName, final int sqlType) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNull(i, sqlType);
         }
     }
 
     @Override
     public void setBoolean(final String parameterName, final boolean x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBoolean(i, x);
         }
     }
 
     @Override
     public void setByte(final String parameterName, final byte x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setByte(i, x);
         }
     }
 
     @Override
     public void setShort(final String parameterName, final short x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setShort(i, x);
         }
     }
 
     @Override
     public void setInt(final String parameterName, final int x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setInt(i, x);
         }
     }
 
     @Override
     public void setLong(final String parameterName, final long x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setLong(i, x);
         }
     }
 
     @Override
     public void setFloat(final String parameterName, final float x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setFloat(i, x);
         }
     }
 
     @Override
     public void setDouble(final String parameterName, final double x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setDouble(i, x);
         }
     }
 
     @Override
     public void setBigDecimal(final String parameterName, final BigDecimal x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBigDecimal(i, x);
         }
     }
 
     @Override
     public void setString(final String parameterName, final String x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setString(i, x);
         }
     }
 
     @Override
     public void setBytes(final String parameterName, final byte[] x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBytes(i, x);
         }
     }
 
     @Override
     public void setDate(final String parameterName, final Date x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setDate(i, x);
         }
     }
 
     @Override
     public void setTime(final String parameterName, final Time x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setTime(i, x);
         }
     }
 
     @Override
     public void setTimestamp(final String parameterName, final Timestamp x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setTimestamp(i, x);
         }
     }
 
     @Override
     public void setAsciiStream(final String parameterName, final InputStream x, final int length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setAsciiStream(i, x);
         }
     }
@@ -215,224 +252,257 @@ public class DelegatingNamedParameterStatement extends DelegatingPreparedStateme
 
     @Override
     public void setBinaryStream(final String parameterName, final InputStream x, final int length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBinaryStream(i, x);
         }
     }
 
     @Override
     public void setObject(final String parameterName, final Object x, final int targetSqlType) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setObject(i, x);
         }
     }
 
     @Override
     public void setObject(final String parameterName, final Object x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
-            setObject(i, x);
+        final int size = null != parsedSql ? parsedSql.getExpandedSize(parameterName) : 0;
+        if (0 < size) {
+            setExpanded(parameterName, x, size);
+            return;
+        }
+        final ParameterBinder binder = ParameterBinders.forValue(x);
+        for (final int i : getIndex(parameterName)) {
+            binder.bind(this, i, x);
+        }
+    }
+
+    /**
+     * Binds the elements of a collection (or object array) to an expanded parameter,
+     * the placeholders beyond the elements repeat the last element.
+     *
+     * @param parameterName the parameter name
+     * @param x             the collection or object array, other values are bound as a single element
+     * @param size          the bucket size of the expanded parameter
+     * @throws SQLException if the collection exceeds the bucket size
+     */
+    private void setExpanded(final String parameterName, final Object x, final int size) throws SQLException {
+        final Object[] elements;
+        if (x instanceof Collection<?>) {
+            elements = ((Collection<?>) x).toArray();
+        } else {
+            elements = x instanceof Object[] ? (Object[]) x : new Object[]{x};
+        }
+        if (elements.length > size) {
+            throw new SQLException("parameter '" + parameterName + "' expects a collection of at most " + size + " elements");
+        }
+        final int[] indexes = getIndex(parameterName);
+        for (int k = 0; k < indexes.length; k++) {
+            final int j = k % size;
+            final Object element = 0 == elements.length ? null : elements[Math.min(j, elements.length - 1)];
+            ParameterBinders.forValue(element).bind(this, indexes[k], element);
         }
     }
 
     @Override
     public void setCharacterStream(final String parameterName, final Reader reader, final int length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setCharacterStream(i, reader, length);
         }
     }
 
     @Override
     public void setRef(final String parameterName, final Ref x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setRef(i, x);
         }
     }
 
     @Override
     public void setBlob(final String parameterName, final Blob x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBlob(i, x);
         }
     }
 
     @Override
     public void setClob(final String parameterName, final Clob x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setClob(i, x);
         }
     }
 
     @Override
     public void setArray(final String parameterName, final Array x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setArray(i, x);
         }
     }
 
     @Override
     public void setDate(final String parameterName, final Date x, final Calendar cal) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setDate(i, x);
         }
     }
 
     @Override
     public void setTime(final String parameterName, final Time x, final Calendar cal) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setTime(i, x);
         }
     }
 
     @Override
     public void setTimestamp(final String parameterName, final Timestamp x, final Calendar cal) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setTimestamp(i, x);
         }
     }
 
     @Override
     public void setNull(final String parameterName, final int sqlType, final String typeName) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNull(i, sqlType, typeName);
         }
     }
 
     @Override
     public void setURL(final String parameterName, final URL x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setURL(i, x);
         }
     }
 
     @Override
     public void setRowId(final String parameterName, final RowId x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setRowId(i, x);
         }
     }
 
     @Override
     public void setNString(final String parameterName, final String value) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNString(i, value);
         }
     }
 
     @Override
     public void setNCharacterStream(final String parameterName, final Reader value, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNCharacterStream(i, value, length);
         }
     }
 
     @Override
     public void setNClob(final String parameterName, final NClob value) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNClob(i, value);
         }
     }
 
     @Override
     public void setClob(final String parameterName, final Reader reader, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setClob(i, reader, length);
         }
     }
 
     @Override
     public void setBlob(final String parameterName, final InputStream inputStream, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBlob(i, inputStream, length);
         }
     }
 
     @Override
     public void setNClob(final String parameterName, final Reader reader, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNClob(i, reader, length);
         }
     }
 
     @Override
     public void setSQLXML(final String parameterName, final SQLXML xmlObject) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setSQLXML(i, xmlObject);
         }
     }
 
     @Override
     public void setObject(final String parameterName, final Object x, final int targetSqlType, final int scaleOrLength) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setObject(i, x);
         }
     }
 
     @Override
     public void setAsciiStream(final String parameterName, final InputStream x, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setAsciiStream(i, x);
         }
     }
 
     @Override
     public void setBinaryStream(final String parameterName, final InputStream x, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBinaryStream(i, x);
         }
     }
 
     @Override
     public void setCharacterStream(final String parameterName, final Reader reader, final long length) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setCharacterStream(i, reader, length);
         }
     }
 
     @Override
     public void setAsciiStream(final String parameterName, final InputStream x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setAsciiStream(i, x);
         }
     }
 
     @Override
     public void setBinaryStream(final String parameterName, final InputStream x) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBinaryStream(i, x);
         }
     }
 
     @Override
     public void setCharacterStream(final String parameterName, final Reader reader) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setCharacterStream(i, reader);
         }
     }
 
     @Override
     public void setNCharacterStream(final String parameterName, final Reader value) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNCharacterStream(i, value);
         }
     }
 
     @Override
     public void setClob(final String parameterName, final Reader reader) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setClob(i, reader);
         }
     }
 
     @Override
     public void setBlob(final String parameterName, final InputStream inputStream) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setBlob(i, inputStream);
         }
     }
 
     @Override
     public void setNClob(final String parameterName, final Reader reader) throws SQLException {
-        for (final Integer i : getIndex(parameterName)) {
+        for (final int i : getIndex(parameterName)) {
             setNClob(i, reader);
         }
     }
@@ -5,292 +5,441 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.Calendar;
 
 /**
+ * A {@link PreparedStatement} that delegates all calls to the target statement.
+ * <p>
+ * If created with a {@link StatementInstrumentation}, the bound parameters are kept for the slow query log.
+ *
  * @author vacoor
  */
 public class DelegatingPreparedStatement extends DelegatingStatement implements PreparedStatement {
     private final PreparedStatement statement;
 
+    /**
+     * The bound parameters (index 0 is parameter 1), only kept if instrumented.
+     */
+    private Object[] parameters;
+    private int parameterCount;
+
     public DelegatingPreparedStatement(final PreparedStatement statement) {
-        super(statement);
+        this(statement, null, null);
+    }
+
+    /**
+     * Creates an instrumented prepared statement.
+     *
+     * @param statement       the target statement
+     * @param sql             the sql of statement (the template to record)
+     * @param instrumentation the instrumentation, or null if not instrumented
+     */
+    public DelegatingPreparedStatement(final PreparedStatement statement, final String sql,
+                                       final StatementInstrumentation instrumentation) {
+        super(statement, sql, instrumentation);
         this.statement = statement;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PreparedStatement getTargetStatement() throws SQLException {
+        return statement;
+    }
+
     @Override
     public ResultSet executeQuery() throws SQLException {
-        return statement.executeQuery();
+        if (!isInstrumented()) {
+            return getTargetStatement().executeQuery();
+        }
+        final long start = System.nanoTime();
+        try {
+            return instrument(getTargetStatement().executeQuery());
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public int executeUpdate() throws SQLException {
-        return statement.executeUpdate();
+        if (!isInstrumented()) {
+            return getTargetStatement().executeUpdate();
+        }
+        final long start = System.nanoTime();
+        int rows = -1;
+        try {
+            rows = getTargetStatement().executeUpdate();
+            return rows;
+        } finally {
+            recordExecution(start, rows);
+        }
     }
 
     @Override
     public void setNull(final int parameterIndex, final int sqlType) throws SQLException {
-        statement.setNull(parameterIndex, sqlType);
+        getTargetStatement().setNull(parameterIndex, sqlType);
+        bind(parameterIndex, null);
     }
 
     @Override
     public void setBoolean(final int parameterIndex, final boolean x) throws SQLException {
-        statement.setBoolean(parameterIndex, x);
+        getTargetStatement().setBoolean(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setByte(final int parameterIndex, final byte x) throws SQLException {
-        statement.setByte(parameterIndex, x);
+        getTargetStatement().setByte(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setShort(final int parameterIndex, final short x) throws SQLException {
-        statement.setShort(parameterIndex, x);
+        getTargetStatement().setShort(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setInt(final int parameterIndex, final int x) throws SQLException {
-        statement.setInt(parameterIndex, x);
+        getTargetStatement().setInt(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setLong(final int parameterIndex, final long x) throws SQLException {
-        statement.setLong(parameterIndex, x);
+        getTargetStatement().setLong(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setFloat(final int parameterIndex, final float x) throws SQLException {
-        statement.setFloat(parameterIndex, x);
+        getTargetStatement().setFloat(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setDouble(final int parameterIndex, final double x) throws SQLException {
-        statement.setDouble(parameterIndex, x);
+        getTargetStatement().setDouble(parameterIndex, x);
+        if (isInstrumented()) {
+            bind(parameterIndex, x);
+        }
     }
 
     @Override
     public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException {
-        statement.setBigDecimal(parameterIndex, x);
+        getTargetStatement().setBigDecimal(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setString(final int parameterIndex, final String x) throws SQLException {
-        statement.setString(parameterIndex, x);
+        getTargetStatement().setString(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setBytes(final int parameterIndex, final byte[] x) throws SQLException {
-        statement.setBytes(parameterIndex, x);
+        getTargetStatement().setBytes(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setDate(final int parameterIndex, final Date x) throws SQLException {
-        statement.setDate(parameterIndex, x);
+        getTargetStatement().setDate(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setTime(final int parameterIndex, final Time x) throws SQLException {
-        statement.setTime(parameterIndex, x);
+        getTargetStatement().setTime(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException {
-        statement.setTimestamp(parameterIndex, x);
+        getTargetStatement().setTimestamp(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setAsciiStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
-        statement.setAsciiStream(parameterIndex, x, length);
+        getTargetStatement().setAsciiStream(parameterIndex, x, length);
+        bind(parameterIndex, x);
     }
 
     @Override
     @SuppressWarnings("deprecation")
     public void setUnicodeStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
-        statement.setUnicodeStream(parameterIndex, x, length);
+        getTargetStatement().setUnicodeStream(parameterIndex, x, length);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setBinaryStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
-        statement.setBinaryStream(parameterIndex, x, length);
+        getTargetStatement().setBinaryStream(parameterIndex, x, length);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void clearParameters() throws SQLException {
-        statement.clearParameters();
+        getTargetStatement().clearParameters();
+        parameters = null;
+        parameterCount = 0;
     }
 
     @Override
     public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException {
-        statement.setObject(parameterIndex, x, targetSqlType);
+        getTargetStatement().setObject(parameterIndex, x, targetSqlType);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setObject(final int parameterIndex, final Object x) throws SQLException {
-        statement.setObject(parameterIndex, x);
+        getTargetStatement().setObject(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public boolean execute() throws SQLException {
-        return statement.execute();
+        if (!isInstrumented()) {
+            return getTargetStatement().execute();
+        }
+        final long start = System.nanoTime();
+        try {
+            return getTargetStatement().execute();
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public void addBatch() throws SQLException {
-        statement.addBatch();
+        getTargetStatement().addBatch();
     }
 
     @Override
     public void setCharacterStream(final int parameterIndex, final Reader reader, final int length) throws SQLException {
-        statement.setCharacterStream(parameterIndex, reader, length);
+        getTargetStatement().setCharacterStream(parameterIndex, reader, length);
+        bind(parameterIndex, reader);
     }
 
     @Override
     public void setRef(final int parameterIndex, final Ref x) throws SQLException {
-        statement.setRef(parameterIndex, x);
+        getTargetStatement().setRef(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setBlob(final int parameterIndex, final Blob x) throws SQLException {
-        statement.setBlob(parameterIndex, x);
+        getTargetStatement().setBlob(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setClob(final int parameterIndex, final Clob x) throws SQLException {
-        statement.setClob(parameterIndex, x);
+        getTargetStatement().setClob(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setArray(final int parameterIndex, final Array x) throws SQLException {
-        statement.setArray(parameterIndex, x);
+        getTargetStatement().setArray(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public ResultSetMetaData getMetaData() throws SQLException {
-        return statement.getMetaData();
+        return getTargetStatement().getMetaData();
     }
 
     @Override
     public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException {
-        statement.setDate(parameterIndex, x, cal);
+        getTargetStatement().setDate(parameterIndex, x, cal);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException {
-        statement.setTime(parameterIndex, x, cal);
+        getTargetStatement().setTime(parameterIndex, x, cal);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException {
-        statement.setTimestamp(parameterIndex, x, cal);
+        getTargetStatement().setTimestamp(parameterIndex, x, cal);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
-        statement.setNull(parameterIndex, sqlType, typeName);
+        getTargetStatement().setNull(parameterIndex, sqlType, typeName);
+        bind(parameterIndex, null);
     }
 
     @Override
     public void setURL(final int parameterIndex, final URL x) throws SQLException {
-        statement.setURL(parameterIndex, x);
+        getTargetStatement().setURL(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public ParameterMetaData getParameterMetaData() throws SQLException {
-        return statement.getParameterMetaData();
+        return getTargetStatement().getParameterMetaData();
     }
 
     @Override
     public void setRowId(final int parameterIndex, final RowId x) throws SQLException {
-        statement.setRowId(parameterIndex, x);
+        getTargetStatement().setRowId(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setNString(final int parameterIndex, final String value) throws SQLException {
-        statement.setNString(parameterIndex, value);
+        getTargetStatement().setNString(parameterIndex, value);
+        bind(parameterIndex, value);
     }
 
     @Override
     public void setNCharacterStream(final int parameterIndex, final Reader value, final long length) throws SQLException {
-        statement.setNCharacterStream(parameterIndex, value, length);
+        getTargetStatement().setNCharacterStream(parameterIndex, value, length);
+        bind(parameterIndex, value);
     }
 
     @Override
     public void setNClob(final int parameterIndex, final NClob value) throws SQLException {
-        statement.setNClob(parameterIndex, value);
+        getTargetStatement().setNClob(parameterIndex, value);
+        bind(parameterIndex, value);
     }
 
     @Override
     public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
-        statement.setClob(parameterIndex, reader, length);
+        getTargetStatement().setClob(parameterIndex, reader, length);
+        bind(parameterIndex, reader);
     }
 
     @Override
     public void setBlob(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException {
-        statement.setBlob(parameterIndex, inputStream, length);
+        getTargetStatement().setBlob(parameterIndex, inputStream, length);
+        bind(parameterIndex, inputStream);
     }
 
     @Override
     public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
-        statement.setNClob(parameterIndex, reader, length);
+        getTargetStatement().setNClob(parameterIndex, reader, length);
+        bind(parameterIndex, reader);
     }
 
     @Override
     public void setSQLXML(final int parameterIndex, final SQLXML xmlObject) throws SQLException {
-        statement.setSQLXML(parameterIndex, xmlObject);
+        getTargetStatement().setSQLXML(parameterIndex, xmlObject);
+        bind(parameterIndex, xmlObject);
     }
 
     @Override
     public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength) throws SQLException {
-        statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        getTargetStatement().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setAsciiStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
-        statement.setAsciiStream(parameterIndex, x, length);
+        getTargetStatement().setAsciiStream(parameterIndex, x, length);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setBinaryStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
-        statement.setBinaryStream(parameterIndex, x, length);
+        getTargetStatement().setBinaryStream(parameterIndex, x, length);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setCharacterStream(final int parameterIndex, final Reader reader, final long length) throws SQLException {
-        statement.setCharacterStream(parameterIndex, reader, length);
+        getTargetStatement().setCharacterStream(parameterIndex, reader, length);
+        bind(parameterIndex, reader);
     }
 
     @Override
     public void setAsciiStream(final int parameterIndex, final InputStream x) throws SQLException {
-        statement.setAsciiStream(parameterIndex, x);
+        getTargetStatement().setAsciiStream(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setBinaryStream(final int parameterIndex, final InputStream x) throws SQLException {
-        statement.setBinaryStream(parameterIndex, x);
+        getTargetStatement().setBinaryStream(parameterIndex, x);
+        bind(parameterIndex, x);
     }
 
     @Override
     public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException {
-        statement.setCharacterStream(parameterIndex, reader);
+        getTargetStatement().setCharacterStream(parameterIndex, reader);
+        bind(parameterIndex, reader);
     }
 
     @Override
     public void setNCharacterStream(final int parameterIndex, final Reader value) throws SQLException {
-        statement.setNCharacterStream(parameterIndex, value);
+        getTargetStatement().setNCharacterStream(parameterIndex, value);
+        bind(parameterIndex, value);
     }
 
     @Override
     public void setClob(final int parameterIndex, final Reader reader) throws SQLException {
-        statement.setClob(parameterIndex, reader);
+        getTargetStatement().setClob(parameterIndex, reader);
+        bind(parameterIndex, reader);
     }
 
     @Override
     public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException {
-        statement.setBlob(parameterIndex, inputStream);
+        getTargetStatement().setBlob(parameterIndex, inputStream);
+        bind(parameterIndex, inputStream);
     }
 
     @Override
     public void setNClob(final int parameterIndex, final Reader reader) throws SQLException {
-        statement.setNClob(parameterIndex, reader);
+        getTargetStatement().setNClob(parameterIndex, reader);
+        bind(parameterIndex, reader);
+    }
+
+    /**
+     * Keeps the bound parameter for the slow query log if instrumented,
+     * the primitive setters check {@link #isInstrumented()} first so they do not box when not instrumented.
+     *
+     * @param parameterIndex the parameter index
+     * @param value          the parameter value
+     */
+    protected void bind(final int parameterIndex, final Object value) {
+        if (!isInstrumented() || 1 > parameterIndex) {
+            return;
+        }
+        if (null == parameters) {
+            parameters = new Object[Math.max(parameterIndex, 8)];
+        } else if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length * 2));
+        }
+        parameters[parameterIndex - 1] = value;
+        parameterCount = Math.max(parameterCount, parameterIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Object[] getBoundParameters() {
+        return null != parameters ? Arrays.copyOf(parameters, parameterCount) : null;
     }
 }
@@ -0,0 +1,995 @@
+package freework.jdbc.statement;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * A {@link ResultSet} that delegates all calls to the target result set.
+ *
+ * @author vacoor
+ */
+public class DelegatingResultSet implements ResultSet {
+    private final ResultSet resultSet;
+
+    public DelegatingResultSet(final ResultSet resultSet) {
+        this.resultSet = resultSet;
+    }
+
+    public ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    /**
+     * Returns the result set to delegate calls to.
+     *
+     * @return the target result set
+     * @throws SQLException if the result set cannot be used
+     */
+    protected ResultSet getTargetResultSet() throws SQLException {
+        return resultSet;
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> interfaceClass) throws SQLException {
+        return getTargetResultSet().unwrap(interfaceClass);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> interfaceClass) throws SQLException {
+        return getTargetResultSet().isWrapperFor(interfaceClass);
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        return getTargetResultSet().next();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        getTargetResultSet().close();
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return getTargetResultSet().wasNull();
+    }
+
+    @Override
+    public String getString(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getString(columnIndex);
+    }
+
+    @Override
+    public boolean getBoolean(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getBoolean(columnIndex);
+    }
+
+    @Override
+    public byte getByte(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getByte(columnIndex);
+    }
+
+    @Override
+    public short getShort(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getShort(columnIndex);
+    }
+
+    @Override
+    public int getInt(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getInt(columnIndex);
+    }
+
+    @Override
+    public long getLong(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getLong(columnIndex);
+    }
+
+    @Override
+    public float getFloat(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getFloat(columnIndex);
+    }
+
+    @Override
+    public double getDouble(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getDouble(columnIndex);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public BigDecimal getBigDecimal(final int columnIndex, final int scale) throws SQLException {
+        return getTargetResultSet().getBigDecimal(columnIndex, scale);
+    }
+
+    @Override
+    public byte[] getBytes(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getBytes(columnIndex);
+    }
+
+    @Override
+    public Date getDate(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getDate(columnIndex);
+    }
+
+    @Override
+    public Time getTime(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getTime(columnIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getTimestamp(columnIndex);
+    }
+
+    @Override
+    public InputStream getAsciiStream(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getAsciiStream(columnIndex);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public InputStream getUnicodeStream(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getUnicodeStream(columnIndex);
+    }
+
+    @Override
+    public InputStream getBinaryStream(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getBinaryStream(columnIndex);
+    }
+
+    @Override
+    public String getString(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getString(columnLabel);
+    }
+
+    @Override
+    public boolean getBoolean(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getBoolean(columnLabel);
+    }
+
+    @Override
+    public byte getByte(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getByte(columnLabel);
+    }
+
+    @Override
+    public short getShort(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getShort(columnLabel);
+    }
+
+    @Override
+    public int getInt(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getInt(columnLabel);
+    }
+
+    @Override
+    public long getLong(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getLong(columnLabel);
+    }
+
+    @Override
+    public float getFloat(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getFloat(columnLabel);
+    }
+
+    @Override
+    public double getDouble(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getDouble(columnLabel);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public BigDecimal getBigDecimal(final String columnLabel, final int scale) throws SQLException {
+        return getTargetResultSet().getBigDecimal(columnLabel, scale);
+    }
+
+    @Override
+    public byte[] getBytes(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getBytes(columnLabel);
+    }
+
+    @Override
+    public Date getDate(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getDate(columnLabel);
+    }
+
+    @Override
+    public Time getTime(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getTime(columnLabel);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getTimestamp(columnLabel);
+    }
+
+    @Override
+    public InputStream getAsciiStream(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getAsciiStream(columnLabel);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public InputStream getUnicodeStream(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getUnicodeStream(columnLabel);
+    }
+
+    @Override
+    public InputStream getBinaryStream(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getBinaryStream(columnLabel);
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return getTargetResultSet().getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        getTargetResultSet().clearWarnings();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        return getTargetResultSet().getCursorName();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return getTargetResultSet().getMetaData();
+    }
+
+    @Override
+    public Object getObject(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getObject(columnIndex);
+    }
+
+    @Override
+    public Object getObject(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getObject(columnLabel);
+    }
+
+    @Override
+    public int findColumn(final String columnLabel) throws SQLException {
+        return getTargetResultSet().findColumn(columnLabel);
+    }
+
+    @Override
+    public Reader getCharacterStream(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getCharacterStream(columnIndex);
+    }
+
+    @Override
+    public Reader getCharacterStream(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getCharacterStream(columnLabel);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getBigDecimal(columnIndex);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getBigDecimal(columnLabel);
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return getTargetResultSet().isBeforeFirst();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return getTargetResultSet().isAfterLast();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return getTargetResultSet().isFirst();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        return getTargetResultSet().isLast();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        getTargetResultSet().beforeFirst();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        getTargetResultSet().afterLast();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        return getTargetResultSet().first();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        return getTargetResultSet().last();
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return getTargetResultSet().getRow();
+    }
+
+    @Override
+    public boolean absolute(final int row) throws SQLException {
+        return getTargetResultSet().absolute(row);
+    }
+
+    @Override
+    public boolean relative(final int rows) throws SQLException {
+        return getTargetResultSet().relative(rows);
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        return getTargetResultSet().previous();
+    }
+
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException {
+        getTargetResultSet().setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return getTargetResultSet().getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(final int rows) throws SQLException {
+        getTargetResultSet().setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return getTargetResultSet().getFetchSize();
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return getTargetResultSet().getType();
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        return getTargetResultSet().getConcurrency();
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return getTargetResultSet().rowUpdated();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return getTargetResultSet().rowInserted();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return getTargetResultSet().rowDeleted();
+    }
+
+    @Override
+    public void updateNull(final int columnIndex) throws SQLException {
+        getTargetResultSet().updateNull(columnIndex);
+    }
+
+    @Override
+    public void updateBoolean(final int columnIndex, final boolean x) throws SQLException {
+        getTargetResultSet().updateBoolean(columnIndex, x);
+    }
+
+    @Override
+    public void updateByte(final int columnIndex, final byte x) throws SQLException {
+        getTargetResultSet().updateByte(columnIndex, x);
+    }
+
+    @Override
+    public void updateShort(final int columnIndex, final short x) throws SQLException {
+        getTargetResultSet().updateShort(columnIndex, x);
+    }
+
+    @Override
+    public void updateInt(final int columnIndex, final int length) throws SQLException {
+        getTargetResultSet().updateInt(columnIndex, length);
+    }
+
+    @Override
+    public void updateLong(final int columnIndex, final long length) throws SQLException {
+        getTargetResultSet().updateLong(columnIndex, length);
+    }
+
+    @Override
+    public void updateFloat(final int columnIndex, final float x) throws SQLException {
+        getTargetResultSet().updateFloat(columnIndex, x);
+    }
+
+    @Override
+    public void updateDouble(final int columnIndex, final double x) throws SQLException {
+        getTargetResultSet().updateDouble(columnIndex, x);
+    }
+
+    @Override
+    public void updateBigDecimal(final int columnIndex, final BigDecimal x) throws SQLException {
+        getTargetResultSet().updateBigDecimal(columnIndex, x);
+    }
+
+    @Override
+    public void updateString(final int columnIndex, final String x) throws SQLException {
+        getTargetResultSet().updateString(columnIndex, x);
+    }
+
+    @Override
+    public void updateBytes(final int columnIndex, final byte[] x) throws SQLException {
+        getTargetResultSet().updateBytes(columnIndex, x);
+    }
+
+    @Override
+    public void updateDate(final int columnIndex, final Date x) throws SQLException {
+        getTargetResultSet().updateDate(columnIndex, x);
+    }
+
+    @Override
+    public void updateTime(final int columnIndex, final Time x) throws SQLException {
+        getTargetResultSet().updateTime(columnIndex, x);
+    }
+
+    @Override
+    public void updateTimestamp(final int columnIndex, final Timestamp x) throws SQLException {
+        getTargetResultSet().updateTimestamp(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x, final int length) throws SQLException {
+        getTargetResultSet().updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x, final int length) throws SQLException {
+        getTargetResultSet().updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader reader, final int length) throws SQLException {
+        getTargetResultSet().updateCharacterStream(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateObject(final int columnIndex, final Object x, final int scaleOrLength) throws SQLException {
+        getTargetResultSet().updateObject(columnIndex, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(final int columnIndex, final Object x) throws SQLException {
+        getTargetResultSet().updateObject(columnIndex, x);
+    }
+
+    @Override
+    public void updateNull(final String columnLabel) throws SQLException {
+        getTargetResultSet().updateNull(columnLabel);
+    }
+
+    @Override
+    public void updateBoolean(final String columnLabel, final boolean x) throws SQLException {
+        getTargetResultSet().updateBoolean(columnLabel, x);
+    }
+
+    @Override
+    public void updateByte(final String columnLabel, final byte x) throws SQLException {
+        getTargetResultSet().updateByte(columnLabel, x);
+    }
+
+    @Override
+    public void updateShort(final String columnLabel, final short x) throws SQLException {
+        getTargetResultSet().updateShort(columnLabel, x);
+    }
+
+    @Override
+    public void updateInt(final String columnLabel, final int length) throws SQLException {
+        getTargetResultSet().updateInt(columnLabel, length);
+    }
+
+    @Override
+    public void updateLong(final String columnLabel, final long length) throws SQLException {
+        getTargetResultSet().updateLong(columnLabel, length);
+    }
+
+    @Override
+    public void updateFloat(final String columnLabel, final float x) throws SQLException {
+        getTargetResultSet().updateFloat(columnLabel, x);
+    }
+
+    @Override
+    public void updateDouble(final String columnLabel, final double x) throws SQLException {
+        getTargetResultSet().updateDouble(columnLabel, x);
+    }
+
+    @Override
+    public void updateBigDecimal(final String columnLabel, final BigDecimal x) throws SQLException {
+        getTargetResultSet().updateBigDecimal(columnLabel, x);
+    }
+
+    @Override
+    public void updateString(final String columnLabel, final String x) throws SQLException {
+        getTargetResultSet().updateString(columnLabel, x);
+    }
+
+    @Override
+    public void updateBytes(final String columnLabel, final byte[] x) throws SQLException {
+        getTargetResultSet().updateBytes(columnLabel, x);
+    }
+
+    @Override
+    public void updateDate(final String columnLabel, final Date x) throws SQLException {
+        getTargetResultSet().updateDate(columnLabel, x);
+    }
+
+    @Override
+    public void updateTime(final String columnLabel, final Time x) throws SQLException {
+        getTargetResultSet().updateTime(columnLabel, x);
+    }
+
+    @Override
+    public void updateTimestamp(final String columnLabel, final Timestamp x) throws SQLException {
+        getTargetResultSet().updateTimestamp(columnLabel, x);
+    }
+
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x, final int length) throws SQLException {
+        getTargetResultSet().updateAsciiStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(final String columnLabel, final InputStream x, final int length) throws SQLException {
+        getTargetResultSet().updateBinaryStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader reader, final int length) throws SQLException {
+        getTargetResultSet().updateCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateObject(final String columnLabel, final Object x, final int scaleOrLength) throws SQLException {
+        getTargetResultSet().updateObject(columnLabel, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(final String columnLabel, final Object x) throws SQLException {
+        getTargetResultSet().updateObject(columnLabel, x);
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        getTargetResultSet().insertRow();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        getTargetResultSet().updateRow();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        getTargetResultSet().deleteRow();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        getTargetResultSet().refreshRow();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        getTargetResultSet().cancelRowUpdates();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        getTargetResultSet().moveToInsertRow();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        getTargetResultSet().moveToCurrentRow();
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        return getTargetResultSet().getStatement();
+    }
+
+    @Override
+    public Object getObject(final int columnIndex, final Map<String, Class<?>> map) throws SQLException {
+        return getTargetResultSet().getObject(columnIndex, map);
+    }
+
+    @Override
+    public Ref getRef(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getRef(columnIndex);
+    }
+
+    @Override
+    public Blob getBlob(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getBlob(columnIndex);
+    }
+
+    @Override
+    public Clob getClob(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getClob(columnIndex);
+    }
+
+    @Override
+    public Array getArray(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getArray(columnIndex);
+    }
+
+    @Override
+    public Object getObject(final String columnLabel, final Map<String, Class<?>> map) throws SQLException {
+        return getTargetResultSet().getObject(columnLabel, map);
+    }
+
+    @Override
+    public Ref getRef(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getRef(columnLabel);
+    }
+
+    @Override
+    public Blob getBlob(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getBlob(columnLabel);
+    }
+
+    @Override
+    public Clob getClob(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getClob(columnLabel);
+    }
+
+    @Override
+    public Array getArray(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getArray(columnLabel);
+    }
+
+    @Override
+    public Date getDate(final int columnIndex, final Calendar cal) throws SQLException {
+        return getTargetResultSet().getDate(columnIndex, cal);
+    }
+
+    @Override
+    public Date getDate(final String columnLabel, final Calendar cal) throws SQLException {
+        return getTargetResultSet().getDate(columnLabel, cal);
+    }
+
+    @Override
+    public Time getTime(final int columnIndex, final Calendar cal) throws SQLException {
+        return getTargetResultSet().getTime(columnIndex, cal);
+    }
+
+    @Override
+    public Time getTime(final String columnLabel, final Calendar cal) throws SQLException {
+        return getTargetResultSet().getTime(columnLabel, cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final int columnIndex, final Calendar cal) throws SQLException {
+        return getTargetResultSet().getTimestamp(columnIndex, cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(final String columnLabel, final Calendar cal) throws SQLException {
+        return getTargetResultSet().getTimestamp(columnLabel, cal);
+    }
+
+    @Override
+    public URL getURL(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getURL(columnIndex);
+    }
+
+    @Override
+    public URL getURL(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getURL(columnLabel);
+    }
+
+    @Override
+    public void updateRef(final int columnIndex, final Ref x) throws SQLException {
+        getTargetResultSet().updateRef(columnIndex, x);
+    }
+
+    @Override
+    public void updateRef(final String columnLabel, final Ref x) throws SQLException {
+        getTargetResultSet().updateRef(columnLabel, x);
+    }
+
+    @Override
+    public void updateBlob(final int columnIndex, final Blob x) throws SQLException {
+        getTargetResultSet().updateBlob(columnIndex, x);
+    }
+
+    @Override
+    public void updateBlob(final String columnLabel, final Blob x) throws SQLException {
+        getTargetResultSet().updateBlob(columnLabel, x);
+    }
+
+    @Override
+    public void updateClob(final int columnIndex, final Clob x) throws SQLException {
+        getTargetResultSet().updateClob(columnIndex, x);
+    }
+
+    @Override
+    public void updateClob(final String columnLabel, final Clob x) throws SQLException {
+        getTargetResultSet().updateClob(columnLabel, x);
+    }
+
+    @Override
+    public void updateArray(final int columnIndex, final Array x) throws SQLException {
+        getTargetResultSet().updateArray(columnIndex, x);
+    }
+
+    @Override
+    public void updateArray(final String columnLabel, final Array x) throws SQLException {
+        getTargetResultSet().updateArray(columnLabel, x);
+    }
+
+    @Override
+    public RowId getRowId(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getRowId(columnIndex);
+    }
+
+    @Override
+    public RowId getRowId(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getRowId(columnLabel);
+    }
+
+    @Override
+    public void updateRowId(final int columnIndex, final RowId x) throws SQLException {
+        getTargetResultSet().updateRowId(columnIndex, x);
+    }
+
+    @Override
+    public void updateRowId(final String columnLabel, final RowId x) throws SQLException {
+        getTargetResultSet().updateRowId(columnLabel, x);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return getTargetResultSet().getHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return getTargetResultSet().isClosed();
+    }
+
+    @Override
+    public void updateNString(final int columnIndex, final String x) throws SQLException {
+        getTargetResultSet().updateNString(columnIndex, x);
+    }
+
+    @Override
+    public void updateNString(final String columnLabel, final String x) throws SQLException {
+        getTargetResultSet().updateNString(columnLabel, x);
+    }
+
+    @Override
+    public void updateNClob(final int columnIndex, final NClob x) throws SQLException {
+        getTargetResultSet().updateNClob(columnIndex, x);
+    }
+
+    @Override
+    public void updateNClob(final String columnLabel, final NClob x) throws SQLException {
+        getTargetResultSet().updateNClob(columnLabel, x);
+    }
+
+    @Override
+    public NClob getNClob(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getNClob(columnIndex);
+    }
+
+    @Override
+    public NClob getNClob(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getNClob(columnLabel);
+    }
+
+    @Override
+    public SQLXML getSQLXML(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getSQLXML(columnIndex);
+    }
+
+    @Override
+    public SQLXML getSQLXML(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getSQLXML(columnLabel);
+    }
+
+    @Override
+    public void updateSQLXML(final int columnIndex, final SQLXML x) throws SQLException {
+        getTargetResultSet().updateSQLXML(columnIndex, x);
+    }
+
+    @Override
+    public void updateSQLXML(final String columnLabel, final SQLXML x) throws SQLException {
+        getTargetResultSet().updateSQLXML(columnLabel, x);
+    }
+
+    @Override
+    public String getNString(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getNString(columnIndex);
+    }
+
+    @Override
+    public String getNString(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getNString(columnLabel);
+    }
+
+    @Override
+    public Reader getNCharacterStream(final int columnIndex) throws SQLException {
+        return getTargetResultSet().getNCharacterStream(columnIndex);
+    }
+
+    @Override
+    public Reader getNCharacterStream(final String columnLabel) throws SQLException {
+        return getTargetResultSet().getNCharacterStream(columnLabel);
+    }
+
+    @Override
+    public void updateNCharacterStream(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateNCharacterStream(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateNCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x, final long length) throws SQLException {
+        getTargetResultSet().updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x, final long length) throws SQLException {
+        getTargetResultSet().updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateCharacterStream(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x, final long length) throws SQLException {
+        getTargetResultSet().updateAsciiStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(final String columnLabel, final InputStream x, final long length) throws SQLException {
+        getTargetResultSet().updateBinaryStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateBlob(final int columnIndex, final InputStream inputStream, final long length) throws SQLException {
+        getTargetResultSet().updateBlob(columnIndex, inputStream, length);
+    }
+
+    @Override
+    public void updateBlob(final String columnLabel, final InputStream inputStream, final long length) throws SQLException {
+        getTargetResultSet().updateBlob(columnLabel, inputStream, length);
+    }
+
+    @Override
+    public void updateClob(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateClob(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateClob(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateNClob(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateNClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateNClob(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        getTargetResultSet().updateNClob(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(final int columnIndex, final Reader reader) throws SQLException {
+        getTargetResultSet().updateNCharacterStream(columnIndex, reader);
+    }
+
+    @Override
+    public void updateNCharacterStream(final String columnLabel, final Reader reader) throws SQLException {
+        getTargetResultSet().updateNCharacterStream(columnLabel, reader);
+    }
+
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x) throws SQLException {
+        getTargetResultSet().updateAsciiStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x) throws SQLException {
+        getTargetResultSet().updateBinaryStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader reader) throws SQLException {
+        getTargetResultSet().updateCharacterStream(columnIndex, reader);
+    }
+
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x) throws SQLException {
+        getTargetResultSet().updateAsciiStream(columnLabel, x);
+    }
+
+    @Override
+    public void updateBinaryStream(final String columnLabel, final InputStream x) throws SQLException {
+        getTargetResultSet().updateBinaryStream(columnLabel, x);
+    }
+
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader reader) throws SQLException {
+        getTargetResultSet().updateCharacterStream(columnLabel, reader);
+    }
+
+    @Override
+    public void updateBlob(final int columnIndex, final InputStream inputStream) throws SQLException {
+        getTargetResultSet().updateBlob(columnIndex, inputStream);
+    }
+
+    @Override
+    public void updateBlob(final String columnLabel, final InputStream inputStream) throws SQLException {
+        getTargetResultSet().updateBlob(columnLabel, inputStream);
+    }
+
+    @Override
+    public void updateClob(final int columnIndex, final Reader reader) throws SQLException {
+        getTargetResultSet().updateClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateClob(final String columnLabel, final Reader reader) throws SQLException {
+        getTargetResultSet().updateClob(columnLabel, reader);
+    }
+
+    @Override
+    public void updateNClob(final int columnIndex, final Reader reader) throws SQLException {
+        getTargetResultSet().updateNClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateNClob(final String columnLabel, final Reader reader) throws SQLException {
+        getTargetResultSet().updateNClob(columnLabel, reader);
+    }
+
+    @Override
+    public <T> T getObject(final int columnIndex, final Class<T> type) throws SQLException {
+        return getTargetResultSet().getObject(columnIndex, type);
+    }
+
+    @Override
+    public <T> T getObject(final String columnLabel, final Class<T> type) throws SQLException {
+        return getTargetResultSet().getObject(columnLabel, type);
+    }
+}
@@ -3,237 +3,438 @@ package freework.jdbc.statement;
 import java.sql.*;
 
 /**
+ * A {@link Statement} that delegates all calls to the target statement.
+ * <p>
+ * If created with a {@link StatementInstrumentation}, the executions and the iteration of the returned result sets
+ * are timed and recorded by the instrumentation.
+ *
  * @author vacoor
  */
 public class DelegatingStatement implements Statement {
     private final Statement statement;
 
+    /**
+     * The instrumentation, null if not instrumented.
+     */
+    private final StatementInstrumentation instrumentation;
+
+    /**
+     * The sql template to record (the last executed sql for plain statement).
+     */
+    private String sql;
+
+    private ResultSet resultSet;
+    private ResultSet instrumentedResultSet;
+
     public DelegatingStatement(final Statement statement) {
+        this(statement, null, null);
+    }
+
+    /**
+     * Creates an instrumented statement, executions are timed and recorded by the instrumentation.
+     *
+     * @param statement       the target statement
+     * @param instrumentation the instrumentation, or null if not instrumented
+     */
+    public DelegatingStatement(final Statement statement, final StatementInstrumentation instrumentation) {
+        this(statement, null, instrumentation);
+    }
+
+    protected DelegatingStatement(final Statement statement, final String sql,
+                                  final StatementInstrumentation instrumentation) {
         this.statement = statement;
+        this.sql = sql;
+        this.instrumentation = instrumentation;
     }
 
     public Statement getStatement() {
         return statement;
     }
 
+    /**
+     * Returns the statement to delegate calls to.
+     *
+     * @return the target statement
+     * @throws SQLException if the statement cannot be used (eg: closed wrapper)
+     */
+    protected Statement getTargetStatement() throws SQLException {
+        return statement;
+    }
+
+    public StatementInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    protected boolean isInstrumented() {
+        return null != instrumentation;
+    }
+
+    /**
+     * Records the execution of the current sql.
+     *
+     * @param start the start nano time
+     * @param rows  the affected rows, negative if unknown
+     */
+    protected void recordExecution(final long start, final long rows) {
+        final long elapsed = System.nanoTime() - start;
+        instrumentation.recordExecution(sql, elapsed, rows, instrumentation.isSlow(elapsed) ? getBoundParameters() : null);
+    }
+
+    /**
+     * Records the batch execution of the current sql.
+     *
+     * @param start  the start nano time
+     * @param counts the update counts, null if failed
+     */
+    protected void recordBatch(final long start, final int[] counts) {
+        instrumentation.recordBatch(sql, System.nanoTime() - start, null != counts ? counts : new int[0]);
+    }
+
+    /**
+     * Returns the result set that records its iteration if instrumented.
+     *
+     * @param resultSet the result set
+     * @return the result set
+     */
+    protected ResultSet instrument(final ResultSet resultSet) {
+        return null != instrumentation ? instrumentation.instrument(sql, resultSet) : resultSet;
+    }
+
+    /**
+     * Returns the bound parameters to log with slow query.
+     *
+     * @return the bound parameters, or null if not available
+     */
+    protected Object[] getBoundParameters() {
+        return null;
+    }
+
     @Override
     public <T> T unwrap(final Class<T> interfaceClass) throws SQLException {
-        return statement.unwrap(interfaceClass);
+        return getTargetStatement().unwrap(interfaceClass);
     }
 
     @Override
     public boolean isWrapperFor(final Class<?> interfaceClass) throws SQLException {
-        return statement.isWrapperFor(interfaceClass);
+        return getTargetStatement().isWrapperFor(interfaceClass);
     }
 
     @Override
     public boolean execute(final String sql) throws SQLException {
-        return statement.execute(sql);
+        if (!isInstrumented()) {
+            return getTargetStatement().execute(sql);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        try {
+            return getTargetStatement().execute(sql);
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
-        return statement.execute(sql, autoGeneratedKeys);
+        if (!isInstrumented()) {
+            return getTargetStatement().execute(sql, autoGeneratedKeys);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        try {
+            return getTargetStatement().execute(sql, autoGeneratedKeys);
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
-        return statement.execute(sql, columnIndexes);
+        if (!isInstrumented()) {
+            return getTargetStatement().execute(sql, columnIndexes);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        try {
+            return getTargetStatement().execute(sql, columnIndexes);
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public boolean execute(final String sql, final String[] columnNames) throws SQLException {
-        return statement.execute(sql, columnNames);
+        if (!isInstrumented()) {
+            return getTargetStatement().execute(sql, columnNames);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        try {
+            return getTargetStatement().execute(sql, columnNames);
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public ResultSet executeQuery(final String sql) throws SQLException {
-        return statement.executeQuery(sql);
+        if (!isInstrumented()) {
+            return getTargetStatement().executeQuery(sql);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        try {
+            return instrument(getTargetStatement().executeQuery(sql));
+        } finally {
+            recordExecution(start, -1);
+        }
     }
 
     @Override
     public int executeUpdate(final String sql) throws SQLException {
-        return statement.executeUpdate(sql);
+        if (!isInstrumented()) {
+            return getTargetStatement().executeUpdate(sql);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        int rows = -1;
+        try {
+            rows = getTargetStatement().executeUpdate(sql);
+            return rows;
+        } finally {
+            recordExecution(start, rows);
+        }
     }
 
     @Override
     public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
-        return statement.executeUpdate(sql, autoGeneratedKeys);
+        if (!isInstrumented()) {
+            return getTargetStatement().executeUpdate(sql, autoGeneratedKeys);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        int rows = -1;
+        try {
+            rows = getTargetStatement().executeUpdate(sql, autoGeneratedKeys);
+            return rows;
+        } finally {
+            recordExecution(start, rows);
+        }
     }
 
     @Override
     public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
-        return statement.executeUpdate(sql, columnIndexes);
+        if (!isInstrumented()) {
+            return getTargetStatement().executeUpdate(sql, columnIndexes);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        int rows = -1;
+        try {
+            rows = getTargetStatement().executeUpdate(sql, columnIndexes);
+            return rows;
+        } finally {
+            recordExecution(start, rows);
+        }
     }
 
     @Override
     public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
-        return statement.executeUpdate(sql, columnNames);
+        if (!isInstrumented()) {
+            return getTargetStatement().executeUpdate(sql, columnNames);
+        }
+        this.sql = sql;
+        final long start = System.nanoTime();
+        int rows = -1;
+        try {
+            rows = getTargetStatement().executeUpdate(sql, columnNames);
+            return rows;
+        } finally {
+            recordExecution(start, rows);
+        }
     }
 
     @Override
     public void addBatch(final String sql) throws SQLException {
-        statement.addBatch(sql);
+        this.sql = sql;
+        getTargetStatement().addBatch(sql);
     }
 
     @Override
     public int[] executeBatch() throws SQLException {
-        return statement.executeBatch();
+        if (!isInstrumented()) {
+            return getTargetStatement().executeBatch();
+        }
+        final long start = System.nanoTime();
+        int[] counts = null;
+        try {
+            counts = getTargetStatement().executeBatch();
+            return counts;
+        } finally {
+            recordBatch(start, counts);
+        }
     }
 
     @Override
     public void clearBatch() throws SQLException {
-        statement.clearBatch();
+        getTargetStatement().clearBatch();
     }
 
 
     @Override
     public int getMaxFieldSize() throws SQLException {
-        return statement.getMaxFieldSize();
+        return getTargetStatement().getMaxFieldSize();
     }
 
     @Override
     public void setMaxFieldSize(final int max) throws SQLException {
-        statement.setMaxFieldSize(max);
+        getTargetStatement().setMaxFieldSize(max);
     }
 
     @Override
     public int getMaxRows() throws SQLException {
-        return statement.getMaxRows();
+        return getTargetStatement().getMaxRows();
     }
 
     @Override
     public void setMaxRows(final int max) throws SQLException {
-        statement.setMaxRows(max);
+        getTargetStatement().setMaxRows(max);
     }
 
     @Override
     public void setEscapeProcessing(final boolean enable) throws SQLException {
-        statement.setEscapeProcessing(enable);
+        getTargetStatement().setEscapeProcessing(enable);
     }
 
     @Override
     public int getQueryTimeout() throws SQLException {
-        return statement.getQueryTimeout();
+        return getTargetStatement().getQueryTimeout();
     }
 
     @Override
     public void setQueryTimeout(final int seconds) throws SQLException {
-        statement.setQueryTimeout(seconds);
+        getTargetStatement().setQueryTimeout(seconds);
     }
 
     @Override
     public void cancel() throws SQLException {
-        statement.cancel();
+        getTargetStatement().cancel();
     }
 
     @Override
     public SQLWarning getWarnings() throws SQLException {
-        return statement.getWarnings();
+        return getTargetStatement().getWarnings();
     }
 
     @Override
     public void clearWarnings() throws SQLException {
-        statement.clearWarnings();
+        getTargetStatement().clearWarnings();
     }
 
     @Override
     public void setCursorName(final String name) throws SQLException {
-        statement.setCursorName(name);
+        getTargetStatement().setCursorName(name);
     }
 
     @Override
     public ResultSet getResultSet() throws SQLException {
-        return statement.getResultSet();
+        final ResultSet rs = getTargetStatement().getResultSet();
+        if (!isInstrumented() || null == rs) {
+            return rs;
+        }
+        if (rs != resultSet) {
+            resultSet = rs;
+            instrumentedResultSet = instrument(rs);
+        }
+        return instrumentedResultSet;
     }
 
     @Override
     public int getUpdateCount() throws SQLException {
-        return statement.getUpdateCount();
+        return getTargetStatement().getUpdateCount();
     }
 
     @Override
     public boolean getMoreResults() throws SQLException {
-        return statement.getMoreResults();
+        return getTargetStatement().getMoreResults();
     }
 
     @Override
     public void setFetchDirection(final int direction) throws SQLException {
-        statement.setFetchDirection(direction);
+        getTargetStatement().setFetchDirection(direction);
     }
 
     @Override
     public int getFetchDirection() throws SQLException {
-        return statement.getFetchDirection();
+        return getTargetStatement().getFetchDirection();
     }
 
     @Override
     public void setFetchSize(final int rows) throws SQLException {
-        statement.setFetchSize(rows);
+        getTargetStatement().setFetchSize(rows);
     }
 
     @Override
     public int getFetchSize() throws SQLException {
-        return statement.getFetchSize();
+        return getTargetStatement().getFetchSize();
     }
 
     @Override
     public int getResultSetConcurrency() throws SQLException {
-        return statement.getResultSetConcurrency();
+        return getTargetStatement().getResultSetConcurrency();
     }
 
     @Override
     public int getResultSetType() throws SQLException {
-        return statement.getResultSetType();
+        return getTargetStatement().getResultSetType();
     }
 
     @Override
     public Connection getConnection() throws SQLException {
-        return statement.getConnection();
+        return getTargetStatement().getConnection();
     }
 
     @Override
     public boolean getMoreResults(final int current) throws SQLException {
-        return statement.getMoreResults(current);
+        return getTargetStatement().getMoreResults(current);
     }
 
     @Override
     public ResultSet getGeneratedKeys() throws SQLException {
-        return statement.getGeneratedKeys();
+        return getTargetStatement().getGeneratedKeys();
     }
 
     @Override
     public int getResultSetHoldability() throws SQLException {
-        return statement.getResultSetHoldability();
+        return getTargetStatement().getResultSetHoldability();
     }
 
     @Override
     public boolean isClosed() throws SQLException {
-        return statement.isClosed();
+        return getTargetStatement().isClosed();
     }
 
     @Override
     public void setPoolable(final boolean poolable) throws SQLException {
-        statement.setPoolable(poolable);
+        getTargetStatement().setPoolable(poolable);
     }
 
     @Override
     public boolean isPoolable() throws SQLException {
-        return statement.isPoolable();
+        return getTargetStatement().isPoolable();
     }
 
     @Override
     public void closeOnCompletion() throws SQLException {
-        statement.closeOnCompletion();
+        getTargetStatement().closeOnCompletion();
     }
 
     @Override
     public boolean isCloseOnCompletion() throws SQLException {
-        return statement.isCloseOnCompletion();
+        return getTargetStatement().isCloseOnCompletion();
     }
 
     @Override
     public void close() throws SQLException {
-        statement.close();
+        getTargetStatement().close();
     }
 }
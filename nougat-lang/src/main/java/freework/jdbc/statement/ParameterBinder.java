@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc.statement;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds a parameter value to a {@link PreparedStatement} with a type-specialized setter.
+ *
+ * @author vacoor
+ * @see ParameterBinders
+ * @since 1.0.12
+ */
+public interface ParameterBinder {
+
+    /**
+     * Binds the value to the parameter.
+     *
+     * @param stmt  the prepared statement
+     * @param index the parameter index (the first parameter is 1)
+     * @param value the parameter value, may be null
+     * @throws SQLException if a database access error occurs
+     */
+    void bind(PreparedStatement stmt, int index, Object value) throws SQLException;
+
+    /**
+     * Returns the sql type ({@link java.sql.Types}) used to bind null.
+     *
+     * @return the sql type
+     */
+    int getSqlType();
+
+}
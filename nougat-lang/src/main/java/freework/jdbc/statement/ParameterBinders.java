@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc.statement;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Built-in {@link ParameterBinder}s.
+ * <p>
+ * A binder calls the setter of its type directly (eg: {@link PreparedStatement#setLong(int, long)}) and binds null
+ * with {@link PreparedStatement#setNull(int, int)} of its sql type, so the driver does not need to infer the type.
+ * Values that are not of the binder type are bound by {@link PreparedStatement#setObject(int, Object)}.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+@SuppressWarnings("PMD.AbstractClassShouldStartWithAbstractNamingRule")
+public abstract class ParameterBinders {
+    public static final ParameterBinder OBJECT = new ParameterBinder() {
+        @Override
+        public void bind(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setObject(index, value);
+        }
+
+        @Override
+        public int getSqlType() {
+            return Types.JAVA_OBJECT;
+        }
+    };
+
+    public static final ParameterBinder STRING = new AbstractTypedBinder(String.class, Types.VARCHAR) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setString(index, (String) value);
+        }
+    };
+
+    public static final ParameterBinder LONG = new AbstractTypedBinder(Long.class, Types.BIGINT) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setLong(index, (Long) value);
+        }
+    };
+
+    public static final ParameterBinder INT = new AbstractTypedBinder(Integer.class, Types.INTEGER) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setInt(index, (Integer) value);
+        }
+    };
+
+    public static final ParameterBinder SHORT = new AbstractTypedBinder(Short.class, Types.SMALLINT) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setShort(index, (Short) value);
+        }
+    };
+
+    public static final ParameterBinder BYTE = new AbstractTypedBinder(Byte.class, Types.TINYINT) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setByte(index, (Byte) value);
+        }
+    };
+
+    public static final ParameterBinder DOUBLE = new AbstractTypedBinder(Double.class, Types.DOUBLE) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setDouble(index, (Double) value);
+        }
+    };
+
+    public static final ParameterBinder FLOAT = new AbstractTypedBinder(Float.class, Types.REAL) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setFloat(index, (Float) value);
+        }
+    };
+
+    public static final ParameterBinder BOOLEAN = new AbstractTypedBinder(Boolean.class, Types.BOOLEAN) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setBoolean(index, (Boolean) value);
+        }
+    };
+
+    public static final ParameterBinder BIG_DECIMAL = new AbstractTypedBinder(BigDecimal.class, Types.DECIMAL) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setBigDecimal(index, (BigDecimal) value);
+        }
+    };
+
+    public static final ParameterBinder BYTES = new AbstractTypedBinder(byte[].class, Types.VARBINARY) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setBytes(index, (byte[]) value);
+        }
+    };
+
+    public static final ParameterBinder TIMESTAMP = new AbstractTypedBinder(Timestamp.class, Types.TIMESTAMP) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setTimestamp(index, (Timestamp) value);
+        }
+    };
+
+    public static final ParameterBinder DATE = new AbstractTypedBinder(java.sql.Date.class, Types.DATE) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setDate(index, (java.sql.Date) value);
+        }
+    };
+
+    public static final ParameterBinder TIME = new AbstractTypedBinder(Time.class, Types.TIME) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setTime(index, (Time) value);
+        }
+    };
+
+    /**
+     * Binds {@link java.util.Date} as timestamp.
+     */
+    public static final ParameterBinder UTIL_DATE = new AbstractTypedBinder(java.util.Date.class, Types.TIMESTAMP) {
+        @Override
+        protected void bindValue(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            stmt.setTimestamp(index, new Timestamp(((java.util.Date) value).getTime()));
+        }
+    };
+
+    private static final Map<Class<?>, ParameterBinder> BINDERS = new HashMap<Class<?>, ParameterBinder>(32);
+
+    static {
+        register(STRING, String.class);
+        register(LONG, Long.class, long.class);
+        register(INT, Integer.class, int.class);
+        register(SHORT, Short.class, short.class);
+        register(BYTE, Byte.class, byte.class);
+        register(DOUBLE, Double.class, double.class);
+        register(FLOAT, Float.class, float.class);
+        register(BOOLEAN, Boolean.class, boolean.class);
+        register(BIG_DECIMAL, BigDecimal.class);
+        register(BYTES, byte[].class);
+        register(TIMESTAMP, Timestamp.class);
+        register(DATE, java.sql.Date.class);
+        register(TIME, Time.class);
+        register(UTIL_DATE, java.util.Date.class);
+    }
+
+    /**
+     * Non-instantiate.
+     */
+    private ParameterBinders() {
+    }
+
+    private static void register(final ParameterBinder binder, final Class<?>... types) {
+        for (final Class<?> type : types) {
+            BINDERS.put(type, binder);
+        }
+    }
+
+    /**
+     * Returns the binder of the parameter type.
+     *
+     * @param type the parameter type, or null
+     * @return the binder, {@link #OBJECT} if the type is unknown
+     */
+    public static ParameterBinder forType(final Class<?> type) {
+        if (null == type) {
+            return OBJECT;
+        }
+        final ParameterBinder binder = BINDERS.get(type);
+        if (null != binder) {
+            return binder;
+        }
+        return java.util.Date.class.isAssignableFrom(type) ? UTIL_DATE : OBJECT;
+    }
+
+    /**
+     * Returns the binder of the parameter value type.
+     *
+     * @param value the sample value, or null
+     * @return the binder, {@link #OBJECT} if the value is null or the type is unknown
+     */
+    public static ParameterBinder forValue(final Object value) {
+        return null != value ? forType(value.getClass()) : OBJECT;
+    }
+
+    /**
+     * A binder of a known type.
+     */
+    private abstract static class AbstractTypedBinder implements ParameterBinder {
+        private final Class<?> type;
+        private final int sqlType;
+
+        AbstractTypedBinder(final Class<?> type, final int sqlType) {
+            this.type = type;
+            this.sqlType = sqlType;
+        }
+
+        @Override
+        public void bind(final PreparedStatement stmt, final int index, final Object value) throws SQLException {
+            if (null == value) {
+                stmt.setNull(index, sqlType);
+            } else if (type.isInstance(value)) {
+                bindValue(stmt, index, value);
+            } else {
+                stmt.setObject(index, value);
+            }
+        }
+
+        /**
+         * Binds the non-null value of the binder type.
+         *
+         * @param stmt  the prepared statement
+         * @param index the parameter index
+         * @param value the value of the binder type
+         * @throws SQLException if a database access error occurs
+         */
+        protected abstract void bindValue(PreparedStatement stmt, int index, Object value) throws SQLException;
+
+        @Override
+        public int getSqlType() {
+            return sqlType;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc.statement;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The compiled form of a named parameter sql.
+ * <p>
+ * A parsed sql holds the rewritten jdbc sql (every <code>:name</code> replaced with <code>?</code>)
+ * and the table of parameter name to jdbc parameter indexes (starts with 1).
+ * Instances are immutable and can be shared between threads and statements.
+ * <p>
+ * A named parameter bound to a collection (eg: <code>where id in (:ids)</code>) is expanded by {@link #expand(Map)}
+ * to a list of placeholders. The number of placeholders is rounded up to a power of two (the bucket size) and the
+ * extra placeholders repeat the last value, so a few sql shapes serve all list lengths and the statement and plan
+ * caches keep hitting.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public final class ParsedSql {
+    /**
+     * The named parameter pattern, eg: ':name', escape with '\:', a cast (eg: 'a::int') is not a parameter.
+     */
+    static final Pattern NAMED_PATTERN = Pattern.compile("(?<![\\\\:]):([-_0-9a-zA-Z]+)(?=\\s+|[,)]|$)");
+
+    /**
+     * The max number of expanded shapes cached per parsed sql.
+     */
+    private static final int MAX_CACHED_EXPANSIONS = 64;
+
+    /**
+     * The empty index.
+     */
+    private static final int[] EMPTY_INDEXES = new int[0];
+
+    /**
+     * The raw sql (with named parameters).
+     */
+    private final String rawSql;
+
+    /**
+     * The jdbc sql (named parameters replaced with '?').
+     */
+    private final String sql;
+
+    /**
+     * The parameter name to parameter indexes table.
+     */
+    private final Map<String, int[]> indexMap;
+
+    /**
+     * The number of jdbc parameters.
+     */
+    private final int parameterCount;
+
+    /**
+     * The expanded parameter name to bucket size table, empty if not expanded.
+     */
+    private final Map<String, Integer> expandedSizes;
+
+    /**
+     * The cached expansions (bucket sizes -&gt; expanded sql).
+     */
+    private final ConcurrentMap<String, ParsedSql> expansions = new ConcurrentHashMap<String, ParsedSql>(4);
+
+    ParsedSql(final String rawSql, final String sql, final Map<String, int[]> indexMap, final int parameterCount) {
+        this(rawSql, sql, indexMap, parameterCount, Collections.<String, Integer>emptyMap());
+    }
+
+    ParsedSql(final String rawSql, final String sql, final Map<String, int[]> indexMap,
+              final int parameterCount, final Map<String, Integer> expandedSizes) {
+        this.rawSql = rawSql;
+        this.sql = sql;
+        this.indexMap = Collections.unmodifiableMap(indexMap);
+        this.parameterCount = parameterCount;
+        this.expandedSizes = expandedSizes;
+    }
+
+    /**
+     * Parses the given named parameter sql.
+     *
+     * @param rawSql the sql with named parameters
+     * @return the parsed sql
+     */
+    public static ParsedSql parse(final String rawSql) {
+        final Matcher matcher = NAMED_PATTERN.matcher(rawSql);
+        final Map<String, int[]> indexMap = new LinkedHashMap<String, int[]>(16);
+
+        int count = 0;
+        while (matcher.find()) {
+            final String name = matcher.group(1);
+            final int[] indexes = indexMap.get(name);
+            final int[] newIndexes = null != indexes ? Arrays.copyOf(indexes, indexes.length + 1) : new int[1];
+
+            newIndexes[newIndexes.length - 1] = ++count;
+            indexMap.put(name, newIndexes);
+        }
+        final String sql = matcher.replaceAll("?").replace("\\:", ":");
+        return new ParsedSql(rawSql, sql, indexMap, count);
+    }
+
+    /**
+     * Returns the sql with the collection parameters expanded.
+     * <p>
+     * Parameters whose value is a {@link Collection} or an object array get {@link #bucketSize(int)} placeholders,
+     * the indexes of such a parameter are laid out occurrence by occurrence, each occurrence spans the bucket size.
+     *
+     * @param params the named parameters
+     * @return the expanded sql, or this if no parameter needs expansion
+     */
+    public ParsedSql expand(final Map<String, ?> params) {
+        if (null == params || !expandedSizes.isEmpty()) {
+            return this;
+        }
+        Map<String, Integer> sizes = null;
+        for (final String name : indexMap.keySet()) {
+            final int length = getLength(params.get(name));
+            if (0 <= length) {
+                if (null == sizes) {
+                    sizes = new LinkedHashMap<String, Integer>(4);
+                }
+                sizes.put(name, bucketSize(length));
+            }
+        }
+        if (null == sizes) {
+            return this;
+        }
+
+        final String key = sizes.toString();
+        ParsedSql expanded = expansions.get(key);
+        if (null == expanded) {
+            expanded = expand(rawSql, sizes);
+            if (expansions.size() < MAX_CACHED_EXPANSIONS) {
+                final ParsedSql previous = expansions.putIfAbsent(key, expanded);
+                expanded = null != previous ? previous : expanded;
+            }
+        }
+        return expanded;
+    }
+
+    private static ParsedSql expand(final String rawSql, final Map<String, Integer> sizes) {
+        final Matcher matcher = NAMED_PATTERN.matcher(rawSql);
+        final Map<String, int[]> indexMap = new LinkedHashMap<String, int[]>(16);
+        final StringBuffer buffer = new StringBuffer(rawSql.length() + 16);
+
+        int count = 0;
+        while (matcher.find()) {
+            final String name = matcher.group(1);
+            final Integer size = sizes.get(name);
+            final int n = null != size ? size : 1;
+            final int[] indexes = indexMap.get(name);
+            final int offset = null != indexes ? indexes.length : 0;
+            final int[] newIndexes = null != indexes ? Arrays.copyOf(indexes, offset + n) : new int[n];
+            final StringBuilder placeholders = new StringBuilder(n * 3);
+            for (int i = 0; i < n; i++) {
+                newIndexes[offset + i] = ++count;
+                placeholders.append(0 < i ? ", ?" : "?");
+            }
+            indexMap.put(name, newIndexes);
+            matcher.appendReplacement(buffer, placeholders.toString());
+        }
+        matcher.appendTail(buffer);
+        final String sql = buffer.toString().replace("\\:", ":");
+        return new ParsedSql(rawSql, sql, indexMap, count, Collections.unmodifiableMap(sizes));
+    }
+
+    /**
+     * Returns the number of elements of a collection parameter value.
+     *
+     * @param value the parameter value
+     * @return the number of elements, -1 if the value is not a collection
+     */
+    static int getLength(final Object value) {
+        if (value instanceof Collection<?>) {
+            return ((Collection<?>) value).size();
+        }
+        if (value instanceof Object[]) {
+            return ((Object[]) value).length;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of placeholders of a collection with the given number of elements (the next power of two).
+     *
+     * @param length the number of elements
+     * @return the bucket size, at least 1
+     */
+    public static int bucketSize(final int length) {
+        return 1 >= length ? 1 : Integer.highestOneBit(length - 1) << 1;
+    }
+
+    /**
+     * Returns the bucket size of an expanded parameter.
+     *
+     * @param name the parameter name
+     * @return the bucket size, 0 if the parameter is not expanded
+     */
+    public int getExpandedSize(final String name) {
+        final Integer size = expandedSizes.get(name);
+        return null != size ? size : 0;
+    }
+
+    /**
+     * Returns the raw sql (with named parameters).
+     *
+     * @return the raw sql
+     */
+    public String getRawSql() {
+        return rawSql;
+    }
+
+    /**
+     * Returns the jdbc sql (named parameters replaced with '?').
+     *
+     * @return the jdbc sql
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Returns whether the raw sql contains any named parameter.
+     *
+     * @return true if the raw sql contains named parameters
+     */
+    public boolean hasNamedParameters() {
+        return 0 < parameterCount;
+    }
+
+    /**
+     * Returns the number of jdbc parameters ('?').
+     *
+     * @return the number of jdbc parameters
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Returns the names of the named parameters in order of first appearance.
+     *
+     * @return the parameter names
+     */
+    public Set<String> getParameterNames() {
+        return indexMap.keySet();
+    }
+
+    /**
+     * Returns the jdbc parameter indexes of the named parameter.
+     * <p>
+     * NOTE: the returned array is shared, do not modify.
+     *
+     * @param name the parameter name
+     * @return the parameter indexes, empty array if the parameter does not exist
+     */
+    public int[] getIndexes(final String name) {
+        final int[] indexes = indexMap.get(name);
+        return null != indexes ? indexes : EMPTY_INDEXES;
+    }
+
+    /**
+     * Returns the parameter name to parameter indexes table.
+     *
+     * @return the unmodifiable index table
+     */
+    public Map<String, int[]> getIndexMap() {
+        return indexMap;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return sql;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc.statement;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache of {@link ParsedSql} keyed by the raw sql.
+ * <p>
+ * When the cache is full the oldest template is evicted (FIFO), a re-parse of an evicted sql is cheap
+ * compared to the cost of tracking access order on every hit.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class ParsedSqlCache {
+    /**
+     * The default max size of cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * The shared cache instance.
+     */
+    private static final ParsedSqlCache SHARED = new ParsedSqlCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * The max size of cache.
+     */
+    private final int maxSize;
+
+    /**
+     * The cached templates.
+     */
+    private final ConcurrentMap<String, ParsedSql> templates;
+
+    /**
+     * The insertion order of templates.
+     */
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * The number of templates.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a parsed sql cache.
+     *
+     * @param maxSize the max number of cached templates
+     */
+    public ParsedSqlCache(final int maxSize) {
+        if (1 > maxSize) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.templates = new ConcurrentHashMap<String, ParsedSql>(Math.min(maxSize, DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Returns the shared cache used by {@link DelegatingNamedParameterStatement#newStatement(java.sql.Connection, String)}.
+     *
+     * @return the shared cache
+     */
+    public static ParsedSqlCache getSharedInstance() {
+        return SHARED;
+    }
+
+    /**
+     * Gets the parsed sql of the raw sql, parses and caches it if absent.
+     *
+     * @param rawSql the raw sql
+     * @return the parsed sql
+     */
+    public ParsedSql get(final String rawSql) {
+        final ParsedSql cached = templates.get(rawSql);
+        if (null != cached) {
+            hitCount.incrementAndGet();
+            return cached;
+        }
+
+        missCount.incrementAndGet();
+        final ParsedSql parsed = ParsedSql.parse(rawSql);
+        final ParsedSql previous = templates.putIfAbsent(rawSql, parsed);
+        if (null != previous) {
+            return previous;
+        }
+
+        insertionOrder.offer(rawSql);
+        if (maxSize < size.incrementAndGet()) {
+            evict();
+        }
+        return parsed;
+    }
+
+    private void evict() {
+        while (maxSize < size.get()) {
+            final String eldest = insertionOrder.poll();
+            if (null == eldest) {
+                break;
+            }
+            if (null != templates.remove(eldest)) {
+                size.decrementAndGet();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached templates.
+     */
+    public void clear() {
+        String key;
+        while (null != (key = insertionOrder.poll())) {
+            if (null != templates.remove(key)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached templates.
+     *
+     * @return the number of cached templates
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the max number of cached templates.
+     *
+     * @return the max size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of cache hits.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of cache misses.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of evicted templates.
+     *
+     * @return the number of evicted templates
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ParsedSqlCache{size=" + size() + ", maxSize=" + maxSize + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + '}';
+    }
+}
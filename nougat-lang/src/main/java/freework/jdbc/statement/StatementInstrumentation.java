@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.jdbc.statement;
+
+import freework.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects per-sql execution statistics of the instrumented statement wrappers.
+ * <p>
+ * An instrumentation is passed to the instrumented constructors of {@link DelegatingStatement},
+ * {@link DelegatingPreparedStatement} and {@link DelegatingNamedParameterStatement}, the wrappers then time every
+ * {@code execute*}, {@code executeBatch} and the iteration of the returned result sets.
+ * <p>
+ * Statistics are kept per sql template (the sql of the prepared statement, or the raw sql of the named parameter
+ * statement), each with a log2 latency histogram, so recording is a few atomic increments and never allocates.
+ * Executions slower than the slow threshold are logged with their bound parameters.
+ * <blockquote><pre>
+ * StatementInstrumentation instrumentation = new StatementInstrumentation().slowThreshold(200, TimeUnit.MILLISECONDS);
+ * PreparedStatement stmt = new DelegatingPreparedStatement(conn.prepareStatement(sql), sql, instrumentation);
+ * ...
+ * instrumentation.getStats(sql).getPercentile(0.99, TimeUnit.MILLISECONDS);
+ * </pre></blockquote>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class StatementInstrumentation {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementInstrumentation.class);
+
+    /**
+     * The default max number of distinct sql templates.
+     */
+    public static final int DEFAULT_MAX_TEMPLATES = 1024;
+
+    /**
+     * The template that collects statistics of the sql after the max number of templates is reached.
+     */
+    public static final String OVERFLOW_TEMPLATE = "<other>";
+
+    private static final StatementInstrumentation SHARED_INSTANCE = new StatementInstrumentation();
+
+    private final ConcurrentMap<String, Stats> statistics = new ConcurrentHashMap<String, Stats>();
+    private final int maxTemplates;
+    private volatile long slowThresholdNanos = Long.MAX_VALUE;
+
+    /**
+     * Creates an instrumentation with {@link #DEFAULT_MAX_TEMPLATES}.
+     */
+    public StatementInstrumentation() {
+        this(DEFAULT_MAX_TEMPLATES);
+    }
+
+    /**
+     * Creates an instrumentation.
+     *
+     * @param maxTemplates the max number of distinct sql templates
+     */
+    public StatementInstrumentation(final int maxTemplates) {
+        if (1 > maxTemplates) {
+            throw new IllegalArgumentException("maxTemplates must be > 0: " + maxTemplates);
+        }
+        this.maxTemplates = maxTemplates;
+    }
+
+    /**
+     * Returns the shared instrumentation.
+     *
+     * @return the shared instrumentation
+     */
+    public static StatementInstrumentation getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /**
+     * Sets the slow query threshold, executions that take at least the threshold are logged.
+     *
+     * @param threshold the threshold, negative to disable slow query log
+     * @param unit      the time unit of threshold
+     * @return this instrumentation
+     */
+    public StatementInstrumentation slowThreshold(final long threshold, final TimeUnit unit) {
+        this.slowThresholdNanos = 0 > threshold ? Long.MAX_VALUE : unit.toNanos(threshold);
+        return this;
+    }
+
+    /**
+     * Returns the slow query threshold.
+     *
+     * @param unit the time unit
+     * @return the threshold, {@link Long#MAX_VALUE} if disabled
+     */
+    public long getSlowThreshold(final TimeUnit unit) {
+        final long nanos = slowThresholdNanos;
+        return Long.MAX_VALUE == nanos ? Long.MAX_VALUE : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns whether the elapsed time crosses the slow query threshold.
+     *
+     * @param elapsedNanos the elapsed nanoseconds
+     * @return true if the execution is slow
+     */
+    public boolean isSlow(final long elapsedNanos) {
+        return elapsedNanos >= slowThresholdNanos;
+    }
+
+    /**
+     * Records a statement execution.
+     *
+     * @param sql          the sql template
+     * @param elapsedNanos the elapsed nanoseconds
+     * @param rows         the affected rows, negative if unknown (eg: query)
+     * @param parameters   the bound parameters (index 0 is parameter 1), or null
+     */
+    public void recordExecution(final String sql, final long elapsedNanos, final long rows, final Object[] parameters) {
+        statsFor(sql).recordExecution(elapsedNanos, rows);
+        if (isSlow(elapsedNanos)) {
+            LOGGER.warn("slow sql ({} ms): {}, parameters: {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    sql, null != parameters ? Arrays.toString(parameters) : "[]");
+        }
+    }
+
+    /**
+     * Records a batch execution.
+     *
+     * @param sql          the sql template
+     * @param elapsedNanos the elapsed nanoseconds
+     * @param counts       the update counts of batch
+     */
+    public void recordBatch(final String sql, final long elapsedNanos, final int[] counts) {
+        long rows = 0;
+        for (final int count : counts) {
+            rows += 0 < count ? count : 0;
+        }
+        statsFor(sql).recordExecution(elapsedNanos, rows);
+        if (isSlow(elapsedNanos)) {
+            LOGGER.warn("slow sql batch ({} ms, {} statements): {}",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), counts.length, sql);
+        }
+    }
+
+    /**
+     * Records the iteration of a result set.
+     *
+     * @param sql          the sql template
+     * @param elapsedNanos the nanoseconds spent in {@link ResultSet#next()}
+     * @param rows         the rows fetched
+     */
+    public void recordFetch(final String sql, final long elapsedNanos, final long rows) {
+        statsFor(sql).recordFetch(elapsedNanos, rows);
+    }
+
+    /**
+     * Returns a result set that times its iteration, the fetch is recorded when the result set is exhausted or closed.
+     *
+     * @param sql       the sql template
+     * @param resultSet the result set to instrument
+     * @return the instrumented result set, or null if the result set is null
+     */
+    public ResultSet instrument(final String sql, final ResultSet resultSet) {
+        if (null == resultSet) {
+            return null;
+        }
+        return new FetchTimingResultSet(this, sql, resultSet);
+    }
+
+    /**
+     * Returns the statistics of the sql template.
+     *
+     * @param sql the sql template
+     * @return the statistics, or null if never recorded
+     */
+    public Stats getStats(final String sql) {
+        return statistics.get(sql);
+    }
+
+    /**
+     * Returns the statistics of all sql templates, sorted by total execution time (desc).
+     *
+     * @return the sql template to statistics map
+     */
+    public Map<String, Stats> getStatistics() {
+        final Map.Entry<String, Stats>[] entries = statistics.entrySet().toArray(newEntryArray(0));
+        Arrays.sort(entries, new Comparator<Map.Entry<String, Stats>>() {
+            @Override
+            public int compare(final Map.Entry<String, Stats> o1, final Map.Entry<String, Stats> o2) {
+                final long t1 = o1.getValue().getTotalTime(TimeUnit.NANOSECONDS);
+                final long t2 = o2.getValue().getTotalTime(TimeUnit.NANOSECONDS);
+                return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+            }
+        });
+        final Map<String, Stats> sorted = new LinkedHashMap<String, Stats>(entries.length * 4 / 3 + 1);
+        for (final Map.Entry<String, Stats> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    /**
+     * Clears all statistics.
+     */
+    public void reset() {
+        statistics.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<String, Stats>[] newEntryArray(final int length) {
+        return new Map.Entry[length];
+    }
+
+    private Stats statsFor(final String sql) {
+        final String template = null != sql ? sql : OVERFLOW_TEMPLATE;
+        Stats stats = statistics.get(template);
+        if (null == stats) {
+            final String key = statistics.size() < maxTemplates ? template : OVERFLOW_TEMPLATE;
+            final Stats newStats = new Stats();
+            stats = statistics.putIfAbsent(key, newStats);
+            stats = null != stats ? stats : newStats;
+        }
+        return stats;
+    }
+
+    /**
+     * Execution statistics of a sql template.
+     * <p>
+     * The execution time is recorded in a {@link LatencyHistogram}, so percentiles are accurate within a factor of two.
+     */
+    public static class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong affectedRows = new AtomicLong();
+        private final AtomicLong fetches = new AtomicLong();
+        private final AtomicLong fetchNanos = new AtomicLong();
+        private final AtomicLong fetchedRows = new AtomicLong();
+
+        void recordExecution(final long elapsedNanos, final long rows) {
+            latency.record(elapsedNanos);
+            if (0 < rows) {
+                affectedRows.addAndGet(rows);
+            }
+        }
+
+        void recordFetch(final long elapsedNanos, final long rows) {
+            fetches.incrementAndGet();
+            fetchNanos.addAndGet(elapsedNanos);
+            fetchedRows.addAndGet(rows);
+        }
+
+        public long getExecutionCount() {
+            return latency.getCount();
+        }
+
+        public long getTotalTime(final TimeUnit unit) {
+            return latency.getTotal(unit);
+        }
+
+        public long getMaxTime(final TimeUnit unit) {
+            return latency.getMax(unit);
+        }
+
+        public long getMeanTime(final TimeUnit unit) {
+            return latency.getMean(unit);
+        }
+
+        /**
+         * Returns the execution time percentile (upper bound of histogram bucket).
+         *
+         * @param percentile the percentile in (0, 1], eg: 0.99
+         * @param unit       the time unit
+         * @return the execution time percentile
+         */
+        public long getPercentile(final double percentile, final TimeUnit unit) {
+            return latency.getPercentile(percentile, unit);
+        }
+
+        /**
+         * Returns the histogram counts, the bucket i counts executions that took [2^i, 2^(i+1)) nanoseconds.
+         *
+         * @return the histogram counts
+         */
+        public long[] getHistogram() {
+            return latency.getCounts();
+        }
+
+        public long getAffectedRows() {
+            return affectedRows.get();
+        }
+
+        public long getFetchCount() {
+            return fetches.get();
+        }
+
+        public long getFetchTime(final TimeUnit unit) {
+            return unit.convert(fetchNanos.get(), TimeUnit.NANOSECONDS);
+        }
+
+        public long getFetchedRows() {
+            return fetchedRows.get();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Stats{executions=" + getExecutionCount()
+                    + ", meanMicros=" + getMeanTime(TimeUnit.MICROSECONDS)
+                    + ", p99Micros=" + getPercentile(0.99D, TimeUnit.MICROSECONDS)
+                    + ", maxMicros=" + getMaxTime(TimeUnit.MICROSECONDS)
+                    + ", affectedRows=" + getAffectedRows()
+                    + ", fetchedRows=" + getFetchedRows()
+                    + ", fetchMillis=" + getFetchTime(TimeUnit.MILLISECONDS) + '}';
+        }
+    }
+
+    /**
+     * A result set timing {@link ResultSet#next()}, the fetch is recorded once when exhausted or closed.
+     */
+    private static final class FetchTimingResultSet extends DelegatingResultSet {
+        private final StatementInstrumentation instrumentation;
+        private final String sql;
+        private long rows;
+        private long nanos;
+        private boolean recorded;
+
+        private FetchTimingResultSet(final StatementInstrumentation instrumentation, final String sql, final ResultSet target) {
+            super(target);
+            this.instrumentation = instrumentation;
+            this.sql = sql;
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            final long start = System.nanoTime();
+            final boolean hasNext = getTargetResultSet().next();
+            nanos += System.nanoTime() - start;
+            if (hasNext) {
+                rows++;
+            } else {
+                record();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            record();
+            getTargetResultSet().close();
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                instrumentation.recordFetch(sql, nanos, rows);
+            }
+        }
+    }
+}
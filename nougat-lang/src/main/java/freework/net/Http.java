@@ -1,5 +1,6 @@
 package freework.net;
 
+import freework.io.LineReader;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -8,15 +9,19 @@ import javax.imageio.ImageIO;
 import javax.json.Json;
 import javax.json.JsonException;
 import javax.json.JsonStructure;
+import javax.json.stream.JsonParser;
 import javax.net.ssl.*;
 import javax.xml.parsers.DocumentBuilder;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.reflect.Field;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
-import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
@@ -57,6 +62,11 @@ public abstract class Http {
      */
     private static final String SET_COOKIE2 = "Set-Cookie2";
 
+    /**
+     * The max bytes of a {@link FileChannel#transferFrom} call.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
     /**
      * The default user agent.
      */
@@ -172,9 +182,23 @@ public abstract class Http {
      * @throws IOException if an I/O error occurs
      */
     public static HttpURLConnection post(final HttpURLConnection httpUrlConnection, final JsonStructure json) throws IOException {
+        return post(httpUrlConnection, json, false);
+    }
+
+    /**
+     * Posts 'application/json' data to http connection, optionally gzip compressed ('Content-Encoding: gzip').
+     *
+     * @param httpUrlConnection the http connection
+     * @param json              the json data
+     * @param compress          true if the body should be gzip compressed, the server must support it
+     * @return the http connection
+     * @throws IOException if an I/O error occurs
+     */
+    public static HttpURLConnection post(final HttpURLConnection httpUrlConnection, final JsonStructure json,
+                                         final boolean compress) throws IOException {
         final String charset = "UTF-8";
         final String ctype = "application/json;charset=" + charset;
-        return post(httpUrlConnection, ctype, json.toString());
+        return post(httpUrlConnection, ctype, json.toString(), compress);
     }
 
 
@@ -188,16 +212,48 @@ public abstract class Http {
      * @throws IOException if an I/O error occurs
      */
     public static HttpURLConnection post(final HttpURLConnection httpUrlConnection, final String ctype, final String body) throws IOException {
+        return post(httpUrlConnection, ctype, body, false);
+    }
+
+    /**
+     * Posts data to http connection, optionally gzip compressed ('Content-Encoding: gzip').
+     *
+     * @param httpUrlConnection the http connection
+     * @param ctype             the Content-Type
+     * @param body              the http request body
+     * @param compress          true if the body should be gzip compressed, the server must support it
+     * @return the http connection
+     * @throws IOException if an I/O error occurs
+     */
+    public static HttpURLConnection post(final HttpURLConnection httpUrlConnection, final String ctype,
+                                         final String body, final boolean compress) throws IOException {
         final Charset charset = determineCharset(ctype, UTF_8);
 
         httpUrlConnection.setRequestMethod("POST");
         httpUrlConnection.setRequestProperty("Content-Type", ctype);
 
+        byte[] bytes = body.getBytes(charset);
+        if (compress) {
+            bytes = HttpCompression.getSharedInstance().gzip(bytes);
+            httpUrlConnection.setRequestProperty("Content-Encoding", HttpCompression.GZIP);
+            httpUrlConnection.setFixedLengthStreamingMode(bytes.length);
+        }
+
         httpUrlConnection.setDoOutput(true);
-        httpUrlConnection.getOutputStream().write(body.getBytes(charset));
+        httpUrlConnection.getOutputStream().write(bytes);
         return httpUrlConnection;
     }
 
+    /**
+     * Creates a batch executor of many requests on the default client.
+     *
+     * @return the batch executor
+     * @see HttpBatch
+     */
+    public static HttpBatch batch() {
+        return new HttpBatch(HttpClient.getDefault());
+    }
+
     /**
      * Posts 'multipart/form-data' to the http connection.
      *
@@ -295,14 +351,16 @@ public abstract class Http {
             throw new IllegalArgumentException("params must appear in pairs: key1,value2,key2,value2,...");
         }
 
+        final UrlCodec codec = null != charset ? UrlCodec.forCharset(charset) : null;
         final StringBuilder buff = new StringBuilder();
         if (1 < params.length) {
             for (int i = 0; i < params.length; i += 2) {
                 if (0 < i) {
                     buff.append('&');
                 }
-                if (null != charset) {
-                    buff.append(urlEncode(params[i], charset)).append('=').append(urlEncode(params[i + 1], charset));
+                if (null != codec) {
+                    codec.encode(String.valueOf(params[i]), buff).append('=');
+                    codec.encode(String.valueOf(params[i + 1]), buff);
                 } else {
                     buff.append(params[i]).append('=').append(params[i + 1]);
                 }
@@ -319,6 +377,7 @@ public abstract class Http {
      * @return the query string
      */
     public static String buildQuery(final String charset, final Map<String, String> params) {
+        final UrlCodec codec = null != charset ? UrlCodec.forCharset(charset) : null;
         final StringBuilder buff = new StringBuilder();
         int i = 0;
         for (final Map.Entry<String, String> entry : params.entrySet()) {
@@ -329,8 +388,9 @@ public abstract class Http {
             String value = entry.getValue();
             key = null != key ? key : "";
             value = null != value ? value : "";
-            if (null != charset) {
-                buff.append(urlEncode(key, charset)).append('=').append(urlEncode(value, charset));
+            if (null != codec) {
+                codec.encode(key, buff).append('=');
+                codec.encode(value, buff);
             } else {
                 buff.append(key).append('=').append(value);
             }
@@ -348,20 +408,8 @@ public abstract class Http {
      */
     public static Map<String, String> splitQuery(final String query, final String charset) {
         final Map<String, String> result = new HashMap<String, String>(15);
-        final String[] pairs = query.split("&");
-        if (pairs.length > 0) {
-            for (final String pair : pairs) {
-                final String[] param = pair.split("=", 2);
-                if (param.length == 2) {
-                    if (null != charset) {
-                        result.put(urlDecode(param[0], charset), urlDecode(param[1], charset));
-                    } else {
-                        result.put(param[0], param[1]);
-                    }
-                }
-            }
-        }
-        return result;
+        final UrlCodec codec = UrlCodec.forCharset(null != charset ? charset : UTF_8.name());
+        return codec.splitQuery(query, null != charset, result);
     }
 
     /**
@@ -372,11 +420,7 @@ public abstract class Http {
      * @return encoded text
      */
     public static String urlEncode(final String text, final String enc) throws UnsupportedCharsetException {
-        try {
-            return null != text ? URLEncoder.encode(text, enc).replace("%21", "!") : null;
-        } catch (final UnsupportedEncodingException e) {
-            throw new UnsupportedCharsetException(enc);
-        }
+        return null != text ? UrlCodec.forCharset(enc).encode(text) : null;
     }
 
     /**
@@ -387,11 +431,7 @@ public abstract class Http {
      * @return decoded text
      */
     public static String urlDecode(final String text, final String enc) throws UnsupportedCharsetException {
-        try {
-            return URLDecoder.decode(text, enc);
-        } catch (final UnsupportedEncodingException e) {
-            throw new UnsupportedCharsetException(enc);
-        }
+        return UrlCodec.forCharset(enc).decode(text);
     }
 
     /* *********************************************
@@ -407,18 +447,119 @@ public abstract class Http {
      */
     public static String getResponseBodyAsString(final HttpURLConnection httpUrlConnection) throws IOException {
         final Charset charset = getResponseCharset(httpUrlConnection, UTF_8);
-        final InputStream es = httpUrlConnection.getErrorStream();
+        return getStreamAsString(getResponseStream(httpUrlConnection), charset);
+    }
+
+    /**
+     * Gets the contents of a http connection as a byte array.
+     *
+     * @param httpUrlConnection the http connection
+     * @return the contents
+     * @throws IOException if an I/O error occurs
+     */
+    public static byte[] getResponseBodyAsBytes(final HttpURLConnection httpUrlConnection) throws IOException {
+        final InputStream in = getResponseStream(httpUrlConnection);
+        try {
+            final int length = httpUrlConnection.getContentLength();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(0 < length ? length : 1024);
+            final byte[] buffer = new byte[4096];
+            int read;
+            while (-1 < (read = in.read(buffer))) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Gets the contents of a http connection as a JSR-353 {@link JsonParser} (event iterator), the contents are
+     * parsed while they are read, the parser must be closed.
+     *
+     * @param httpUrlConnection the http connection
+     * @return the json parser
+     * @throws IOException if an I/O error occurs
+     */
+    public static JsonParser getResponseBodyAsJsonParser(final HttpURLConnection httpUrlConnection) throws IOException {
+        final Charset charset = getResponseCharset(httpUrlConnection, UTF_8);
+        return Json.createParser(new InputStreamReader(getResponseStream(httpUrlConnection), charset));
+    }
+
+    /**
+     * Gets the contents of a http connection as a {@link LineReader} with a fixed buffer, the reader must be closed.
+     *
+     * @param httpUrlConnection the http connection
+     * @param bufferSize        the buffer size, also the max line length
+     * @return the line reader
+     * @throws IOException if an I/O error occurs
+     */
+    public static LineReader getResponseBodyAsLineReader(final HttpURLConnection httpUrlConnection,
+                                                         final int bufferSize) throws IOException {
+        final Charset charset = getResponseCharset(httpUrlConnection, UTF_8);
+        return new LineReader(new InputStreamReader(getResponseStream(httpUrlConnection), charset), bufferSize);
+    }
+
+    /**
+     * Downloads the contents of a http connection to the file, the contents are transferred by
+     * {@link FileChannel#transferFrom} in chunks of at most {@link #TRANSFER_CHUNK_SIZE} bytes,
+     * so the memory used stays bounded per chunk instead of growing with the response size.
+     *
+     * @param httpUrlConnection the http connection
+     * @param file              the target file, overwritten if exists
+     * @return the number of downloaded bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public static long download(final HttpURLConnection httpUrlConnection, final File file) throws IOException {
+        final ReadableByteChannel source = Channels.newChannel(getResponseStream(httpUrlConnection));
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                final FileChannel target = out.getChannel();
+                long position = 0;
+                long transferred;
+                while (0 < (transferred = target.transferFrom(source, position, TRANSFER_CHUNK_SIZE))) {
+                    position += transferred;
+                }
+                return position;
+            } finally {
+                out.close();
+            }
+        } finally {
+            source.close();
+        }
+    }
 
+    /**
+     * Gets the response stream of a http connection.
+     *
+     * @param httpUrlConnection the http connection
+     * @return the response stream
+     * @throws IOException if an I/O error occurs or the response is an error (with the error body as message)
+     */
+    private static InputStream getResponseStream(final HttpURLConnection httpUrlConnection) throws IOException {
+        final InputStream es = decode(httpUrlConnection, httpUrlConnection.getErrorStream());
         if (null != es) {
-            final String msg = getStreamAsString(es, charset);
+            final String msg = getStreamAsString(es, getResponseCharset(httpUrlConnection, UTF_8));
             if (msg.isEmpty()) {
                 throw new IOException(httpUrlConnection.getResponseCode() + ':' + httpUrlConnection.getResponseMessage());
             } else {
                 throw new IOException(msg);
             }
         }
+        return decode(httpUrlConnection, httpUrlConnection.getInputStream());
+    }
 
-        return getStreamAsString(httpUrlConnection.getInputStream(), charset);
+    /**
+     * Decodes the response stream according to the 'Content-Encoding' (gzip, deflate) of the http connection.
+     *
+     * @param httpUrlConnection the http connection
+     * @param stream            the response stream
+     * @return the decoded stream
+     * @throws IOException if an I/O error occurs
+     */
+    private static InputStream decode(final HttpURLConnection httpUrlConnection, final InputStream stream) throws IOException {
+        return HttpCompression.getSharedInstance().decode(httpUrlConnection.getContentEncoding(), stream);
     }
 
     /**
@@ -483,7 +624,7 @@ public abstract class Http {
                 throw new IOException(msg);
             }
         }
-        return ImageIO.read(httpUrlConnection.getInputStream());
+        return ImageIO.read(decode(httpUrlConnection, httpUrlConnection.getInputStream()));
     }
 
     /**
@@ -563,6 +704,7 @@ public abstract class Http {
      * @param httpUrlConnection the http url connection.
      * @return the applicable cookies.
      * @see java.net.CookieManager#put(java.net.URI, Map)
+     * @see HttpCookieJar#saveResponseCookies(HttpURLConnection)
      */
     @SuppressWarnings("PMD.AvoidComplexConditionRule")
     public static List<HttpCookie> getResponseCookies(final HttpURLConnection httpUrlConnection) {
@@ -630,6 +772,7 @@ public abstract class Http {
      * @param candidates        the cookie candidates.
      * @return the (possibly empty) list of invalid cookies.
      * @see java.net.CookieHandler#put(java.net.URI, Map)
+     * @see HttpCookieJar#addRequestCookies(HttpURLConnection)
      */
     @SuppressWarnings("PMD.AvoidComplexConditionRule")
     public static Set<HttpCookie> addRequestCookies(final HttpURLConnection httpUrlConnection, final Set<HttpCookie> candidates) {
@@ -776,22 +919,22 @@ public abstract class Http {
      */
     public static HttpURLConnection open(final URL serverUrl, final String method,
                                          final KeyManager[] keyManagers, final TrustManager[] trustManagers) throws IOException {
+        return open(serverUrl, method, keyManagers, trustManagers, HttpClient.getDefault());
+    }
+
+    /**
+     * Open the server url with the settings (timeouts, user agent) of the http client.
+     */
+    static HttpURLConnection open(final URL serverUrl, final String method, final KeyManager[] keyManagers,
+                                  final TrustManager[] trustManagers, final HttpClient client) throws IOException {
         final HttpURLConnection httpUrlConnection = (HttpURLConnection) serverUrl.openConnection();
 
         try {
             final boolean https = null != keyManagers || null != trustManagers;
             if ((httpUrlConnection instanceof HttpsURLConnection) && https) {
                 final HttpsURLConnection httpsUrlConnection = (HttpsURLConnection) httpUrlConnection;
-                final SSLContext context = SSLContext.getInstance("TLS");
-                context.init(keyManagers, trustManagers, new SecureRandom());
-
-                httpsUrlConnection.setSSLSocketFactory(context.getSocketFactory());
-                httpsUrlConnection.setHostnameVerifier(new HostnameVerifier() {
-                    @Override
-                    public boolean verify(final String hostname, final SSLSession session) {
-                        return true;
-                    }
-                });
+                httpsUrlConnection.setSSLSocketFactory(SslSocketFactoryCache.getSharedInstance().get(keyManagers, trustManagers));
+                httpsUrlConnection.setHostnameVerifier(TRUST_ALL_HOSTNAME_VERIFIER);
             }
         } catch (final Exception e) {
             close(httpUrlConnection);
@@ -802,6 +945,7 @@ public abstract class Http {
         httpUrlConnection.setRequestProperty("Host", serverUrl.getHost());
         httpUrlConnection.setRequestProperty("User-Agent", DEFAULT_USER_AGENT);
         httpUrlConnection.setRequestProperty("Connection", "Keep-Alive");
+        client.configure(httpUrlConnection);
         return httpUrlConnection;
     }
 
@@ -824,13 +968,16 @@ public abstract class Http {
 
     /**
      * Close the http url connection, if the connection is not null.
+     * <p>
+     * Since 1.0.12 the remaining response body is drained and the stream closed instead of disconnecting,
+     * so the underlying socket can be reused by the keep-alive cache.
      *
      * @param httpUrlConnection http url connection.
      * @return closed http url connection or null(if given http url connection is null).
      */
     public static HttpURLConnection close(final HttpURLConnection httpUrlConnection) {
         if (null != httpUrlConnection) {
-            httpUrlConnection.disconnect();
+            HttpClient.release(httpUrlConnection);
         }
         return httpUrlConnection;
     }
@@ -877,11 +1024,23 @@ public abstract class Http {
 
     /**
      * Multipart uploader.
+     * <p>
+     * Text and file entries are deferred until {@link #complete()}, so when the body is made of them only its length
+     * is known up front and it is sent in fixed-length streaming mode; a stream entry (unknown to be replayable) or
+     * compression sends the body in chunked streaming mode. Either way {@link HttpURLConnection} does not buffer the
+     * whole body in memory.
      */
     public static class Multipart {
+        private static final int CHUNK_SIZE = 32 * 1024;
+        private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
         final HttpURLConnection httpUrlConnection;
         final String boundary;
         final Charset charset;
+        private final List<Part> pending = new ArrayList<Part>();
+        private boolean compress;
+        private OutputStream out;
+        private byte[] buffer;
 
         public Multipart(final HttpURLConnection httpUrlConnection, final String boundary, final Charset charset) {
             this.httpUrlConnection = httpUrlConnection;
@@ -889,41 +1048,148 @@ public abstract class Http {
             this.charset = charset;
         }
 
-        public Multipart addTextEntry(final String name, final String value) throws IOException {
-            final OutputStream out = httpUrlConnection.getOutputStream();
-            final String headers = buildPartHeaders("text/plain", name, null);
-
-            out.write(("\r\n--" + boundary + "\r\n").getBytes(charset));
-            out.write(headers.getBytes(charset));
-            out.write(value.getBytes(charset));
+        /**
+         * Gzip compresses the multipart body ('Content-Encoding: gzip'), must be called before adding entries.
+         *
+         * @return this multipart
+         */
+        public Multipart compress() {
+            if (null != out || !pending.isEmpty()) {
+                throw new IllegalStateException("entries already added");
+            }
+            httpUrlConnection.setRequestProperty("Content-Encoding", HttpCompression.GZIP);
+            this.compress = true;
             return this;
         }
 
-        public Multipart addStreamEntry(final String name, final String filename, final String ctype, final InputStream in, final long length) throws IOException {
-            final OutputStream out = httpUrlConnection.getOutputStream();
-            final String partHeaders = buildPartHeaders(ctype, name, filename);
+        public Multipart addTextEntry(final String name, final String value) throws IOException {
+            return add(new Part(partHead("text/plain", name, null), value.getBytes(charset)));
+        }
 
-            out.write(("\r\n" + boundary + "\r\n").getBytes());
-            out.write(partHeaders.getBytes());
+        /**
+         * Adds a stream entry, the stream is written immediately (the body switches to chunked streaming mode).
+         *
+         * @param name     the entry name
+         * @param filename the filename
+         * @param ctype    the content type
+         * @param in       the input stream
+         * @param length   the max number of bytes to read
+         * @return this multipart
+         * @throws IOException if an I/O error occurs
+         */
+        public Multipart addStreamEntry(final String name, final String filename, final String ctype, final InputStream in, final long length) throws IOException {
+            final OutputStream out = output();
+            out.write(partHead(ctype, name, filename));
 
-            int read;
-            int maxRead;
-            long alreadyRead = 0;
-            final byte[] buffer = new byte[1024];
-            while (0 < (maxRead = Math.min(buffer.length, (int) (length - alreadyRead))) && -1 != (read = in.read(buffer, 0, maxRead))) {
+            final byte[] buffer = buffer();
+            long remaining = length;
+            for (int read; 0 < remaining && -1 != (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))); ) {
                 out.write(buffer, 0, read);
-                alreadyRead += read;
+                remaining -= read;
             }
             return this;
         }
 
+        /**
+         * Adds a file entry, the file is read when the body is written.
+         *
+         * @param name  the entry name
+         * @param file  the file
+         * @param ctype the content type
+         * @return this multipart
+         * @throws IOException if an I/O error occurs
+         */
+        public Multipart addFileEntry(final String name, final File file, final String ctype) throws IOException {
+            if (!file.isFile()) {
+                throw new FileNotFoundException(file.getAbsolutePath());
+            }
+            return add(new Part(partHead(ctype, name, file.getName()), file, null, 0, file.length()));
+        }
+
+        /**
+         * Adds a region of the file channel as an entry, the channel must stay open until {@link #complete()}.
+         *
+         * @param name     the entry name
+         * @param filename the filename
+         * @param ctype    the content type
+         * @param channel  the file channel
+         * @param position the region position
+         * @param length   the region length
+         * @return this multipart
+         * @throws IOException if an I/O error occurs
+         */
+        public Multipart addFileEntry(final String name, final String filename, final String ctype,
+                                      final FileChannel channel, final long position, final long length) throws IOException {
+            return add(new Part(partHead(ctype, name, filename), null, channel, position, length));
+        }
+
         public HttpURLConnection complete() throws IOException {
-            final OutputStream out = httpUrlConnection.getOutputStream();
-            final byte[] start = ("\r\n--" + boundary + "--\r\n").getBytes(charset);
-            out.write(start);
+            final byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(charset);
+            if (null == out && !compress) {
+                long length = end.length;
+                for (final Part part : pending) {
+                    length += part.length();
+                }
+                httpUrlConnection.setDoOutput(true);
+                try {
+                    httpUrlConnection.setFixedLengthStreamingMode(length);
+                } catch (final IllegalStateException ignore) {
+                    // streaming mode has been set.
+                }
+                out = httpUrlConnection.getOutputStream();
+            }
+            final OutputStream out = output();
+            out.write(end);
+            if (compress) {
+                out.close();
+            }
             return httpUrlConnection;
         }
 
+        private Multipart add(final Part part) throws IOException {
+            if (null != out) {
+                part.writeTo(out, buffer());
+            } else {
+                pending.add(part);
+            }
+            return this;
+        }
+
+        /**
+         * Opens the output in chunked streaming mode (unless the mode was chosen by the caller) and writes the
+         * deferred entries.
+         */
+        private OutputStream output() throws IOException {
+            if (null == out) {
+                httpUrlConnection.setDoOutput(true);
+                try {
+                    httpUrlConnection.setChunkedStreamingMode(CHUNK_SIZE);
+                } catch (final IllegalStateException ignore) {
+                    // streaming mode has been set.
+                }
+                final OutputStream stream = httpUrlConnection.getOutputStream();
+                out = compress ? HttpCompression.getSharedInstance().newGzipOutputStream(stream) : stream;
+            }
+            if (!pending.isEmpty()) {
+                for (final Part part : pending) {
+                    part.writeTo(out, buffer());
+                }
+                pending.clear();
+            }
+            return out;
+        }
+
+        private byte[] buffer() {
+            if (null == buffer) {
+                buffer = new byte[FILE_BUFFER_SIZE];
+            }
+            return buffer;
+        }
+
+        private byte[] partHead(final String ctype, final String name, final String filename) {
+            return ("\r\n--" + boundary + "\r\n" + buildPartHeaders(ctype, name, filename)).getBytes(charset);
+        }
+
         private String buildPartHeaders(final String ctype, final String name, final String filename) {
             final String finalCtype = null != ctype ? ctype : "application/octet-stream";
             String header = "Content-Disposition:form-data;name=\"" + name + '"';
@@ -934,8 +1200,87 @@ public abstract class Http {
             }
             return (header + "Content-Type:" + finalCtype + "\r\n\r\n");
         }
+
+        /**
+         * Deferred entry of known length.
+         */
+        private static final class Part {
+            private final byte[] head;
+            private final byte[] body;
+            private final File file;
+            private final FileChannel channel;
+            private final long position;
+            private final long length;
+
+            private Part(final byte[] head, final byte[] body) {
+                this(head, body, null, null, 0, body.length);
+            }
+
+            private Part(final byte[] head, final File file, final FileChannel channel, final long position, final long length) {
+                this(head, null, file, channel, position, length);
+            }
+
+            private Part(final byte[] head, final byte[] body, final File file, final FileChannel channel, final long position, final long length) {
+                this.head = head;
+                this.body = body;
+                this.file = file;
+                this.channel = channel;
+                this.position = position;
+                this.length = length;
+            }
+
+            private long length() {
+                return head.length + length;
+            }
+
+            private void writeTo(final OutputStream out, final byte[] buffer) throws IOException {
+                out.write(head);
+                if (null != body) {
+                    out.write(body);
+                } else if (null != channel) {
+                    transfer(channel, out, buffer);
+                } else {
+                    final FileInputStream in = new FileInputStream(file);
+                    try {
+                        transfer(in.getChannel(), out, buffer);
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+
+            /**
+             * Copies the region through the buffer, the output is not a channel so it cannot be transferred directly.
+             */
+            private void transfer(final FileChannel channel, final OutputStream out, final byte[] buffer) throws IOException {
+                final ByteBuffer buf = ByteBuffer.wrap(buffer);
+                long pos = position;
+                long remaining = length;
+                while (0 < remaining) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buffer.length, remaining));
+                    final int read = channel.read(buf, pos);
+                    if (0 > read) {
+                        throw new EOFException("file is shorter than expected: " + (length - remaining) + " < " + length);
+                    }
+                    out.write(buffer, 0, read);
+                    pos += read;
+                    remaining -= read;
+                }
+            }
+        }
     }
 
+    /**
+     * The hostname verifier which trusts all hostnames.
+     */
+    private static final HostnameVerifier TRUST_ALL_HOSTNAME_VERIFIER = new HostnameVerifier() {
+        @Override
+        public boolean verify(final String hostname, final SSLSession session) {
+            return true;
+        }
+    };
+
     public static final X509TrustManager TRUST_ALL_TRUST_MANAGER = new X509TrustManager() {
         @Override
         public void checkClientTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
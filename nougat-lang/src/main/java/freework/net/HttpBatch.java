@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fan-out of many http requests with bounded concurrency.
+ * <p>
+ * The requests run with at most <code>maxConcurrency</code> in flight and at most <code>maxConcurrencyPerHost</code>
+ * per host (the hosts are served round robin), the results are streamed back in completion order, one per request:
+ * <blockquote><pre>
+ * List&lt;HttpBatch.Request&gt; requests = ...; // HttpBatch.Request.get("http://api/users/" + id).tag(id)
+ * HttpBatch.Results&lt;String&gt; results = Http.batch().maxConcurrency(64).maxConcurrencyPerHost(16)
+ *         .deadline(5, TimeUnit.MINUTES).execute(requests, HttpBatch.BODY_AS_STRING);
+ * try {
+ *     while (results.hasNext()) {
+ *         HttpBatch.Result&lt;String&gt; result = results.next();
+ *         ...
+ *     }
+ * } finally {
+ *     results.close(); // cancels the unfinished requests
+ * }
+ * </pre></blockquote>
+ * A request with a timeout (from its start) or a batch with a deadline (from its execution) aborts the exchanges in
+ * flight by disconnecting them and fails the requests not started, with a {@link SocketTimeoutException}.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpBatch {
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+    private static final int DEFAULT_MAX_CONCURRENCY_PER_HOST = 4;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 5;
+
+    private static final AtomicInteger BATCH_SEQ = new AtomicInteger();
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    /**
+     * The handler returning the response body as a string.
+     */
+    public static final ResponseHandler<String> BODY_AS_STRING = new ResponseHandler<String>() {
+        @Override
+        public String handle(final HttpURLConnection connection) throws IOException {
+            return Http.getResponseBodyAsString(connection);
+        }
+    };
+
+    private final HttpClient client;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private int maxConcurrencyPerHost = DEFAULT_MAX_CONCURRENCY_PER_HOST;
+    private long deadlineMillis;
+
+    /**
+     * Creates a batch executor.
+     *
+     * @param client the client sending the requests
+     */
+    public HttpBatch(final HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the max number of requests in flight.
+     *
+     * @param max the max number of requests in flight, at least 1
+     * @return this batch
+     */
+    public HttpBatch maxConcurrency(final int max) {
+        if (1 > max) {
+            throw new IllegalArgumentException("maxConcurrency must be > 0: " + max);
+        }
+        this.maxConcurrency = max;
+        return this;
+    }
+
+    /**
+     * Sets the max number of requests in flight per host, the client limit per route also applies.
+     *
+     * @param max the max number of requests in flight per host, at least 1
+     * @return this batch
+     */
+    public HttpBatch maxConcurrencyPerHost(final int max) {
+        if (1 > max) {
+            throw new IllegalArgumentException("maxConcurrencyPerHost must be > 0: " + max);
+        }
+        this.maxConcurrencyPerHost = max;
+        return this;
+    }
+
+    /**
+     * Sets the deadline of the batch, from its execution.
+     *
+     * @param timeout the timeout, 0 for none
+     * @param unit    the time unit
+     * @return this batch
+     */
+    public HttpBatch deadline(final long timeout, final TimeUnit unit) {
+        this.deadlineMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Executes the requests.
+     *
+     * @param requests the requests
+     * @param handler  the response handler, called by the worker threads
+     * @param <T>      the result type
+     * @return the results in completion order, must be closed
+     */
+    public <T> Results<T> execute(final Collection<Request> requests, final ResponseHandler<T> handler) {
+        final Results<T> results = new Results<T>(this, requests.size(), handler);
+        for (final Request request : requests) {
+            results.enqueue(request);
+        }
+        if (0 < deadlineMillis) {
+            results.deadline = TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    results.abort(new SocketTimeoutException("batch deadline exceeded"));
+                }
+            }, deadlineMillis, TimeUnit.MILLISECONDS);
+        }
+        results.dispatch();
+        return results;
+    }
+
+    private static ScheduledThreadPoolExecutor newTimer() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, newThreadFactory("http-batch-timer-"));
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, prefix + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Handler of the response of a request.
+     *
+     * @param <T> the result type
+     */
+    public interface ResponseHandler<T> {
+
+        /**
+         * Reads the response.
+         *
+         * @param connection the connection, request sent
+         * @return the result
+         * @throws IOException if an I/O error occurs
+         */
+        T handle(HttpURLConnection connection) throws IOException;
+
+    }
+
+    /**
+     * A request of a batch.
+     */
+    public static final class Request {
+        private final String method;
+        private final String url;
+        private final String ctype;
+        private final String body;
+        private long timeoutMillis;
+        private Object tag;
+
+        private Request(final String method, final String url, final String ctype, final String body) {
+            this.method = method;
+            this.url = url;
+            this.ctype = ctype;
+            this.body = body;
+        }
+
+        public static Request get(final String url) {
+            return new Request("GET", url, null, null);
+        }
+
+        public static Request post(final String url, final String ctype, final String body) {
+            return new Request("POST", url, ctype, body);
+        }
+
+        /**
+         * Sets the timeout of the request, from its start.
+         *
+         * @param timeout the timeout, 0 for none
+         * @param unit    the time unit
+         * @return this request
+         */
+        public Request timeout(final long timeout, final TimeUnit unit) {
+            this.timeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Attaches an object (eg: the id) to the request.
+         *
+         * @param tag the tag
+         * @return this request
+         */
+        public Request tag(final Object tag) {
+            this.tag = tag;
+            return this;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public Object getTag() {
+            return tag;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return method + ' ' + url;
+        }
+    }
+
+    /**
+     * The result of a request.
+     *
+     * @param <T> the result type
+     */
+    public static final class Result<T> {
+        private final Request request;
+        private final T value;
+        private final IOException error;
+
+        private Result(final Request request, final T value, final IOException error) {
+            this.request = request;
+            this.value = value;
+            this.error = error;
+        }
+
+        public Request getRequest() {
+            return request;
+        }
+
+        public boolean isSuccess() {
+            return null == error;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public IOException getError() {
+            return error;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return request + (isSuccess() ? " -> " + value : " failed: " + error);
+        }
+    }
+
+    /**
+     * The results of a batch in completion order.
+     *
+     * @param <T> the result type
+     */
+    public static final class Results<T> implements Iterator<Result<T>>, Closeable {
+        private final HttpClient client;
+        private final ResponseHandler<T> handler;
+        private final int maxConcurrency;
+        private final int maxConcurrencyPerHost;
+        private final int total;
+        private final ThreadPoolExecutor executor;
+        private final Map<String, Host> hosts = new HashMap<String, Host>();
+        private final Deque<Host> ready = new ArrayDeque<Host>();
+        private final Set<Call> running = new HashSet<Call>();
+        private final BlockingQueue<Result<T>> completed = new LinkedBlockingQueue<Result<T>>();
+        private volatile ScheduledFuture<?> deadline;
+        private IOException abortCause;
+        private int delivered;
+
+        private Results(final HttpBatch batch, final int total, final ResponseHandler<T> handler) {
+            this.client = batch.client;
+            this.handler = handler;
+            this.maxConcurrency = batch.maxConcurrency;
+            this.maxConcurrencyPerHost = batch.maxConcurrencyPerHost;
+            this.total = total;
+            this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), newThreadFactory("http-batch-" + BATCH_SEQ.incrementAndGet() + '-'));
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delivered < total;
+        }
+
+        /**
+         * Waits for the next completed request.
+         *
+         * @return the result
+         */
+        @Override
+        public Result<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        final Result<T> result = completed.take();
+                        delivered++;
+                        return result;
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                        close();
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Waits for the next completed request up to the timeout.
+         *
+         * @param timeout the timeout
+         * @param unit    the time unit
+         * @return the result, null if the timeout elapses or no more results
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public Result<T> poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+            if (!hasNext()) {
+                return null;
+            }
+            final Result<T> result = completed.poll(timeout, unit);
+            if (null != result) {
+                delivered++;
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Cancels the unfinished requests, their results are failures.
+         */
+        @Override
+        public void close() {
+            abort(new InterruptedIOException("batch cancelled"));
+        }
+
+        private void enqueue(final Request request) {
+            final String key;
+            try {
+                final URL url = new URL(request.url);
+                final int port = -1 < url.getPort() ? url.getPort() : url.getDefaultPort();
+                key = url.getProtocol() + "://" + url.getHost().toLowerCase(Locale.ENGLISH) + ':' + port;
+            } catch (final MalformedURLException e) {
+                completed.add(new Result<T>(request, null, e));
+                return;
+            }
+            Host host = hosts.get(key);
+            if (null == host) {
+                host = new Host();
+                hosts.put(key, host);
+                ready.add(host);
+            }
+            host.pending.add(new Call(request, host));
+        }
+
+        /**
+         * Starts the pending requests the limits allow, the hosts are served round robin.
+         */
+        private void dispatch() {
+            final List<Call> starts = new ArrayList<Call>();
+            synchronized (this) {
+                int blocked = 0;
+                while (null == abortCause && running.size() < maxConcurrency && blocked < ready.size()) {
+                    final Host host = ready.poll();
+                    if (host.active < maxConcurrencyPerHost) {
+                        final Call call = host.pending.poll();
+                        host.active++;
+                        running.add(call);
+                        starts.add(call);
+                        blocked = 0;
+                    } else {
+                        blocked++;
+                    }
+                    if (!host.pending.isEmpty()) {
+                        ready.add(host);
+                    }
+                }
+                if (running.isEmpty() && ready.isEmpty()) {
+                    finish();
+                }
+            }
+            for (final Call call : starts) {
+                executor.execute(call);
+            }
+        }
+
+        private void complete(final Call call, final Result<T> result) {
+            synchronized (this) {
+                call.host.active--;
+                running.remove(call);
+            }
+            completed.add(result);
+            dispatch();
+        }
+
+        /**
+         * Fails the pending requests and aborts the running requests.
+         */
+        private void abort(final IOException cause) {
+            final List<Call> calls;
+            synchronized (this) {
+                if (null != abortCause) {
+                    return;
+                }
+                abortCause = cause;
+                for (final Host host : ready) {
+                    for (final Call call : host.pending) {
+                        completed.add(new Result<T>(call.request, null, cause));
+                    }
+                    host.pending.clear();
+                }
+                ready.clear();
+                calls = new ArrayList<Call>(running);
+                if (calls.isEmpty()) {
+                    finish();
+                }
+            }
+            for (final Call call : calls) {
+                call.abort(cause);
+            }
+        }
+
+        private void finish() {
+            executor.shutdown();
+            final ScheduledFuture<?> future = deadline;
+            if (null != future) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * The pending requests and the number of running requests of a host.
+         */
+        private final class Host {
+            private final Deque<Call> pending = new ArrayDeque<Call>();
+            private int active;
+        }
+
+        /**
+         * A request execution, it can be aborted (disconnected) until its response is read.
+         */
+        private final class Call implements Runnable {
+            private static final int RUNNING = 0;
+            private static final int DONE = 1;
+            private static final int ABORTED = 2;
+
+            private final Request request;
+            private final Host host;
+            private final AtomicInteger state = new AtomicInteger(RUNNING);
+            private volatile HttpURLConnection connection;
+            private volatile IOException abortCause;
+
+            private Call(final Request request, final Host host) {
+                this.request = request;
+                this.host = host;
+            }
+
+            @Override
+            public void run() {
+                ScheduledFuture<?> timeout = null;
+                if (0 < request.timeoutMillis) {
+                    timeout = TIMER.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            abort(new SocketTimeoutException("request timeout exceeded: " + request));
+                        }
+                    }, request.timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+                Result<T> result;
+                try {
+                    result = new Result<T>(request, call(), null);
+                } catch (final IOException e) {
+                    result = new Result<T>(request, null, ABORTED == state.get() ? abortCause : e);
+                } catch (final RuntimeException e) {
+                    result = new Result<T>(request, null, new IOException(e));
+                } finally {
+                    if (null != timeout) {
+                        timeout.cancel(false);
+                    }
+                }
+                complete(this, result);
+            }
+
+            private T call() throws IOException {
+                if (ABORTED == state.get()) {
+                    throw abortCause;
+                }
+                final HttpClient.Exchange exchange = client.open(request.method, request.url);
+                try {
+                    connection = exchange.getConnection();
+                    if (ABORTED == state.get()) {
+                        throw abortCause;
+                    }
+                    if (null != request.body) {
+                        Http.post(connection, request.ctype, request.body);
+                    }
+                    final T value = handler.handle(connection);
+                    if (!state.compareAndSet(RUNNING, DONE)) {
+                        throw abortCause;
+                    }
+                    return value;
+                } finally {
+                    exchange.close();
+                }
+            }
+
+            /**
+             * Aborts the request unless its response has been read.
+             */
+            private void abort(final IOException cause) {
+                abortCause = cause;
+                if (state.compareAndSet(RUNNING, ABORTED)) {
+                    final HttpURLConnection conn = connection;
+                    if (null != conn) {
+                        conn.disconnect();
+                    }
+                }
+            }
+        }
+    }
+}
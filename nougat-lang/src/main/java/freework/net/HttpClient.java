@@ -0,0 +1,619 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Http client with per route connection limits.
+ * <p>
+ * The client is built on {@link HttpURLConnection}, whose (JVM wide) keep-alive cache reuses a socket once the
+ * response body of its previous exchange was read to the end and closed, a connection
+ * {@link HttpURLConnection#disconnect() disconnected} before that closes the socket. So the client never
+ * disconnects a healthy connection:
+ * {@link Exchange#close()} drains the remaining (small) response body and closes the stream, which returns the socket
+ * to the keep-alive cache, where idle sockets are evicted after the server keep-alive timeout (5s by default).
+ * <p>
+ * The number of concurrent exchanges is limited per route (scheme, host and port) and in total, callers beyond the
+ * limit wait in arrival order, so the keep-alive cache (<code>http.maxConnections</code> sockets per route) is enough
+ * to reuse the connections.
+ * <blockquote><pre>
+ * HttpClient client = new HttpClient().maxConnectionsPerRoute(8).connectTimeout(2, TimeUnit.SECONDS);
+ * HttpClient.Exchange exchange = client.open("GET", "http://internal/api/users/1");
+ * try {
+ *     String body = exchange.getResponseBodyAsString();
+ * } finally {
+ *     exchange.close();
+ * }
+ * </pre></blockquote>
+ * NOTE: {@link HttpURLConnection} does not support request pipelining, requests on a connection are sequential.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpClient {
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+    private static final int DEFAULT_MAX_CONNECTIONS = 200;
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The max bytes read to reuse a connection, a longer remaining body is cheaper to drop with the socket.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    private static final HttpClient DEFAULT = new HttpClient();
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private volatile int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private volatile Semaphore connections = new Semaphore(DEFAULT_MAX_CONNECTIONS, true);
+    private volatile int connectTimeoutMillis = (int) DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = (int) DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile long acquireTimeoutMillis = DEFAULT_ACQUIRE_TIMEOUT_MILLIS;
+    private volatile String userAgent;
+    private volatile boolean compression;
+    private volatile HttpMetrics metrics;
+
+    /**
+     * The TLS socket factory of the https exchanges (default key and trust managers), reports the handshakes to
+     * the metrics of this client only.
+     */
+    private final SslSocketFactoryCache sslSocketFactories = new SslSocketFactoryCache(1);
+
+    private final AtomicLong exchangeCount = new AtomicLong();
+    private final AtomicLong reusableCount = new AtomicLong();
+
+    /**
+     * Returns the client used by the static {@link Http} helpers.
+     *
+     * @return the default client
+     */
+    public static HttpClient getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sets the max number of concurrent exchanges per route, it should not exceed the keep-alive cache size
+     * (system property <code>http.maxConnections</code>, 5 by default).
+     *
+     * @param max the max number of concurrent exchanges per route
+     * @return this client
+     */
+    public HttpClient maxConnectionsPerRoute(final int max) {
+        if (!routes.isEmpty()) {
+            throw new IllegalStateException("client already in use");
+        }
+        this.maxConnectionsPerRoute = max;
+        return this;
+    }
+
+    /**
+     * Sets the max number of concurrent exchanges of all routes.
+     *
+     * @param max the max number of concurrent exchanges
+     * @return this client
+     */
+    public HttpClient maxConnections(final int max) {
+        if (!routes.isEmpty()) {
+            throw new IllegalStateException("client already in use");
+        }
+        this.connections = new Semaphore(max, true);
+        return this;
+    }
+
+    public HttpClient connectTimeout(final long timeout, final TimeUnit unit) {
+        this.connectTimeoutMillis = (int) unit.toMillis(timeout);
+        return this;
+    }
+
+    public HttpClient readTimeout(final long timeout, final TimeUnit unit) {
+        this.readTimeoutMillis = (int) unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the max time to wait for a free connection of the route.
+     *
+     * @param timeout the timeout
+     * @param unit    the time unit
+     * @return this client
+     */
+    public HttpClient acquireTimeout(final long timeout, final TimeUnit unit) {
+        this.acquireTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the 'User-Agent' request header, null for the {@link Http} default.
+     *
+     * @param userAgent the user agent
+     * @return this client
+     */
+    public HttpClient userAgent(final String userAgent) {
+        this.userAgent = userAgent;
+        return this;
+    }
+
+    /**
+     * Sets whether to accept compressed responses ('Accept-Encoding: gzip, deflate'), the response helpers of
+     * {@link Http} decode them, a caller reading {@link HttpURLConnection#getInputStream()} directly must decode by
+     * {@link HttpCompression#decode(String, java.io.InputStream)}.
+     *
+     * @param compression true to accept compressed responses
+     * @return this client
+     */
+    public HttpClient compression(final boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Records the phase timings of the exchanges per host, and the TLS handshakes of the https exchanges.
+     *
+     * @param metrics the metrics, null to disable
+     * @return this client
+     */
+    public synchronized HttpClient metrics(final HttpMetrics metrics) {
+        final HttpMetrics previous = this.metrics;
+        if (null != previous) {
+            sslSocketFactories.removeHandshakeListener(previous);
+        }
+        if (null != metrics) {
+            sslSocketFactories.addHandshakeListener(metrics);
+        }
+        this.metrics = metrics;
+        return this;
+    }
+
+    /* *************************************
+     *              Exchange
+     * *********************************** */
+
+    /**
+     * Opens an exchange, waits if the route has no free connection.
+     *
+     * @param method the http request method
+     * @param url    the url
+     * @return the exchange, must be closed
+     * @throws IOException if an I/O error occurs or the wait for a free connection times out
+     */
+    public Exchange open(final String method, final String url) throws IOException {
+        return open(method, new URL(url));
+    }
+
+    /**
+     * Opens an exchange, waits if the route has no free connection.
+     *
+     * @param method the http request method
+     * @param url    the url
+     * @return the exchange, must be closed
+     * @throws IOException if an I/O error occurs or the wait for a free connection times out
+     */
+    public Exchange open(final String method, final URL url) throws IOException {
+        final long start = System.nanoTime();
+        final HttpMetrics current = metrics;
+        final HttpMetrics.Host host = null != current ? current.getHost(url.getHost()) : null;
+        if (null != host) {
+            resolve(url, host, start);
+        }
+        final Route route = getRoute(url);
+        acquire(route);
+        try {
+            final HttpURLConnection connection = Http.open(url, method, null, null, this);
+            if (connection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(getSslSocketFactory());
+            }
+            exchangeCount.incrementAndGet();
+            return new Exchange(connection, route, host, start);
+        } catch (final IOException e) {
+            release(route);
+            throw e;
+        } catch (final RuntimeException e) {
+            release(route);
+            throw e;
+        }
+    }
+
+    private SSLSocketFactory getSslSocketFactory() throws IOException {
+        try {
+            return sslSocketFactories.get(null, null);
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Resolves the host in advance to record the lookup time, the connection then finds the cached addresses.
+     */
+    private static void resolve(final URL url, final HttpMetrics.Host host, final long start) throws IOException {
+        try {
+            InetAddress.getAllByName(url.getHost());
+            host.getDns().record(System.nanoTime() - start);
+        } catch (final IOException e) {
+            host.completed(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the url and returns the response body.
+     *
+     * @param url    the url
+     * @param params the query name-value pairs
+     * @return the response body
+     * @throws IOException if an I/O error occurs or the response is an error
+     */
+    public String get(final String url, final String... params) throws IOException {
+        final Exchange exchange = open("GET", 0 < params.length ? Http.urlAppend(url, Http.UTF_8.name(), params) : url);
+        try {
+            return exchange.getResponseBodyAsString();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Posts the body and returns the response body.
+     *
+     * @param url   the url
+     * @param ctype the Content-Type
+     * @param body  the request body
+     * @return the response body
+     * @throws IOException if an I/O error occurs or the response is an error
+     */
+    public String post(final String url, final String ctype, final String body) throws IOException {
+        final Exchange exchange = open("POST", url);
+        try {
+            return exchange.post(ctype, body).getResponseBodyAsString();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Applies the client settings to the connection.
+     *
+     * @param connection the connection
+     */
+    void configure(final HttpURLConnection connection) {
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setUseCaches(false);
+        if (null != userAgent) {
+            connection.setRequestProperty("User-Agent", userAgent);
+        }
+        if (compression) {
+            connection.setRequestProperty("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+        }
+    }
+
+    private Route getRoute(final URL url) {
+        final int port = -1 < url.getPort() ? url.getPort() : url.getDefaultPort();
+        final String key = url.getProtocol() + "://" + url.getHost().toLowerCase() + ':' + port;
+        Route route = routes.get(key);
+        if (null == route) {
+            final Route created = new Route(key, maxConnectionsPerRoute);
+            route = routes.putIfAbsent(key, created);
+            route = null != route ? route : created;
+        }
+        return route;
+    }
+
+    private void acquire(final Route route) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        try {
+            if (!route.permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("timeout waiting for connection to " + route.key);
+            }
+            if (!connections.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                route.permits.release();
+                throw new SocketTimeoutException("timeout waiting for connection, max connections reached");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SocketTimeoutException("interrupted waiting for connection to " + route.key);
+        }
+    }
+
+    private void release(final Route route) {
+        connections.release();
+        route.permits.release();
+    }
+
+    /**
+     * Returns the number of exchanges in progress of the route of the url.
+     *
+     * @param url the url
+     * @return the number of exchanges in progress
+     */
+    public int getActiveCount(final URL url) {
+        return maxConnectionsPerRoute - getRoute(url).permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of threads waiting for a connection of the route of the url.
+     *
+     * @param url the url
+     * @return the number of waiting threads
+     */
+    public int getWaitingCount(final URL url) {
+        return getRoute(url).permits.getQueueLength();
+    }
+
+    public long getExchangeCount() {
+        return exchangeCount.get();
+    }
+
+    /**
+     * Returns the number of exchanges closed with a reusable connection (response body fully read).
+     *
+     * @return the number of reusable closes
+     */
+    public long getReusableCount() {
+        return reusableCount.get();
+    }
+
+    /* *************************************
+     *              Release
+     * *********************************** */
+
+    /**
+     * Releases the connection for reuse: reads the remaining response body (up to 64 KB) and closes the stream,
+     * disconnects only if the connection cannot be reused.
+     *
+     * @param connection the connection
+     * @return true if the connection can be reused by the keep-alive cache
+     */
+    static boolean release(final HttpURLConnection connection) {
+        if (!isConnected(connection)) {
+            connection.disconnect();
+            return false;
+        }
+        final InputStream in = getResponseStream(connection);
+        if (null == in) {
+            connection.disconnect();
+            return false;
+        }
+        try {
+            try {
+                if (drain(in)) {
+                    return true;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            /*-
+             * stream already closed by the reader (the connection is in the keep-alive cache now),
+             * disconnect now would close the cached connection.
+             */
+            return false;
+        }
+        connection.disconnect();
+        return false;
+    }
+
+    /**
+     * Returns the stream of the response body, or null if the request failed without a response.
+     */
+    private static InputStream getResponseStream(final HttpURLConnection connection) {
+        final InputStream es = connection.getErrorStream();
+        if (null != es) {
+            return es;
+        }
+        try {
+            return connection.getInputStream();
+        } catch (final IOException e) {
+            /*-
+             * an error response (4xx/5xx) not read yet: getInputStream throws, the error stream is available now.
+             */
+            return connection.getErrorStream();
+        }
+    }
+
+    private static boolean drain(final InputStream in) throws IOException {
+        final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        int total = 0;
+        int read;
+        while (-1 != (read = in.read(buffer))) {
+            total += read;
+            if (total > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the request has been sent, {@link java.net.URLConnection} has no public accessor.
+     */
+    static boolean isConnected(final HttpURLConnection connection) {
+        try {
+            connection.setIfModifiedSince(connection.getIfModifiedSince());
+            return false;
+        } catch (final IllegalStateException connected) {
+            return true;
+        }
+    }
+
+    /**
+     * The connection limit of a route.
+     */
+    private static final class Route {
+        private final String key;
+        private final Semaphore permits;
+
+        private Route(final String key, final int maxConnections) {
+            this.key = key;
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    /**
+     * A request-response exchange on a connection of the client.
+     * <p>
+     * The phase timings are recorded (if the client has metrics) when the exchange is driven by its methods.
+     */
+    public class Exchange implements Closeable {
+        private final HttpURLConnection connection;
+        private final Route route;
+        private final HttpMetrics.Host host;
+        private final long openedAt;
+        private boolean connected;
+        private boolean responded;
+        private boolean failed;
+        private boolean closed;
+
+        Exchange(final HttpURLConnection connection, final Route route, final HttpMetrics.Host host, final long openedAt) {
+            this.connection = connection;
+            this.route = route;
+            this.host = host;
+            this.openedAt = openedAt;
+        }
+
+        public HttpURLConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Connects (a new connection or a reused keep-alive connection), the request headers must be set before.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        public void connect() throws IOException {
+            if (connected) {
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                connection.connect();
+            } catch (final IOException e) {
+                failed = true;
+                throw e;
+            }
+            connected = true;
+            if (null != host) {
+                host.getConnect().record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Posts the body.
+         *
+         * @param ctype the Content-Type
+         * @param body  the request body
+         * @return this exchange
+         * @throws IOException if an I/O error occurs
+         * @see Http#post(HttpURLConnection, String, String)
+         */
+        public Exchange post(final String ctype, final String body) throws IOException {
+            final byte[] bytes = body.getBytes(Http.determineCharset(ctype, Http.UTF_8));
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", ctype);
+            connection.setDoOutput(true);
+            connect();
+
+            final long start = System.nanoTime();
+            try {
+                connection.getOutputStream().write(bytes);
+            } catch (final IOException e) {
+                failed = true;
+                throw e;
+            }
+            if (null != host) {
+                host.getSend().record(System.nanoTime() - start);
+                host.sent(bytes.length);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the response code, waits for the response headers.
+         *
+         * @return the response code
+         * @throws IOException if an I/O error occurs
+         */
+        public int getResponseCode() throws IOException {
+            if (responded) {
+                return connection.getResponseCode();
+            }
+            connect();
+            final long start = System.nanoTime();
+            try {
+                final int code = connection.getResponseCode();
+                responded = true;
+                failed = HttpURLConnection.HTTP_BAD_REQUEST <= code;
+                if (null != host) {
+                    host.getTtfb().record(System.nanoTime() - start);
+                }
+                return code;
+            } catch (final IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the response body.
+         *
+         * @return the response body
+         * @throws IOException if an I/O error occurs or the response is an error
+         * @see Http#getResponseBodyAsString(HttpURLConnection)
+         */
+        public String getResponseBodyAsString() throws IOException {
+            getResponseCode();
+            final long start = System.nanoTime();
+            try {
+                final byte[] body = Http.getResponseBodyAsBytes(connection);
+                if (null != host) {
+                    host.getBody().record(System.nanoTime() - start);
+                    host.received(body.length);
+                }
+                return new String(body, Http.getResponseCharset(connection, Http.UTF_8));
+            } catch (final IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Releases the connection for reuse and the connection permit of the route.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (null != host) {
+                host.completed(System.nanoTime() - openedAt, failed);
+            }
+            try {
+                if (release(connection)) {
+                    reusableCount.incrementAndGet();
+                }
+            } finally {
+                release(route);
+            }
+        }
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Http content coding (gzip, deflate) with pooled {@link Deflater}s / {@link Inflater}s.
+ * <p>
+ * {@link java.util.zip.GZIPInputStream} and {@link java.util.zip.GZIPOutputStream} allocate a new (native) inflater
+ * / deflater per stream, here the gzip framing (header, CRC32 trailer) is done by hand around pooled raw
+ * inflaters / deflaters, which are reset and returned to the pool when the stream is closed.
+ * The wire (compressed) and logical (uncompressed) bytes of the coded request and response bodies are counted.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpCompression {
+    /**
+     * The 'gzip' content coding.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The 'deflate' content coding (zlib format).
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The 'Accept-Encoding' request header value.
+     */
+    public static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int BYTE_MASK = 0xff;
+    private static final long UINT_MASK = 0xffffffffL;
+    private static final String X_GZIP = "x-gzip";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DEFAULT_POOL_SIZE = 32;
+
+    private static final HttpCompression SHARED = new HttpCompression(Deflater.DEFAULT_COMPRESSION, DEFAULT_POOL_SIZE);
+
+    private final int level;
+    private final AbstractPool<Deflater> deflaters;
+    private final AbstractPool<Inflater> gzipInflaters;
+    private final AbstractPool<Inflater> zlibInflaters;
+
+    private final AtomicLong requestLogicalBytes = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+    private final AtomicLong responseLogicalBytes = new AtomicLong();
+
+    /**
+     * Creates a compression.
+     *
+     * @param level    the deflater compression level
+     * @param poolSize the max number of pooled deflaters / inflaters per kind
+     */
+    public HttpCompression(final int level, final int poolSize) {
+        this.level = level;
+        this.deflaters = new AbstractPool<Deflater>(poolSize) {
+            @Override
+            Deflater create() {
+                return new Deflater(HttpCompression.this.level, true);
+            }
+
+            @Override
+            void reset(final Deflater deflater) {
+                deflater.reset();
+            }
+
+            @Override
+            void destroy(final Deflater deflater) {
+                deflater.end();
+            }
+        };
+        this.gzipInflaters = newInflaterPool(poolSize, true);
+        this.zlibInflaters = newInflaterPool(poolSize, false);
+    }
+
+    private static AbstractPool<Inflater> newInflaterPool(final int poolSize, final boolean nowrap) {
+        return new AbstractPool<Inflater>(poolSize) {
+            @Override
+            Inflater create() {
+                return new Inflater(nowrap);
+            }
+
+            @Override
+            void reset(final Inflater inflater) {
+                inflater.reset();
+            }
+
+            @Override
+            void destroy(final Inflater inflater) {
+                inflater.end();
+            }
+        };
+    }
+
+    public static HttpCompression getSharedInstance() {
+        return SHARED;
+    }
+
+    /**
+     * Compresses the request body in gzip format.
+     *
+     * @param body the request body
+     * @return the gzip compressed body
+     */
+    public byte[] gzip(final byte[] body) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try {
+            final OutputStream gzip = newGzipOutputStream(out);
+            gzip.write(body);
+            gzip.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a gzip compressing stream, closing it finishes the gzip stream and closes the target.
+     *
+     * @param out the target stream
+     * @return the compressing stream
+     * @throws IOException if an I/O error occurs
+     */
+    public OutputStream newGzipOutputStream(final OutputStream out) throws IOException {
+        return new GzipOutputStream(new CountingOutputStream(out), deflaters.borrow());
+    }
+
+    /**
+     * Decodes the response stream according to its content coding.
+     *
+     * @param contentEncoding the 'Content-Encoding' response header
+     * @param in              the response stream
+     * @return the decoded stream, the given stream if not coded
+     * @throws IOException if an I/O error occurs
+     */
+    public InputStream decode(final String contentEncoding, final InputStream in) throws IOException {
+        if (null == in || null == contentEncoding) {
+            return in;
+        }
+        final String coding = contentEncoding.trim();
+        if (GZIP.equalsIgnoreCase(coding) || X_GZIP.equalsIgnoreCase(coding)) {
+            final CountingInputStream wire = new CountingInputStream(in, responseWireBytes);
+            readGzipHeader(wire);
+            return new CountingInputStream(new GzipInputStream(wire, gzipInflaters.borrow()), responseLogicalBytes);
+        }
+        if (DEFLATE.equalsIgnoreCase(coding)) {
+            final CountingInputStream wire = new CountingInputStream(in, responseWireBytes);
+            return new CountingInputStream(new PooledInflaterInputStream(wire, zlibInflaters), responseLogicalBytes);
+        }
+        return in;
+    }
+
+    private static void readGzipHeader(final InputStream in) throws IOException {
+        if (GZIP_MAGIC != readUnsignedShort(in)) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (Deflater.DEFLATED != readUnsignedByte(in)) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUnsignedByte(in);
+        skip(in, GZIP_HEADER_SIZE - 4);
+        if (FEXTRA == (flags & FEXTRA)) {
+            skip(in, readUnsignedShort(in));
+        }
+        if (FNAME == (flags & FNAME)) {
+            while (0 != readUnsignedByte(in)) {
+                // skip file name
+            }
+        }
+        if (FCOMMENT == (flags & FCOMMENT)) {
+            while (0 != readUnsignedByte(in)) {
+                // skip comment
+            }
+        }
+        if (FHCRC == (flags & FHCRC)) {
+            skip(in, 2);
+        }
+    }
+
+    private static int readUnsignedShort(final InputStream in) throws IOException {
+        return readUnsignedByte(in) | (readUnsignedByte(in) << 8);
+    }
+
+    private static int readUnsignedByte(final InputStream in) throws IOException {
+        final int b = in.read();
+        if (0 > b) {
+            throw new EOFException("Unexpected end of GZIP stream");
+        }
+        return b;
+    }
+
+    private static void skip(final InputStream in, final int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUnsignedByte(in);
+        }
+    }
+
+    /**
+     * Returns the uncompressed bytes of the compressed request bodies.
+     *
+     * @return the logical request bytes
+     */
+    public long getRequestLogicalBytes() {
+        return requestLogicalBytes.get();
+    }
+
+    /**
+     * Returns the compressed bytes of the compressed request bodies.
+     *
+     * @return the wire request bytes
+     */
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    /**
+     * Returns the compressed bytes read of the compressed response bodies.
+     *
+     * @return the wire response bytes
+     */
+    public long getResponseWireBytes() {
+        return responseWireBytes.get();
+    }
+
+    /**
+     * Returns the uncompressed bytes read of the compressed response bodies.
+     *
+     * @return the logical response bytes
+     */
+    public long getResponseLogicalBytes() {
+        return responseLogicalBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "HttpCompression{requestLogical=" + getRequestLogicalBytes() + ", requestWire=" + getRequestWireBytes()
+                + ", responseWire=" + getResponseWireBytes() + ", responseLogical=" + getResponseLogicalBytes() + '}';
+    }
+
+    /**
+     * A bounded pool, objects beyond the bound are destroyed.
+     */
+    private abstract static class AbstractPool<T> {
+        private final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxSize;
+
+        AbstractPool(final int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Creates a new object.
+         *
+         * @return the object
+         */
+        abstract T create();
+
+        /**
+         * Resets the object for reuse.
+         *
+         * @param object the object
+         */
+        abstract void reset(T object);
+
+        /**
+         * Releases the native resources of the object.
+         *
+         * @param object the object
+         */
+        abstract void destroy(T object);
+
+        T borrow() {
+            final T object = idle.poll();
+            if (null == object) {
+                return create();
+            }
+            size.decrementAndGet();
+            return object;
+        }
+
+        void giveBack(final T object) {
+            reset(object);
+            if (size.incrementAndGet() <= maxSize) {
+                idle.offer(object);
+            } else {
+                size.decrementAndGet();
+                destroy(object);
+            }
+        }
+    }
+
+    /**
+     * Gzip output stream on a pooled raw deflater.
+     */
+    private final class GzipOutputStream extends DeflaterOutputStream {
+        private final CRC32 crc = new CRC32();
+        private final CountingOutputStream wire;
+        private long logical;
+        private boolean closed;
+
+        private GzipOutputStream(final CountingOutputStream out, final Deflater deflater) throws IOException {
+            super(out, deflater, BUFFER_SIZE);
+            this.wire = out;
+            out.write(new byte[]{(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0});
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+            logical += len;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!def.finished()) {
+                super.finish();
+                writeInt((int) crc.getValue());
+                writeInt((int) logical);
+            }
+        }
+
+        private void writeInt(final int v) throws IOException {
+            out.write(new byte[]{(byte) v, (byte) (v >> 8), (byte) (v >> 16), (byte) (v >> 24)});
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                requestLogicalBytes.addAndGet(logical);
+                requestWireBytes.addAndGet(wire.count);
+                deflaters.giveBack(def);
+            }
+        }
+    }
+
+    /**
+     * Inflater stream returning its pooled inflater on close.
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private final AbstractPool<Inflater> pool;
+        private boolean closed;
+
+        PooledInflaterInputStream(final InputStream in, final AbstractPool<Inflater> pool) {
+            this(in, pool.borrow(), pool);
+        }
+
+        PooledInflaterInputStream(final InputStream in, final Inflater inflater, final AbstractPool<Inflater> pool) {
+            super(in, inflater, BUFFER_SIZE);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                pool.giveBack(inf);
+            }
+        }
+    }
+
+    /**
+     * Gzip body stream (after the header) on a pooled raw inflater, verifies the CRC32 trailer.
+     */
+    private final class GzipInputStream extends PooledInflaterInputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean eof;
+
+        private GzipInputStream(final InputStream in, final Inflater inflater) {
+            super(in, inflater, gzipInflaters);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            final int n = super.read(b, off, len);
+            if (0 < n) {
+                crc.update(b, off, n);
+            } else if (0 > n) {
+                eof = true;
+                readTrailer();
+            }
+            return n;
+        }
+
+        private void readTrailer() throws IOException {
+            /*-
+             * the trailer may be partly buffered by the inflater.
+             */
+            final byte[] trailer = new byte[GZIP_TRAILER_SIZE];
+            final int buffered = Math.min(inf.getRemaining(), GZIP_TRAILER_SIZE);
+            System.arraycopy(buf, len - inf.getRemaining(), trailer, 0, buffered);
+            for (int i = buffered; i < GZIP_TRAILER_SIZE; i++) {
+                trailer[i] = (byte) readUnsignedByte(in);
+            }
+            final long expectedCrc = readInt(trailer, 0) & UINT_MASK;
+            final long expectedSize = readInt(trailer, 4) & UINT_MASK;
+            if (expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & UINT_MASK)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        private int readInt(final byte[] b, final int off) {
+            return (b[off] & BYTE_MASK) | ((b[off + 1] & BYTE_MASK) << 8)
+                    | ((b[off + 2] & BYTE_MASK) << 16) | ((b[off + 3] & BYTE_MASK) << 24);
+        }
+    }
+
+    /**
+     * Counts the bytes read.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        private CountingInputStream(final InputStream in, final AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (-1 < b) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (0 < n) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Counts the bytes written.
+     */
+    private static final class CountingOutputStream extends java.io.FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent cookie store (RFC 6265 matching rules) for many hosts.
+ * <p>
+ * Cookies are indexed by the registrable domain of their domain, each index keeps its cookies in an immutable array
+ * ordered by path length (longest first), so a request only scans the cookies of its registrable domain without
+ * locking and without sorting. Cookies are also ordered by expiry: expired cookies are removed and, beyond the max
+ * number of cookies, the cookies expiring first are evicted (session cookies last).
+ * <blockquote><pre>
+ * HttpCookieJar jar = new HttpCookieJar(50000);
+ * HttpURLConnection conn = Http.open(url, "GET");
+ * jar.addRequestCookies(conn);
+ * int code = conn.getResponseCode();
+ * jar.saveResponseCookies(conn);
+ * </pre></blockquote>
+ * NOTE: the registrable domain is approximated without the public suffix list: the last two labels, or three when the
+ * top-level domain is a country code and the second-level label a common generic one ('com.cn', 'co.uk', ...).
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpCookieJar {
+    private static final String SET_COOKIE = "Set-Cookie";
+    private static final String SET_COOKIE2 = "Set-Cookie2";
+    private static final String ROOT_PATH = "/";
+    private static final char DOT = '.';
+    private static final int COUNTRY_CODE_LENGTH = 2;
+    private static final String[] GENERIC_SECOND_LEVELS = {"ac", "co", "com", "edu", "gov", "net", "or", "org"};
+
+    private static final Comparator<Entry> EXPIRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry e1, final Entry e2) {
+            if (e1.expiresAt != e2.expiresAt) {
+                return e1.expiresAt < e2.expiresAt ? -1 : 1;
+            }
+            return e1.seq < e2.seq ? -1 : (e1.seq == e2.seq ? 0 : 1);
+        }
+    };
+
+    private final int maxCookies;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private final ConcurrentSkipListSet<Entry> expiries = new ConcurrentSkipListSet<Entry>(EXPIRY_ORDER);
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * Creates a cookie jar.
+     *
+     * @param maxCookies the max number of cookies
+     */
+    public HttpCookieJar(final int maxCookies) {
+        this.maxCookies = maxCookies;
+    }
+
+    /**
+     * Adds the cookies matching the url of the connection to its 'Cookie' request header.
+     *
+     * @param httpUrlConnection the connection, not connected
+     * @return the number of added cookies
+     */
+    public int addRequestCookies(final HttpURLConnection httpUrlConnection) {
+        final List<HttpCookie> cookies = get(httpUrlConnection.getURL());
+        if (cookies.isEmpty()) {
+            return 0;
+        }
+        final StringBuilder buff = new StringBuilder();
+        for (final HttpCookie cookie : cookies) {
+            if (0 < buff.length()) {
+                buff.append("; ");
+            }
+            buff.append(cookie.getName()).append('=').append(cookie.getValue());
+        }
+        httpUrlConnection.addRequestProperty("Cookie", buff.toString());
+        return cookies.size();
+    }
+
+    /**
+     * Saves the cookies of the 'Set-Cookie' response headers of the connection.
+     *
+     * @param httpUrlConnection the connection, response received
+     * @return the number of saved cookies
+     */
+    public int saveResponseCookies(final HttpURLConnection httpUrlConnection) {
+        final URL url = httpUrlConnection.getURL();
+        int saved = 0;
+        for (final Map.Entry<String, List<String>> header : httpUrlConnection.getHeaderFields().entrySet()) {
+            final String name = header.getKey();
+            final boolean setCookie = SET_COOKIE.equalsIgnoreCase(name) || SET_COOKIE2.equalsIgnoreCase(name);
+            if (!setCookie) {
+                continue;
+            }
+            for (final String value : header.getValue()) {
+                try {
+                    for (final HttpCookie cookie : HttpCookie.parse(value)) {
+                        saved += add(url, cookie) ? 1 : 0;
+                    }
+                } catch (final IllegalArgumentException ignore) {
+                    // bogus header.
+                }
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Adds the cookie received from the url, a cookie already expired deletes the stored one.
+     *
+     * @param url    the url which set the cookie
+     * @param cookie the cookie
+     * @return true if the cookie is accepted
+     */
+    public boolean add(final URL url, final HttpCookie cookie) {
+        final String host = url.getHost().toLowerCase(Locale.ENGLISH);
+        final String registrable = registrableDomain(host);
+        String domain = cookie.getDomain();
+        final boolean hostOnly = null == domain || domain.isEmpty();
+        domain = hostOnly ? host : trimDot(domain.toLowerCase(Locale.ENGLISH));
+        final boolean foreign = !domainMatches(host, domain) || domain.length() < registrable.length();
+        if (foreign) {
+            return false;
+        }
+        final String path = null != cookie.getPath() && cookie.getPath().startsWith(ROOT_PATH) ? cookie.getPath() : defaultPath(url.getPath());
+        final long maxAge = cookie.getMaxAge();
+        final long now = System.currentTimeMillis();
+        final long expiresAt = -1 < maxAge ? now + TimeUnit.SECONDS.toMillis(maxAge) : Long.MAX_VALUE;
+
+        final Entry entry = new Entry(cookie, domain, path, hostOnly, expiresAt, sequence.incrementAndGet());
+        final Bucket bucket = getBucket(registrable);
+        if (expiresAt <= now) {
+            final Entry removed = bucket.remove(entry);
+            if (null != removed) {
+                expiries.remove(removed);
+                size.decrementAndGet();
+            }
+            return true;
+        }
+        final Entry replaced = bucket.put(entry);
+        if (null != replaced) {
+            expiries.remove(replaced);
+        } else {
+            size.incrementAndGet();
+        }
+        expiries.add(entry);
+        evict(now);
+        return true;
+    }
+
+    /**
+     * Returns the cookies to send to the url, the more specific paths first.
+     *
+     * @param url the url
+     * @return the cookies
+     */
+    public List<HttpCookie> get(final URL url) {
+        final String host = url.getHost().toLowerCase(Locale.ENGLISH);
+        final Bucket bucket = buckets.get(registrableDomain(host));
+        if (null == bucket) {
+            return Collections.emptyList();
+        }
+        final String path = null != url.getPath() && !url.getPath().isEmpty() ? url.getPath() : ROOT_PATH;
+        final boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        final long now = System.currentTimeMillis();
+
+        final List<HttpCookie> cookies = new ArrayList<HttpCookie>();
+        for (final Entry entry : bucket.entries) {
+            final boolean matches = entry.expiresAt > now && (secure || !entry.secure) && entry.matches(host, path);
+            if (matches) {
+                cookies.add(entry.cookie);
+            }
+        }
+        return cookies;
+    }
+
+    /**
+     * Removes the expired cookies and, beyond the max number of cookies, the cookies expiring first.
+     *
+     * @return the number of removed cookies
+     */
+    public int evict() {
+        return evict(System.currentTimeMillis());
+    }
+
+    private int evict(final long now) {
+        int evicted = 0;
+        for (Entry first = firstExpiry(); null != first; first = firstExpiry()) {
+            final boolean evictable = first.expiresAt <= now || size.get() > maxCookies;
+            if (!evictable) {
+                break;
+            }
+            final boolean removed = expiries.remove(first) && null != getBucket(registrableDomain(first.domain)).remove(first);
+            if (removed) {
+                size.decrementAndGet();
+                evicted++;
+            }
+        }
+        evictedCount.addAndGet(evicted);
+        return evicted;
+    }
+
+    private Entry firstExpiry() {
+        return expiries.isEmpty() ? null : expiries.first();
+    }
+
+    public void clear() {
+        buckets.clear();
+        expiries.clear();
+        size.set(0);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of cookies removed because expired or beyond the max number of cookies.
+     *
+     * @return the number of evicted cookies
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "HttpCookieJar{size=" + size() + ", domains=" + buckets.size() + ", evicted=" + getEvictedCount() + '}';
+    }
+
+    private Bucket getBucket(final String registrable) {
+        Bucket bucket = buckets.get(registrable);
+        if (null == bucket) {
+            final Bucket created = new Bucket();
+            bucket = buckets.putIfAbsent(registrable, created);
+            bucket = null != bucket ? bucket : created;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the registrable domain (approximated) of the host.
+     *
+     * @param host the lower case host
+     * @return the registrable domain
+     */
+    static String registrableDomain(final String host) {
+        final boolean ip = host.isEmpty() || -1 < host.indexOf(':') || Character.isDigit(host.charAt(host.length() - 1));
+        if (ip) {
+            return host;
+        }
+        final int last = host.lastIndexOf(DOT);
+        if (0 > last) {
+            return host;
+        }
+        final int second = host.lastIndexOf(DOT, last - 1);
+        if (0 > second) {
+            return host;
+        }
+        final boolean countryCode = COUNTRY_CODE_LENGTH == host.length() - last - 1;
+        if (countryCode && isGenericSecondLevel(host.substring(second + 1, last))) {
+            final int third = host.lastIndexOf(DOT, second - 1);
+            return host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    private static boolean isGenericSecondLevel(final String label) {
+        for (final String generic : GENERIC_SECOND_LEVELS) {
+            if (generic.equals(label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean domainMatches(final String host, final String domain) {
+        return host.equals(domain) || (host.endsWith(domain) && DOT == host.charAt(host.length() - domain.length() - 1));
+    }
+
+    private static String trimDot(final String domain) {
+        return !domain.isEmpty() && DOT == domain.charAt(0) ? domain.substring(1) : domain;
+    }
+
+    /**
+     * Returns the default cookie path: the directory of the request path (RFC 6265 5.1.4).
+     */
+    private static String defaultPath(final String requestPath) {
+        final int i = null != requestPath ? requestPath.lastIndexOf('/') : -1;
+        return 0 < i ? requestPath.substring(0, i) : ROOT_PATH;
+    }
+
+    /**
+     * A stored cookie.
+     */
+    private static final class Entry {
+        private final HttpCookie cookie;
+        private final String domain;
+        private final String path;
+        private final boolean hostOnly;
+        private final boolean secure;
+        private final long expiresAt;
+        private final long seq;
+
+        private Entry(final HttpCookie cookie, final String domain, final String path,
+                      final boolean hostOnly, final long expiresAt, final long seq) {
+            this.cookie = cookie;
+            this.domain = domain;
+            this.path = path;
+            this.hostOnly = hostOnly;
+            this.secure = cookie.getSecure();
+            this.expiresAt = expiresAt;
+            this.seq = seq;
+        }
+
+        private boolean sameCookie(final Entry other) {
+            return cookie.getName().equals(other.cookie.getName()) && domain.equals(other.domain) && path.equals(other.path);
+        }
+
+        /**
+         * Domain-match and path-match (RFC 6265 5.1.3, 5.1.4).
+         */
+        private boolean matches(final String host, final String requestPath) {
+            final boolean domainMatches = hostOnly ? host.equals(domain) : domainMatches(host, domain);
+            if (!domainMatches || !requestPath.startsWith(path)) {
+                return false;
+            }
+            final int length = path.length();
+            return requestPath.length() == length || '/' == path.charAt(length - 1) || '/' == requestPath.charAt(length);
+        }
+    }
+
+    /**
+     * The cookies of a registrable domain, copy on write, ordered by path length (longest first) then creation.
+     */
+    private static final class Bucket {
+        private static final Entry[] EMPTY = new Entry[0];
+
+        private volatile Entry[] entries = EMPTY;
+
+        /**
+         * Puts the entry, returns the replaced entry (same name, domain and path) if any.
+         */
+        private synchronized Entry put(final Entry entry) {
+            final Entry[] current = entries;
+            final List<Entry> next = new ArrayList<Entry>(current.length + 1);
+            Entry replaced = null;
+            boolean inserted = false;
+            for (final Entry e : current) {
+                if (null == replaced && e.sameCookie(entry)) {
+                    replaced = e;
+                    continue;
+                }
+                if (!inserted && e.path.length() < entry.path.length()) {
+                    next.add(entry);
+                    inserted = true;
+                }
+                next.add(e);
+            }
+            if (!inserted) {
+                next.add(entry);
+            }
+            entries = next.toArray(EMPTY);
+            return replaced;
+        }
+
+        /**
+         * Removes the entry (or the same cookie if the entry is not stored), returns the removed entry if any.
+         */
+        private synchronized Entry remove(final Entry entry) {
+            final Entry[] current = entries;
+            for (int i = 0; i < current.length; i++) {
+                final boolean matches = current[i] == entry || (entry.seq > current[i].seq && current[i].sameCookie(entry));
+                if (matches) {
+                    final Entry[] next = new Entry[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    entries = next;
+                    return current[i];
+                }
+            }
+            return null;
+        }
+    }
+}
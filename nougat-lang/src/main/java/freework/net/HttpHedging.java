@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import freework.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedged requests and retries on a {@link HttpClient}, limited by a retry budget.
+ * <p>
+ * An idempotent request still unanswered after the hedge delay is sent once more, the first response wins and the
+ * other attempt is aborted (disconnected). The hedge delay is a percentile (0.95 by default) of the latencies recorded
+ * per host, so only the slowest requests are hedged; until a host has enough samples the initial delay is used.
+ * A failed idempotent request (I/O error or server error response) is retried up to the max retries, a client error
+ * response (4xx) fails at once since the same request would fail again.
+ * <p>
+ * Hedges and retries are extra requests, each one withdraws a token from the retry budget, each request deposits
+ * <code>ratio</code> tokens (up to the reserve), so the extra requests cannot exceed <code>ratio</code> of the
+ * requests (plus the reserve) and an outage is not amplified.
+ * <blockquote><pre>
+ * HttpHedging hedging = new HttpHedging(HttpClient.getDefault()).percentile(0.95).budget(0.1, 10);
+ * String body = hedging.get("http://slow-service/api/items/1");
+ * </pre></blockquote>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpHedging {
+    private static final double DEFAULT_PERCENTILE = 0.95;
+    private static final long DEFAULT_MIN_DELAY_MILLIS = 5;
+    private static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+    private static final int DEFAULT_MIN_SAMPLES = 20;
+    private static final int DEFAULT_MAX_RETRIES = 1;
+    private static final double DEFAULT_BUDGET_RATIO = 0.1;
+    private static final int DEFAULT_BUDGET_RESERVE = 10;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The token unit of the retry budget, the balance is kept in milli tokens.
+     */
+    private static final long TOKEN = 1000;
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE"));
+
+    private final HttpClient client;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private volatile double percentile = DEFAULT_PERCENTILE;
+    private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_DELAY_MILLIS);
+    private volatile long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_DELAY_MILLIS);
+    private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long budgetDeposit = (long) (DEFAULT_BUDGET_RATIO * TOKEN);
+    private volatile long budgetReserve = DEFAULT_BUDGET_RESERVE * TOKEN;
+    private final AtomicLong balance = new AtomicLong(DEFAULT_BUDGET_RESERVE * TOKEN);
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+    /**
+     * Creates a hedging policy.
+     *
+     * @param client the client sending the requests
+     */
+    public HttpHedging(final HttpClient client) {
+        this.client = client;
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "http-hedging-" + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets the percentile of the host latencies used as hedge delay.
+     *
+     * @param percentile the percentile as a fraction in (0, 1], eg: 0.95
+     * @return this policy
+     */
+    public HttpHedging percentile(final double percentile) {
+        if (0 >= percentile || 1 < percentile) {
+            throw new IllegalArgumentException("percentile must be in (0, 1]: " + percentile);
+        }
+        this.percentile = percentile;
+        return this;
+    }
+
+    /**
+     * Sets the min hedge delay.
+     *
+     * @param delay the min delay
+     * @param unit  the time unit
+     * @return this policy
+     */
+    public HttpHedging minDelay(final long delay, final TimeUnit unit) {
+        this.minDelayNanos = unit.toNanos(delay);
+        return this;
+    }
+
+    /**
+     * Sets the hedge delay of the hosts without enough latency samples.
+     *
+     * @param delay   the initial delay
+     * @param unit    the time unit
+     * @param samples the number of samples required to use the percentile
+     * @return this policy
+     */
+    public HttpHedging initialDelay(final long delay, final TimeUnit unit, final int samples) {
+        this.initialDelayNanos = unit.toNanos(delay);
+        this.minSamples = samples;
+        return this;
+    }
+
+    /**
+     * Sets the max number of retries of a failed idempotent request.
+     *
+     * @param retries the max number of retries, 0 for none
+     * @return this policy
+     */
+    public HttpHedging maxRetries(final int retries) {
+        this.maxRetries = retries;
+        return this;
+    }
+
+    /**
+     * Sets the retry budget.
+     *
+     * @param ratio   the max ratio of extra requests (hedges and retries) to requests, eg: 0.1
+     * @param reserve the max number of tokens saved up, also the initial balance
+     * @return this policy
+     */
+    public HttpHedging budget(final double ratio, final int reserve) {
+        this.budgetDeposit = (long) (ratio * TOKEN);
+        this.budgetReserve = reserve * TOKEN;
+        this.balance.set(budgetReserve);
+        return this;
+    }
+
+    /**
+     * Gets the url and returns the response body.
+     *
+     * @param url the url
+     * @return the response body
+     * @throws IOException if all attempts fail
+     */
+    public String get(final String url) throws IOException {
+        return execute("GET", url, HttpBatch.BODY_AS_STRING);
+    }
+
+    /**
+     * Executes the request, hedged and retried if the method is idempotent.
+     *
+     * @param method  the http request method
+     * @param url     the url
+     * @param handler the response handler, it may run twice concurrently
+     * @param <T>     the result type
+     * @return the result of the first successful attempt
+     * @throws IOException if all attempts fail
+     */
+    public <T> T execute(final String method, final String url, final HttpBatch.ResponseHandler<T> handler) throws IOException {
+        requestCount.incrementAndGet();
+        deposit();
+        final LatencyHistogram latency = getLatency(url);
+        if (!IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ENGLISH))) {
+            final Attempt<T> attempt = new Attempt<T>(method, url, handler);
+            final T value = attempt.call();
+            latency.record(attempt.elapsedNanos);
+            return value;
+        }
+        try {
+            return hedge(method, url, handler, latency);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for " + url);
+        }
+    }
+
+    private <T> T hedge(final String method, final String url, final HttpBatch.ResponseHandler<T> handler,
+                        final LatencyHistogram latency) throws IOException, InterruptedException {
+        final ExecutorCompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+        final Map<Future<T>, Attempt<T>> attempts = new HashMap<Future<T>, Attempt<T>>(4);
+        final long delay = getHedgeDelay(latency);
+        boolean hedged = false;
+        int retries = 0;
+        IOException error = null;
+        submit(completion, attempts, new Attempt<T>(method, url, handler));
+        try {
+            for (int outstanding = 1; 0 < outstanding; ) {
+                final Future<T> future = hedged ? completion.take() : completion.poll(delay, TimeUnit.NANOSECONDS);
+                if (null == future) {
+                    hedged = true;
+                    if (withdraw()) {
+                        hedgeCount.incrementAndGet();
+                        submit(completion, attempts, new Attempt<T>(method, url, handler));
+                        outstanding++;
+                    }
+                    continue;
+                }
+                outstanding--;
+                final Attempt<T> attempt = attempts.get(future);
+                try {
+                    final T value = future.get();
+                    latency.record(attempt.elapsedNanos);
+                    if (1 < attempt.seq) {
+                        hedgeWinCount.incrementAndGet();
+                    }
+                    return value;
+                } catch (final ExecutionException e) {
+                    error = toIOException(e.getCause());
+                }
+                if (attempt.isClientError()) {
+                    break;
+                }
+                final boolean retry = 0 == outstanding && retries < maxRetries && withdraw();
+                if (retry) {
+                    retries++;
+                    retryCount.incrementAndGet();
+                    submit(completion, attempts, new Attempt<T>(method, url, handler));
+                    outstanding++;
+                }
+            }
+            throw error;
+        } finally {
+            for (final Map.Entry<Future<T>, Attempt<T>> entry : attempts.entrySet()) {
+                entry.getKey().cancel(false);
+                entry.getValue().abort();
+            }
+        }
+    }
+
+    private <T> void submit(final ExecutorCompletionService<T> completion, final Map<Future<T>, Attempt<T>> attempts, final Attempt<T> attempt) {
+        attempt.seq = attempts.size() + 1;
+        attempts.put(completion.submit(attempt), attempt);
+    }
+
+    private static IOException toIOException(final Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /* *************************************
+     *              Budget
+     * *********************************** */
+
+    private void deposit() {
+        final long reserve = budgetReserve;
+        long current;
+        do {
+            current = balance.get();
+            if (current >= reserve) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(reserve, current + budgetDeposit)));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                budgetExhaustedCount.incrementAndGet();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /* *************************************
+     *              Latency
+     * *********************************** */
+
+    private LatencyHistogram getLatency(final String url) throws IOException {
+        final URL u = new URL(url);
+        final int port = -1 < u.getPort() ? u.getPort() : u.getDefaultPort();
+        final String key = u.getProtocol() + "://" + u.getHost().toLowerCase(Locale.ENGLISH) + ':' + port;
+        LatencyHistogram latency = latencies.get(key);
+        if (null == latency) {
+            final LatencyHistogram created = new LatencyHistogram();
+            latency = latencies.putIfAbsent(key, created);
+            latency = null != latency ? latency : created;
+        }
+        return latency;
+    }
+
+    private long getHedgeDelay(final LatencyHistogram latency) {
+        if (latency.getCount() < minSamples) {
+            return initialDelayNanos;
+        }
+        return Math.max(minDelayNanos, latency.getPercentile(percentile, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Returns the current hedge delay of the host of the url.
+     *
+     * @param url  the url
+     * @param unit the time unit
+     * @return the hedge delay
+     * @throws IOException if the url is malformed
+     */
+    public long getHedgeDelay(final String url, final TimeUnit unit) throws IOException {
+        return unit.convert(getHedgeDelay(getLatency(url)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the latencies of the successful requests per host ('scheme://host:port').
+     *
+     * @return the latencies per host
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return new HashMap<String, LatencyHistogram>(latencies);
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of hedged (duplicated) requests.
+     *
+     * @return the number of hedges
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered by the hedge first.
+     *
+     * @return the number of hedge wins
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Returns the number of hedges and retries denied by the retry budget.
+     *
+     * @return the number of denied extra requests
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "HttpHedging{requests=" + getRequestCount() + ", hedges=" + getHedgeCount()
+                + ", hedgeWins=" + getHedgeWinCount() + ", retries=" + getRetryCount()
+                + ", budgetExhausted=" + getBudgetExhaustedCount() + '}';
+    }
+
+    /**
+     * An attempt of a request, it can be aborted (disconnected) until its response is read.
+     */
+    private final class Attempt<T> implements Callable<T> {
+        private static final int RUNNING = 0;
+        private static final int DONE = 1;
+        private static final int ABORTED = 2;
+
+        private final String method;
+        private final String url;
+        private final HttpBatch.ResponseHandler<T> handler;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private volatile HttpURLConnection connection;
+        private volatile long elapsedNanos;
+        private volatile int responseCode = -1;
+        private int seq;
+
+        private Attempt(final String method, final String url, final HttpBatch.ResponseHandler<T> handler) {
+            this.method = method;
+            this.url = url;
+            this.handler = handler;
+        }
+
+        @Override
+        public T call() throws IOException {
+            final long start = System.nanoTime();
+            final HttpClient.Exchange exchange = client.open(method, url);
+            try {
+                connection = exchange.getConnection();
+                if (ABORTED == state.get()) {
+                    throw new InterruptedIOException("attempt aborted");
+                }
+                final T value;
+                try {
+                    value = handler.handle(connection);
+                } catch (final IOException e) {
+                    responseCode = getResponseCode(connection);
+                    throw e;
+                }
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    throw new InterruptedIOException("attempt aborted");
+                }
+                elapsedNanos = System.nanoTime() - start;
+                return value;
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Returns whether the attempt failed with a client error response (4xx), retrying it would fail again.
+         */
+        private boolean isClientError() {
+            final int code = responseCode;
+            return HttpURLConnection.HTTP_BAD_REQUEST <= code && HttpURLConnection.HTTP_INTERNAL_ERROR > code;
+        }
+
+        private void abort() {
+            if (state.compareAndSet(RUNNING, ABORTED)) {
+                final HttpURLConnection conn = connection;
+                if (null != conn) {
+                    conn.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the response code if the response headers were received, -1 if the request failed before
+     * (the connection is not asked to connect again).
+     */
+    private static int getResponseCode(final HttpURLConnection connection) {
+        if (!HttpClient.isConnected(connection)) {
+            return -1;
+        }
+        try {
+            return connection.getResponseCode();
+        } catch (final IOException e) {
+            return -1;
+        }
+    }
+}
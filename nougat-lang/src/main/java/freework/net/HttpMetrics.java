@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import freework.util.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per host phase timings of the exchanges of a {@link HttpClient}.
+ * <p>
+ * The phases of an exchange are recorded by the {@link HttpClient.Exchange} methods:
+ * <ul>
+ * <li>dns: the host lookup before opening the connection (fast when cached by {@link java.net.InetAddress})</li>
+ * <li>connect: TCP connect and TLS handshake of a new connection, about 0 for a reused keep-alive connection</li>
+ * <li>tls: the TLS handshakes of the host (https exchanges of the client, from socket creation)</li>
+ * <li>send: writing the request body by {@link HttpClient.Exchange#post(String, String)}</li>
+ * <li>ttfb: from the request sent to the response headers received</li>
+ * <li>body: reading the response body by {@link HttpClient.Exchange#getResponseBodyAsString()}</li>
+ * <li>total: from open to close of the exchange</li>
+ * </ul>
+ * Recording is a few {@link System#nanoTime()} calls and atomic increments per exchange, cheap enough to leave on:
+ * <blockquote><pre>
+ * HttpMetrics metrics = new HttpMetrics();
+ * HttpClient client = new HttpClient().metrics(metrics);
+ * ...
+ * LOGGER.info("http metrics:\n{}", metrics.dump());
+ * </pre></blockquote>
+ * NOTE: the bytes of a body written or read directly through {@link HttpClient.Exchange#getConnection()} are not counted.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpMetrics implements SslSocketFactoryCache.HandshakeListener {
+    private static final double[] PERCENTILES = {0.5D, 0.99D};
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<String, Host>();
+
+    /**
+     * Returns the metrics of the host, created if absent.
+     *
+     * @param host the host
+     * @return the host metrics
+     */
+    public Host getHost(final String host) {
+        final String key = host.toLowerCase(Locale.ENGLISH);
+        Host metrics = hosts.get(key);
+        if (null == metrics) {
+            final Host created = new Host(key);
+            metrics = hosts.putIfAbsent(key, created);
+            metrics = null != metrics ? metrics : created;
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of all hosts, sorted by host.
+     *
+     * @return the host metrics
+     */
+    public Map<String, Host> getHosts() {
+        return new TreeMap<String, Host>(hosts);
+    }
+
+    public void clear() {
+        hosts.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handshakeCompleted(final String host, final long elapsedNanos, final boolean resumed) {
+        if (null != host) {
+            getHost(host).tls.record(elapsedNanos);
+        }
+    }
+
+    /**
+     * Dumps the metrics, one line per host with the p50/p99 of the phases in milliseconds.
+     *
+     * @return the metrics text
+     */
+    public String dump() {
+        final StringBuilder buff = new StringBuilder();
+        for (final Host host : getHosts().values()) {
+            host.appendTo(buff);
+            buff.append('\n');
+        }
+        return buff.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "HttpMetrics{hosts=" + hosts.size() + '}';
+    }
+
+    /**
+     * The metrics of a host.
+     */
+    public static final class Host {
+        private final String name;
+        private final LatencyHistogram dns = new LatencyHistogram();
+        private final LatencyHistogram connect = new LatencyHistogram();
+        private final LatencyHistogram tls = new LatencyHistogram();
+        private final LatencyHistogram send = new LatencyHistogram();
+        private final LatencyHistogram ttfb = new LatencyHistogram();
+        private final LatencyHistogram body = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        private Host(final String name) {
+            this.name = name;
+        }
+
+        void completed(final long totalNanos, final boolean failed) {
+            total.record(totalNanos);
+            requestCount.incrementAndGet();
+            if (failed) {
+                errorCount.incrementAndGet();
+            }
+        }
+
+        void sent(final long bytes) {
+            bytesSent.addAndGet(bytes);
+        }
+
+        void received(final long bytes) {
+            bytesReceived.addAndGet(bytes);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getDns() {
+            return dns;
+        }
+
+        public LatencyHistogram getConnect() {
+            return connect;
+        }
+
+        public LatencyHistogram getTls() {
+            return tls;
+        }
+
+        public LatencyHistogram getSend() {
+            return send;
+        }
+
+        public LatencyHistogram getTtfb() {
+            return ttfb;
+        }
+
+        public LatencyHistogram getBody() {
+            return body;
+        }
+
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        /**
+         * Returns the number of exchanges which failed (I/O error or error response).
+         *
+         * @return the number of errors
+         */
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        private void appendTo(final StringBuilder buff) {
+            buff.append(name).append(" requests=").append(getRequestCount()).append(" errors=").append(getErrorCount())
+                    .append(" sent=").append(getBytesSent()).append(" received=").append(getBytesReceived());
+            appendTo(buff, "dns", dns);
+            appendTo(buff, "connect", connect);
+            appendTo(buff, "tls", tls);
+            appendTo(buff, "send", send);
+            appendTo(buff, "ttfb", ttfb);
+            appendTo(buff, "body", body);
+            appendTo(buff, "total", total);
+        }
+
+        private static void appendTo(final StringBuilder buff, final String phase, final LatencyHistogram histogram) {
+            buff.append(' ').append(phase).append('=');
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                final long micros = histogram.getPercentile(PERCENTILES[i], TimeUnit.MICROSECONDS);
+                buff.append(0 < i ? "/" : "").append(String.format(Locale.ENGLISH, "%.1f", micros / MICROS_PER_MILLI));
+            }
+            buff.append("ms");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            final StringBuilder buff = new StringBuilder();
+            appendTo(buff);
+            return buff.toString();
+        }
+    }
+}
@@ -0,0 +1,635 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import freework.codec.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Private (client side) cache of GET responses.
+ * <p>
+ * Responses are kept in a memory LRU bounded by their body size, the entries evicted from memory can spill to a disk
+ * directory (a second LRU level of this process, not reloaded after restart). A cached response is served without a
+ * request while it is fresh ('Cache-Control: max-age', or 'Expires' relative to 'Date', minus its 'Age'), after that
+ * it is revalidated with 'If-None-Match' / 'If-Modified-Since' and a '304 Not Modified' is served from the cache.
+ * Concurrent misses (or revalidations) of the same url share one request.
+ * <blockquote><pre>
+ * HttpResponseCache cache = new HttpResponseCache(HttpClient.getDefault(), 16 * 1024 * 1024)
+ *         .diskSpill(new File("/var/cache/app/http"), 256 * 1024 * 1024);
+ * String config = cache.get("http://config/api/settings").getBodyAsString();
+ * </pre></blockquote>
+ * Only '200 OK' responses with a freshness lifetime or a validator are stored, 'no-store' and 'Vary: *' responses
+ * are not, 'no-cache' responses are stored but always revalidated. The requests are sent by the given client, so the
+ * cache key is the url only.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class HttpResponseCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpResponseCache.class);
+
+    private static final int HTTP_OK = 200;
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String NO_STORE = "no-store";
+    private static final String NO_CACHE = "no-cache";
+    private static final String MAX_AGE = "max-age";
+    private static final String VARY_ALL = "*";
+    private static final String DIRECTIVE_SEPARATOR = ",";
+    private static final String DISK_FILE_SUFFIX = ".cache";
+    private static final int DISK_FORMAT_VERSION = 1;
+
+    /**
+     * The estimated memory of an entry besides its body.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final HttpClient client;
+    private final long maxMemoryBytes;
+    private final LinkedHashMap<String, Response> memory = new LinkedHashMap<String, Response>(16, 0.75F, true);
+    private final ConcurrentMap<String, FutureTask<Response>> inflight = new ConcurrentHashMap<String, FutureTask<Response>>();
+    private long memoryBytes;
+
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(16, 0.75F, true);
+    private volatile File diskDir;
+    private long maxDiskBytes;
+    private long diskBytes;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong networkCount = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Creates a response cache.
+     *
+     * @param client         the client sending the requests
+     * @param maxMemoryBytes the max memory of the cached responses
+     */
+    public HttpResponseCache(final HttpClient client, final long maxMemoryBytes) {
+        this.client = client;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Spills the entries evicted from memory to the directory.
+     *
+     * @param dir      the directory
+     * @param maxBytes the max size of the spilled entries
+     * @return this cache
+     */
+    public HttpResponseCache diskSpill(final File dir, final long maxBytes) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("cannot create cache directory: " + dir);
+        }
+        synchronized (disk) {
+            this.maxDiskBytes = maxBytes;
+            this.diskDir = dir;
+        }
+        return this;
+    }
+
+    /**
+     * Gets the url, from the cache if possible.
+     *
+     * @param url the url
+     * @return the response
+     * @throws IOException if an I/O error occurs or the response is an error
+     */
+    public Response get(final String url) throws IOException {
+        requestCount.incrementAndGet();
+        final Response cached = lookup(url);
+        if (null != cached && cached.isFresh(System.currentTimeMillis())) {
+            hitCount.incrementAndGet();
+            savedBytes.addAndGet(cached.body.length);
+            return cached;
+        }
+
+        final FutureTask<Response> task = new FutureTask<Response>(new Callable<Response>() {
+            @Override
+            public Response call() throws IOException {
+                return fetch(url, cached);
+            }
+        });
+        final FutureTask<Response> running = inflight.putIfAbsent(url, task);
+        if (null == running) {
+            try {
+                task.run();
+            } finally {
+                inflight.remove(url, task);
+            }
+            return join(task);
+        }
+        final Response response = join(running);
+        coalescedCount.incrementAndGet();
+        savedBytes.addAndGet(response.body.length);
+        return response;
+    }
+
+    /**
+     * Removes the cached response of the url.
+     *
+     * @param url the url
+     */
+    public void invalidate(final String url) {
+        synchronized (memory) {
+            final Response removed = memory.remove(url);
+            if (null != removed) {
+                memoryBytes -= removed.size();
+            }
+        }
+        synchronized (disk) {
+            final Long size = disk.remove(url);
+            if (null != size) {
+                diskBytes -= size;
+                delete(url);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+        synchronized (disk) {
+            for (final String url : disk.keySet()) {
+                delete(url);
+            }
+            disk.clear();
+            diskBytes = 0;
+        }
+    }
+
+    private Response fetch(final String url, final Response cached) throws IOException {
+        final HttpClient.Exchange exchange = client.open("GET", url);
+        try {
+            final HttpURLConnection connection = exchange.getConnection();
+            if (null != cached) {
+                if (null != cached.etag) {
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (0 < cached.lastModified) {
+                    connection.setIfModifiedSince(cached.lastModified);
+                }
+            }
+            final int code = connection.getResponseCode();
+            final long now = System.currentTimeMillis();
+            if (HttpURLConnection.HTTP_NOT_MODIFIED == code && null != cached) {
+                final Response refreshed = cached.revalidate(connection, now);
+                store(refreshed);
+                revalidatedCount.incrementAndGet();
+                savedBytes.addAndGet(cached.body.length);
+                return refreshed;
+            }
+
+            final byte[] body = Http.getResponseBodyAsBytes(connection);
+            networkCount.incrementAndGet();
+            final Response response = Response.create(url, code, connection, body, now);
+            final boolean varyAll = VARY_ALL.equals(connection.getHeaderField("Vary"));
+            final boolean storable = HTTP_OK == code && !varyAll && response.isStorable();
+            if (storable) {
+                store(response);
+            } else {
+                invalidate(url);
+            }
+            return response;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Response join(final FutureTask<Response> task) throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for response");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /* *************************************
+     *              Storage
+     * *********************************** */
+
+    private Response lookup(final String url) {
+        synchronized (memory) {
+            final Response response = memory.get(url);
+            if (null != response) {
+                return response;
+            }
+        }
+        final Response spilled = load(url);
+        if (null != spilled) {
+            store(spilled);
+        }
+        return spilled;
+    }
+
+    private void store(final Response response) {
+        final List<Response> evicted = new ArrayList<Response>();
+        synchronized (memory) {
+            final Response previous = memory.put(response.url, response);
+            memoryBytes += response.size() - (null != previous ? previous.size() : 0);
+            final Iterator<Response> it = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                final Response eldest = it.next();
+                it.remove();
+                memoryBytes -= eldest.size();
+                evicted.add(eldest);
+            }
+        }
+        for (final Response eldest : evicted) {
+            spill(eldest);
+        }
+    }
+
+    private void spill(final Response response) {
+        if (null == diskDir) {
+            return;
+        }
+        synchronized (disk) {
+            final Long previous = disk.remove(response.url);
+            diskBytes -= null != previous ? previous : 0;
+            try {
+                final File file = file(response.url);
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                try {
+                    response.writeTo(out);
+                } finally {
+                    out.close();
+                }
+                disk.put(response.url, file.length());
+                diskBytes += file.length();
+            } catch (final IOException e) {
+                LOGGER.warn("cannot spill cached response of {}: {}", response.url, e.getMessage());
+                delete(response.url);
+            }
+            final Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && it.hasNext()) {
+                final Map.Entry<String, Long> eldest = it.next();
+                it.remove();
+                diskBytes -= eldest.getValue();
+                delete(eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Loads (and removes) the spilled response of the url.
+     */
+    private Response load(final String url) {
+        if (null == diskDir) {
+            return null;
+        }
+        synchronized (disk) {
+            final Long size = disk.remove(url);
+            if (null == size) {
+                return null;
+            }
+            diskBytes -= size;
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file(url))));
+                try {
+                    final Response response = Response.readFrom(in);
+                    return url.equals(response.url) ? response : null;
+                } finally {
+                    in.close();
+                }
+            } catch (final IOException e) {
+                LOGGER.warn("cannot load spilled response of {}: {}", url, e.getMessage());
+                return null;
+            } finally {
+                delete(url);
+            }
+        }
+    }
+
+    private void delete(final String url) {
+        final File file = file(url);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("cannot delete cache file: {}", file);
+        }
+    }
+
+    private File file(final String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(Http.UTF_8));
+            return new File(diskDir, Hex.encode(digest) + DISK_FILE_SUFFIX);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* *************************************
+     *              Statistics
+     * *********************************** */
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests served by a fresh cached response without a request.
+     *
+     * @return the number of fresh hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of requests served by a cached response after a '304 Not Modified'.
+     *
+     * @return the number of revalidated hits
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /**
+     * Returns the number of requests which waited for the same request of another thread.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of responses whose body was read from the network.
+     *
+     * @return the number of network responses
+     */
+    public long getNetworkCount() {
+        return networkCount.get();
+    }
+
+    /**
+     * Returns the ratio of requests served without reading the body from the network (fresh, revalidated and
+     * coalesced).
+     *
+     * @return the hit ratio, 0 if no request
+     */
+    public double getHitRatio() {
+        final long requests = getRequestCount();
+        return 0 < requests ? (double) (getHitCount() + getRevalidatedCount() + getCoalescedCount()) / requests : 0;
+    }
+
+    /**
+     * Returns the number of body bytes served without reading them from the network.
+     *
+     * @return the saved bytes
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    public long getDiskBytes() {
+        synchronized (disk) {
+            return diskBytes;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "HttpResponseCache{requests=" + getRequestCount() + ", hits=" + getHitCount()
+                + ", revalidated=" + getRevalidatedCount() + ", coalesced=" + getCoalescedCount()
+                + ", network=" + getNetworkCount() + ", savedBytes=" + getSavedBytes()
+                + ", memoryBytes=" + getMemoryBytes() + ", diskBytes=" + getDiskBytes() + '}';
+    }
+
+    /**
+     * A (cached) response, the body must not be modified.
+     */
+    public static final class Response {
+        private final String url;
+        private final int code;
+        private final String contentType;
+        private final String etag;
+        private final long lastModified;
+        private final String cacheControl;
+        private final long expiresAt;
+        private final byte[] body;
+
+        private Response(final String url, final int code, final String contentType, final String etag,
+                         final long lastModified, final String cacheControl, final long expiresAt, final byte[] body) {
+            this.url = url;
+            this.code = code;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.cacheControl = cacheControl;
+            this.expiresAt = expiresAt;
+            this.body = body;
+        }
+
+        private static Response create(final String url, final int code, final HttpURLConnection connection,
+                                       final byte[] body, final long now) {
+            final String cacheControl = connection.getHeaderField(CACHE_CONTROL);
+            return new Response(url, code, connection.getContentType(), connection.getHeaderField("ETag"),
+                    connection.getLastModified(), cacheControl, expiresAt(connection, cacheControl, now), body);
+        }
+
+        /**
+         * Returns this response updated by the headers of a '304 Not Modified'.
+         */
+        private Response revalidate(final HttpURLConnection connection, final long now) {
+            final String newEtag = connection.getHeaderField("ETag");
+            final String newCacheControl = connection.getHeaderField(CACHE_CONTROL);
+            final String finalCacheControl = null != newCacheControl ? newCacheControl : cacheControl;
+            return new Response(url, code, contentType, null != newEtag ? newEtag : etag,
+                    lastModified, finalCacheControl, expiresAt(connection, finalCacheControl, now), body);
+        }
+
+        /**
+         * Returns the time the response becomes stale: the response time plus the freshness lifetime minus the age.
+         */
+        private static long expiresAt(final HttpURLConnection connection, final String cacheControl, final long now) {
+            final long date = connection.getDate();
+            final long maxAge = directive(cacheControl, MAX_AGE);
+            long lifetime = 0;
+            if (-1 < maxAge) {
+                lifetime = TimeUnit.SECONDS.toMillis(maxAge);
+            } else if (0 < connection.getExpiration()) {
+                lifetime = connection.getExpiration() - (0 < date ? date : now);
+            }
+            if (-1 < directive(cacheControl, NO_CACHE)) {
+                lifetime = 0;
+            }
+            final long apparentAge = 0 < date ? Math.max(0, now - date) : 0;
+            final long age = Math.max(apparentAge, TimeUnit.SECONDS.toMillis(connection.getHeaderFieldInt("Age", 0)));
+            return now + lifetime - age;
+        }
+
+        /**
+         * Returns the value of the cache directive, 0 if it has no value, -1 if absent.
+         */
+        private static long directive(final String cacheControl, final String name) {
+            if (null == cacheControl) {
+                return -1;
+            }
+            for (final String directive : cacheControl.split(DIRECTIVE_SEPARATOR)) {
+                final String[] pair = directive.trim().split("=", 2);
+                if (name.equalsIgnoreCase(pair[0].trim())) {
+                    if (1 == pair.length) {
+                        return 0;
+                    }
+                    try {
+                        return Math.max(0, Long.parseLong(pair[1].trim().replace("\"", "")));
+                    } catch (final NumberFormatException ignore) {
+                        return 0;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private boolean isStorable() {
+            final boolean validator = null != etag || 0 < lastModified;
+            return 0 > directive(cacheControl, NO_STORE) && (validator || expiresAt > System.currentTimeMillis());
+        }
+
+        private boolean isFresh(final long now) {
+            return now < expiresAt;
+        }
+
+        private long size() {
+            return body.length + 2L * url.length() + ENTRY_OVERHEAD;
+        }
+
+        private void writeTo(final DataOutputStream out) throws IOException {
+            out.writeInt(DISK_FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeInt(code);
+            writeNullable(out, contentType);
+            writeNullable(out, etag);
+            out.writeLong(lastModified);
+            writeNullable(out, cacheControl);
+            out.writeLong(expiresAt);
+            out.writeInt(body.length);
+            out.write(body);
+        }
+
+        private static Response readFrom(final DataInputStream in) throws IOException {
+            if (DISK_FORMAT_VERSION != in.readInt()) {
+                throw new IOException("unknown cache file format");
+            }
+            final String url = in.readUTF();
+            final int code = in.readInt();
+            final String contentType = readNullable(in);
+            final String etag = readNullable(in);
+            final long lastModified = in.readLong();
+            final String cacheControl = readNullable(in);
+            final long expiresAt = in.readLong();
+            final byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Response(url, code, contentType, etag, lastModified, cacheControl, expiresAt, body);
+        }
+
+        private static void writeNullable(final DataOutputStream out, final String value) throws IOException {
+            out.writeBoolean(null != value);
+            if (null != value) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readNullable(final DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getResponseCode() {
+            return code;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getBodyAsString() {
+            final Charset charset = Http.determineCharset(contentType, Http.UTF_8);
+            return new String(body, charset);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Response{url=" + url + ", contentType=" + contentType + ", etag=" + etag
+                    + ", expiresAt=" + expiresAt + ", length=" + body.length + '}';
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import freework.util.LatencyHistogram;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link SSLSocketFactory}s keyed by the identity of the key managers and trust managers.
+ * <p>
+ * Creating an {@link SSLContext} per request costs its initialization and, worse, a TLS session cache per request,
+ * so sessions are never resumed; and since the keep-alive cache only reuses https connections created by the same
+ * socket factory, no https connection is reused either. A cached factory shares one session cache (with the
+ * configured size and timeout) and its connections.
+ * <p>
+ * The sockets created by the cached factories report their handshakes: a handshake of a session created before the
+ * socket is counted as resumed.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public class SslSocketFactoryCache {
+    private static final int DEFAULT_MAX_SIZE = 32;
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+    private static final int DEFAULT_SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    private static final SslSocketFactoryCache SHARED = new SslSocketFactoryCache(DEFAULT_MAX_SIZE);
+
+    private final Map<Key, SSLSocketFactory> factories;
+    private volatile int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    private volatile int sessionTimeoutSeconds = DEFAULT_SESSION_TIMEOUT_SECONDS;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong handshakeCount = new AtomicLong();
+    private final AtomicLong resumedCount = new AtomicLong();
+    private final LatencyHistogram handshakeTime = new LatencyHistogram();
+    private final CopyOnWriteArrayList<HandshakeListener> listeners = new CopyOnWriteArrayList<HandshakeListener>();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the max number of cached factories
+     */
+    public SslSocketFactoryCache(final int maxSize) {
+        this.factories = new LinkedHashMap<Key, SSLSocketFactory>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, SSLSocketFactory> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static SslSocketFactoryCache getSharedInstance() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the session cache size of the factories created afterwards.
+     *
+     * @param size the max number of cached sessions, 0 for unlimited
+     * @return this cache
+     */
+    public SslSocketFactoryCache sessionCacheSize(final int size) {
+        this.sessionCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Sets the session timeout of the factories created afterwards.
+     *
+     * @param timeout the session timeout, 0 for unlimited
+     * @param unit    the time unit
+     * @return this cache
+     */
+    public SslSocketFactoryCache sessionTimeout(final long timeout, final TimeUnit unit) {
+        this.sessionTimeoutSeconds = (int) unit.toSeconds(timeout);
+        return this;
+    }
+
+    /**
+     * Returns the socket factory of a TLS context initialized with the key managers and trust managers.
+     *
+     * @param keyManagers   the key managers, or null
+     * @param trustManagers the trust managers, or null
+     * @return the socket factory
+     * @throws GeneralSecurityException if the TLS context cannot be initialized
+     */
+    public SSLSocketFactory get(final KeyManager[] keyManagers, final TrustManager[] trustManagers) throws GeneralSecurityException {
+        final Key key = new Key(keyManagers, trustManagers);
+        synchronized (factories) {
+            final SSLSocketFactory factory = factories.get(key);
+            if (null != factory) {
+                hitCount.incrementAndGet();
+                return factory;
+            }
+        }
+        missCount.incrementAndGet();
+
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers, trustManagers, null);
+        final SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (null != sessionContext) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeoutSeconds);
+        }
+        final SSLSocketFactory created = new InstrumentedSocketFactory(context.getSocketFactory());
+        synchronized (factories) {
+            final SSLSocketFactory existing = factories.get(key);
+            if (null != existing) {
+                return existing;
+            }
+            factories.put(key, created);
+            return created;
+        }
+    }
+
+    public void clear() {
+        synchronized (factories) {
+            factories.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (factories) {
+            return factories.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of completed handshakes.
+     *
+     * @return the number of handshakes
+     */
+    public long getHandshakeCount() {
+        return handshakeCount.get();
+    }
+
+    /**
+     * Returns the number of handshakes which resumed a cached session.
+     *
+     * @return the number of abbreviated handshakes
+     */
+    public long getResumedCount() {
+        return resumedCount.get();
+    }
+
+    /**
+     * Returns the histogram of the time from socket creation to handshake completion.
+     *
+     * @return the handshake time histogram
+     */
+    public LatencyHistogram getHandshakeTime() {
+        return handshakeTime;
+    }
+
+    /**
+     * Adds a listener of the handshakes of the sockets created by the cached factories.
+     *
+     * @param listener the listener
+     */
+    public void addHandshakeListener(final HandshakeListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeHandshakeListener(final HandshakeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "SslSocketFactoryCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", handshakes=" + getHandshakeCount() + ", resumed=" + getResumedCount() + '}';
+    }
+
+    /**
+     * Identity key of the key managers and trust managers.
+     */
+    private static final class Key {
+        private final Object[] managers;
+        private final int hash;
+
+        private Key(final KeyManager[] keyManagers, final TrustManager[] trustManagers) {
+            final int keys = null != keyManagers ? keyManagers.length : 0;
+            final int trusts = null != trustManagers ? trustManagers.length : 0;
+            this.managers = new Object[keys + 1 + trusts];
+            int h = 1;
+            for (int i = 0; i < keys; i++) {
+                managers[i] = keyManagers[i];
+                h = 31 * h + System.identityHashCode(keyManagers[i]);
+            }
+            /*-
+             * separator: ([a], [b]) != ([a, b], null).
+             */
+            managers[keys] = Key.class;
+            for (int i = 0; i < trusts; i++) {
+                managers[keys + 1 + i] = trustManagers[i];
+                h = 31 * h + System.identityHashCode(trustManagers[i]);
+            }
+            this.hash = 31 * h + keys;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key) || hash != ((Key) o).hash || managers.length != ((Key) o).managers.length) {
+                return false;
+            }
+            final Object[] others = ((Key) o).managers;
+            for (int i = 0; i < managers.length; i++) {
+                if (managers[i] != others[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(managers);
+        }
+    }
+
+    /**
+     * Socket factory registering a handshake listener on the created sockets.
+     */
+    private final class InstrumentedSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        private InstrumentedSocketFactory(final SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return listen(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket s, final String host, final int port, final boolean autoClose) throws IOException {
+            return listen(delegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return listen(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+            return listen(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return listen(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+            return listen(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private Socket listen(final Socket socket) {
+            if (socket instanceof SSLSocket) {
+                final long createdAt = System.currentTimeMillis();
+                final long createdNanos = System.nanoTime();
+                ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                    @Override
+                    public void handshakeCompleted(final HandshakeCompletedEvent event) {
+                        final long elapsed = System.nanoTime() - createdNanos;
+                        final boolean resumed = event.getSession().getCreationTime() < createdAt;
+                        handshakeCount.incrementAndGet();
+                        handshakeTime.record(elapsed);
+                        if (resumed) {
+                            resumedCount.incrementAndGet();
+                        }
+                        for (final HandshakeListener listener : listeners) {
+                            listener.handshakeCompleted(event.getSession().getPeerHost(), elapsed, resumed);
+                        }
+                    }
+                });
+            }
+            return socket;
+        }
+    }
+
+    /**
+     * Listener of the handshakes of the sockets created by the cached factories.
+     */
+    public interface HandshakeListener {
+
+        /**
+         * Called when a handshake completes (on a thread of the TLS implementation).
+         *
+         * @param host         the peer host
+         * @param elapsedNanos the time from socket creation to handshake completion
+         * @param resumed      true if a cached session was resumed
+         */
+        void handshakeCompleted(String host, long elapsedNanos, boolean resumed);
+
+    }
+}
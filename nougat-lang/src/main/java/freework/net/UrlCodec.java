@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 'application/x-www-form-urlencoded' codec writing into caller provided buffers.
+ * <p>
+ * The output is the same as {@link java.net.URLEncoder} (except '!' which is not escaped, as
+ * {@link Http#urlEncode(String, String)} does) and the input is decoded as {@link java.net.URLDecoder}, but:
+ * <ul>
+ * <li>the safe characters and the escapes of the bytes are precomputed tables, UTF-8 is encoded and decoded
+ * without intermediate strings or arrays (other charsets fall back to the charset for the non safe runs)</li>
+ * <li>the codec of a charset (name) is looked up once and cached</li>
+ * <li>the text is encoded into a {@link StringBuilder} or a {@link ByteBuffer}, a query is split and decoded in one
+ * pass without regex</li>
+ * </ul>
+ * <blockquote><pre>
+ * UrlCodec codec = UrlCodec.forCharset(Http.UTF_8);
+ * StringBuilder url = new StringBuilder("http://api/search?");
+ * codec.appendParameter(url, "q", keyword).appendParameter(url, "page", "1");
+ * </pre></blockquote>
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public final class UrlCodec {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String SAFE_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.*!";
+    private static final int ASCII_LIMIT = 0x80;
+    private static final int UTF8_2_LIMIT = 0x800;
+
+    /**
+     * The minimum code point of the UTF-8 sequences by the count of trailing bytes (shorter ones are overlong).
+     */
+    private static final int[] UTF8_MIN = {0, ASCII_LIMIT, UTF8_2_LIMIT, Character.MIN_SUPPLEMENTARY_CODE_POINT};
+    private static final int BYTE_MASK = 0xFF;
+    private static final int HEX_RADIX = 16;
+    private static final int HEX_SHIFT = 4;
+    private static final int LOW_MASK = 0x0F;
+    private static final char SPACE = ' ';
+    private static final char PLUS = '+';
+    private static final char PERCENT = '%';
+    private static final char AMP = '&';
+    private static final char EQUALS = '=';
+    private static final char UNMAPPABLE = '?';
+
+    /**
+     * The characters not escaped (RFC 1738 unreserved, as URLEncoder, and '!').
+     */
+    private static final boolean[] SAFE = new boolean[ASCII_LIMIT];
+
+    /**
+     * The escapes of the bytes: "%XX".
+     */
+    private static final char[][] ESCAPES = new char[BYTE_MASK + 1][];
+
+    static {
+        for (final char c : SAFE_CHARS.toCharArray()) {
+            SAFE[c] = true;
+        }
+        for (int b = 0; b < ESCAPES.length; b++) {
+            ESCAPES[b] = new char[]{PERCENT, HEX_DIGITS[b >>> HEX_SHIFT], HEX_DIGITS[b & LOW_MASK]};
+        }
+    }
+
+    private static final ConcurrentMap<String, UrlCodec> CODECS = new ConcurrentHashMap<String, UrlCodec>();
+    private static final UrlCodec UTF_8 = new UrlCodec(Http.UTF_8);
+
+    private final Charset charset;
+    private final boolean utf8;
+
+    private UrlCodec(final Charset charset) {
+        this.charset = charset;
+        this.utf8 = Http.UTF_8.equals(charset);
+    }
+
+    /**
+     * Returns the codec of the charset.
+     *
+     * @param charset the charset
+     * @return the codec
+     */
+    public static UrlCodec forCharset(final Charset charset) {
+        return Http.UTF_8.equals(charset) ? UTF_8 : forCharset(charset.name());
+    }
+
+    /**
+     * Returns the codec of the charset.
+     *
+     * @param charset the charset name
+     * @return the codec
+     * @throws java.nio.charset.UnsupportedCharsetException if the charset is not supported
+     */
+    public static UrlCodec forCharset(final String charset) {
+        UrlCodec codec = CODECS.get(charset);
+        if (null == codec) {
+            final Charset cs = Charset.forName(charset);
+            codec = Http.UTF_8.equals(cs) ? UTF_8 : new UrlCodec(cs);
+            final UrlCodec existing = CODECS.putIfAbsent(charset, codec);
+            codec = null != existing ? existing : codec;
+        }
+        return codec;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /* *************************************
+     *              Encoding
+     * *********************************** */
+
+    /**
+     * Encodes the text into the builder.
+     *
+     * @param text the text
+     * @param out  the builder
+     * @return the builder
+     */
+    public StringBuilder encode(final CharSequence text, final StringBuilder out) {
+        encode(text, out, null);
+        return out;
+    }
+
+    /**
+     * Encodes the text into the buffer (ASCII bytes).
+     *
+     * @param text the text
+     * @param out  the buffer
+     * @return the buffer
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public ByteBuffer encode(final CharSequence text, final ByteBuffer out) {
+        encode(text, null, out);
+        return out;
+    }
+
+    /**
+     * Encodes the text.
+     *
+     * @param text the text
+     * @return the encoded text
+     */
+    public String encode(final CharSequence text) {
+        return encode(text, new StringBuilder(text.length() + HEX_RADIX)).toString();
+    }
+
+    /**
+     * Appends the encoded parameter 'name=value' to the builder, preceded by '&amp;' unless the builder is empty or
+     * ends with '?' or '&amp;'.
+     *
+     * @param out   the builder
+     * @param name  the parameter name
+     * @param value the parameter value, null as empty
+     * @return this codec
+     */
+    public UrlCodec appendParameter(final StringBuilder out, final CharSequence name, final CharSequence value) {
+        final int length = out.length();
+        final boolean separated = 0 == length || '?' == out.charAt(length - 1) || AMP == out.charAt(length - 1);
+        if (!separated) {
+            out.append(AMP);
+        }
+        encode(name, out, null);
+        out.append(EQUALS);
+        if (null != value) {
+            encode(value, out, null);
+        }
+        return this;
+    }
+
+    private void encode(final CharSequence text, final StringBuilder sb, final ByteBuffer bb) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (ASCII_LIMIT > c && SAFE[c]) {
+                put(c, sb, bb);
+            } else if (SPACE == c) {
+                put(PLUS, sb, bb);
+            } else if (utf8) {
+                i = encodeUtf8(text, i, sb, bb);
+            } else {
+                i = encodeRun(text, i, sb, bb);
+            }
+        }
+    }
+
+    /**
+     * Escapes the UTF-8 bytes of the char (or the surrogate pair) at the index, returns the last index consumed.
+     */
+    private static int encodeUtf8(final CharSequence text, final int index, final StringBuilder sb, final ByteBuffer bb) {
+        final char c = text.charAt(index);
+        if (ASCII_LIMIT > c) {
+            escape(c, sb, bb);
+        } else if (UTF8_2_LIMIT > c) {
+            escape(0xC0 | (c >> 6), sb, bb);
+            escape(0x80 | (c & 0x3F), sb, bb);
+        } else if (!Character.isSurrogate(c)) {
+            escape(0xE0 | (c >> 12), sb, bb);
+            escape(0x80 | ((c >> 6) & 0x3F), sb, bb);
+            escape(0x80 | (c & 0x3F), sb, bb);
+        } else {
+            final boolean pair = Character.isHighSurrogate(c) && index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1));
+            if (!pair) {
+                escape(UNMAPPABLE, sb, bb);
+                return index;
+            }
+            final int cp = Character.toCodePoint(c, text.charAt(index + 1));
+            escape(0xF0 | (cp >> 18), sb, bb);
+            escape(0x80 | ((cp >> 12) & 0x3F), sb, bb);
+            escape(0x80 | ((cp >> 6) & 0x3F), sb, bb);
+            escape(0x80 | (cp & 0x3F), sb, bb);
+            return index + 1;
+        }
+        return index;
+    }
+
+    /**
+     * Escapes the bytes (in the charset) of the run of chars to escape from the index, returns the last index.
+     */
+    private int encodeRun(final CharSequence text, final int index, final StringBuilder sb, final ByteBuffer bb) {
+        int end = index + 1;
+        while (end < text.length()) {
+            final char c = text.charAt(end);
+            final boolean plain = SPACE == c || (ASCII_LIMIT > c && SAFE[c]);
+            if (plain) {
+                break;
+            }
+            end++;
+        }
+        for (final byte b : text.subSequence(index, end).toString().getBytes(charset)) {
+            escape(b & BYTE_MASK, sb, bb);
+        }
+        return end - 1;
+    }
+
+    private static void escape(final int b, final StringBuilder sb, final ByteBuffer bb) {
+        final char[] escape = ESCAPES[b];
+        if (null != sb) {
+            sb.append(escape);
+        } else {
+            bb.put((byte) escape[0]).put((byte) escape[1]).put((byte) escape[2]);
+        }
+    }
+
+    private static void put(final char c, final StringBuilder sb, final ByteBuffer bb) {
+        if (null != sb) {
+            sb.append(c);
+        } else {
+            bb.put((byte) c);
+        }
+    }
+
+    /* *************************************
+     *              Decoding
+     * *********************************** */
+
+    /**
+     * Decodes the text.
+     *
+     * @param text the encoded text
+     * @return the decoded text
+     * @throws IllegalArgumentException if the text contains an illegal escape
+     */
+    public String decode(final CharSequence text) {
+        return decode(text, 0, text.length(), new StringBuilder(text.length())).toString();
+    }
+
+    /**
+     * Decodes the range of the text into the builder.
+     *
+     * @param text  the encoded text
+     * @param start the start index
+     * @param end   the end index (exclusive)
+     * @param out   the builder
+     * @return the builder
+     * @throws IllegalArgumentException if the text contains an illegal escape
+     */
+    public StringBuilder decode(final CharSequence text, final int start, final int end, final StringBuilder out) {
+        final Decoder decoder = new Decoder(out);
+        for (int i = start; i < end; i++) {
+            i = decoder.decode(text, i, end);
+        }
+        decoder.flush();
+        return out;
+    }
+
+    /**
+     * Splits the query 'n=v&amp;n=v' and decodes the parameters in one pass, parameters without '=' are ignored.
+     *
+     * @param query  the query string
+     * @param decode false to keep the names and values encoded
+     * @param result the map to put the parameters into (the last value wins)
+     * @return the result map
+     * @throws IllegalArgumentException if the query contains an illegal escape
+     */
+    public Map<String, String> splitQuery(final CharSequence query, final boolean decode, final Map<String, String> result) {
+        final StringBuilder buff = new StringBuilder();
+        final Decoder decoder = new Decoder(buff);
+        final int length = query.length();
+        String name = null;
+        for (int i = 0; i <= length; i++) {
+            final char c = i < length ? query.charAt(i) : AMP;
+            if (AMP == c) {
+                decoder.flush();
+                if (null != name) {
+                    result.put(name, buff.toString());
+                }
+                name = null;
+                buff.setLength(0);
+            } else if (EQUALS == c && null == name) {
+                decoder.flush();
+                name = buff.toString();
+                buff.setLength(0);
+            } else if (decode) {
+                i = decoder.decode(query, i, length);
+            } else {
+                buff.append(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decoder of the pending escaped bytes into a builder.
+     */
+    private final class Decoder {
+        private final StringBuilder out;
+        private byte[] bytes = new byte[HEX_RADIX];
+        private int count;
+
+        private Decoder(final StringBuilder out) {
+            this.out = out;
+        }
+
+        /**
+         * Decodes the char (or the escape) at the index, returns the last index consumed.
+         */
+        private int decode(final CharSequence text, final int index, final int end) {
+            final char c = text.charAt(index);
+            if (PERCENT != c) {
+                flush();
+                out.append(PLUS == c ? SPACE : c);
+                return index;
+            }
+            final int last = index + 2;
+            if (last >= end) {
+                throw new IllegalArgumentException("URLDecoder: Incomplete trailing escape (%) pattern");
+            }
+            final int hi = Character.digit(text.charAt(index + 1), HEX_RADIX);
+            final int lo = Character.digit(text.charAt(last), HEX_RADIX);
+            if (0 > hi || 0 > lo) {
+                throw new IllegalArgumentException("URLDecoder: Illegal hex characters in escape (%) pattern - "
+                        + text.subSequence(index, last + 1));
+            }
+            if (count == bytes.length) {
+                final byte[] grown = new byte[count << 1];
+                System.arraycopy(bytes, 0, grown, 0, count);
+                bytes = grown;
+            }
+            bytes[count++] = (byte) ((hi << HEX_SHIFT) | lo);
+            return last;
+        }
+
+        private void flush() {
+            if (0 == count) {
+                return;
+            }
+            final int mark = out.length();
+            final boolean decoded = utf8 && decodeUtf8();
+            if (!decoded) {
+                out.setLength(mark);
+                out.append(new String(bytes, 0, count, charset));
+            }
+            count = 0;
+        }
+
+        /**
+         * Decodes the pending UTF-8 bytes, returns false if malformed (the JDK decoder then replaces them).
+         */
+        private boolean decodeUtf8() {
+            int i = 0;
+            while (i < count) {
+                final int b = bytes[i] & BYTE_MASK;
+                if (ASCII_LIMIT > b) {
+                    out.append((char) b);
+                    i++;
+                    continue;
+                }
+                final int trailing = 0xC2 > b || 0xF4 < b ? -1 : (0xE0 > b ? 1 : (0xF0 > b ? 2 : 3));
+                if (0 > trailing || i + trailing >= count) {
+                    return false;
+                }
+                int cp = b & (0x3F >> trailing);
+                for (int k = 1; k <= trailing; k++) {
+                    final int next = bytes[i + k] & BYTE_MASK;
+                    if (0x80 != (next & 0xC0)) {
+                        return false;
+                    }
+                    cp = (cp << 6) | (next & 0x3F);
+                }
+                final boolean surrogate = Character.MIN_SURROGATE <= cp && Character.MAX_SURROGATE >= cp;
+                if (UTF8_MIN[trailing] > cp || Character.MAX_CODE_POINT < cp || surrogate) {
+                    return false;
+                }
+                out.appendCodePoint(cp);
+                i += trailing + 1;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "UrlCodec{" + charset + '}';
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2005, 2014 vacoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package freework.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with one bucket per power of two nanoseconds.
+ * <p>
+ * Recording is a few atomic increments and never allocates, percentiles are reported as the upper bound of
+ * the bucket (capped by the max recorded value), so they are accurate within a factor of two.
+ *
+ * @author vacoor
+ * @since 1.0.12
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = Long.SIZE;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param elapsedNanos the latency in nanoseconds, negative is recorded as 0
+     */
+    public void record(final long elapsedNanos) {
+        final long nanos = 0 < elapsedNanos ? elapsedNanos : 0;
+        buckets.incrementAndGet(Math.max(0, BUCKETS - 1 - Long.numberOfLeadingZeros(nanos)));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal(final TimeUnit unit) {
+        return unit.convert(totalNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMax(final TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMean(final TimeUnit unit) {
+        final long n = count.get();
+        return 0 < n ? unit.convert(totalNanos.get() / n, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    /**
+     * Returns the latency percentile (upper bound of the histogram bucket).
+     *
+     * @param percentile the percentile in (0, 1], eg: 0.99
+     * @param unit       the time unit
+     * @return the latency percentile, 0 if nothing recorded
+     */
+    public long getPercentile(final double percentile, final TimeUnit unit) {
+        final long[] counts = getCounts();
+        long total = 0;
+        for (final long c : counts) {
+            total += c;
+        }
+        final long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (0 < counts[i] && seen >= rank) {
+                final long upper = BUCKETS - 1 > i ? (1L << (i + 1)) - 1 : Long.MAX_VALUE;
+                return unit.convert(Math.min(upper, maxNanos.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the bucket counts, the bucket i counts latencies of [2^i, 2^(i+1)) nanoseconds.
+     *
+     * @return the bucket counts
+     */
+    public long[] getCounts() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount()
+                + ", meanMicros=" + getMean(TimeUnit.MICROSECONDS)
+                + ", p50Micros=" + getPercentile(0.5D, TimeUnit.MICROSECONDS)
+                + ", p99Micros=" + getPercentile(0.99D, TimeUnit.MICROSECONDS)
+                + ", maxMicros=" + getMax(TimeUnit.MICROSECONDS) + '}';
+    }
+}
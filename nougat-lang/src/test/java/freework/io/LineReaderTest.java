@@ -0,0 +1,37 @@
+package freework.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class LineReaderTest {
+
+    @Test
+    public void testNext() throws IOException {
+        final LineReader reader = new LineReader(new StringReader("first\r\nsecond line\n\nlast"), 12);
+        assertEquals("first", reader.readLine());
+        assertEquals("second line", reader.next().toString());
+        assertEquals("", reader.readLine());
+        assertEquals("last", reader.readLine());
+        assertNull(reader.next());
+        assertEquals(4, reader.getLineNumber());
+    }
+
+    @Test
+    public void testTooLong() throws IOException {
+        final LineReader reader = new LineReader(new StringReader("0123456789\nx"), 8);
+        try {
+            reader.next();
+            fail("line longer than buffer");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class AsyncJdbcTest {
+
+    @Test
+    public void testJoinAll() throws SQLException {
+        final AsyncJdbc async = new AsyncJdbc(newDataSource(), 2);
+        try {
+            final List<Integer> results = AsyncJdbc.joinAll(Arrays.asList(
+                    async.executeUpdate("update 1"), async.executeUpdate("update 22")));
+            assertEquals(Arrays.asList(8, 9), results);
+        } finally {
+            async.close();
+        }
+    }
+
+    @Test
+    public void testTimeoutCancelsStatement() throws SQLException {
+        final AsyncJdbc async = new AsyncJdbc(newDataSource(), 1).defaultTimeout(50, TimeUnit.MILLISECONDS);
+        try {
+            final AsyncJdbc.QueryFuture<Integer> future = async.executeUpdate("block");
+            try {
+                AsyncJdbc.join(future);
+                fail("should time out");
+            } catch (final SQLTimeoutException expected) {
+                assertTrue(future.isTimedOut());
+            }
+        } finally {
+            async.close();
+        }
+    }
+
+    @Test
+    public void testNoCancelWhileClosing() throws Exception {
+        final CountDownLatch closing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final ClassLoader loader = AsyncJdbcTest.class.getClassLoader();
+        final PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("cancel".equals(method.getName())) {
+                    cancelled.set(true);
+                } else if ("close".equals(method.getName())) {
+                    closing.countDown();
+                    assertTrue(proceed.await(5, TimeUnit.SECONDS));
+                } else if ("executeUpdate".equals(method.getName())) {
+                    return 1;
+                }
+                return null;
+            }
+        });
+        final AsyncJdbc async = new AsyncJdbc(newDataSource(stmt), 1);
+        try {
+            final AsyncJdbc.QueryFuture<Integer> future = async.executeUpdate("update 1");
+            assertTrue(closing.await(5, TimeUnit.SECONDS));
+            future.cancel(false);
+            proceed.countDown();
+            assertFalse(cancelled.get());
+        } finally {
+            async.close();
+        }
+    }
+
+    /**
+     * A data source whose statements return the sql length on update, "block" blocks until cancelled.
+     */
+    private static DataSource newDataSource() {
+        return newDataSource(null);
+    }
+
+    /**
+     * A data source whose connection prepares the given statement, or a statement of {@link #newStatement} if null.
+     */
+    private static DataSource newDataSource(final PreparedStatement stmt) {
+        final ClassLoader loader = AsyncJdbcTest.class.getClassLoader();
+        final Connection conn = (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("prepareStatement".equals(method.getName())) {
+                    return null != stmt ? stmt : newStatement(loader, (String) args[0]);
+                }
+                return null;
+            }
+        });
+        return (DataSource) Proxy.newProxyInstance(loader, new Class<?>[]{DataSource.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "getConnection".equals(method.getName()) ? conn : null;
+            }
+        });
+    }
+
+    private static PreparedStatement newStatement(final ClassLoader loader, final String sql) {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        return (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("cancel".equals(method.getName())) {
+                    cancelled.countDown();
+                } else if ("executeUpdate".equals(method.getName())) {
+                    if ("block".equals(sql)) {
+                        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+                        throw new SQLException("cancelled");
+                    }
+                    return sql.length();
+                }
+                return null;
+            }
+        });
+    }
+}
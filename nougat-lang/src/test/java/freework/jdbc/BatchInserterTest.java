@@ -0,0 +1,133 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class BatchInserterTest {
+
+    @Test
+    public void testMultiRowValues() throws SQLException {
+        final Recorder recorder = new Recorder("jdbc:mysql://localhost/test");
+        final List<Map<String, ?>> rows = new ArrayList<Map<String, ?>>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(row("id", (long) i, "name", "n" + i));
+        }
+        final BatchInserter.Stats stats = new BatchInserter(recorder.connection, "t").multiRowValues(true).insert(rows);
+
+        assertEquals(5, stats.getRows());
+        assertEquals(Arrays.asList("insert into t(id,name) values (?,?),(?,?),(?,?),(?,?),(?,?)"), recorder.sqls);
+        assertEquals(Arrays.asList("executeUpdate"), recorder.executions);
+        assertEquals("setLong(9)", recorder.binds.get(8));
+        assertEquals("setString(10)", recorder.binds.get(9));
+    }
+
+    @Test
+    public void testMultiRowParameterLimit() throws SQLException {
+        final Recorder recorder = new Recorder("jdbc:postgresql://localhost/test");
+        final int maxRows = Short.MAX_VALUE / 2;
+        final List<Map<String, ?>> rows = new ArrayList<Map<String, ?>>();
+        for (int i = 0; i < maxRows + 10; i++) {
+            rows.add(row("a", i, "b", i));
+        }
+        new BatchInserter(recorder.connection, "t").batchSize(rows.size()).multiRowValues(true).insert(rows);
+
+        assertEquals(Arrays.asList("executeUpdate", "executeUpdate"), recorder.executions);
+        assertEquals(BatchInserter.makeInsertSql("t", Arrays.asList("a", "b"), maxRows), recorder.sqls.get(0));
+        assertEquals(BatchInserter.makeInsertSql("t", Arrays.asList("a", "b"), 10), recorder.sqls.get(1));
+    }
+
+    @Test
+    public void testBinderOfFirstNonNullValue() throws SQLException {
+        final Recorder recorder = new Recorder("jdbc:oracle:thin:@localhost:1521:test");
+        final List<Map<String, ?>> rows = Arrays.<Map<String, ?>>asList(
+                row("id", 1L, "name", null), row("id", 2L, "name", "b"));
+        new BatchInserter(recorder.connection, "t").insert(rows);
+
+        assertEquals(Arrays.asList("insert into t(id,name) values (?,?)"), recorder.sqls);
+        assertEquals(Arrays.asList("setLong(1)", "setNull(2," + Types.VARCHAR + ")", "setLong(1)", "setString(2)"), recorder.binds);
+        assertEquals(Arrays.asList("executeBatch"), recorder.executions);
+    }
+
+    @Test
+    public void testBinderResolvedInLaterBatch() throws SQLException {
+        final Recorder recorder = new Recorder("jdbc:oracle:thin:@localhost:1521:test");
+        final List<Map<String, ?>> rows = Arrays.<Map<String, ?>>asList(row("v", null), row("v", 3));
+        new BatchInserter(recorder.connection, "t").batchSize(1).insert(rows);
+
+        assertEquals(Arrays.asList("setObject(1)", "setInt(1)"), recorder.binds);
+    }
+
+    private static Map<String, Object> row(final Object... pairs) {
+        final Map<String, Object> row = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            row.put((String) pairs[i], pairs[i + 1]);
+        }
+        return row;
+    }
+
+    /**
+     * Records the prepared sql, the setters and the executions of the statements.
+     */
+    private static class Recorder {
+        private final List<String> sqls = new ArrayList<String>();
+        private final List<String> binds = new ArrayList<String>();
+        private final List<String> executions = new ArrayList<String>();
+        private final Connection connection;
+
+        Recorder(final String url) {
+            final ClassLoader loader = BatchInserterTest.class.getClassLoader();
+            final DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(loader, new Class<?>[]{DatabaseMetaData.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    return "getURL".equals(method.getName()) ? url : null;
+                }
+            });
+            final PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    final String name = method.getName();
+                    if (name.startsWith("set")) {
+                        binds.add(name + '(' + args[0] + ("setNull".equals(name) ? "," + args[1] : "") + ')');
+                    } else if ("executeBatch".equals(name)) {
+                        executions.add(name);
+                        return new int[0];
+                    } else if ("executeUpdate".equals(name)) {
+                        executions.add(name);
+                        return 0;
+                    }
+                    return null;
+                }
+            });
+            connection = (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    if ("getMetaData".equals(method.getName())) {
+                        return metaData;
+                    }
+                    if ("prepareStatement".equals(method.getName())) {
+                        sqls.add((String) args[0]);
+                        return stmt;
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+}
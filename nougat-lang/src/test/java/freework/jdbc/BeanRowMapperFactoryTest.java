@@ -0,0 +1,119 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class BeanRowMapperFactoryTest {
+    private static final String[] LABELS = {"ID", "USER_NAME", "AGE", "score", "UNKNOWN"};
+
+    @Test
+    public void testGenerated() throws SQLException {
+        final BeanRowMapperFactory factory = new BeanRowMapperFactory(true);
+        final RowMapper<User> mapper = factory.getRowMapper(User.class, LABELS);
+
+        assertTrue(mapper.getClass().getName().contains("$$RowMapper$$"));
+        assertSame(mapper, factory.getRowMapper(User.class, LABELS.clone()));
+        check(mapper);
+    }
+
+    @Test
+    public void testReflective() throws SQLException {
+        final RowMapper<User> mapper = new BeanRowMapperFactory(false).getRowMapper(User.class, LABELS);
+
+        assertFalse(mapper.getClass().getName().contains("$$RowMapper$$"));
+        check(mapper);
+    }
+
+    @Test
+    public void testBoundedCache() {
+        final BeanRowMapperFactory factory = new BeanRowMapperFactory(true, 2);
+        final RowMapper<User> first = factory.getRowMapper(User.class, new String[]{"ID"});
+        factory.getRowMapper(User.class, new String[]{"AGE"});
+        assertSame(first, factory.getRowMapper(User.class, new String[]{"ID"}));
+        factory.getRowMapper(User.class, new String[]{"SCORE"});
+
+        assertEquals(2, factory.size());
+        assertSame(first, factory.getRowMapper(User.class, new String[]{"ID"}));
+        assertNotSame(factory.getRowMapper(User.class, new String[]{"AGE"}), factory.getRowMapper(User.class, new String[]{"AGE", "ID"}));
+    }
+
+    private static void check(final RowMapper<User> mapper) throws SQLException {
+        final User user = mapper.mapRow(resultSet(7L, "vacoor", null, 1.5D, "x"), 1);
+        assertEquals(7L, user.getId());
+        assertEquals("vacoor", user.getUserName());
+        assertNull(user.getAge());
+        assertEquals(1.5D, user.score, 0D);
+
+        assertEquals(Integer.valueOf(18), mapper.mapRow(resultSet(1L, null, 18, 0D, null), 2).getAge());
+    }
+
+    private static ResultSet resultSet(final Object... values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private Object last;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("wasNull".equals(name)) {
+                    return null == last;
+                }
+                last = values[(Integer) args[0] - 1];
+                if ("getLong".equals(name)) {
+                    return null != last ? ((Number) last).longValue() : 0L;
+                }
+                if ("getInt".equals(name)) {
+                    return null != last ? ((Number) last).intValue() : 0;
+                }
+                if ("getDouble".equals(name)) {
+                    return null != last ? ((Number) last).doubleValue() : 0D;
+                }
+                return last;
+            }
+        });
+    }
+
+    public static class User {
+        private long id;
+        private String userName;
+        private Integer age;
+        public double score;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(final long id) {
+            this.id = id;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public void setUserName(final String userName) {
+            this.userName = userName;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(final Integer age) {
+            this.age = age;
+        }
+    }
+}
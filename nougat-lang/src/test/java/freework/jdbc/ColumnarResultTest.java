@@ -0,0 +1,126 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ColumnarResultTest {
+
+    @Test
+    public void testTypes() throws SQLException {
+        final Object[][] rows = {
+                {1, 10L, new BigDecimal("7"), 1.5D, "a"},
+                {null, null, null, null, null},
+                {3, 30L, new BigDecimal("9"), 2.5D, "a"}
+        };
+        final ColumnarResult result = ColumnarResult.of(resultSet(rows,
+                Types.INTEGER, Types.BIGINT, Types.DECIMAL, Types.DOUBLE, Types.VARCHAR));
+
+        assertEquals(3, result.getRowCount());
+        assertEquals(int.class, result.getColumnStorageType(0));
+        assertEquals(long.class, result.getColumnStorageType(2));
+        assertEquals(3, result.getInt(2, 0));
+        assertEquals(30L, result.getLong(2, 1));
+        assertEquals(2.5D, result.getDouble(2, 3), 0D);
+        assertEquals(Integer.valueOf(1), result.getObject(0, 0));
+        assertEquals(Long.valueOf(10L), result.getObject(0, 1));
+        assertEquals(new BigDecimal("7"), result.getObject(0, 2));
+        assertEquals(9L, result.getLong(2, 2));
+        assertEquals("a", result.getString(2, 4));
+        for (int column = 0; column < result.getColumnCount(); column++) {
+            assertTrue(result.isNull(1, column));
+            assertNull(result.getObject(1, column));
+        }
+        assertFalse(result.isNull(0, 0));
+        assertEquals(0, result.getColumnIndex("c0"));
+    }
+
+    @Test
+    public void testStringStorage() throws SQLException {
+        final int count = 1000;
+        final Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[]{"status-" + (i % 3), 0 == i % 10 ? null : "id-" + i};
+        }
+        final ColumnarResult result = ColumnarResult.of(resultSet(rows, Types.VARCHAR, Types.VARCHAR));
+        final ColumnarResult.StringColumn repeated = (ColumnarResult.StringColumn) result.getColumn(0);
+        final ColumnarResult.StringColumn unique = (ColumnarResult.StringColumn) result.getColumn(1);
+
+        assertTrue(repeated.isDictionaryEncoded());
+        assertFalse(unique.isDictionaryEncoded());
+        for (int i = 0; i < count; i++) {
+            assertEquals("status-" + (i % 3), result.getString(i, 0));
+            assertEquals(0 == i % 10 ? null : "id-" + i, result.getString(i, 1));
+            assertEquals(0 == i % 10, result.isNull(i, 1));
+        }
+    }
+
+    /**
+     * A result set of the rows, column i is labeled "ci" with the sql type types[i] (DECIMAL as precision 10, scale 0).
+     */
+    private static ResultSet resultSet(final Object[][] rows, final int... types) {
+        final ClassLoader loader = ColumnarResultTest.class.getClassLoader();
+        final ResultSetMetaData metadata = (ResultSetMetaData) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSetMetaData.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("getColumnCount".equals(name)) {
+                    return types.length;
+                }
+                if ("getColumnLabel".equals(name)) {
+                    return "c" + ((Integer) args[0] - 1);
+                }
+                if ("getColumnType".equals(name)) {
+                    return types[(Integer) args[0] - 1];
+                }
+                if ("getPrecision".equals(name)) {
+                    return 10;
+                }
+                return "isSigned".equals(name) ? Boolean.TRUE : (Object) 0;
+            }
+        });
+        return (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private int row = -1;
+            private Object last;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("getMetaData".equals(name)) {
+                    return metadata;
+                }
+                if ("next".equals(name)) {
+                    return ++row < rows.length;
+                }
+                if ("wasNull".equals(name)) {
+                    return null == last;
+                }
+                last = rows[row][(Integer) args[0] - 1];
+                if ("getInt".equals(name)) {
+                    return null != last ? ((Number) last).intValue() : 0;
+                }
+                if ("getLong".equals(name)) {
+                    return null != last ? ((Number) last).longValue() : 0L;
+                }
+                if ("getDouble".equals(name)) {
+                    return null != last ? ((Number) last).doubleValue() : 0D;
+                }
+                return last;
+            }
+        });
+    }
+}
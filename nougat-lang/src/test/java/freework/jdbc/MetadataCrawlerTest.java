@@ -0,0 +1,155 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class MetadataCrawlerTest {
+    private static final String URL = "jdbc:test:metadata";
+
+    /**
+     * The columns: schema, table, column.
+     */
+    private static final String[][] COLUMNS = {
+            {"APP", "user_role", "user_id"},
+            {"APP", "user_role", "role_id"},
+            {"APP", "userXrole", "other"},
+            {"OTHER", "user_role", "foreign_id"}
+    };
+
+    @Test
+    public void testEscapeSearchPattern() {
+        assertEquals("user\\_role\\%\\\\x", Jdbc.escapeSearchPattern("user_role%\\x", "\\"));
+        assertEquals("user_role", Jdbc.escapeSearchPattern("user_role", ""));
+    }
+
+    @Test
+    public void testCrawlSchema() throws SQLException {
+        final MetadataCache cache = new MetadataCache(0, TimeUnit.SECONDS);
+        final Map<String, List<Jdbc.DbColumn>> columns = Jdbc.crawlColumns(newDataSource(), "APP", 2, cache);
+
+        assertEquals(Arrays.asList("user_role", "userXrole"), new ArrayList<String>(columns.keySet()));
+        assertEquals("[user_role.user_id(VARCHAR), user_role.role_id(VARCHAR)]", columns.get("user_role").toString());
+        assertEquals("[userXrole.other(VARCHAR)]", columns.get("userXrole").toString());
+
+        final DatabaseMetaData metadata = newDataSource().getConnection().getMetaData();
+        final List<Jdbc.DbColumn> cached = Jdbc.getColumns(cache, metadata, "APP", "user\\_role", "%");
+        assertEquals(columns.get("user_role"), cached);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testCrawlAllSchemas() throws SQLException {
+        final MetadataCache cache = new MetadataCache(0, TimeUnit.SECONDS);
+        final Map<String, List<Jdbc.DbColumn>> columns = Jdbc.crawlColumns(newDataSource(), null, 3, cache);
+
+        assertEquals(Arrays.asList("APP.user_role", "APP.userXrole", "OTHER.user_role"), new ArrayList<String>(columns.keySet()));
+        assertEquals("[user_role.foreign_id(VARCHAR)]", columns.get("OTHER.user_role").toString());
+        assertEquals(2, columns.get("APP.user_role").size());
+    }
+
+    /**
+     * A data source whose metadata matches the search patterns (escape '\') against {@link #COLUMNS}.
+     */
+    private static DataSource newDataSource() {
+        final ClassLoader loader = MetadataCrawlerTest.class.getClassLoader();
+        final DatabaseMetaData metadata = (DatabaseMetaData) Proxy.newProxyInstance(loader, new Class<?>[]{DatabaseMetaData.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("getURL".equals(name)) {
+                    return URL;
+                }
+                if ("getSearchStringEscape".equals(name)) {
+                    return "\\";
+                }
+                final boolean tables = "getTables".equals(name);
+                final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+                for (final String[] column : COLUMNS) {
+                    final boolean matches = like(column[0], (String) args[1]) && like(column[1], (String) args[2])
+                            && (tables || like(column[2], (String) args[3]));
+                    final boolean duplicate = tables && !rows.isEmpty()
+                            && column[0].equals(rows.get(rows.size() - 1).get("TABLE_SCHEM"))
+                            && column[1].equals(rows.get(rows.size() - 1).get("TABLE_NAME"));
+                    if (matches && !duplicate) {
+                        final Map<String, Object> row = new HashMap<String, Object>();
+                        row.put("TABLE_SCHEM", column[0]);
+                        row.put("TABLE_NAME", column[1]);
+                        row.put("COLUMN_NAME", column[2]);
+                        row.put("TYPE_NAME", "VARCHAR");
+                        rows.add(row);
+                    }
+                }
+                return resultSet(loader, rows);
+            }
+        });
+        final Connection conn = (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "getMetaData".equals(method.getName()) ? metadata : null;
+            }
+        });
+        return (DataSource) Proxy.newProxyInstance(loader, new Class<?>[]{DataSource.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "getConnection".equals(method.getName()) ? conn : null;
+            }
+        });
+    }
+
+    private static boolean like(final String value, final String pattern) {
+        if (null == pattern) {
+            return true;
+        }
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if ('\\' == c) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if ('%' == c) {
+                regex.append(".*");
+            } else if ('_' == c) {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return value.matches(regex.toString());
+    }
+
+    private static ResultSet resultSet(final ClassLoader loader, final List<Map<String, Object>> rows) {
+        return (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private int row = -1;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("next".equals(name)) {
+                    return ++row < rows.size();
+                }
+                if ("getInt".equals(name)) {
+                    return 0;
+                }
+                return name.startsWith("get") ? rows.get(row).get(args[0]) : null;
+            }
+        });
+    }
+}
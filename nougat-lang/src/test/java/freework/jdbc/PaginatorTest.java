@@ -0,0 +1,82 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class PaginatorTest {
+    private static final String SQL = "select * from users";
+
+    @Test
+    public void testKeysetSql() {
+        final Paginator mysql = Paginator.forUrl("jdbc:mysql://localhost/test", "created desc", "id");
+        assertEquals("SELECT * FROM (select * from t) page_t ORDER BY created DESC, id ASC LIMIT 11",
+                mysql.toKeysetSql("select * from t", false, 11));
+        assertEquals("SELECT * FROM (select * from t) page_t WHERE (created < ?) OR (created = ? AND id > ?)"
+                + " ORDER BY created DESC, id ASC LIMIT 11", mysql.toKeysetSql("select * from t", true, 11));
+        assertArrayEquals(new Object[]{1, 1, 2}, mysql.getKeysetParameters(new Object[]{1, 2}));
+
+        final Paginator sqlServer = new Paginator(Jdbc.SQL_SERVER, "id");
+        assertEquals("SELECT TOP 5 * FROM (select * from t) page_t WHERE (id > ?) ORDER BY id ASC",
+                sqlServer.toKeysetSql("select * from t", true, 5));
+
+        final Paginator oracle = new Paginator(Jdbc.ORACLE, "id");
+        assertEquals("SELECT * FROM (SELECT * FROM (select * from t) page_t ORDER BY id ASC) WHERE ROWNUM <= 5",
+                oracle.toKeysetSql("select * from t", false, 5));
+    }
+
+    @Test
+    public void testOffsetSql() {
+        assertEquals("SELECT * FROM (select * from t) page_t ORDER BY id ASC LIMIT 10 OFFSET 20",
+                new Paginator(Jdbc.POSTGRE_SQL, "id").toOffsetSql("select * from t", 20, 10));
+        assertEquals("SELECT * FROM (select * from t) page_t ORDER BY id ASC OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+                new Paginator(Jdbc.DERBY, "id").toOffsetSql("select * from t", 20, 10));
+        assertEquals("SELECT * FROM (select * from t) page_t ORDER BY id ASC OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+                new Paginator(Jdbc.ORACLE, "id").toOffsetSql("select * from t", 20, 10));
+    }
+
+    @Test
+    public void testToken() {
+        final Paginator paginator = new Paginator(Jdbc.H2, "created desc", "name", "amount", "id");
+        final Timestamp created = new Timestamp(1400000000123L);
+        created.setNanos(123456789);
+        final Object[] key = {created, "vacoor", new BigDecimal("12.50"), 42L};
+
+        final String token = paginator.encode((byte) 'K', SQL, key);
+        assertArrayEquals(key, paginator.decode(token, SQL, (byte) 'K'));
+        try {
+            new Paginator(Jdbc.H2, "id").decode(token, SQL, (byte) 'K');
+            fail("token of another order");
+        } catch (final IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            paginator.decode(token, "select * from orders", (byte) 'K');
+            fail("token of another query");
+        } catch (final IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCraftedOffsetToken() throws SQLException {
+        final Paginator paginator = new Paginator(Jdbc.H2, "id");
+        for (final Object[] values : new Object[][]{{}, {"x"}, {-1L}}) {
+            try {
+                paginator.offset(null, SQL, null, paginator.encode((byte) 'O', SQL, values), 10, null);
+                fail("crafted token " + Arrays.toString(values));
+            } catch (final IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
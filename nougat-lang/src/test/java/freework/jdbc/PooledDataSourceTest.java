@@ -0,0 +1,244 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class PooledDataSourceTest {
+    private static final String URL = "jdbc:test:pool";
+
+    @Test
+    public void testReleaseClosesStatementsAndRestoresState() throws SQLException {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final PooledDataSource dataSource = new PooledDataSource(newDriver(events), URL, null, null, 1);
+
+        final Connection conn = dataSource.getConnection();
+        final Statement stmt = conn.createStatement();
+        final PreparedStatement closedByBorrower = conn.prepareStatement("select 1");
+        closedByBorrower.close();
+        conn.setSchema("OTHER");
+        conn.setNetworkTimeout(null, 1000);
+        conn.close();
+
+        assertTrue(stmt.isClosed());
+        final Connection reused = dataSource.getConnection();
+        assertEquals(1, dataSource.getCreatedCount());
+        assertEquals("APP", reused.getSchema());
+        assertEquals(0, reused.getNetworkTimeout());
+        reused.close();
+        dataSource.close();
+    }
+
+    @Test
+    public void testStatementsReturnPooledConnection() throws SQLException {
+        final PooledDataSource dataSource = new PooledDataSource(newDriver(new ArrayList<String>()), URL, null, null, 1);
+        final Connection conn = dataSource.getConnection();
+        try {
+            assertSame(conn, conn.createStatement().getConnection());
+            assertSame(conn, conn.prepareStatement("select 1").getConnection());
+            assertSame(conn, conn.prepareCall("{call p()}").getConnection());
+        } finally {
+            conn.close();
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testCloseConnectionIfEntryFails() {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final PooledDataSource dataSource = new PooledDataSource(newDriver(events, true), URL, null, null, 1);
+        try {
+            dataSource.getConnection();
+            fail("the connection state cannot be read");
+        } catch (final SQLException expected) {
+            assertEquals(Collections.singletonList("close"), events);
+            assertEquals(0, dataSource.getTotalCount());
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testAbortBeforeDiscard() throws SQLException {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final PooledDataSource dataSource = new PooledDataSource(newDriver(events), URL, null, null, 1);
+
+        final Connection conn = dataSource.getConnection();
+        conn.abort(null);
+        conn.close();
+
+        assertTrue(events.contains("abort"));
+        assertTrue(!events.contains("close"));
+        assertEquals(0, dataSource.getTotalCount());
+        assertEquals(0, dataSource.getActiveCount());
+        dataSource.getConnection().close();
+        assertEquals(2, dataSource.getCreatedCount());
+        dataSource.close();
+    }
+
+    @Test
+    public void testLoginTimeout() throws SQLException {
+        final PooledDataSource dataSource = new PooledDataSource(newDriver(new ArrayList<String>()), URL, null, null, 1);
+        dataSource.setLoginTimeout(1);
+        final Connection conn = dataSource.getConnection();
+        try {
+            dataSource.getConnection();
+            fail("the only connection is borrowed");
+        } catch (final SQLTimeoutException expected) {
+            assertEquals(1, dataSource.getTimeoutCount());
+        } finally {
+            conn.close();
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentBorrow() throws Exception {
+        final int threads = 8;
+        final int rounds = 200;
+        final PooledDataSource dataSource = new PooledDataSource(newDriver(new ArrayList<String>()), URL, null, null, 2);
+        final AtomicInteger borrowed = new AtomicInteger();
+        final AtomicInteger maxBorrowed = new AtomicInteger();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < rounds; j++) {
+                            final Connection conn = dataSource.getConnection();
+                            try {
+                                final int current = borrowed.incrementAndGet();
+                                int max;
+                                while ((max = maxBorrowed.get()) < current && !maxBorrowed.compareAndSet(max, current)) {
+                                    Thread.yield();
+                                }
+                                conn.createStatement();
+                                borrowed.decrementAndGet();
+                            } finally {
+                                conn.close();
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        assertEquals(Collections.emptyList(), errors);
+        assertTrue(2 >= maxBorrowed.get());
+        assertTrue(2 >= dataSource.getTotalCount());
+        assertEquals(0, dataSource.getActiveCount());
+        dataSource.close();
+    }
+
+    /**
+     * A driver whose connections keep schema and network timeout, the events are the calls of abort and close.
+     */
+    private static Driver newDriver(final List<String> events) {
+        return newDriver(events, false);
+    }
+
+    /**
+     * A driver whose connections fail to read the auto-commit state if broken.
+     */
+    private static Driver newDriver(final List<String> events, final boolean broken) {
+        final ClassLoader loader = PooledDataSourceTest.class.getClassLoader();
+        return (Driver) Proxy.newProxyInstance(loader, new Class<?>[]{Driver.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "connect".equals(method.getName()) ? newConnection(loader, events, broken) : null;
+            }
+        });
+    }
+
+    private static Connection newConnection(final ClassLoader loader, final List<String> events, final boolean broken) {
+        final Map<String, Object> state = new HashMap<String, Object>();
+        state.put("Schema", "APP");
+        state.put("NetworkTimeout", 0);
+        state.put("AutoCommit", true);
+        state.put("ReadOnly", false);
+        state.put("TransactionIsolation", Connection.TRANSACTION_READ_COMMITTED);
+        return (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+                final String name = method.getName();
+                if (broken && "getAutoCommit".equals(name)) {
+                    throw new SQLException("broken");
+                }
+                if ("abort".equals(name) || "close".equals(name)) {
+                    events.add(name);
+                    state.put("Closed", true);
+                } else if ("isClosed".equals(name)) {
+                    return state.containsKey("Closed");
+                } else if ("isValid".equals(name)) {
+                    return !state.containsKey("Closed");
+                } else if ("createStatement".equals(name) || "prepareStatement".equals(name)) {
+                    return newStatement(loader, PreparedStatement.class);
+                } else if ("prepareCall".equals(name)) {
+                    return newStatement(loader, CallableStatement.class);
+                } else if ("setNetworkTimeout".equals(name)) {
+                    state.put("NetworkTimeout", args[1]);
+                } else if (name.startsWith("set")) {
+                    state.put(name.substring(3), args[0]);
+                } else if (name.startsWith("get") || name.startsWith("is")) {
+                    return state.get(name.substring(name.startsWith("get") ? 3 : 2));
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Object newStatement(final ClassLoader loader, final Class<?> type) {
+        return Proxy.newProxyInstance(loader, new Class<?>[]{type}, new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                if ("close".equals(name)) {
+                    closed = true;
+                }
+                return "isClosed".equals(name) ? closed : null;
+            }
+        });
+    }
+}
@@ -0,0 +1,184 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class ResultCursorTest {
+    private static final Object[][] ROWS = {{1L, "a"}, {2L, "b"}, {3L, "c"}};
+
+    /**
+     * The calls of the mocked connection, statement and result set, eg: 'setFetchSize(1000)', 'rs.close'.
+     */
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    private boolean autoCommit = true;
+
+    @Test
+    public void testMySqlStreaming() throws SQLException {
+        final ResultCursor<Object[]> cursor = ResultCursor.open(newConnection("jdbc:mysql://127.0.0.1/test", -1),
+                "select id, name from t", RowMappers.asArray(), 100);
+        assertTrue(events.contains("setFetchSize(" + Integer.MIN_VALUE + ")"));
+        assertFalse(events.contains("setAutoCommit(false)"));
+
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (final Object[] row : cursor) {
+            rows.add(row);
+        }
+        assertArrayEquals(ROWS, rows.toArray());
+        assertEquals(3, cursor.getRowCount());
+        assertEquals(Arrays.asList("rs.close", "stmt.close"), closeEvents());
+        assertTrue(autoCommit);
+    }
+
+    @Test
+    public void testPostgreSqlAutoCommit() throws SQLException {
+        final ResultCursor<Map<String, Object>> cursor = ResultCursor.open(newConnection("jdbc:postgresql://127.0.0.1/test", -1),
+                "select id, name from t", RowMappers.asMap(), 0);
+        assertTrue(events.contains("setFetchSize(" + ResultCursor.DEFAULT_FETCH_SIZE + ")"));
+        assertFalse(autoCommit);
+
+        final Map<String, Object> first = new LinkedHashMap<String, Object>();
+        first.put("id", 1L);
+        first.put("name", "a");
+        assertEquals(first, cursor.next());
+        cursor.close();
+        cursor.close();
+
+        assertTrue(autoCommit);
+        assertEquals(Arrays.asList("rs.close", "stmt.close", "setAutoCommit(true)"), closeEvents());
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testCloseWhenIterationThrows() throws SQLException {
+        final ResultCursor<Long> cursor = ResultCursor.open(newConnection("jdbc:postgresql://127.0.0.1/test", 2),
+                "select id from t", RowMappers.singleColumn(Long.class), 10);
+        assertTrue(events.contains("setFetchSize(10)"));
+        try {
+            for (final Long id : cursor) {
+                assertEquals(Long.valueOf(1), id);
+            }
+            fail("the second row fails");
+        } catch (final ResultCursor.CursorException expected) {
+            assertEquals("broken", expected.getCause().getMessage());
+        } finally {
+            cursor.close();
+        }
+        assertEquals(1, cursor.getRowCount());
+        assertTrue(autoCommit);
+        assertEquals(Arrays.asList("rs.close", "stmt.close", "setAutoCommit(true)"), closeEvents());
+    }
+
+    private List<String> closeEvents() {
+        final List<String> closes = new ArrayList<String>();
+        for (final String event : events) {
+            if (event.endsWith("close") || event.startsWith("setAutoCommit(true")) {
+                closes.add(event);
+            }
+        }
+        return closes;
+    }
+
+    /**
+     * A connection of the url whose queries return {@link #ROWS}, the result set fails at the row if positive.
+     */
+    private Connection newConnection(final String url, final int failAtRow) {
+        final ClassLoader loader = ResultCursorTest.class.getClassLoader();
+        final Class<?>[] metadataType = {DatabaseMetaData.class};
+        final DatabaseMetaData metadata = (DatabaseMetaData) Proxy.newProxyInstance(loader, metadataType, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "getURL".equals(method.getName()) ? url : null;
+            }
+        });
+        final Class<?>[] stmtType = {PreparedStatement.class};
+        final PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(loader, stmtType, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("executeQuery".equals(name)) {
+                    return newResultSet(loader, failAtRow);
+                }
+                if ("setFetchSize".equals(name)) {
+                    events.add("setFetchSize(" + args[0] + ')');
+                } else if ("close".equals(name)) {
+                    events.add("stmt.close");
+                }
+                return null;
+            }
+        });
+        return (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("getMetaData".equals(name)) {
+                    return metadata;
+                } else if ("getAutoCommit".equals(name)) {
+                    return autoCommit;
+                } else if ("setAutoCommit".equals(name)) {
+                    autoCommit = (Boolean) args[0];
+                    events.add("setAutoCommit(" + autoCommit + ')');
+                } else if ("prepareStatement".equals(name)) {
+                    return stmt;
+                }
+                return null;
+            }
+        });
+    }
+
+    private ResultSet newResultSet(final ClassLoader loader, final int failAtRow) {
+        final Class<?>[] metadataType = {ResultSetMetaData.class};
+        final ResultSetMetaData metadata = (ResultSetMetaData) Proxy.newProxyInstance(loader, metadataType, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getColumnCount".equals(method.getName())) {
+                    return 2;
+                }
+                return 1 == (Integer) args[0] ? "id" : "name";
+            }
+        });
+        return (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private int row;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+                final String name = method.getName();
+                if ("next".equals(name)) {
+                    if (++row == failAtRow) {
+                        throw new SQLException("broken");
+                    }
+                    return row <= ROWS.length;
+                } else if ("getMetaData".equals(name)) {
+                    return metadata;
+                } else if ("getObject".equals(name)) {
+                    return ROWS[row - 1][(Integer) args[0] - 1];
+                } else if ("close".equals(name)) {
+                    events.add("rs.close");
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class ResultSetExporterTest {
+    private static final String[] LABELS = {"id", "name", "amount"};
+    private static final int[] TYPES = {Types.BIGINT, Types.VARCHAR, Types.INTEGER};
+    private static final Object[][] ROWS = {
+            {-42L, "plain", 7},
+            {Long.MAX_VALUE, "a,\"b\"\nc", null},
+            {0L, "中文😀", 12345}
+    };
+    private static final String EXPECTED = "id,name,amount\r\n"
+            + "-42,plain,7\r\n"
+            + "9223372036854775807,\"a,\"\"b\"\"\nc\",\r\n"
+            + "0,中文😀,12345\r\n";
+
+    @Test
+    public void testCsv() throws SQLException, IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, ResultSetExporter.csv().bufferSize(24).export(resultSet(), out));
+        assertEquals(EXPECTED, out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testGzip() throws SQLException, IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultSetExporter.csv().gzip(true).export(resultSet(), out);
+
+        final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        final ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+        final byte[] buff = new byte[256];
+        for (int n; -1 != (n = in.read(buff)); ) {
+            unzipped.write(buff, 0, n);
+        }
+        assertEquals(EXPECTED, unzipped.toString("UTF-8"));
+    }
+
+    private static ResultSet resultSet() {
+        final ClassLoader loader = ResultSetExporterTest.class.getClassLoader();
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSetMetaData.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getColumnCount".equals(method.getName())) {
+                    return LABELS.length;
+                }
+                final int index = (Integer) args[0] - 1;
+                return "getColumnType".equals(method.getName()) ? TYPES[index] : LABELS[index];
+            }
+        });
+        return (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private int row = -1;
+            private Object last;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("getMetaData".equals(name)) {
+                    return metaData;
+                }
+                if ("next".equals(name)) {
+                    return ++row < ROWS.length;
+                }
+                if ("wasNull".equals(name)) {
+                    return null == last;
+                }
+                last = ROWS[row][(Integer) args[0] - 1];
+                if ("getLong".equals(name)) {
+                    return null != last ? ((Number) last).longValue() : 0L;
+                }
+                if ("getInt".equals(name)) {
+                    return null != last ? ((Number) last).intValue() : 0;
+                }
+                return last;
+            }
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package freework.jdbc;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class StatementCachingConnectionTest {
+
+    @Test
+    public void testReuseResetsSettings() throws SQLException {
+        final AtomicInteger prepared = new AtomicInteger();
+        final StatementCachingConnection conn = new StatementCachingConnection(newConnection(prepared), 4);
+
+        final PreparedStatement first = conn.prepareStatement("select * from t");
+        first.setFetchSize(Integer.MIN_VALUE);
+        first.setMaxRows(10);
+        first.setQueryTimeout(5);
+        first.setFetchDirection(ResultSet.FETCH_REVERSE);
+        first.close();
+
+        final PreparedStatement second = conn.prepareStatement("select * from t");
+        assertEquals(1, prepared.get());
+        assertEquals(1, conn.getHitCount());
+        assertEquals(0, second.getFetchSize());
+        assertEquals(0, second.getMaxRows());
+        assertEquals(0, second.getQueryTimeout());
+        assertEquals(ResultSet.FETCH_FORWARD, second.getFetchDirection());
+        second.close();
+        conn.close();
+    }
+
+    @Test
+    public void testStaleWrapper() throws SQLException {
+        final AtomicInteger prepared = new AtomicInteger();
+        final StatementCachingConnection conn = new StatementCachingConnection(newConnection(prepared), 4);
+
+        final PreparedStatement first = conn.prepareStatement("select * from t where id = ?");
+        first.close();
+        final PreparedStatement second = conn.prepareStatement("select * from t where id = ?");
+        second.setQueryTimeout(3);
+        assertEquals(1, prepared.get());
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        try {
+            first.setQueryTimeout(7);
+            fail("closed statement must not be usable");
+        } catch (final SQLException expected) {
+            assertEquals(3, second.getQueryTimeout());
+        }
+        first.close();
+        assertFalse(second.isClosed());
+        assertEquals(0, conn.getCacheSize());
+
+        second.close();
+        assertEquals(1, conn.getCacheSize());
+        conn.close();
+        assertEquals(0, conn.getCacheSize());
+    }
+
+    @Test
+    public void testReleaseClosesResultSet() throws SQLException {
+        final AtomicInteger prepared = new AtomicInteger();
+        final StatementCachingConnection conn = new StatementCachingConnection(newConnection(prepared), 4);
+
+        final PreparedStatement first = conn.prepareStatement("select * from t");
+        final ResultSet rs = first.executeQuery();
+        first.close();
+        assertTrue(rs.isClosed());
+        assertEquals(1, conn.getCacheSize());
+
+        final PreparedStatement broken = conn.prepareStatement("select * from broken");
+        broken.executeQuery();
+        broken.close();
+        assertEquals(1, conn.getCacheSize());
+        conn.prepareStatement("select * from broken").close();
+        assertEquals(3, prepared.get());
+        conn.close();
+    }
+
+    /**
+     * A connection whose statements keep their settings, 'get'/'set' of a property read/write the same value.
+     */
+    private static Connection newConnection(final AtomicInteger prepared) {
+        final ClassLoader loader = StatementCachingConnectionTest.class.getClassLoader();
+        return (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("prepareStatement".equals(method.getName())) {
+                    prepared.incrementAndGet();
+                    return newStatement(loader, (String) args[0]);
+                }
+                return "isClosed".equals(method.getName()) ? Boolean.FALSE : null;
+            }
+        });
+    }
+
+    /**
+     * A statement whose query returns a result set, the result set of a sql containing 'broken' fails to close.
+     */
+    private static PreparedStatement newStatement(final ClassLoader loader, final String sql) {
+        final Map<String, Object> settings = new HashMap<String, Object>();
+        settings.put("FetchSize", 0);
+        settings.put("MaxRows", 0);
+        settings.put("QueryTimeout", 0);
+        settings.put("FetchDirection", ResultSet.FETCH_FORWARD);
+        return (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            private boolean closed;
+            private ResultSet resultSet;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("executeQuery".equals(name)) {
+                    resultSet = newResultSet(loader, sql.contains("broken"));
+                    return resultSet;
+                } else if ("getResultSet".equals(name)) {
+                    return resultSet;
+                } else if ("close".equals(name)) {
+                    closed = true;
+                } else if ("isClosed".equals(name)) {
+                    return closed;
+                } else if (name.startsWith("set") && settings.containsKey(name.substring(3))) {
+                    settings.put(name.substring(3), args[0]);
+                } else if (name.startsWith("get") && settings.containsKey(name.substring(3))) {
+                    return settings.get(name.substring(3));
+                }
+                return null;
+            }
+        });
+    }
+
+    private static ResultSet newResultSet(final ClassLoader loader, final boolean broken) {
+        return (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+                final String name = method.getName();
+                if ("close".equals(name)) {
+                    if (broken) {
+                        throw new SQLException("broken");
+                    }
+                    closed = true;
+                }
+                return "isClosed".equals(name) ? closed : null;
+            }
+        });
+    }
+}
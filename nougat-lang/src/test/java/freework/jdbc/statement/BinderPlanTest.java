@@ -0,0 +1,119 @@
+package freework.jdbc.statement;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class BinderPlanTest {
+
+    @Test
+    public void testBinderSelection() {
+        assertSame(ParameterBinders.OBJECT, ParameterBinders.forValue(null));
+        assertSame(ParameterBinders.OBJECT, ParameterBinders.forType(null));
+        assertSame(ParameterBinders.OBJECT, ParameterBinders.forType(Object.class));
+        assertSame(ParameterBinders.LONG, ParameterBinders.forValue(1L));
+        assertSame(ParameterBinders.INT, ParameterBinders.forType(int.class));
+        assertSame(ParameterBinders.STRING, ParameterBinders.forValue("a"));
+        assertSame(ParameterBinders.TIMESTAMP, ParameterBinders.forValue(new Timestamp(0)));
+        assertSame(ParameterBinders.UTIL_DATE, ParameterBinders.forValue(new java.util.Date(0)));
+        assertSame(ParameterBinders.UTIL_DATE, ParameterBinders.forType(SubDate.class));
+    }
+
+    @Test
+    public void testCompileNamed() {
+        final ParsedSql parsedSql = ParsedSql.parse("insert into t(id, name, parent, created) values (:id, :name, :id, :created)");
+        final Map<String, Object> sample = new HashMap<String, Object>();
+        sample.put("id", 1L);
+        sample.put("name", "a");
+        final BinderPlan plan = BinderPlan.compile(parsedSql, sample);
+
+        assertEquals(3, plan.getSlotCount());
+        assertEquals("id", plan.getName(plan.getSlot("id")));
+        assertSame(ParameterBinders.LONG, plan.getBinder(plan.getSlot("id")));
+        assertSame(ParameterBinders.STRING, plan.getBinder(plan.getSlot("name")));
+        assertSame(ParameterBinders.OBJECT, plan.getBinder(plan.getSlot("created")));
+        try {
+            plan.getSlot("missing");
+            fail("no such parameter");
+        } catch (final IllegalArgumentException expected) {
+            // missing.
+        }
+
+        final BinderPlan typed = BinderPlan.compileTypes(parsedSql, Collections.<String, Class<?>>singletonMap("created", Timestamp.class));
+        assertSame(ParameterBinders.TIMESTAMP, typed.getBinder(typed.getSlot("created")));
+        assertSame(ParameterBinders.OBJECT, typed.getBinder(typed.getSlot("id")));
+    }
+
+    @Test
+    public void testBindNamed() throws SQLException {
+        final ParsedSql parsedSql = ParsedSql.parse("update t set name = :name where id = :id or parent = :id");
+        final BinderPlan plan = BinderPlan.compile(parsedSql, Collections.singletonMap("id", 1L));
+        final List<String> calls = new ArrayList<String>();
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put("id", 7L);
+        plan.bind(newStatement(calls), params);
+
+        assertEquals(Arrays.asList("setObject(1, null)", "setLong(2, 7)", "setLong(3, 7)"), calls);
+    }
+
+    @Test
+    public void testBindMixedPositional() throws SQLException {
+        final BinderPlan plan = BinderPlan.compile(1L, "a", null, new java.util.Date(5));
+        final List<String> calls = new ArrayList<String>();
+        final PreparedStatement stmt = newStatement(calls);
+
+        assertSame(ParameterBinders.OBJECT, plan.getBinder(2));
+        assertNull(plan.getName(0));
+        plan.bind(stmt, null, 2, "c", new java.util.Date(5));
+        assertEquals(Arrays.asList("setNull(1, " + Types.BIGINT + ")", "setObject(2, 2)",
+                "setObject(3, c)", "setTimestamp(4, " + new Timestamp(5) + ")"), calls);
+
+        calls.clear();
+        plan.setLong(stmt, 0, 9L);
+        plan.setNull(stmt, 1);
+        assertEquals(Arrays.asList("setLong(1, 9)", "setNull(2, " + Types.VARCHAR + ")"), calls);
+        try {
+            plan.bind(stmt, 1L);
+            fail("one value for four slots");
+        } catch (final IllegalArgumentException expected) {
+            // 1 != 4.
+        }
+    }
+
+    /**
+     * A statement recording its setter calls, eg: 'setLong(1, 7)'.
+     */
+    private static PreparedStatement newStatement(final List<String> calls) {
+        final ClassLoader loader = BinderPlanTest.class.getClassLoader();
+        return (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                calls.add(method.getName() + '(' + args[0] + ", " + args[1] + ')');
+                return null;
+            }
+        });
+    }
+
+    private static final class SubDate extends java.util.Date {
+        private static final long serialVersionUID = 1L;
+    }
+}
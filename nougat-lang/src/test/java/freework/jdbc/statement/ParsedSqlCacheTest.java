@@ -0,0 +1,122 @@
+package freework.jdbc.statement;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class ParsedSqlCacheTest {
+
+    @Test
+    public void testParse() {
+        final ParsedSql parsed = ParsedSql.parse("select * from t where a = :a or b = :b or c = :a");
+
+        assertEquals("select * from t where a = ? or b = ? or c = ?", parsed.getSql());
+        assertEquals(3, parsed.getParameterCount());
+        assertArrayEquals(new int[]{1, 3}, parsed.getIndexes("a"));
+        assertArrayEquals(new int[]{2}, parsed.getIndexes("b"));
+        assertEquals(0, parsed.getIndexes("c").length);
+
+        assertFalse(ParsedSql.parse("select '\\:a' from t").hasNamedParameters());
+        assertEquals("select ':a' from t", ParsedSql.parse("select '\\:a' from t").getSql());
+
+        final ParsedSql cast = ParsedSql.parse("select coalesce(a::int, 0) from t where id = :id");
+        assertEquals("select coalesce(a::int, 0) from t where id = ?", cast.getSql());
+        assertEquals(1, cast.getParameterCount());
+        assertArrayEquals(new int[]{1}, cast.getIndexes("id"));
+        assertEquals(0, cast.getIndexes("int").length);
+    }
+
+    @Test
+    public void testExpand() {
+        final ParsedSql parsed = ParsedSql.parse("select * from t where id in (:ids) and a = :a");
+        final ParsedSql expanded = parsed.expand(Collections.singletonMap("ids", Arrays.asList(1, 2, 3)));
+
+        assertEquals("select * from t where id in (?, ?, ?, ?) and a = ?", expanded.getSql());
+        assertArrayEquals(new int[]{1, 2, 3, 4}, expanded.getIndexes("ids"));
+        assertArrayEquals(new int[]{5}, expanded.getIndexes("a"));
+        assertEquals(4, expanded.getExpandedSize("ids"));
+        assertSame(expanded, parsed.expand(Collections.singletonMap("ids", new Object[]{1, 2, 3, 4})));
+        assertSame(parsed, parsed.expand(Collections.singletonMap("ids", 1)));
+
+        assertEquals(1, ParsedSql.bucketSize(0));
+        assertEquals(1, ParsedSql.bucketSize(1));
+        assertEquals(8, ParsedSql.bucketSize(5));
+        assertEquals(8, ParsedSql.bucketSize(8));
+    }
+
+    @Test
+    public void testBindExpandedPadding() throws SQLException {
+        final ParsedSql parsed = ParsedSql.parse("select * from t where id in (:ids) and a = :a");
+        final List<Integer> ids = Arrays.asList(1, 2, 3, 4, 5);
+        final ParsedSql expanded = parsed.expand(Collections.singletonMap("ids", ids));
+        assertEquals(8, expanded.getExpandedSize("ids"));
+
+        final Map<Integer, Object> bound = new TreeMap<Integer, Object>();
+        final DelegatingNamedParameterStatement stmt = new DelegatingNamedParameterStatement(newStatement(bound), expanded);
+        stmt.setObject("ids", ids);
+        stmt.setObject("a", "x");
+        assertEquals(Arrays.<Object>asList(1, 2, 3, 4, 5, 5, 5, 5, "x"), new ArrayList<Object>(bound.values()));
+
+        bound.clear();
+        stmt.setObject("ids", new Object[]{7});
+        assertEquals(Arrays.<Object>asList(7, 7, 7, 7, 7, 7, 7, 7), new ArrayList<Object>(bound.values()));
+        try {
+            stmt.setObject("ids", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9));
+            fail("9 elements exceed the bucket of 8");
+        } catch (final SQLException expected) {
+            // next bucket.
+        }
+    }
+
+    @Test
+    public void testCache() {
+        final ParsedSqlCache cache = new ParsedSqlCache(2);
+        final ParsedSql first = cache.get("select :a");
+
+        assertSame(first, cache.get("select :a"));
+        cache.get("select :b");
+        cache.get("select :c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(first != cache.get("select :a"));
+    }
+
+    /**
+     * A statement recording the bound parameters (null for setNull).
+     */
+    private static PreparedStatement newStatement(final Map<Integer, Object> bound) {
+        final ClassLoader loader = ParsedSqlCacheTest.class.getClassLoader();
+        return (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if (name.startsWith("set") && null != args && args[0] instanceof Integer) {
+                    bound.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package freework.jdbc.statement;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class StatementInstrumentationTest {
+    private static final String SQL = "select * from t where id = ?";
+
+    @Test
+    public void testQueryAndFetchStats() throws SQLException {
+        final StatementInstrumentation instrumentation = new StatementInstrumentation();
+        final AtomicInteger closed = new AtomicInteger();
+        final PreparedStatement stmt = new DelegatingPreparedStatement(newStatement(3, closed), SQL, instrumentation);
+
+        stmt.setLong(1, 7L);
+        final ResultSet rs = stmt.executeQuery();
+        assertTrue(rs instanceof DelegatingResultSet);
+        assertFalse(Proxy.isProxyClass(rs.getClass()));
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+        }
+        rs.close();
+        rs.close();
+
+        final StatementInstrumentation.Stats stats = instrumentation.getStats(SQL);
+        assertEquals(3, rows);
+        assertEquals(2, closed.get());
+        assertEquals(1, stats.getExecutionCount());
+        assertEquals(1, stats.getFetchCount());
+        assertEquals(3, stats.getFetchedRows());
+    }
+
+    @Test
+    public void testFetchRecordedOnClose() throws SQLException {
+        final StatementInstrumentation instrumentation = new StatementInstrumentation();
+        final PreparedStatement stmt = new DelegatingPreparedStatement(newStatement(5, new AtomicInteger()), SQL, instrumentation);
+
+        final ResultSet rs = stmt.executeQuery();
+        rs.next();
+        rs.next();
+        assertEquals(0, instrumentation.getStats(SQL).getFetchCount());
+        rs.close();
+        assertEquals(1, instrumentation.getStats(SQL).getFetchCount());
+        assertEquals(2, instrumentation.getStats(SQL).getFetchedRows());
+    }
+
+    @Test
+    public void testBoundParameters() throws SQLException {
+        final DelegatingPreparedStatement instrumented =
+                new DelegatingPreparedStatement(newStatement(0, new AtomicInteger()), SQL, new StatementInstrumentation());
+        instrumented.setInt(1, 1);
+        instrumented.setString(3, "c");
+        assertArrayEquals(new Object[]{1, null, "c"}, instrumented.getBoundParameters());
+
+        final DelegatingPreparedStatement plain = new DelegatingPreparedStatement(newStatement(0, new AtomicInteger()));
+        plain.setInt(1, 1);
+        plain.setString(2, "b");
+        assertNull(plain.getBoundParameters());
+        assertFalse(plain.executeQuery() instanceof DelegatingResultSet);
+    }
+
+    /**
+     * A statement whose queries return the given number of rows, the close calls of the result sets are counted.
+     */
+    private static PreparedStatement newStatement(final int rows, final AtomicInteger closed) {
+        final ClassLoader loader = StatementInstrumentationTest.class.getClassLoader();
+        return (PreparedStatement) Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "executeQuery".equals(method.getName()) ? newResultSet(loader, rows, closed) : null;
+            }
+        });
+    }
+
+    private static ResultSet newResultSet(final ClassLoader loader, final int rows, final AtomicInteger closed) {
+        return (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private int row;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("next".equals(name)) {
+                    return ++row <= rows;
+                }
+                if ("close".equals(name)) {
+                    closed.incrementAndGet();
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class HttpBatchTest {
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicInteger maxInflight = new AtomicInteger();
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+    private LocalHttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalHttpServer.start(new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final int current = inflight.incrementAndGet();
+                for (int max = maxInflight.get(); current > max && !maxInflight.compareAndSet(max, current); ) {
+                    max = maxInflight.get();
+                }
+                if (exchange.getRequestURI().getPath().startsWith("/slow")) {
+                    /*-
+                     * held until the test ends, only the deadline can complete these requests.
+                     */
+                    LocalHttpServer.await(slowRelease);
+                }
+                inflight.decrementAndGet();
+                LocalHttpServer.respond(exchange, 200, exchange.getRequestURI().getQuery().getBytes("UTF-8"));
+            }
+        });
+        url = server.getUrl();
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        server.stop();
+    }
+
+    @Test
+    public void testConcurrencyPerHost() {
+        final List<HttpBatch.Request> requests = new ArrayList<HttpBatch.Request>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(HttpBatch.Request.get(url + "/fast?id=" + i).tag(i));
+        }
+        requests.add(HttpBatch.Request.get("bogus url"));
+        final HttpBatch.Results<String> results = new HttpBatch(new HttpClient())
+                .maxConcurrency(8).maxConcurrencyPerHost(2).execute(requests, HttpBatch.BODY_AS_STRING);
+
+        final Set<String> bodies = new HashSet<String>();
+        int failures = 0;
+        while (results.hasNext()) {
+            final HttpBatch.Result<String> result = results.next();
+            if (result.isSuccess()) {
+                assertEquals("id=" + result.getRequest().getTag(), result.getValue());
+                bodies.add(result.getValue());
+            } else {
+                failures++;
+            }
+        }
+        results.close();
+        assertEquals(20, bodies.size());
+        assertEquals(1, failures);
+        assertTrue(2 >= maxInflight.get());
+    }
+
+    @Test
+    public void testIllegalConcurrency() {
+        final HttpBatch batch = new HttpBatch(new HttpClient());
+        for (final int max : new int[]{0, -1}) {
+            try {
+                batch.maxConcurrency(max);
+                fail("maxConcurrency " + max);
+            } catch (final IllegalArgumentException expected) {
+                // expected
+            }
+            try {
+                batch.maxConcurrencyPerHost(max);
+                fail("maxConcurrencyPerHost " + max);
+            } catch (final IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        final List<HttpBatch.Request> requests = new ArrayList<HttpBatch.Request>();
+        for (int i = 0; i < 6; i++) {
+            requests.add(HttpBatch.Request.get(url + "/slow?id=" + i));
+        }
+        requests.add(HttpBatch.Request.get(url + "/slow?id=timeout").timeout(1, TimeUnit.MILLISECONDS));
+        final HttpBatch.Results<String> results = new HttpBatch(new HttpClient()).maxConcurrency(4)
+                .maxConcurrencyPerHost(4).deadline(300, TimeUnit.MILLISECONDS).execute(requests, HttpBatch.BODY_AS_STRING);
+
+        int count = 0;
+        while (results.hasNext()) {
+            final HttpBatch.Result<String> result = results.next();
+            assertTrue(result.getError() instanceof SocketTimeoutException);
+            count++;
+        }
+        results.close();
+        assertEquals(7, count);
+    }
+}
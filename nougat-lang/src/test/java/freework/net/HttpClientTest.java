@@ -0,0 +1,74 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class HttpClientTest {
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private LocalHttpServer server;
+    private String url;
+    private String missingUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalHttpServer.start(new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                final boolean missing = exchange.getRequestURI().getPath().startsWith("/missing");
+                LocalHttpServer.respond(exchange, missing ? 404 : 200, "hello".getBytes("UTF-8"));
+            }
+        });
+        url = server.getUrl() + "/test";
+        missingUrl = server.getUrl() + "/missing";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testConnectionReuse() throws IOException {
+        final HttpClient client = new HttpClient().maxConnectionsPerRoute(1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hello", client.get(url, "i", String.valueOf(i)));
+        }
+        assertEquals(5, client.getExchangeCount());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testStaticHelpersReuse() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            final java.net.HttpURLConnection conn = Http.get(url);
+            try {
+                assertEquals(200, conn.getResponseCode());
+            } finally {
+                Http.close(conn);
+            }
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testUnreadErrorResponseRelease() throws IOException {
+        final HttpClient client = new HttpClient().maxConnectionsPerRoute(1);
+        client.open("POST", missingUrl).post("text/plain;charset=UTF-8", "body").close();
+        assertEquals(1, client.getReusableCount());
+        assertEquals("hello", client.get(url));
+        assertEquals(1, clientPorts.size());
+    }
+}
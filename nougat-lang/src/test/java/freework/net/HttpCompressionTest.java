@@ -0,0 +1,80 @@
+package freework.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpCompressionTest {
+    private static final byte[] BODY = repeat("{\"id\":1,\"name\":\"nougat\"},", 2000);
+
+    @Test
+    public void testGzip() throws IOException {
+        final HttpCompression compression = new HttpCompression(6, 2);
+        final byte[] gzipped = compression.gzip(BODY);
+        assertTrue(gzipped.length < BODY.length);
+        assertArrayEquals(BODY, read(compression.decode("gzip", new ByteArrayInputStream(gzipped))));
+
+        final ByteArrayOutputStream jdk = new ByteArrayOutputStream();
+        final GZIPOutputStream out = new GZIPOutputStream(jdk);
+        out.write(BODY);
+        out.close();
+        assertArrayEquals(BODY, read(compression.decode("x-gzip", new ByteArrayInputStream(jdk.toByteArray()))));
+    }
+
+    @Test
+    public void testGzipStream() throws IOException {
+        final HttpCompression compression = new HttpCompression(6, 2);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream out = compression.newGzipOutputStream(bytes);
+        out.write(BODY, 0, 100);
+        out.write(BODY, 100, BODY.length - 100);
+        out.close();
+        assertArrayEquals(BODY, read(compression.decode("gzip", new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+        out.write(BODY);
+        out.close();
+        assertArrayEquals(BODY, read(new HttpCompression(6, 2).decode("deflate", new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptTrailer() throws IOException {
+        final HttpCompression compression = new HttpCompression(6, 2);
+        final byte[] gzipped = compression.gzip(BODY);
+        gzipped[gzipped.length - 5] ^= 1;
+        read(compression.decode("gzip", new ByteArrayInputStream(gzipped)));
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buff = new byte[333];
+        for (int n; -1 != (n = in.read(buff)); ) {
+            out.write(buff, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] repeat(final String text, final int times) {
+        final StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            buff.append(text);
+        }
+        return buff.toString().getBytes();
+    }
+}
@@ -0,0 +1,96 @@
+package freework.net;
+
+import org.junit.Test;
+
+import java.net.HttpCookie;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpCookieJarTest {
+
+    @Test
+    public void testRegistrableDomain() {
+        assertEquals("example.com", HttpCookieJar.registrableDomain("a.b.example.com"));
+        assertEquals("example.co.uk", HttpCookieJar.registrableDomain("www.example.co.uk"));
+        assertEquals("example.com.cn", HttpCookieJar.registrableDomain("example.com.cn"));
+        assertEquals("example.de", HttpCookieJar.registrableDomain("www.example.de"));
+        assertEquals("localhost", HttpCookieJar.registrableDomain("localhost"));
+        assertEquals("10.0.0.1", HttpCookieJar.registrableDomain("10.0.0.1"));
+    }
+
+    @Test
+    public void testMatch() throws MalformedURLException {
+        final HttpCookieJar jar = new HttpCookieJar(100);
+        assertTrue(jar.add(new URL("http://www.example.com/a/index.html"), cookie("dir", null, null)));
+        assertTrue(jar.add(new URL("http://www.example.com/"), cookie("shared", ".example.com", "/")));
+        assertTrue(jar.add(new URL("http://www.example.com/"), cookie("deep", null, "/a/b")));
+        assertFalse(jar.add(new URL("http://www.example.com/"), cookie("foreign", "other.com", "/")));
+        assertFalse(jar.add(new URL("http://www.example.co.uk/"), cookie("suffix", "co.uk", "/")));
+        final HttpCookie secure = cookie("secure", null, "/");
+        secure.setSecure(true);
+        jar.add(new URL("https://www.example.com/"), secure);
+
+        assertEquals("[deep, dir, shared]", names(jar.get(new URL("http://www.example.com/a/b/c"))));
+        assertEquals("[dir, shared]", names(jar.get(new URL("http://www.example.com/a/bc"))));
+        assertEquals("[shared]", names(jar.get(new URL("http://api.example.com/a/b"))));
+        assertEquals("[shared, secure]", names(jar.get(new URL("https://www.example.com/"))));
+        assertEquals("[]", names(jar.get(new URL("http://example.org/"))));
+    }
+
+    @Test
+    public void testReplaceAndDelete() throws MalformedURLException {
+        final HttpCookieJar jar = new HttpCookieJar(100);
+        final URL url = new URL("http://example.com/");
+        jar.add(url, cookie("id", null, "/"));
+        final HttpCookie replacement = cookie("id", null, "/");
+        replacement.setValue("2");
+        jar.add(url, replacement);
+        assertEquals(1, jar.size());
+        assertEquals("2", jar.get(url).get(0).getValue());
+
+        final HttpCookie delete = cookie("id", null, "/");
+        delete.setMaxAge(0);
+        jar.add(url, delete);
+        assertEquals(0, jar.size());
+        assertTrue(jar.get(url).isEmpty());
+    }
+
+    @Test
+    public void testEvictExpiringFirst() throws MalformedURLException {
+        final HttpCookieJar jar = new HttpCookieJar(2);
+        final URL url = new URL("http://example.com/");
+        final HttpCookie session = cookie("session", null, "/");
+        final HttpCookie soon = cookie("soon", null, "/");
+        soon.setMaxAge(60);
+        final HttpCookie later = cookie("later", null, "/");
+        later.setMaxAge(3600);
+        jar.add(url, session);
+        jar.add(url, soon);
+        jar.add(url, later);
+        assertEquals(2, jar.size());
+        assertEquals(1, jar.getEvictedCount());
+        assertEquals("[session, later]", names(jar.get(url)));
+    }
+
+    private static HttpCookie cookie(final String name, final String domain, final String path) {
+        final HttpCookie cookie = new HttpCookie(name, "1");
+        cookie.setDomain(domain);
+        cookie.setPath(path);
+        return cookie;
+    }
+
+    private static String names(final List<HttpCookie> cookies) {
+        final StringBuilder buff = new StringBuilder("[");
+        for (final HttpCookie cookie : cookies) {
+            buff.append(1 < buff.length() ? ", " : "").append(cookie.getName());
+        }
+        return buff.append(']').toString();
+    }
+}
@@ -0,0 +1,125 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import freework.util.LatencyHistogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class HttpHedgingTest {
+    private static final long DELAY_MILLIS = 20;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+    private LocalHttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalHttpServer.start(new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final int seq = requests.incrementAndGet();
+                final String path = exchange.getRequestURI().getPath();
+                final int status = path.startsWith("/error") ? 500 : path.startsWith("/missing") ? 404 : 200;
+                if (path.startsWith("/slow") && 1 == seq % 2) {
+                    /*-
+                     * held until the test ends, only a hedge can answer in time.
+                     */
+                    LocalHttpServer.await(slowRelease);
+                } else if (path.startsWith("/delay")) {
+                    sleep(DELAY_MILLIS);
+                }
+                LocalHttpServer.respond(exchange, status, ("response " + seq).getBytes("UTF-8"));
+            }
+        });
+        url = server.getUrl();
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        server.stop();
+    }
+
+    @Test
+    public void testHedge() throws IOException {
+        final HttpHedging hedging = new HttpHedging(new HttpClient()).initialDelay(100, TimeUnit.MILLISECONDS, 20);
+        assertEquals("response 2", hedging.get(url + "/slow"));
+        assertEquals(1, hedging.getHedgeCount());
+        assertEquals(1, hedging.getHedgeWinCount());
+    }
+
+    @Test
+    public void testRetryBudget() {
+        final HttpHedging hedging = new HttpHedging(new HttpClient()).maxRetries(3).budget(0, 2);
+        for (int i = 0; i < 3; i++) {
+            try {
+                hedging.get(url + "/error");
+                fail();
+            } catch (final IOException expected) {
+                // 500
+            }
+        }
+        assertEquals(2, hedging.getRetryCount());
+        assertEquals(5, requests.get());
+        assertEquals(3, hedging.getBudgetExhaustedCount());
+    }
+
+    @Test
+    public void testNoRetryOnClientError() {
+        final HttpHedging hedging = new HttpHedging(new HttpClient()).maxRetries(3).budget(0, 2);
+        try {
+            hedging.get(url + "/missing");
+            fail();
+        } catch (final IOException expected) {
+            // 404
+        }
+        assertEquals(0, hedging.getRetryCount());
+        assertEquals(1, requests.get());
+        assertEquals(0, hedging.getBudgetExhaustedCount());
+    }
+
+    @Test
+    public void testHedgeDelayPercentile() throws IOException {
+        final int samples = 5;
+        final HttpHedging hedging = new HttpHedging(new HttpClient()).initialDelay(10, TimeUnit.SECONDS, samples);
+        for (int i = 0; i <= samples; i++) {
+            hedging.get(url + "/delay");
+        }
+        final LatencyHistogram latency = hedging.getLatencies().values().iterator().next();
+        final long delay = hedging.getHedgeDelay(url + "/delay", TimeUnit.MILLISECONDS);
+        assertTrue("hedge delay " + delay, DELAY_MILLIS <= delay);
+        assertTrue("hedge delay " + delay, latency.getMax(TimeUnit.MILLISECONDS) >= delay);
+        assertEquals(latency.getPercentile(0.95, TimeUnit.MILLISECONDS), delay);
+    }
+
+    @Test
+    public void testDefaultPortKey() throws IOException {
+        final HttpHedging hedging = new HttpHedging(new HttpClient());
+        hedging.getHedgeDelay("http://example.com/a", TimeUnit.MILLISECONDS);
+        hedging.getHedgeDelay("http://example.com:80/b", TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singleton("http://example.com:80"), hedging.getLatencies().keySet());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class HttpMetricsTest {
+    private LocalHttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalHttpServer.start(new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream in = exchange.getRequestBody();
+                while (-1 != in.read()) {
+                    // discard
+                }
+                final boolean missing = exchange.getRequestURI().getPath().startsWith("/missing");
+                LocalHttpServer.respond(exchange, missing ? 404 : 200, "hello".getBytes("UTF-8"));
+            }
+        });
+        url = server.getUrl();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testPhases() throws IOException {
+        final HttpMetrics metrics = new HttpMetrics();
+        final HttpClient client = new HttpClient().metrics(metrics);
+        assertEquals("hello", client.get(url + "/get"));
+        assertEquals("hello", client.post(url + "/post", "text/plain;charset=UTF-8", "body"));
+        try {
+            client.get(url + "/missing");
+            fail();
+        } catch (final IOException expected) {
+            // 404
+        }
+
+        final HttpMetrics.Host host = metrics.getHost("127.0.0.1");
+        assertEquals(3, host.getRequestCount());
+        assertEquals(1, host.getErrorCount());
+        assertEquals(3, host.getDns().getCount());
+        assertEquals(3, host.getConnect().getCount());
+        assertEquals(3, host.getTtfb().getCount());
+        assertEquals(2, host.getBody().getCount());
+        assertEquals(1, host.getSend().getCount());
+        assertEquals(4, host.getBytesSent());
+        assertEquals(10, host.getBytesReceived());
+        assertTrue(0 < host.getTotal().getPercentile(0.99D, TimeUnit.NANOSECONDS));
+        final String dump = metrics.dump();
+        assertTrue(dump.startsWith("127.0.0.1 requests=3 errors=1 sent=4 received=10 dns="));
+        assertTrue(dump, !dump.contains("total=0.0/0.0ms"));
+    }
+}
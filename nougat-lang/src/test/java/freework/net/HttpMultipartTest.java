@@ -0,0 +1,96 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpMultipartTest {
+    private LocalHttpServer server;
+    private URL url;
+    private volatile String contentLength;
+    private volatile String transferEncoding;
+    private volatile String body;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalHttpServer.start(new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+                transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                final InputStream in = exchange.getRequestBody();
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final byte[] buff = new byte[4096];
+                for (int n; -1 != (n = in.read(buff)); ) {
+                    bytes.write(buff, 0, n);
+                }
+                body = bytes.toString("UTF-8");
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        url = new URL(server.getUrl() + "/upload");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testFixedLength() throws IOException {
+        final File file = File.createTempFile("multipart", ".txt");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write("file content".getBytes("UTF-8"));
+            out.close();
+
+            final HttpURLConnection conn = Http.postMultipart((HttpURLConnection) url.openConnection())
+                    .addTextEntry("text", "中文")
+                    .addFileEntry("file", file, "text/plain")
+                    .complete();
+            assertEquals(200, conn.getResponseCode());
+            Http.close(conn);
+
+            assertNull(transferEncoding);
+            assertEquals(String.valueOf(body.getBytes("UTF-8").length), contentLength);
+            assertTrue(body.contains("name=\"text\"\r\nContent-Type:text/plain\r\n\r\n中文\r\n--"));
+            assertTrue(body.contains("filename=\"" + file.getName() + "\"\r\nContent-Type:text/plain\r\n\r\nfile content\r\n--"));
+            assertTrue(body.endsWith("--\r\n"));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testChunked() throws IOException {
+        final HttpURLConnection conn = Http.postMultipart((HttpURLConnection) url.openConnection())
+                .addTextEntry("text", "value")
+                .addStreamEntry("stream", "a.bin", null, new ByteArrayInputStream("stream content ignored".getBytes("UTF-8")), 14)
+                .complete();
+        assertEquals(200, conn.getResponseCode());
+        Http.close(conn);
+
+        assertNull(contentLength);
+        assertEquals("chunked", transferEncoding);
+        assertTrue(body.contains("\r\n\r\nvalue\r\n--"));
+        assertTrue(body.contains("Content-Type:application/octet-stream\r\n\r\nstream content\r\n--"));
+    }
+}
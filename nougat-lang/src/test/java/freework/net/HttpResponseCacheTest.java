@@ -0,0 +1,142 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpResponseCacheTest {
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final CountDownLatch slowEntered = new CountDownLatch(1);
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+    private LocalHttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalHttpServer.start(new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                final String path = exchange.getRequestURI().getPath();
+                if ("/etag".equals(path)) {
+                    exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                } else if ("/slow".equals(path)) {
+                    slowEntered.countDown();
+                    LocalHttpServer.await(slowRelease);
+                    exchange.getResponseHeaders().add("Cache-Control", "no-store");
+                } else {
+                    exchange.getResponseHeaders().add("Cache-Control", "public, max-age=60");
+                }
+                final byte[] body = ("body of " + exchange.getRequestURI()).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "text/plain;charset=UTF-8");
+                LocalHttpServer.respond(exchange, 200, body);
+            }
+        });
+        url = server.getUrl();
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        server.stop();
+    }
+
+    @Test
+    public void testFresh() throws IOException {
+        final HttpResponseCache cache = new HttpResponseCache(new HttpClient(), 1024 * 1024);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("body of /fresh", cache.get(url + "/fresh").getBodyAsString());
+        }
+        assertEquals(1, requests.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(28, cache.getSavedBytes());
+    }
+
+    @Test
+    public void testRevalidate() throws IOException {
+        final HttpResponseCache cache = new HttpResponseCache(new HttpClient(), 1024 * 1024);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("body of /etag", cache.get(url + "/etag").getBodyAsString());
+        }
+        assertEquals(3, requests.get());
+        assertEquals(2, notModified.get());
+        assertEquals(2, cache.getRevalidatedCount());
+        assertEquals(1, cache.getNetworkCount());
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final HttpResponseCache cache = new HttpResponseCache(new HttpClient(), 1024 * 1024);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch submitted = new CountDownLatch(4);
+        try {
+            final List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        submitted.countDown();
+                        return cache.get(url + "/slow").getBodyAsString();
+                    }
+                }));
+            }
+            /*-
+             * hold the first request on the server until all callers are submitted.
+             */
+            assertTrue(LocalHttpServer.await(slowEntered));
+            assertTrue(LocalHttpServer.await(submitted));
+            slowRelease.countDown();
+            for (final Future<String> future : futures) {
+                assertEquals("body of /slow", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(requests.get(), cache.getNetworkCount());
+        assertEquals(4, cache.getNetworkCount() + cache.getCoalescedCount());
+        assertTrue(requests.get() < 4);
+    }
+
+    @Test
+    public void testDiskSpill() throws IOException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "http-cache-" + System.nanoTime());
+        final HttpResponseCache cache = new HttpResponseCache(new HttpClient(), 400).diskSpill(dir, 1024 * 1024);
+        try {
+            cache.get(url + "/a");
+            cache.get(url + "/b");
+            assertTrue(0 < cache.getDiskBytes());
+            assertEquals("body of /a", cache.get(url + "/a").getBodyAsString());
+            assertEquals(2, requests.get());
+            assertEquals(1, cache.getHitCount());
+        } finally {
+            cache.clear();
+            assertTrue(dir.delete());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package freework.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local http server (127.0.0.1, ephemeral port) for the http tests, requests are handled concurrently.
+ */
+final class LocalHttpServer {
+    /**
+     * The max time a handler or test waits for a latch, bounds a broken test instead of hanging it.
+     */
+    private static final long AWAIT_SECONDS = 10;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private LocalHttpServer(final HttpServer server, final ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server handling all paths with the handler.
+     *
+     * @param handler the handler
+     * @return the started server
+     * @throws IOException if the server cannot be bound
+     */
+    static LocalHttpServer start(final HttpHandler handler) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", handler);
+        server.start();
+        return new LocalHttpServer(server, executor);
+    }
+
+    /**
+     * Returns the base url, eg: "http://127.0.0.1:12345".
+     *
+     * @return the base url
+     */
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends the response, a client that is gone (eg: timed out, hedge loser) is ignored.
+     */
+    static void respond(final HttpExchange exchange, final int status, final byte[] body) {
+        try {
+            exchange.sendResponseHeaders(status, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (final IOException ignore) {
+            // client gone.
+        }
+    }
+
+    /**
+     * Waits for the latch at most {@link #AWAIT_SECONDS}.
+     *
+     * @return true if the latch reached zero
+     */
+    static boolean await(final CountDownLatch latch) {
+        try {
+            return latch.await(AWAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
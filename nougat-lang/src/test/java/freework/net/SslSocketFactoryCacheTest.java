@@ -0,0 +1,222 @@
+package freework.net;
+
+import org.junit.Test;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class SslSocketFactoryCacheTest {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @Test
+    public void testIdentityKey() throws Exception {
+        final SslSocketFactoryCache cache = new SslSocketFactoryCache(8);
+        final Managers a = new Managers();
+        final Managers b = new Managers();
+
+        final SSLSocketFactory ab = cache.get(new KeyManager[]{a}, new TrustManager[]{b});
+        assertSame(ab, cache.get(new KeyManager[]{a}, new TrustManager[]{b}));
+        assertNotSame(ab, cache.get(new KeyManager[]{new Managers()}, new TrustManager[]{b}));
+        assertNotSame(ab, cache.get(new KeyManager[]{a, b}, null));
+        assertSame(cache.get(null, null), cache.get(new KeyManager[0], new TrustManager[0]));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void testLruEviction() throws Exception {
+        final SslSocketFactoryCache cache = new SslSocketFactoryCache(2);
+        final TrustManager[] a = {new Managers()};
+        final TrustManager[] b = {new Managers()};
+        final TrustManager[] c = {new Managers()};
+
+        final SSLSocketFactory first = cache.get(null, a);
+        cache.get(null, b);
+        cache.get(null, c);
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getMissCount());
+
+        /*-
+         * c evicted a (the eldest), reloading a evicts b; c used afterwards leaves a as the eldest.
+         */
+        assertNotSame(first, cache.get(null, a));
+        assertEquals(4, cache.getMissCount());
+        cache.get(null, c);
+        assertEquals(1, cache.getHitCount());
+        cache.get(null, b);
+        assertEquals(5, cache.getMissCount());
+        cache.get(null, c);
+        assertEquals(2, cache.getHitCount());
+        cache.get(null, a);
+        assertEquals(6, cache.getMissCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testHandshakeCounters() throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        final InputStream in = SslSocketFactoryCacheTest.class.getResourceAsStream("/localhost.p12");
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        final int connections = 2;
+        final SSLServerSocket server = (SSLServerSocket) serverContext.getServerSocketFactory()
+                .createServerSocket(0, connections, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < connections; i++) {
+                    try {
+                        final Socket socket = server.accept();
+                        try {
+                            socket.getOutputStream().write('x');
+                            socket.getOutputStream().flush();
+                            while (-1 != socket.getInputStream().read()) {
+                                // until the client closes.
+                            }
+                        } finally {
+                            socket.close();
+                        }
+                    } catch (final IOException ignore) {
+                        // the test fails on the client side.
+                    }
+                }
+            }
+        }, "tls-test-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        final SslSocketFactoryCache cache = new SslSocketFactoryCache(1);
+        final CountDownLatch handshakes = new CountDownLatch(connections);
+        final List<Boolean> resumed = Collections.synchronizedList(new ArrayList<Boolean>());
+        cache.addHandshakeListener(new SslSocketFactoryCache.HandshakeListener() {
+            @Override
+            public void handshakeCompleted(final String host, final long elapsedNanos, final boolean resumedSession) {
+                resumed.add(resumedSession);
+                handshakes.countDown();
+            }
+        });
+        try {
+            for (int i = 0; i < connections; i++) {
+                /*-
+                 * a session created in the same millisecond as the socket does not count as resumed.
+                 */
+                final long now = System.currentTimeMillis();
+                while (now == System.currentTimeMillis()) {
+                    Thread.yield();
+                }
+                final Socket socket = cache.get(null, tmf.getTrustManagers()).createSocket("127.0.0.1", server.getLocalPort());
+                try {
+                    assertEquals('x', socket.getInputStream().read());
+                } finally {
+                    socket.close();
+                }
+            }
+            assertTrue(LocalHttpServer.await(handshakes));
+        } finally {
+            server.close();
+        }
+
+        assertEquals(Arrays.asList(false, true), sorted(resumed));
+        assertEquals(connections, cache.getHandshakeCount());
+        assertEquals(1, cache.getResumedCount());
+        assertEquals(connections, cache.getHandshakeTime().getCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    private static List<Boolean> sorted(final List<Boolean> values) {
+        final List<Boolean> sorted = new ArrayList<Boolean>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * A key manager and trust manager without keys, the cache only needs distinct instances.
+     */
+    private static final class Managers implements X509KeyManager, X509TrustManager {
+
+        @Override
+        public String[] getClientAliases(final String keyType, final Principal[] issuers) {
+            return null;
+        }
+
+        @Override
+        public String chooseClientAlias(final String[] keyType, final Principal[] issuers, final Socket socket) {
+            return null;
+        }
+
+        @Override
+        public String[] getServerAliases(final String keyType, final Principal[] issuers) {
+            return null;
+        }
+
+        @Override
+        public String chooseServerAlias(final String keyType, final Principal[] issuers, final Socket socket) {
+            return null;
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(final String alias) {
+            return null;
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(final String alias) {
+            return null;
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType) {
+            // trusts nothing, never called.
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType) {
+            // trusts nothing, never called.
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package freework.net;
+
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class UrlCodecTest {
+    private static final String[] SAMPLES = {
+            "", "abcXYZ019", "-_.*!~'()", "a b+c&d=e%f/g?h#i", "中文 参数", "emoji 😀 end",
+            "lone \uD800 high", "lone \uDC00 low", "tail \uD83D", "éßĀ߿ࠀ￿", "\r\n\t\u0000"
+    };
+
+    @Test
+    public void testEncodeAsUrlEncoder() throws UnsupportedEncodingException {
+        for (final String charset : new String[]{"UTF-8", "GBK", "ISO-8859-1"}) {
+            final UrlCodec codec = UrlCodec.forCharset(charset);
+            for (final String sample : SAMPLES) {
+                final String expected = URLEncoder.encode(sample, charset).replace("%21", "!");
+                assertEquals(charset + ": " + sample, expected, codec.encode(sample));
+
+                final ByteBuffer buffer = codec.encode(sample, ByteBuffer.allocate(expected.length()));
+                assertEquals(expected, new String(buffer.array(), 0, buffer.position(), "US-ASCII"));
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeAsUrlDecoder() throws UnsupportedEncodingException {
+        final String[] encoded = {
+                "a+b%20c", "%E4%B8%AD%e6%96%87", "%F0%9F%98%80", "%C0%AF", "%ED%A0%80", "%80abc",
+                "%E4%B8", "100%25", "x=%3D&y"
+        };
+        for (final String charset : new String[]{"UTF-8", "GBK"}) {
+            final UrlCodec codec = UrlCodec.forCharset(charset);
+            for (final String text : encoded) {
+                assertEquals(charset + ": " + text, URLDecoder.decode(text, charset), codec.decode(text));
+            }
+            for (final String sample : SAMPLES) {
+                final String text = URLEncoder.encode(sample, charset);
+                assertEquals(URLDecoder.decode(text, charset), codec.decode(text));
+            }
+        }
+        for (final String illegal : new String[]{"%", "abc%4", "%G1", "%-1"}) {
+            try {
+                UrlCodec.forCharset(Http.UTF_8).decode(illegal);
+                fail(illegal);
+            } catch (final IllegalArgumentException expected) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void testQuery() {
+        final Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("q", "中 文&=");
+        params.put("page", "1");
+        params.put("empty", null);
+        final String query = Http.buildQuery("UTF-8", params);
+        assertEquals("q=%E4%B8%AD+%E6%96%87%26%3D&page=1&empty=", query);
+        assertEquals("q=%E4%B8%AD+%E6%96%87%26%3D&page=1", Http.buildQuery("UTF-8", "q", "中 文&=", "page", "1"));
+
+        final Map<String, String> expected = new HashMap<String, String>();
+        expected.put("q", "中 文&=");
+        expected.put("page", "1");
+        expected.put("empty", "");
+        assertEquals(expected, Http.splitQuery(query, "UTF-8"));
+
+        final Map<String, String> raw = Http.splitQuery("a=1&&b&c==x&a=2&=v", null);
+        assertEquals(3, raw.size());
+        assertEquals("2", raw.get("a"));
+        assertEquals("=x", raw.get("c"));
+        assertEquals("v", raw.get(""));
+
+        final StringBuilder url = new StringBuilder("http://localhost/search?");
+        UrlCodec.forCharset(Http.UTF_8).appendParameter(url, "k", "a b").appendParameter(url, "n", null);
+        assertEquals("http://localhost/search?k=a+b&n=", url.toString());
+    }
+
+    @Test
+    public void testForCharset() {
+        assertSame(UrlCodec.forCharset("utf-8"), UrlCodec.forCharset(Charset.forName("UTF-8")));
+        assertSame(UrlCodec.forCharset("GBK"), UrlCodec.forCharset(Charset.forName("GBK")));
+    }
+}
@@ -6,6 +6,9 @@
 package freework.util;
 
 import freework.codec.Hex;
+import freework.jdbc.BatchInserter;
+import freework.jdbc.MetadataCache;
+import freework.jdbc.MetadataCrawler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -172,6 +175,74 @@ public abstract class JdbcUtils {
         return columns;
     }
 
+    /**
+     * 从缓存中获取 Schema, 缓存不存在或过期时从 Connection DatabaseMetaData 读取
+     */
+    public static List<DbSchema> readSchemas(MetadataCache cache, Connection conn) throws SQLException {
+        return cache.get(conn.getMetaData(), MetadataCache.SCHEMAS, new MetadataCache.Loader<DbSchema>() {
+            @Override
+            public List<DbSchema> load(DatabaseMetaData meta) throws SQLException {
+                return readSchemas(meta);
+            }
+        });
+    }
+
+    /**
+     * 从缓存中获取符合条件的 Table, 缓存不存在或过期时从 Connection DatabaseMetaData 读取
+     */
+    public static List<DbTable> readTables(MetadataCache cache, Connection conn, final String schemaPattern, final String tablePattern, final String[] tabTypes) throws SQLException {
+        String types = null != tabTypes ? Arrays.toString(tabTypes) : null;
+        return cache.get(conn.getMetaData(), MetadataCache.TABLES, new MetadataCache.Loader<DbTable>() {
+            @Override
+            public List<DbTable> load(DatabaseMetaData meta) throws SQLException {
+                return readTables(meta, schemaPattern, tablePattern, tabTypes);
+            }
+        }, schemaPattern, tablePattern, types);
+    }
+
+    /**
+     * 从缓存中获取符合条件的 Column, 缓存不存在或过期时从 Connection DatabaseMetaData 读取
+     */
+    public static List<DbColumn> readColumns(MetadataCache cache, Connection conn, final String schemaPattern, final String tablePattern, final String columnPattern) throws SQLException {
+        return cache.get(conn.getMetaData(), MetadataCache.COLUMNS, new MetadataCache.Loader<DbColumn>() {
+            @Override
+            public List<DbColumn> load(DatabaseMetaData meta) throws SQLException {
+                return readColumns(meta, schemaPattern, tablePattern, columnPattern);
+            }
+        }, schemaPattern, tablePattern, columnPattern);
+    }
+
+    /**
+     * 使用多个连接并发读取 Schema 下所有表的 Column, 并放入缓存(cache 可为 null)
+     */
+    public static Map<String, List<DbColumn>> crawlColumns(DataSource dataSource, String schema, int parallelism, MetadataCache cache) throws SQLException {
+        return new MetadataCrawler(dataSource, parallelism).crawl(schema, null, new MetadataCrawler.ColumnReader<DbColumn>() {
+            @Override
+            public List<DbColumn> read(DatabaseMetaData meta, String schema, String table) throws SQLException {
+                return readColumns(meta, escapeSearchPattern(meta, schema), escapeSearchPattern(meta, table), "%");
+            }
+        }, cache);
+    }
+
+    /**
+     * 转义精确名称中的通配符('_', '%'), 使其作为 DatabaseMetaData 的 pattern 时只匹配自身
+     */
+    private static String escapeSearchPattern(DatabaseMetaData meta, String name) throws SQLException {
+        String escape = null != name ? meta.getSearchStringEscape() : null;
+        if (null == escape || escape.isEmpty()) {
+            return name;
+        }
+        StringBuilder pattern = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ('_' == c || '%' == c || name.startsWith(escape, i)) {
+                pattern.append(escape);
+            }
+            pattern.append(c);
+        }
+        return pattern.toString();
+    }
+
     /**
      * 获取当前 Connection 的 Schema
      */
@@ -663,6 +734,21 @@ public abstract class JdbcUtils {
         execute(conn, sql, parameters);
     }
 
+    /**
+     * 向表中批量插入数据
+     *
+     * @param conn      the connection
+     * @param tableName the table name
+     * @param rows      the rows
+     * @param batchSize the number of rows per batch
+     * @return the insert statistics
+     * @throws java.sql.SQLException
+     * @see BatchInserter
+     */
+    public static BatchInserter.Stats insertToTable(Connection conn, String tableName, Iterable<? extends Map<String, ?>> rows, int batchSize) throws SQLException {
+        return new BatchInserter(conn, tableName).batchSize(batchSize).insert(rows);
+    }
+
     /**
      * 根据给定的表名构建 PreparedStatement Insert Sql
      *